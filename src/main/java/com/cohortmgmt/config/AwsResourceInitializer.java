@@ -2,175 +2,467 @@ package com.cohortmgmt.config;
 
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.CreateGlobalSecondaryIndexAction;
 import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndex;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndexDescription;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndexUpdate;
 import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
 import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.Projection;
+import com.amazonaws.services.dynamodbv2.model.ProjectionType;
 import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodbv2.model.ResourceInUseException;
 import com.amazonaws.services.dynamodbv2.model.ResourceNotFoundException;
 import com.amazonaws.services.dynamodbv2.model.StreamSpecification;
 import com.amazonaws.services.dynamodbv2.model.StreamViewType;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.amazonaws.services.dynamodbv2.model.UpdateTableRequest;
 import com.amazonaws.services.sqs.AmazonSQS;
 import com.amazonaws.services.sqs.model.CreateQueueRequest;
+import com.amazonaws.services.sqs.model.QueueDoesNotExistException;
+import com.cohortmgmt.repository.CustomerModificationIndex;
+import com.cohortmgmt.repository.DynamoDBMembershipVersionRepository;
+import com.cohortmgmt.service.concurrency.CapacityGovernor;
+import com.cohortmgmt.service.concurrency.CapacityGovernor.Kind;
+import com.cohortmgmt.service.concurrency.NamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.context.event.ApplicationReadyEvent;
-import org.springframework.context.ApplicationListener;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
 import org.springframework.stereotype.Component;
 
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
- * Initializes AWS resources when the application starts.
- * This ensures that required resources like SQS queues exist before they are used.
+ * Bootstraps the AWS resources the service uses and tracks whether they are ready.
+ *
+ * As soon as the application context starts, every table and the queue are checked, and created if missing,
+ * in parallel. Instead of fixed sleeps, a created table is polled with exponential backoff until it and its
+ * indexes are active, so a table that is ready quickly is used right away. A resource that cannot be checked
+ * or created, e.g. while LocalStack is still starting, is retried with exponential backoff. Once a table is
+ * active, the {@link CapacityGovernor} budgets of the table and its indexes are sized from their provisioned
+ * throughput.
+ *
+ * Once every resource is ready, a {@link ResourcesReadyEvent} is published, on which the ingestion components
+ * start consuming, and {@link #isReady()} turns true, which lets API traffic through.
  */
 @Component
-public class AwsResourceInitializer implements ApplicationListener<ApplicationReadyEvent> {
+public class AwsResourceInitializer implements SmartLifecycle {
     
     private static final Logger logger = LoggerFactory.getLogger(AwsResourceInitializer.class);
     
+    private static final long INITIAL_POLL_MILLIS = 20;
+    private static final long MAX_POLL_MILLIS = 500;
+    private static final long INITIAL_RETRY_MILLIS = 100;
+    private static final long MAX_RETRY_MILLIS = 5000;
+    private static final long TABLE_ACTIVE_TIMEOUT_MILLIS = 60000;
+    
     private final AmazonSQS amazonSQS;
     private final AmazonDynamoDB amazonDynamoDB;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CapacityGovernor capacityGovernor;
     private final String queueName;
     private final String customerTableName;
     private final String cohortTableName;
+    private final String checkpointTableName;
+    private final boolean checkpointTableEnabled;
+    private final String leaseTableName;
+    private final boolean leaseTableEnabled;
+    private final String versionTableName;
+    private final ProvisionedThroughput dataThroughput;
+    
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+    private final Map<String, String> resourceStatus = new ConcurrentHashMap<>();
+    private ExecutorService executor;
+    private volatile boolean running;
     
     @Autowired
     public AwsResourceInitializer(
             AmazonSQS amazonSQS,
             AmazonDynamoDB amazonDynamoDB,
+            ApplicationEventPublisher eventPublisher,
+            CapacityGovernor capacityGovernor,
             @Value("${aws.sqs.queue-name}") String queueName,
             @Value("${aws.dynamodb.customer-table}") String customerTableName,
-            @Value("${aws.dynamodb.cohort-table}") String cohortTableName) {
+            @Value("${aws.dynamodb.cohort-table}") String cohortTableName,
+            @Value("${aws.dynamodb.stream-checkpoint-table:StreamCheckpoints}") String checkpointTableName,
+            @Value("${stream.checkpoint.store:dynamodb}") String checkpointStore,
+            @Value("${aws.dynamodb.stream-lease-table:StreamLeases}") String leaseTableName,
+            @Value("${stream.leases.enabled:true}") boolean leaseTableEnabled,
+            @Value("${aws.dynamodb.membership-version-table:MembershipVersions}") String versionTableName,
+            @Value("${aws.dynamodb.provisioned-throughput.read-units:1000}") long readUnits,
+            @Value("${aws.dynamodb.provisioned-throughput.write-units:500}") long writeUnits) {
         this.amazonSQS = amazonSQS;
         this.amazonDynamoDB = amazonDynamoDB;
+        this.eventPublisher = eventPublisher;
+        this.capacityGovernor = capacityGovernor;
         this.queueName = queueName;
         this.customerTableName = customerTableName;
         this.cohortTableName = cohortTableName;
+        this.checkpointTableName = checkpointTableName;
+        this.checkpointTableEnabled = "dynamodb".equals(checkpointStore);
+        this.leaseTableName = leaseTableName;
+        this.leaseTableEnabled = leaseTableEnabled;
+        this.versionTableName = versionTableName;
+        this.dataThroughput = new ProvisionedThroughput(readUnits, writeUnits);
     }
     
+    /**
+     * Starts checking and creating the resources in the background. Called when the application context starts,
+     * before the web server accepts connections.
+     */
     @Override
-    public void onApplicationEvent(ApplicationReadyEvent event) {
-        createSqsQueueIfNotExists();
-        createCustomerTableIfNotExists();
-        createCohortTableIfNotExists();
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        long startMillis = System.currentTimeMillis();
+        executor = Executors.newCachedThreadPool(new NamedThreadFactory("aws-bootstrap", true));
+        
+        List<CompletableFuture<Void>> resources = new ArrayList<>();
+        resources.add(bootstrap("queue " + queueName, this::createSqsQueueIfNotExists));
+        resources.add(bootstrap("table " + customerTableName, this::createCustomerTableIfNotExists));
+        resources.add(bootstrap("table " + cohortTableName, this::createCohortTableIfNotExists));
+        resources.add(bootstrap("table " + versionTableName, this::createVersionTableIfNotExists));
+        if (checkpointTableEnabled) {
+            resources.add(bootstrap("table " + checkpointTableName, () -> createStreamTableIfNotExists(checkpointTableName)));
+        }
+        if (leaseTableEnabled) {
+            resources.add(bootstrap("table " + leaseTableName, () -> createStreamTableIfNotExists(leaseTableName)));
+        }
+        
+        CompletableFuture.allOf(resources.toArray(new CompletableFuture[0])).thenRun(() -> {
+            long bootstrapMillis = System.currentTimeMillis() - startMillis;
+            logger.info("AWS resources ready after {} ms", bootstrapMillis);
+            ready.complete(null);
+            eventPublisher.publishEvent(new ResourcesReadyEvent(this, bootstrapMillis));
+        });
+    }
+    
+    @Override
+    public synchronized void stop() {
+        running = false;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+    
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+    
+    @Override
+    public int getPhase() {
+        // Start before every other lifecycle component, in particular before the web server
+        return Integer.MIN_VALUE;
     }
     
     /**
-     * Creates the Customers DynamoDB table if it doesn't already exist.
-     * This table will have a DynamoDB Stream enabled.
+     * Checks whether every resource exists and is active.
+     *
+     * @return true once the resources are ready
      */
-    private void createCustomerTableIfNotExists() {
+    public boolean isReady() {
+        return ready.isDone();
+    }
+    
+    /**
+     * Waits until every resource exists and is active.
+     *
+     * @param timeout The maximum time to wait
+     * @param unit The unit of the timeout
+     * @return true if the resources are ready, false if the timeout elapsed first
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
         try {
-            // First check if the table already exists
-            try {
-                amazonDynamoDB.describeTable(customerTableName);
-                logger.info("DynamoDB table already exists: {}", customerTableName);
-                return;
-            } catch (ResourceNotFoundException e) {
-                // Table doesn't exist, continue to creation
-                logger.debug("Table doesn't exist, will create: {}", customerTableName);
+            ready.get(timeout, unit);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            // The future is only ever completed normally
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+    
+    /**
+     * Gets the bootstrap status of every resource.
+     *
+     * @return The status of each resource, keyed by resource name
+     */
+    public Map<String, String> getResourceStatus() {
+        return new TreeMap<>(resourceStatus);
+    }
+    
+    /**
+     * Runs the bootstrap of one resource on the bootstrap threads, retrying with exponential backoff until
+     * it succeeds or the application stops.
+     *
+     * @param resource The resource name, for logging and status
+     * @param action Checks the resource and creates it if necessary
+     * @return A future that completes once the resource is ready
+     */
+    private CompletableFuture<Void> bootstrap(String resource, Runnable action) {
+        resourceStatus.put(resource, "PENDING");
+        return CompletableFuture.runAsync(() -> {
+            long retryMillis = INITIAL_RETRY_MILLIS;
+            while (running) {
+                try {
+                    action.run();
+                    resourceStatus.put(resource, "READY");
+                    return;
+                } catch (Exception e) {
+                    if (retryMillis == INITIAL_RETRY_MILLIS) {
+                        logger.warn("Error bootstrapping {}, retrying: {}", resource, e.getMessage());
+                    } else {
+                        logger.debug("Error bootstrapping {}, retrying: {}", resource, e.getMessage());
+                    }
+                    resourceStatus.put(resource, "RETRYING: " + e.getMessage());
+                }
+                try {
+                    Thread.sleep(retryMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                retryMillis = Math.min(retryMillis * 2, MAX_RETRY_MILLIS);
             }
-            
-            // Create the table with a stream enabled
-            CreateTableRequest createTableRequest = new CreateTableRequest()
-                    .withTableName(customerTableName)
-                    .withKeySchema(new KeySchemaElement("customerId", KeyType.HASH))
-                    .withAttributeDefinitions(new AttributeDefinition("customerId", "S"))
-                    .withProvisionedThroughput(new ProvisionedThroughput(5L, 5L))
-                    .withStreamSpecification(new StreamSpecification()
-                            .withStreamEnabled(true)
-                            .withStreamViewType(StreamViewType.NEW_AND_OLD_IMAGES));
-            
-            amazonDynamoDB.createTable(createTableRequest);
-            logger.info("Successfully created DynamoDB table with stream enabled: {}", customerTableName);
-            
-            // Wait a moment to ensure the table is fully created and available
+            throw new IllegalStateException("Bootstrap of " + resource + " was stopped");
+        }, executor);
+    }
+    
+    /**
+     * Creates the Customers DynamoDB table if it doesn't already exist.
+     * This table has a DynamoDB Stream with old and new images enabled, and the modification time index
+     * (see {@link CustomerModificationIndex}), which is added to a table created before the index existed.
+     */
+    private void createCustomerTableIfNotExists() {
+        AttributeDefinition shard = new AttributeDefinition(CustomerModificationIndex.SHARD_ATTR, "S");
+        AttributeDefinition lastModified = new AttributeDefinition(CustomerModificationIndex.LAST_MODIFIED_ATTR, "N");
+        KeySchemaElement[] indexKey = {
+                new KeySchemaElement(CustomerModificationIndex.SHARD_ATTR, KeyType.HASH),
+                new KeySchemaElement(CustomerModificationIndex.LAST_MODIFIED_ATTR, KeyType.RANGE)};
+        // The poller only needs the attributes it classifies by
+        Projection projection = new Projection()
+                .withProjectionType(ProjectionType.INCLUDE)
+                .withNonKeyAttributes("dailySpend", "userType");
+        
+        boolean created = createTableIfNotExists(new CreateTableRequest()
+                .withTableName(customerTableName)
+                .withKeySchema(new KeySchemaElement("customerId", KeyType.HASH))
+                .withAttributeDefinitions(new AttributeDefinition("customerId", "S"), shard, lastModified)
+                .withProvisionedThroughput(dataThroughput)
+                .withStreamSpecification(new StreamSpecification()
+                        .withStreamEnabled(true)
+                        .withStreamViewType(StreamViewType.NEW_AND_OLD_IMAGES))
+                .withGlobalSecondaryIndexes(new GlobalSecondaryIndex()
+                        .withIndexName(CustomerModificationIndex.INDEX_NAME)
+                        .withKeySchema(indexKey)
+                        .withProjection(projection)
+                        .withProvisionedThroughput(dataThroughput)));
+        
+        if (!created && !hasIndex(amazonDynamoDB.describeTable(customerTableName).getTable(), CustomerModificationIndex.INDEX_NAME)) {
             try {
-                Thread.sleep(2000);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+                amazonDynamoDB.updateTable(new UpdateTableRequest()
+                        .withTableName(customerTableName)
+                        .withAttributeDefinitions(shard, lastModified)
+                        .withGlobalSecondaryIndexUpdates(new GlobalSecondaryIndexUpdate()
+                                .withCreate(new CreateGlobalSecondaryIndexAction()
+                                        .withIndexName(CustomerModificationIndex.INDEX_NAME)
+                                        .withKeySchema(indexKey)
+                                        .withProjection(projection)
+                                        .withProvisionedThroughput(dataThroughput))));
+                logger.info("Adding index {} to DynamoDB table {}", CustomerModificationIndex.INDEX_NAME, customerTableName);
+            } catch (ResourceInUseException e) {
+                // Another instance is adding it at the same time
+                logger.info("Index {} is being added to {} concurrently", CustomerModificationIndex.INDEX_NAME, customerTableName);
             }
-        } catch (Exception e) {
-            logger.warn("Error creating DynamoDB table {}: {}", customerTableName, e.getMessage());
+            waitForTableActive(customerTableName);
         }
     }
     
     /**
-     * Creates the Cohorts DynamoDB table if it doesn't already exist.
+     * Creates the Cohorts DynamoDB table if it doesn't already exist, with customerId as hash key,
+     * uuid as range key, and cohortType as GSI.
      */
     private void createCohortTableIfNotExists() {
+        createTableIfNotExists(new CreateTableRequest()
+                .withTableName(cohortTableName)
+                .withKeySchema(
+                        new KeySchemaElement("customerId", KeyType.HASH),
+                        new KeySchemaElement("uuid", KeyType.RANGE))
+                .withAttributeDefinitions(
+                        new AttributeDefinition("customerId", "S"),
+                        new AttributeDefinition("uuid", "S"),
+                        new AttributeDefinition("cohortType", "S"))
+                .withProvisionedThroughput(dataThroughput)
+                .withGlobalSecondaryIndexes(new GlobalSecondaryIndex()
+                        .withIndexName("CohortTypeIndex")
+                        .withKeySchema(new KeySchemaElement("cohortType", KeyType.HASH))
+                        .withProjection(new Projection().withProjectionType(ProjectionType.ALL))
+                        .withProvisionedThroughput(dataThroughput)));
+    }
+    
+    /**
+     * Creates the MembershipVersions DynamoDB table if it doesn't already exist, with one item per version key.
+     */
+    private void createVersionTableIfNotExists() {
+        createTableIfNotExists(new CreateTableRequest()
+                .withTableName(versionTableName)
+                .withKeySchema(new KeySchemaElement(DynamoDBMembershipVersionRepository.VERSION_KEY_ATTR, KeyType.HASH))
+                .withAttributeDefinitions(new AttributeDefinition(DynamoDBMembershipVersionRepository.VERSION_KEY_ATTR, "S"))
+                .withProvisionedThroughput(new ProvisionedThroughput(5L, 5L)));
+    }
+    
+    /**
+     * Creates a DynamoDB stream checkpoint or lease table if it doesn't already exist.
+     * These tables hold one item per stream shard, keyed by stream ARN and shard ID.
+     *
+     * @param tableName The table name
+     */
+    private void createStreamTableIfNotExists(String tableName) {
+        createTableIfNotExists(new CreateTableRequest()
+                .withTableName(tableName)
+                .withKeySchema(
+                        new KeySchemaElement("streamArn", KeyType.HASH),
+                        new KeySchemaElement("shardId", KeyType.RANGE))
+                .withAttributeDefinitions(
+                        new AttributeDefinition("streamArn", "S"),
+                        new AttributeDefinition("shardId", "S"))
+                .withProvisionedThroughput(new ProvisionedThroughput(5L, 5L)));
+    }
+    
+    /**
+     * Creates a table unless it already exists, and waits until the table and its indexes are active.
+     *
+     * @param request The request creating the table
+     * @return true if the table was created by this request
+     */
+    private boolean createTableIfNotExists(CreateTableRequest request) {
+        String tableName = request.getTableName();
+        boolean created = false;
         try {
-            // First check if the table already exists
+            amazonDynamoDB.describeTable(tableName);
+            logger.info("DynamoDB table already exists: {}", tableName);
+        } catch (ResourceNotFoundException e) {
             try {
-                amazonDynamoDB.describeTable(cohortTableName);
-                logger.info("DynamoDB table already exists: {}", cohortTableName);
+                amazonDynamoDB.createTable(request);
+                created = true;
+                logger.info("Successfully created DynamoDB table: {}", tableName);
+            } catch (ResourceInUseException riue) {
+                // Another instance created it at the same time
+                logger.info("DynamoDB table was created concurrently: {}", tableName);
+            }
+        }
+        waitForTableActive(tableName);
+        return created;
+    }
+    
+    /**
+     * Waits for a table and its global secondary indexes to become active, polling with exponential backoff.
+     *
+     * @param tableName The table name
+     */
+    private void waitForTableActive(String tableName) {
+        long deadline = System.currentTimeMillis() + TABLE_ACTIVE_TIMEOUT_MILLIS;
+        long pollMillis = INITIAL_POLL_MILLIS;
+        while (true) {
+            TableDescription table = amazonDynamoDB.describeTable(tableName).getTable();
+            if (isActive(table)) {
+                budgetCapacity(tableName, null, table.getProvisionedThroughput());
+                if (table.getGlobalSecondaryIndexes() != null) {
+                    for (GlobalSecondaryIndexDescription index : table.getGlobalSecondaryIndexes()) {
+                        budgetCapacity(tableName, index.getIndexName(), index.getProvisionedThroughput());
+                    }
+                }
                 return;
-            } catch (ResourceNotFoundException e) {
-                // Table doesn't exist, continue to creation
-                logger.debug("Table doesn't exist, will create: {}", cohortTableName);
             }
-            
-            // Create the table with customerId as hash key, uuid as range key, and cohortType as GSI
-            CreateTableRequest createTableRequest = new CreateTableRequest()
-                    .withTableName(cohortTableName)
-                    .withKeySchema(
-                            new KeySchemaElement("customerId", KeyType.HASH),
-                            new KeySchemaElement("uuid", KeyType.RANGE))
-                    .withAttributeDefinitions(
-                            new AttributeDefinition("customerId", "S"),
-                            new AttributeDefinition("uuid", "S"),
-                            new AttributeDefinition("cohortType", "S"))
-                    .withProvisionedThroughput(new ProvisionedThroughput(5L, 5L))
-                    .withGlobalSecondaryIndexes(
-                            new com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndex()
-                                    .withIndexName("CohortTypeIndex")
-                                    .withKeySchema(new KeySchemaElement("cohortType", KeyType.HASH))
-                                    .withProjection(new com.amazonaws.services.dynamodbv2.model.Projection().withProjectionType("ALL"))
-                                    .withProvisionedThroughput(new ProvisionedThroughput(5L, 5L)));
-            
-            amazonDynamoDB.createTable(createTableRequest);
-            logger.info("Successfully created DynamoDB table with GSI: {}", cohortTableName);
-            
-            // Wait a moment to ensure the table is fully created and available
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Table " + tableName + " is still " + table.getTableStatus());
+            }
+            logger.debug("Table {} status: {}, waiting {} ms", tableName, table.getTableStatus(), pollMillis);
             try {
-                Thread.sleep(2000);
+                Thread.sleep(pollMillis);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for table " + tableName);
+            }
+            pollMillis = Math.min(pollMillis * 2, MAX_POLL_MILLIS);
+        }
+    }
+    
+    /**
+     * Sizes the capacity budgets of a table or index from its provisioned throughput. On-demand tables report
+     * none and keep the default budget.
+     *
+     * @param tableName The table name
+     * @param indexName The index name, or null for the table itself
+     * @param throughput The provisioned throughput, if any
+     */
+    private void budgetCapacity(String tableName, String indexName, ProvisionedThroughputDescription throughput) {
+        if (throughput == null) {
+            return;
+        }
+        if (throughput.getReadCapacityUnits() != null && throughput.getReadCapacityUnits() > 0) {
+            capacityGovernor.setProvisioned(tableName, indexName, Kind.READ, throughput.getReadCapacityUnits());
+        }
+        if (throughput.getWriteCapacityUnits() != null && throughput.getWriteCapacityUnits() > 0) {
+            capacityGovernor.setProvisioned(tableName, indexName, Kind.WRITE, throughput.getWriteCapacityUnits());
+        }
+    }
+    
+    private static boolean hasIndex(TableDescription table, String indexName) {
+        if (table.getGlobalSecondaryIndexes() != null) {
+            for (GlobalSecondaryIndexDescription index : table.getGlobalSecondaryIndexes()) {
+                if (indexName.equals(index.getIndexName())) {
+                    return true;
+                }
             }
-        } catch (Exception e) {
-            logger.warn("Error creating DynamoDB table {}: {}", cohortTableName, e.getMessage());
         }
+        return false;
+    }
+    
+    private static boolean isActive(TableDescription table) {
+        if (!"ACTIVE".equals(table.getTableStatus())) {
+            return false;
+        }
+        if (table.getGlobalSecondaryIndexes() != null) {
+            for (GlobalSecondaryIndexDescription index : table.getGlobalSecondaryIndexes()) {
+                if (index.getIndexStatus() != null && !"ACTIVE".equals(index.getIndexStatus())) {
+                    return false;
+                }
+            }
+        }
+        return true;
     }
     
     /**
-     * Creates the SQS queue if it doesn't already exist.
+     * Creates the SQS queue if it doesn't already exist. Queues are usable as soon as they are created.
      */
     private void createSqsQueueIfNotExists() {
         try {
-            // First check if the queue already exists
-            try {
-                String queueUrl = amazonSQS.getQueueUrl(queueName).getQueueUrl();
-                logger.info("SQS queue already exists: {} with URL: {}", queueName, queueUrl);
-                return;
-            } catch (Exception e) {
-                // Queue doesn't exist, continue to creation
-                logger.debug("Queue doesn't exist, will create: {}", queueName);
-            }
-            
-            // Create the queue
+            String queueUrl = amazonSQS.getQueueUrl(queueName).getQueueUrl();
+            logger.info("SQS queue already exists: {} with URL: {}", queueName, queueUrl);
+        } catch (QueueDoesNotExistException e) {
             String queueUrl = amazonSQS.createQueue(new CreateQueueRequest(queueName)).getQueueUrl();
             logger.info("Successfully created SQS queue: {} with URL: {}", queueName, queueUrl);
-            
-            // Wait a moment to ensure the queue is fully created and available
-            try {
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-        } catch (Exception e) {
-            logger.warn("Error creating SQS queue {}: {}", queueName, e.getMessage());
         }
     }
 }
@@ -0,0 +1,51 @@
+package com.cohortmgmt.config;
+
+import com.cohortmgmt.service.job.BulkImportJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration class for the initial bulk import of customers.
+ * The import only runs when a file is given, e.g. --bulk-import.file=/data/customers.csv.
+ */
+@Configuration
+@ConditionalOnProperty(name = "bulk-import.file")
+public class BulkImportInitializer {
+    
+    private static final Logger logger = LoggerFactory.getLogger(BulkImportInitializer.class);
+    
+    /**
+     * CommandLineRunner to import the configured file once the AWS resources are ready.
+     *
+     * @param bulkImportJob The bulk import job
+     * @param resourceInitializer The component bootstrapping the AWS resources
+     * @param file The path of the file to import
+     * @return A CommandLineRunner that runs the import
+     */
+    @Bean
+    @Order(3) // Run after cohort type initialization (which is Order(2))
+    public CommandLineRunner runBulkImport(BulkImportJob bulkImportJob, AwsResourceInitializer resourceInitializer,
+                                           @Value("${bulk-import.file}") String file) {
+        return args -> {
+            try {
+                while (!resourceInitializer.awaitReady(10, TimeUnit.SECONDS)) {
+                    logger.info("Waiting for AWS resources before importing {}: {}", file, resourceInitializer.getResourceStatus());
+                }
+                BulkImportJob.Result result = bulkImportJob.run(Paths.get(file));
+                logger.info("Imported {} customers from {} ({} invalid records skipped)",
+                        result.getRecords(), file, result.getFailedRecords());
+            } catch (Exception e) {
+                logger.error("Bulk import of {} failed, restart with the same file to resume: {}", file, e.getMessage(), e);
+            }
+        };
+    }
+}
@@ -18,21 +18,17 @@ public class DataInitializer {
     private static final Logger logger = LoggerFactory.getLogger(DataInitializer.class);
     
     /**
-     * CommandLineRunner to initialize cohort types after AWS resources are created.
-     * This runs after the AWS resources initialization.
+     * CommandLineRunner to initialize cohort types. Cohort types are enum values,
+     * so this doesn't need to wait for the AWS resources.
      *
      * @param cohortService The cohort service
      * @return A CommandLineRunner that initializes cohort types
      */
     @Bean
-    @Order(2) // Run after AWS resources initialization (which is Order(1))
+    @Order(2)
     public CommandLineRunner initCohortTypes(CohortServiceImpl cohortService) {
         return args -> {
             try {
-                // Add a longer delay to ensure tables are fully created
-                logger.info("Waiting for tables to be fully created...");
-                Thread.sleep(5000); // 5 seconds delay
-                
                 logger.info("Initializing cohort types...");
                 cohortService.initializeCohortTypes();
                 logger.info("Cohort types initialized successfully");
@@ -0,0 +1,255 @@
+package com.cohortmgmt.config;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.Capacity;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+import com.cohortmgmt.service.concurrency.CapacityGovernor;
+import com.cohortmgmt.service.concurrency.CapacityGovernor.Kind;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DynamoDB client request handler that keeps every call within the {@link CapacityGovernor} budget.
+ *
+ * Before a call is sent, its estimated capacity is taken from the buckets of the table or index it uses, and the
+ * call is asked to return its consumed capacity per index. Reads are estimated from the number of items they may
+ * return (the Limit of a query or scan page) at an assumed item size, writes at one unit per item. Once the
+ * response arrives the estimate is returned and the consumed capacity is charged instead, including the writes
+ * to global secondary indexes that a table write causes. A response without consumed capacity keeps its estimate.
+ */
+public class DynamoDBCapacityHandler extends RequestHandler2 {
+    
+    // Customer and membership items are well below this, so reads are rather overestimated than underestimated
+    static final int ASSUMED_ITEM_BYTES = 1024;
+    private static final int READ_UNIT_BYTES = 4096;
+    
+    private final CapacityGovernor governor;
+    
+    /**
+     * Creates a new DynamoDBCapacityHandler.
+     *
+     * @param governor The capacity governor
+     */
+    public DynamoDBCapacityHandler(CapacityGovernor governor) {
+        this.governor = governor;
+    }
+    
+    @Override
+    public AmazonWebServiceRequest beforeExecution(AmazonWebServiceRequest request) {
+        List<Estimate> estimates = estimate(request);
+        if (estimates.isEmpty()) {
+            return request;
+        }
+        requestConsumedCapacity(request);
+        
+        try {
+            for (Estimate estimate : estimates) {
+                governor.acquire(estimate.table, estimate.index, estimate.kind, estimate.units);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AbortedException("Interrupted while waiting for DynamoDB capacity", e);
+        }
+        return request;
+    }
+    
+    @Override
+    public void afterResponse(Request<?> request, Response<?> response) {
+        List<Estimate> estimates = estimate(request.getOriginalRequest());
+        if (estimates.isEmpty()) {
+            return;
+        }
+        List<ConsumedCapacity> consumedCapacity = consumedCapacity(response == null ? null : response.getAwsResponse());
+        if (consumedCapacity.isEmpty()) {
+            // Nothing to correct the estimate with, e.g. an endpoint that does not report consumed capacity
+            return;
+        }
+        refund(estimates);
+        
+        Kind kind = estimates.get(0).kind;
+        for (ConsumedCapacity consumed : consumedCapacity) {
+            String table = consumed.getTableName();
+            if (consumed.getTable() != null) {
+                governor.charge(table, null, kind, units(consumed.getTable(), kind));
+            } else if (consumed.getCapacityUnits() != null) {
+                governor.charge(table, null, kind, consumed.getCapacityUnits());
+            }
+            if (consumed.getGlobalSecondaryIndexes() != null) {
+                for (Map.Entry<String, Capacity> index : consumed.getGlobalSecondaryIndexes().entrySet()) {
+                    governor.charge(table, index.getKey(), kind, units(index.getValue(), kind));
+                }
+            }
+        }
+    }
+    
+    @Override
+    public void afterError(Request<?> request, Response<?> response, Exception e) {
+        // A failed call consumed no capacity worth tracking, so give the estimate back
+        refund(estimate(request.getOriginalRequest()));
+    }
+    
+    private void refund(List<Estimate> estimates) {
+        for (Estimate estimate : estimates) {
+            governor.charge(estimate.table, estimate.index, estimate.kind, -estimate.units);
+        }
+    }
+    
+    /**
+     * Estimates the capacity of a call. A read of items of the assumed size costs a read unit per 4 KB, counted per
+     * item for single-item and batch reads and over the whole page for queries and scans, and half of that when
+     * eventually consistent. A query or scan without a Limit is estimated at one item. A write costs one unit per item.
+     *
+     * @param request The request
+     * @return The estimates, empty for calls that are not governed such as table management
+     */
+    static List<Estimate> estimate(AmazonWebServiceRequest request) {
+        if (request instanceof GetItemRequest) {
+            GetItemRequest get = (GetItemRequest) request;
+            return Collections.singletonList(new Estimate(get.getTableName(), null, Kind.READ,
+                    readUnits(1, 1, get.getConsistentRead())));
+        }
+        if (request instanceof QueryRequest) {
+            QueryRequest query = (QueryRequest) request;
+            return Collections.singletonList(new Estimate(query.getTableName(), query.getIndexName(), Kind.READ,
+                    readUnits(1, pageItems(query.getLimit()), query.getConsistentRead())));
+        }
+        if (request instanceof ScanRequest) {
+            ScanRequest scan = (ScanRequest) request;
+            return Collections.singletonList(new Estimate(scan.getTableName(), scan.getIndexName(), Kind.READ,
+                    readUnits(1, pageItems(scan.getLimit()), scan.getConsistentRead())));
+        }
+        if (request instanceof PutItemRequest) {
+            return Collections.singletonList(new Estimate(((PutItemRequest) request).getTableName(), null, Kind.WRITE, 1));
+        }
+        if (request instanceof UpdateItemRequest) {
+            return Collections.singletonList(new Estimate(((UpdateItemRequest) request).getTableName(), null, Kind.WRITE, 1));
+        }
+        if (request instanceof DeleteItemRequest) {
+            return Collections.singletonList(new Estimate(((DeleteItemRequest) request).getTableName(), null, Kind.WRITE, 1));
+        }
+        if (request instanceof BatchWriteItemRequest) {
+            List<Estimate> estimates = new ArrayList<>();
+            ((BatchWriteItemRequest) request).getRequestItems().forEach((table, writes) ->
+                    estimates.add(new Estimate(table, null, Kind.WRITE, writes.size())));
+            return estimates;
+        }
+        if (request instanceof BatchGetItemRequest) {
+            List<Estimate> estimates = new ArrayList<>();
+            ((BatchGetItemRequest) request).getRequestItems().forEach((table, keys) ->
+                    estimates.add(new Estimate(table, null, Kind.READ,
+                            readUnits(keys.getKeys().size(), 1, keys.getConsistentRead()))));
+            return estimates;
+        }
+        return Collections.emptyList();
+    }
+    
+    private static int pageItems(Integer limit) {
+        return limit == null || limit <= 0 ? 1 : limit;
+    }
+    
+    /**
+     * Calculates the read units of reads that each return a number of items of the assumed size.
+     *
+     * @param reads The number of separately rounded reads
+     * @param itemsPerRead The number of items each read returns
+     * @param consistentRead Whether the reads are strongly consistent, null for the default eventual consistency
+     * @return The read capacity units
+     */
+    private static double readUnits(int reads, int itemsPerRead, Boolean consistentRead) {
+        long bytes = (long) itemsPerRead * ASSUMED_ITEM_BYTES;
+        double units = reads * (double) ((bytes + READ_UNIT_BYTES - 1) / READ_UNIT_BYTES);
+        return Boolean.TRUE.equals(consistentRead) ? units : units / 2;
+    }
+    
+    private static void requestConsumedCapacity(AmazonWebServiceRequest request) {
+        if (request instanceof GetItemRequest && ((GetItemRequest) request).getReturnConsumedCapacity() == null) {
+            ((GetItemRequest) request).setReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+        } else if (request instanceof QueryRequest && ((QueryRequest) request).getReturnConsumedCapacity() == null) {
+            ((QueryRequest) request).setReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+        } else if (request instanceof ScanRequest && ((ScanRequest) request).getReturnConsumedCapacity() == null) {
+            ((ScanRequest) request).setReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+        } else if (request instanceof PutItemRequest && ((PutItemRequest) request).getReturnConsumedCapacity() == null) {
+            ((PutItemRequest) request).setReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+        } else if (request instanceof UpdateItemRequest && ((UpdateItemRequest) request).getReturnConsumedCapacity() == null) {
+            ((UpdateItemRequest) request).setReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+        } else if (request instanceof DeleteItemRequest && ((DeleteItemRequest) request).getReturnConsumedCapacity() == null) {
+            ((DeleteItemRequest) request).setReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+        } else if (request instanceof BatchWriteItemRequest && ((BatchWriteItemRequest) request).getReturnConsumedCapacity() == null) {
+            ((BatchWriteItemRequest) request).setReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+        } else if (request instanceof BatchGetItemRequest && ((BatchGetItemRequest) request).getReturnConsumedCapacity() == null) {
+            ((BatchGetItemRequest) request).setReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+        }
+    }
+    
+    private static List<ConsumedCapacity> consumedCapacity(Object result) {
+        ConsumedCapacity single = null;
+        if (result instanceof GetItemResult) {
+            single = ((GetItemResult) result).getConsumedCapacity();
+        } else if (result instanceof QueryResult) {
+            single = ((QueryResult) result).getConsumedCapacity();
+        } else if (result instanceof ScanResult) {
+            single = ((ScanResult) result).getConsumedCapacity();
+        } else if (result instanceof PutItemResult) {
+            single = ((PutItemResult) result).getConsumedCapacity();
+        } else if (result instanceof UpdateItemResult) {
+            single = ((UpdateItemResult) result).getConsumedCapacity();
+        } else if (result instanceof DeleteItemResult) {
+            single = ((DeleteItemResult) result).getConsumedCapacity();
+        } else if (result instanceof BatchWriteItemResult && ((BatchWriteItemResult) result).getConsumedCapacity() != null) {
+            return ((BatchWriteItemResult) result).getConsumedCapacity();
+        } else if (result instanceof BatchGetItemResult && ((BatchGetItemResult) result).getConsumedCapacity() != null) {
+            return ((BatchGetItemResult) result).getConsumedCapacity();
+        }
+        return single == null ? Collections.emptyList() : Collections.singletonList(single);
+    }
+    
+    private static double units(Capacity capacity, Kind kind) {
+        Double units = kind == Kind.READ ? capacity.getReadCapacityUnits() : capacity.getWriteCapacityUnits();
+        if (units == null) {
+            units = capacity.getCapacityUnits();
+        }
+        return units == null ? 0 : units;
+    }
+    
+    /**
+     * Estimated capacity of a call on one table or index.
+     */
+    static class Estimate {
+        
+        final String table;
+        final String index;
+        final Kind kind;
+        final double units;
+        
+        Estimate(String table, String index, Kind kind, double units) {
+            this.table = table;
+            this.index = index;
+            this.kind = kind;
+            this.units = units;
+        }
+    }
+}
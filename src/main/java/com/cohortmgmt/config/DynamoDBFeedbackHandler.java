@@ -0,0 +1,103 @@
+package com.cohortmgmt.config;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerContextKey;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItemsRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.cohortmgmt.service.concurrency.AdaptiveConcurrencyLimiter;
+
+/**
+ * DynamoDB client request handler that feeds write latency and throttling signals
+ * into the {@link AdaptiveConcurrencyLimiter}.
+ *
+ * Only writes made by ingestion work holding a permit are reported (see
+ * {@link AdaptiveConcurrencyLimiter#runUnderPermit(Runnable)}); the limit does not govern other calls, so their
+ * latency and throttles say nothing about it. The SDK calls the handler on the thread that makes the call.
+ * Throttles are reported per attempt, so retries performed inside the SDK still count.
+ * Unprocessed items in a BatchWriteItem response are DynamoDB's way of throttling a batch
+ * and are reported as throttles as well.
+ */
+public class DynamoDBFeedbackHandler extends RequestHandler2 {
+    
+    private static final HandlerContextKey<Long> START_NANOS = new HandlerContextKey<>("cohortmgmt.startNanos");
+    
+    private final AdaptiveConcurrencyLimiter limiter;
+    
+    /**
+     * Creates a new DynamoDBFeedbackHandler.
+     *
+     * @param limiter The limiter to feed
+     */
+    public DynamoDBFeedbackHandler(AdaptiveConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+    }
+    
+    @Override
+    public void beforeRequest(Request<?> request) {
+        request.addHandlerContext(START_NANOS, System.nanoTime());
+    }
+    
+    @Override
+    public void afterAttempt(HandlerAfterAttemptContext context) {
+        if (isSampled(context.getRequest().getOriginalRequest()) && isThrottle(context.getException())) {
+            limiter.onThrottle();
+        }
+    }
+    
+    @Override
+    public void afterResponse(Request<?> request, Response<?> response) {
+        if (!isSampled(request.getOriginalRequest())) {
+            return;
+        }
+        
+        Long start = request.getHandlerContext(START_NANOS);
+        if (start != null) {
+            limiter.onLatencySample(System.nanoTime() - start);
+        }
+        
+        Object result = response == null ? null : response.getAwsResponse();
+        if (result instanceof BatchWriteItemResult) {
+            BatchWriteItemResult batchResult = (BatchWriteItemResult) result;
+            if (batchResult.getUnprocessedItems() != null && !batchResult.getUnprocessedItems().isEmpty()) {
+                limiter.onThrottle();
+            }
+        }
+    }
+    
+    /**
+     * Checks whether an exception is a DynamoDB throttling error.
+     *
+     * @param exception The exception, may be null
+     * @return true if the exception signals throttling
+     */
+    static boolean isThrottle(Exception exception) {
+        if (!(exception instanceof AmazonServiceException)) {
+            return false;
+        }
+        String errorCode = ((AmazonServiceException) exception).getErrorCode();
+        return "ProvisionedThroughputExceededException".equals(errorCode)
+                || "ThrottlingException".equals(errorCode)
+                || "RequestLimitExceeded".equals(errorCode);
+    }
+    
+    private static boolean isSampled(AmazonWebServiceRequest request) {
+        return AdaptiveConcurrencyLimiter.isUnderPermit() && isWrite(request);
+    }
+    
+    private static boolean isWrite(AmazonWebServiceRequest request) {
+        return request instanceof PutItemRequest
+                || request instanceof UpdateItemRequest
+                || request instanceof DeleteItemRequest
+                || request instanceof BatchWriteItemRequest
+                || request instanceof TransactWriteItemsRequest;
+    }
+}
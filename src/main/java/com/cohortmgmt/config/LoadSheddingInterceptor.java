@@ -0,0 +1,56 @@
+package com.cohortmgmt.config;
+
+import com.cohortmgmt.exception.BackpressureException;
+import com.cohortmgmt.service.concurrency.GradientConcurrencyLimiter;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Bounds the concurrent requests of one endpoint group with a {@link GradientConcurrencyLimiter}. A request beyond
+ * the limit is rejected at once with 503 and a Retry-After header, rather than queueing behind requests that would
+ * all time out together. Every group has its own interceptor and limiter, so a flood of one kind of request cannot
+ * take the permits of another.
+ */
+public class LoadSheddingInterceptor implements HandlerInterceptor {
+    
+    private final String group;
+    private final GradientConcurrencyLimiter limiter;
+    private final long retryAfterSeconds;
+    private final String startAttribute;
+    
+    /**
+     * Creates a new LoadSheddingInterceptor.
+     *
+     * @param group The name of the endpoint group
+     * @param limiter The limiter of the group
+     * @param retryAfterSeconds How long shed clients should wait before retrying
+     */
+    public LoadSheddingInterceptor(String group, GradientConcurrencyLimiter limiter, long retryAfterSeconds) {
+        this.group = group;
+        this.limiter = limiter;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.startAttribute = LoadSheddingInterceptor.class.getName() + "." + group;
+    }
+    
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!limiter.tryAcquire()) {
+            throw new BackpressureException("Too many concurrent " + group + " requests", retryAfterSeconds);
+        }
+        request.setAttribute(startAttribute, System.nanoTime());
+        return true;
+    }
+    
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+            Exception ex) {
+        // Only called for requests whose preHandle returned true, i.e. that hold a permit
+        Object start = request.getAttribute(startAttribute);
+        if (start != null) {
+            request.removeAttribute(startAttribute);
+            limiter.release(System.nanoTime() - (Long) start);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.cohortmgmt.config;
+
+import com.cohortmgmt.exception.BackpressureException;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds API requests until the AWS resources are ready. A request that arrives while the node is still
+ * bootstrapping waits briefly, and is rejected with 503 and a Retry-After header if the resources are
+ * still not ready by then, so load balancers and clients retry on a node that is ready.
+ */
+public class ReadinessInterceptor implements HandlerInterceptor {
+    
+    private final AwsResourceInitializer resourceInitializer;
+    private final long maxWaitMillis;
+    
+    /**
+     * Creates a new ReadinessInterceptor.
+     *
+     * @param resourceInitializer The component bootstrapping the AWS resources
+     * @param maxWaitMillis How long a request waits for the resources before it is rejected
+     */
+    public ReadinessInterceptor(AwsResourceInitializer resourceInitializer, long maxWaitMillis) {
+        this.resourceInitializer = resourceInitializer;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+    
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws InterruptedException {
+        if (!resourceInitializer.isReady() && !resourceInitializer.awaitReady(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+            throw new BackpressureException("Service is starting", 1);
+        }
+        return true;
+    }
+}
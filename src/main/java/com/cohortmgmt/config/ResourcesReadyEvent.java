@@ -0,0 +1,32 @@
+package com.cohortmgmt.config;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Event published by the {@link AwsResourceInitializer} once every table and queue the service uses exists
+ * and is active. Ingestion components start consuming when they receive it.
+ */
+public class ResourcesReadyEvent extends ApplicationEvent {
+    
+    private final long bootstrapMillis;
+    
+    /**
+     * Creates a new ResourcesReadyEvent.
+     *
+     * @param source The component that published the event
+     * @param bootstrapMillis How long it took to get the resources ready
+     */
+    public ResourcesReadyEvent(Object source, long bootstrapMillis) {
+        super(source);
+        this.bootstrapMillis = bootstrapMillis;
+    }
+    
+    /**
+     * Gets how long it took to get the resources ready.
+     *
+     * @return The bootstrap time in milliseconds
+     */
+    public long getBootstrapMillis() {
+        return bootstrapMillis;
+    }
+}
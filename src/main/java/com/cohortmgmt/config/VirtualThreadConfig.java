@@ -0,0 +1,84 @@
+package com.cohortmgmt.config;
+
+import com.cohortmgmt.service.concurrency.NamedThreadFactory;
+import com.cohortmgmt.service.concurrency.VirtualThreads;
+import org.apache.coyote.ProtocolHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.task.TaskSchedulerCustomizer;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Runs request handling and the {@code @Scheduled} pollers on virtual threads when threads.virtual.enabled is
+ * set and the JDK supports them (see {@link VirtualThreads}).
+ *
+ * Tomcat then handles every request on a new virtual thread instead of taking one from its fixed pool, so
+ * requests blocked on DynamoDB no longer hold up the others, and server.tomcat.threads.max no longer applies.
+ * Concurrent calls to AWS are still bounded by the HTTP connection pools of the clients (aws.max-connections)
+ * and by the concurrency limiters in front of them. On an older JDK the service logs a warning and keeps
+ * running on platform threads.
+ */
+@Configuration
+@ConditionalOnProperty(name = "threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+    
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadConfig.class);
+    
+    private ExecutorService requestExecutor;
+    
+    public VirtualThreadConfig() {
+        if (VirtualThreads.isEnabled()) {
+            logger.info("Running on virtual threads");
+        } else {
+            logger.warn("Virtual threads are enabled but not supported by Java {}, running on platform threads",
+                    System.getProperty("java.version"));
+        }
+    }
+    
+    /**
+     * Hands requests to a new virtual thread each.
+     *
+     * @return The customizer of Tomcat's protocol handler
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> {
+            if (VirtualThreads.isEnabled()) {
+                requestExecutor = VirtualThreads.newThreadPerTaskExecutor("http");
+                protocolHandler.setExecutor(requestExecutor);
+            }
+        };
+    }
+    
+    /**
+     * Runs the scheduled pollers on virtual threads, with enough of them that a poller blocked on a slow call
+     * does not delay the others.
+     *
+     * @param poolSize The number of scheduler threads
+     * @return The customizer of the task scheduler
+     */
+    @Bean
+    public TaskSchedulerCustomizer virtualThreadTaskSchedulerCustomizer(
+            @Value("${threads.virtual.scheduler-pool-size:8}") int poolSize) {
+        return scheduler -> {
+            if (VirtualThreads.isEnabled()) {
+                scheduler.setThreadFactory(new NamedThreadFactory("scheduling"));
+                scheduler.setPoolSize(poolSize);
+            }
+        };
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        if (requestExecutor != null) {
+            requestExecutor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.cohortmgmt.config;
+
+import com.cohortmgmt.service.concurrency.VirtualThreads;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+
+/**
+ * Switches {@link VirtualThreads} on when threads.virtual.enabled is set. This runs as soon as the configuration
+ * is loaded, before any bean starts a thread, so every worker pool is created in the configured mode.
+ */
+public class VirtualThreadEnvironmentPostProcessor implements EnvironmentPostProcessor {
+    
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        VirtualThreads.setEnabled(environment.getProperty("threads.virtual.enabled", Boolean.class, false));
+    }
+}
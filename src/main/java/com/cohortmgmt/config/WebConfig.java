@@ -0,0 +1,80 @@
+package com.cohortmgmt.config;
+
+import com.cohortmgmt.service.concurrency.GradientConcurrencyLimiter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Configuration class for the web layer.
+ */
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+    
+    private final AwsResourceInitializer resourceInitializer;
+    private final long readinessWaitMillis;
+    private final boolean loadSheddingEnabled;
+    private final int initialLimit;
+    private final int minLimit;
+    private final double latencyTolerance;
+    private final double smoothing;
+    private final long windowMillis;
+    private final long retryAfterSeconds;
+    private final int lookupsMaxLimit;
+    private final int listingsMaxLimit;
+    private final int classificationMaxLimit;
+    
+    @Autowired
+    public WebConfig(
+            AwsResourceInitializer resourceInitializer,
+            @Value("${bootstrap.request-wait-millis:1000}") long readinessWaitMillis,
+            @Value("${api.concurrency.enabled:true}") boolean loadSheddingEnabled,
+            @Value("${api.concurrency.initial-limit:20}") int initialLimit,
+            @Value("${api.concurrency.min-limit:4}") int minLimit,
+            @Value("${api.concurrency.latency-tolerance:1.5}") double latencyTolerance,
+            @Value("${api.concurrency.smoothing:0.2}") double smoothing,
+            @Value("${api.concurrency.window-millis:1000}") long windowMillis,
+            @Value("${api.concurrency.retry-after-seconds:1}") long retryAfterSeconds,
+            @Value("${api.concurrency.max-limit.lookups:400}") int lookupsMaxLimit,
+            @Value("${api.concurrency.max-limit.listings:50}") int listingsMaxLimit,
+            @Value("${api.concurrency.max-limit.classification:100}") int classificationMaxLimit) {
+        this.resourceInitializer = resourceInitializer;
+        this.readinessWaitMillis = readinessWaitMillis;
+        this.loadSheddingEnabled = loadSheddingEnabled;
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.latencyTolerance = latencyTolerance;
+        this.smoothing = smoothing;
+        this.windowMillis = windowMillis;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.lookupsMaxLimit = lookupsMaxLimit;
+        this.listingsMaxLimit = listingsMaxLimit;
+        this.classificationMaxLimit = classificationMaxLimit;
+    }
+    
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        // Operational endpoints stay reachable while the node starts, so probes can see its state
+        registry.addInterceptor(new ReadinessInterceptor(resourceInitializer, readinessWaitMillis))
+                .addPathPatterns("/api/**")
+                .excludePathPatterns("/api/ops/**");
+        
+        if (loadSheddingEnabled) {
+            // Every endpoint group is a bulkhead of its own, so slow listings cannot take the permits of lookups
+            registry.addInterceptor(loadShedding("lookups", lookupsMaxLimit))
+                    .addPathPatterns("/api/cohorts/check", "/api/cohorts/customer/**");
+            registry.addInterceptor(loadShedding("listings", listingsMaxLimit))
+                    .addPathPatterns("/api/cohorts/type/**");
+            registry.addInterceptor(loadShedding("classification", classificationMaxLimit))
+                    .addPathPatterns("/api/cohorts/classify", "/api/cohorts/classify/**");
+        }
+    }
+    
+    private LoadSheddingInterceptor loadShedding(String group, int maxLimit) {
+        GradientConcurrencyLimiter limiter = new GradientConcurrencyLimiter(group, Math.min(initialLimit, maxLimit),
+                Math.min(minLimit, maxLimit), maxLimit, latencyTolerance, smoothing, windowMillis);
+        return new LoadSheddingInterceptor(group, limiter, retryAfterSeconds);
+    }
+}
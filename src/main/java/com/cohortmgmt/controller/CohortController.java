@@ -1,15 +1,19 @@
 package com.cohortmgmt.controller;
 
+import com.cohortmgmt.exception.ResourceNotFoundException;
 import com.cohortmgmt.model.CohortType;
 import com.cohortmgmt.model.Customer;
 import com.cohortmgmt.model.UserType;
 import com.cohortmgmt.repository.CustomerRepository;
 import com.cohortmgmt.service.CohortService;
+import com.cohortmgmt.service.MembershipVersions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 import java.util.Set;
@@ -25,11 +29,14 @@ public class CohortController {
     
     private final CohortService cohortService;
     private final CustomerRepository customerRepository;
+    private final MembershipVersions membershipVersions;
     
     @Autowired
-    public CohortController(CohortService cohortService, CustomerRepository customerRepository) {
+    public CohortController(CohortService cohortService, CustomerRepository customerRepository,
+            MembershipVersions membershipVersions) {
         this.cohortService = cohortService;
         this.customerRepository = customerRepository;
+        this.membershipVersions = membershipVersions;
     }
     
     /**
@@ -43,7 +50,7 @@ public class CohortController {
     public ResponseEntity<Boolean> isCustomerInCohortType(
             @RequestParam("customerId") String customerId,
             @RequestParam("cohortType") CohortType cohortType) {
-        logger.info("Checking if customer {} is in cohort type {}", customerId, cohortType);
+        logger.debug("Checking if customer {} is in cohort type {}", customerId, cohortType);
         
         if (customerId == null || customerId.trim().isEmpty()) {
             throw new IllegalArgumentException("Customer ID cannot be null or empty");
@@ -55,7 +62,7 @@ public class CohortController {
         
         boolean isInCohort = cohortService.isCustomerInCohortType(customerId, cohortType);
         
-        logger.info("Customer {} is {} cohort type {}", 
+        logger.debug("Customer {} is {} cohort type {}", 
                 customerId, isInCohort ? "in" : "not in", cohortType);
         
         return ResponseEntity.ok(isInCohort);
@@ -63,52 +70,72 @@ public class CohortController {
     
     /**
      * Gets all cohort types associated with a customer.
+     * The response carries an ETag; a request whose If-None-Match still matches is answered
+     * with 304 Not Modified without reading the memberships.
      *
      * @param customerId The ID of the customer
+     * @param request The request, for its If-None-Match header
      * @return The list of cohort types the customer is in
      */
     @GetMapping("/customer/{customerId}")
-    public ResponseEntity<List<CohortType>> getCustomerCohortTypes(@PathVariable("customerId") String customerId) {
-        logger.info("Getting cohort types for customer: {}", customerId);
+    public ResponseEntity<List<CohortType>> getCustomerCohortTypes(@PathVariable("customerId") String customerId,
+            WebRequest request) {
+        logger.debug("Getting cohort types for customer: {}", customerId);
         
         if (customerId == null || customerId.trim().isEmpty()) {
             throw new IllegalArgumentException("Customer ID cannot be null or empty");
         }
         
+        String eTag = membershipVersions.customerETag(customerId);
+        if (eTag != null && request.checkNotModified(eTag)) {
+            logger.debug("Cohort types of customer {} not modified", customerId);
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+        
         List<CohortType> cohortTypes = cohortService.getCustomerCohortTypes(customerId);
         
         if (cohortTypes.isEmpty()) {
-            logger.warn("No cohort types found for customer: {}", customerId);
+            logger.debug("No cohort types found for customer: {}", customerId);
         } else {
-            logger.info("Found {} cohort types for customer: {}", cohortTypes.size(), customerId);
+            logger.debug("Found {} cohort types for customer: {}", cohortTypes.size(), customerId);
         }
         
-        return ResponseEntity.ok(cohortTypes);
+        return ok(eTag).body(cohortTypes);
     }
     
     /**
      * Gets all customer IDs for a specific cohort type.
+     * The response carries an ETag; a request whose If-None-Match still matches is answered
+     * with 304 Not Modified without reading the members.
      *
      * @param cohortType The type of cohort
+     * @param request The request, for its If-None-Match header
      * @return The set of customer IDs in the cohort type
      */
     @GetMapping("/type/{cohortType}/customers")
-    public ResponseEntity<Set<String>> getCustomerIdsByCohortType(@PathVariable("cohortType") CohortType cohortType) {
-        logger.info("Getting customer IDs for cohort type: {}", cohortType);
+    public ResponseEntity<Set<String>> getCustomerIdsByCohortType(@PathVariable("cohortType") CohortType cohortType,
+            WebRequest request) {
+        logger.debug("Getting customer IDs for cohort type: {}", cohortType);
         
         if (cohortType == null) {
             throw new IllegalArgumentException("Cohort type cannot be null");
         }
         
+        String eTag = membershipVersions.cohortTypeETag(cohortType);
+        if (eTag != null && request.checkNotModified(eTag)) {
+            logger.debug("Members of cohort type {} not modified", cohortType);
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+        
         Set<String> customerIds = cohortService.getCustomerIdsByCohortType(cohortType);
         
         if (customerIds.isEmpty()) {
-            logger.warn("No customers found for cohort type: {}", cohortType);
+            logger.debug("No customers found for cohort type: {}", cohortType);
         } else {
-            logger.info("Found {} customers for cohort type: {}", customerIds.size(), cohortType);
+            logger.debug("Found {} customers for cohort type: {}", customerIds.size(), cohortType);
         }
         
-        return ResponseEntity.ok(customerIds);
+        return ok(eTag).body(customerIds);
     }
     
     /**
@@ -126,7 +153,7 @@ public class CohortController {
             @RequestParam("customerId") String customerId,
             @RequestParam("dailySpend") Double dailySpend,
             @RequestParam("userType") UserType userType) {
-        logger.info("Manually classifying customer: {}", customerId);
+        logger.debug("Manually classifying customer: {}", customerId);
         
         if (customerId == null || customerId.trim().isEmpty()) {
             throw new IllegalArgumentException("Customer ID cannot be null or empty");
@@ -146,7 +173,7 @@ public class CohortController {
         // Classify the customer
         Set<CohortType> cohortTypes = cohortService.classifyCustomer(customer);
         
-        logger.info("Customer {} classified into cohort types: {}", customerId, cohortTypes);
+        logger.debug("Customer {} classified into cohort types: {}", customerId, cohortTypes);
         
         return ResponseEntity.ok(cohortTypes);
     }
@@ -159,68 +186,29 @@ public class CohortController {
      * @return The set of cohort types the customer was classified into
      */
     @PostMapping("/classify/{customerId}")
-    public ResponseEntity<?> classifyCustomerById(@PathVariable("customerId") String customerId) {
-        logger.info("Manually classifying customer by ID: {}", customerId);
+    public ResponseEntity<Set<CohortType>> classifyCustomerById(@PathVariable("customerId") String customerId) {
+        logger.debug("Manually classifying customer by ID: {}", customerId);
         
         if (customerId == null || customerId.trim().isEmpty()) {
             throw new IllegalArgumentException("Customer ID cannot be null or empty");
         }
         
-        try {
-            // Retrieve the customer from DynamoDB
-            logger.info("Retrieving customer from DynamoDB: {}", customerId);
-            
-            // Use the AWS CLI to get the customer
-            ProcessBuilder processBuilder = new ProcessBuilder(
-                    "aws", "dynamodb", "get-item",
-                    "--table-name", "Customers",
-                    "--key", "{\"customerId\":{\"S\":\"" + customerId + "\"}}",
-                    "--endpoint-url", "http://localhost:4566"
-            );
-            
-            Process process = processBuilder.start();
-            java.io.BufferedReader reader = new java.io.BufferedReader(
-                    new java.io.InputStreamReader(process.getInputStream()));
-            
-            StringBuilder output = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                output.append(line).append("\n");
-            }
-            
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                logger.error("Error retrieving customer from DynamoDB: {}", exitCode);
-                return ResponseEntity.badRequest().body("Error retrieving customer from DynamoDB");
-            }
-            
-            String result = output.toString();
-            logger.info("DynamoDB response: {}", result);
-            
-            // Parse the JSON response
-            org.json.JSONObject json = new org.json.JSONObject(result);
-            if (!json.has("Item")) {
-                logger.error("Customer not found: {}", customerId);
-                return ResponseEntity.notFound().build();
-            }
-            
-            org.json.JSONObject item = json.getJSONObject("Item");
-            String id = item.getJSONObject("customerId").getString("S");
-            double dailySpend = Double.parseDouble(item.getJSONObject("dailySpend").getString("N"));
-            UserType userType = UserType.valueOf(item.getJSONObject("userType").getString("S"));
-            
-            // Create a customer object
-            Customer customer = new Customer(id, dailySpend, userType);
-            
-            // Classify the customer
-            Set<CohortType> cohortTypes = cohortService.classifyCustomer(customer);
-            
-            logger.info("Customer {} classified into cohort types: {}", customerId, cohortTypes);
-            
-            return ResponseEntity.ok(cohortTypes);
-        } catch (Exception e) {
-            logger.error("Error classifying customer: {}", e.getMessage(), e);
-            return ResponseEntity.badRequest().body("Error classifying customer: " + e.getMessage());
-        }
+        Customer customer = customerRepository.findById(customerId)
+                .orElseThrow(() -> ResourceNotFoundException.create("Customer", "customerId", customerId));
+        
+        // Classify the customer
+        Set<CohortType> cohortTypes = cohortService.classifyCustomer(customer);
+        
+        logger.debug("Customer {} classified into cohort types: {}", customerId, cohortTypes);
+        
+        return ResponseEntity.ok(cohortTypes);
+    }
+    
+    /**
+     * Starts a 200 response carrying an entity tag. Without a tag, e.g. while the versions cannot be read,
+     * the response has none and clients read in full.
+     */
+    private static ResponseEntity.BodyBuilder ok(String eTag) {
+        return eTag == null ? ResponseEntity.ok() : ResponseEntity.ok().eTag(eTag);
     }
 }
@@ -0,0 +1,118 @@
+package com.cohortmgmt.controller;
+
+import com.cohortmgmt.exception.BackpressureException;
+import com.cohortmgmt.model.Customer;
+import com.cohortmgmt.model.IngestSummary;
+import com.cohortmgmt.service.SqsBatchPublisher;
+import com.cohortmgmt.service.codec.CustomerBinaryCodec;
+import com.cohortmgmt.service.codec.CustomerJsonDecoder;
+import com.fasterxml.jackson.core.JsonParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * REST controller for bulk customer ingestion.
+ */
+@RestController
+@RequestMapping("/api/customers")
+public class CustomerIngestController {
+    
+    private static final Logger logger = LoggerFactory.getLogger(CustomerIngestController.class);
+    
+    /**
+     * Content type for newline-delimited JSON bodies.
+     */
+    public static final String NDJSON_VALUE = "application/x-ndjson";
+    
+    private final SqsBatchPublisher publisher;
+    private final CustomerJsonDecoder jsonDecoder = new CustomerJsonDecoder();
+    private final CustomerBinaryCodec binaryCodec = new CustomerBinaryCodec();
+    
+    @Autowired
+    public CustomerIngestController(SqsBatchPublisher publisher) {
+        this.publisher = publisher;
+    }
+    
+    /**
+     * Ingests a stream of customer records and publishes them to SQS in packed batches.
+     * The body is either newline-delimited JSON records or a binary customer batch payload
+     * (application/octet-stream), and is parsed as a stream so request size is not limited by memory.
+     * Reading slows down when publishing falls behind, which pushes back on the client. If publishing does not
+     * catch up in time, the records still buffered are dropped and the request fails right away with 503.
+     *
+     * @param request The HTTP request carrying the records
+     * @param contentType The content type of the body
+     * @return The summary of the ingested records
+     * @throws InterruptedException If interrupted while waiting for publishing capacity
+     */
+    @PostMapping(value = "/ingest",
+            consumes = {NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<IngestSummary> ingest(
+            HttpServletRequest request,
+            @RequestHeader("Content-Type") String contentType) throws InterruptedException {
+        boolean binary = MediaType.APPLICATION_OCTET_STREAM.includes(MediaType.parseMediaType(contentType));
+        logger.info("Ingesting {} customer records", binary ? "binary" : "NDJSON");
+        
+        SqsBatchPublisher.Session session = publisher.openSession();
+        IllegalArgumentException invalidBody = null;
+        try (InputStream body = request.getInputStream()) {
+            if (binary) {
+                readBinary(body, session);
+            } else {
+                readNdjson(body, session);
+            }
+        } catch (BackpressureException | InterruptedException e) {
+            // Flushing the buffered records would wait for publishing capacity all over again, so they are dropped
+            // and the client gets its answer now and retries
+            long dropped = session.abort();
+            logger.info("Ingest aborted after {} records, {} buffered records dropped: {}",
+                    session.getRecords(), dropped, e.getMessage());
+            throw e;
+        } catch (IOException | IllegalArgumentException e) {
+            // Malformed input, but also an unknown user type, an unparseable spend or a record too large to send
+            invalidBody = new IllegalArgumentException(
+                    "Invalid customer record after " + session.getRecords() + " records: " + e.getMessage(), e);
+        }
+        
+        // Publish what was accepted so far, even if the rest of the body was invalid
+        IngestSummary summary = session.finish();
+        logger.info("Ingest finished: {}", summary);
+        
+        if (invalidBody != null) {
+            throw invalidBody;
+        }
+        if (summary.getFailedRecords() > 0) {
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY).body(summary);
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(summary);
+    }
+    
+    private void readBinary(InputStream body, SqsBatchPublisher.Session session) throws IOException, InterruptedException {
+        CustomerBinaryCodec.Reader reader = binaryCodec.reader(body);
+        Customer customer;
+        while ((customer = reader.next()) != null) {
+            session.add(customer);
+        }
+    }
+    
+    private void readNdjson(InputStream body, SqsBatchPublisher.Session session) throws IOException, InterruptedException {
+        try (JsonParser parser = jsonDecoder.createParser(body)) {
+            Customer customer;
+            while ((customer = jsonDecoder.next(parser)) != null) {
+                session.add(customer);
+            }
+        }
+    }
+}
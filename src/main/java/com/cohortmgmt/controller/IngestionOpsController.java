@@ -0,0 +1,65 @@
+package com.cohortmgmt.controller;
+
+import com.cohortmgmt.model.LaneStats;
+import com.cohortmgmt.model.ShardStats;
+import com.cohortmgmt.model.StageStats;
+import com.cohortmgmt.service.DynamoDBStreamListener;
+import com.cohortmgmt.service.concurrency.KeyPartitionedExecutor;
+import com.cohortmgmt.service.pipeline.IngestionPipeline;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * REST controller exposing operational metrics of the ingestion paths.
+ */
+@RestController
+@RequestMapping("/api/ops/ingestion")
+public class IngestionOpsController {
+    
+    private final KeyPartitionedExecutor laneExecutor;
+    private final IngestionPipeline pipeline;
+    private final DynamoDBStreamListener streamListener;
+    
+    @Autowired
+    public IngestionOpsController(KeyPartitionedExecutor laneExecutor, IngestionPipeline pipeline,
+                                  DynamoDBStreamListener streamListener) {
+        this.laneExecutor = laneExecutor;
+        this.pipeline = pipeline;
+        this.streamListener = streamListener;
+    }
+    
+    /**
+     * Gets the metrics of every lane of the per-customer ordered executor.
+     *
+     * @return The lane metrics, indexed by lane
+     */
+    @GetMapping("/lanes")
+    public ResponseEntity<List<LaneStats>> getLaneStats() {
+        return ResponseEntity.ok(laneExecutor.getLaneStats());
+    }
+    
+    /**
+     * Gets the throughput, queue depth and backpressure metrics of every stage of the SQS ingestion pipeline.
+     *
+     * @return The stage metrics, in pipeline order
+     */
+    @GetMapping("/pipeline")
+    public ResponseEntity<List<StageStats>> getPipelineStats() {
+        return ResponseEntity.ok(pipeline.getStageStats());
+    }
+    
+    /**
+     * Gets the lag and polling metrics of every shard of the Customers table stream that is being read.
+     *
+     * @return The shard metrics, ordered by shard ID
+     */
+    @GetMapping("/stream")
+    public ResponseEntity<List<ShardStats>> getStreamStats() {
+        return ResponseEntity.ok(streamListener.getShardStats());
+    }
+}
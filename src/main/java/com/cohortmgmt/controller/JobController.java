@@ -0,0 +1,54 @@
+package com.cohortmgmt.controller;
+
+import com.cohortmgmt.model.ReclassificationStatus;
+import com.cohortmgmt.service.job.ReclassificationJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+
+/**
+ * REST controller for operational jobs.
+ */
+@RestController
+@RequestMapping("/api/jobs")
+public class JobController {
+    
+    private static final Logger logger = LoggerFactory.getLogger(JobController.class);
+    
+    private final ReclassificationJob reclassificationJob;
+    
+    @Autowired
+    public JobController(ReclassificationJob reclassificationJob) {
+        this.reclassificationJob = reclassificationJob;
+    }
+    
+    /**
+     * Starts reclassifying all customers, resuming an interrupted run if there is one.
+     *
+     * @return The status of the job
+     * @throws IOException If the job checkpoint cannot be read
+     */
+    @PostMapping("/reclassification")
+    public ResponseEntity<ReclassificationStatus> startReclassification() throws IOException {
+        logger.info("Starting reclassification of all customers");
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(reclassificationJob.start());
+    }
+    
+    /**
+     * Gets the progress of the reclassification job, including throughput and ETA.
+     *
+     * @return The status of the job
+     */
+    @GetMapping("/reclassification")
+    public ResponseEntity<ReclassificationStatus> getReclassificationStatus() {
+        return ResponseEntity.ok(reclassificationJob.getStatus());
+    }
+}
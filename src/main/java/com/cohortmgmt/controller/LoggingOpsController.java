@@ -0,0 +1,35 @@
+package com.cohortmgmt.controller;
+
+import com.cohortmgmt.logging.SampledLogger;
+import com.cohortmgmt.model.LogSiteStats;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * REST controller exposing how many messages the sampled log call sites wrote and dropped.
+ */
+@RestController
+@RequestMapping("/api/ops")
+public class LoggingOpsController {
+    
+    /**
+     * Gets the message counts of every sampled log call site, most dropped first.
+     *
+     * @return The call site counts
+     */
+    @GetMapping("/logging")
+    public ResponseEntity<List<LogSiteStats>> getLogSiteStats() {
+        List<LogSiteStats> stats = new ArrayList<>();
+        for (SampledLogger site : SampledLogger.sites()) {
+            stats.add(new LogSiteStats(site.getSite(), site.getEmitted(), site.getSuppressed()));
+        }
+        stats.sort(Comparator.comparingLong(LogSiteStats::getSuppressed).reversed());
+        return ResponseEntity.ok(stats);
+    }
+}
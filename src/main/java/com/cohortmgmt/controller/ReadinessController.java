@@ -0,0 +1,37 @@
+package com.cohortmgmt.controller;
+
+import com.cohortmgmt.config.AwsResourceInitializer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * REST controller exposing whether the node is ready to serve traffic, for load balancer readiness probes.
+ */
+@RestController
+@RequestMapping("/api/ops")
+public class ReadinessController {
+    
+    private final AwsResourceInitializer resourceInitializer;
+    
+    @Autowired
+    public ReadinessController(AwsResourceInitializer resourceInitializer) {
+        this.resourceInitializer = resourceInitializer;
+    }
+    
+    /**
+     * Gets the bootstrap status of every AWS resource.
+     *
+     * @return 200 with the status of each resource once all are ready, 503 while the node is starting
+     */
+    @GetMapping("/ready")
+    public ResponseEntity<Map<String, String>> getReadiness() {
+        HttpStatus status = resourceInitializer.isReady() ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE;
+        return ResponseEntity.status(status).body(resourceInitializer.getResourceStatus());
+    }
+}
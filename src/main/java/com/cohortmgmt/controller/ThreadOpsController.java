@@ -0,0 +1,31 @@
+package com.cohortmgmt.controller;
+
+import com.cohortmgmt.model.ThreadStats;
+import com.cohortmgmt.service.concurrency.VirtualThreads;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * REST controller exposing the thread usage of the service, e.g. to follow the thread count during a load test.
+ */
+@RestController
+@RequestMapping("/api/ops")
+public class ThreadOpsController {
+    
+    /**
+     * Gets the thread mode and the platform thread counts.
+     *
+     * @return The thread metrics
+     */
+    @GetMapping("/threads")
+    public ResponseEntity<ThreadStats> getThreadStats() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        return ResponseEntity.ok(new ThreadStats(VirtualThreads.isEnabled(), threads.getThreadCount(),
+                threads.getPeakThreadCount(), threads.getTotalStartedThreadCount()));
+    }
+}
@@ -0,0 +1,33 @@
+package com.cohortmgmt.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Exception thrown when the service cannot accept more work right now and the client should retry later.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class BackpressureException extends RuntimeException {
+    
+    private final long retryAfterSeconds;
+    
+    /**
+     * Creates a new BackpressureException with the specified message.
+     *
+     * @param message The error message
+     * @param retryAfterSeconds How long the client should wait before retrying
+     */
+    public BackpressureException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+    
+    /**
+     * Gets how long the client should wait before retrying.
+     *
+     * @return The delay in seconds
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
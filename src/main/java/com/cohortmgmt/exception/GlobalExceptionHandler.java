@@ -1,7 +1,9 @@
 package com.cohortmgmt.exception;
 
+import com.cohortmgmt.logging.SampledLogger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MissingServletRequestParameterException;
@@ -21,6 +23,7 @@ import java.util.Map;
 public class GlobalExceptionHandler {
     
     private static final Logger logger = LoggerFactory.getLogger(GlobalExceptionHandler.class);
+    private static final SampledLogger backpressureLog = SampledLogger.forSite(logger, "backpressure", 5, 100);
     
     /**
      * Handles IllegalArgumentException.
@@ -73,6 +76,22 @@ public class GlobalExceptionHandler {
         return buildErrorResponse(HttpStatus.NOT_FOUND, "Resource not found", ex.getMessage());
     }
     
+    /**
+     * Handles BackpressureException.
+     *
+     * @param ex The exception
+     * @return The error response with a Retry-After header
+     */
+    @ExceptionHandler(BackpressureException.class)
+    public ResponseEntity<Object> handleBackpressureException(BackpressureException ex) {
+        // Rejections come in bursts exactly when the service is busiest
+        backpressureLog.warn("Rejecting request under backpressure: {}", ex.getMessage());
+        ResponseEntity<Object> response = buildErrorResponse(HttpStatus.SERVICE_UNAVAILABLE, "Service overloaded", ex.getMessage());
+        return ResponseEntity.status(response.getStatusCode())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(response.getBody());
+    }
+    
     /**
      * Handles all other exceptions.
      *
@@ -0,0 +1,41 @@
+package com.cohortmgmt.logging;
+
+/**
+ * Structured fields of a log message, rendered as {@code key=value} pairs only when the message is written.
+ *
+ * Creating the fields only keeps references to the values; they are turned into text by {@link #toString()},
+ * which SLF4J calls only for messages that pass the level check and, with {@link SampledLogger}, the budget.
+ */
+public final class LogFields {
+    
+    private final Object[] keysAndValues;
+    
+    private LogFields(Object[] keysAndValues) {
+        this.keysAndValues = keysAndValues;
+    }
+    
+    /**
+     * Creates fields from alternating keys and values, e.g. {@code of("customerId", id, "cohortTypes", types)}.
+     *
+     * @param keysAndValues The keys, each followed by its value
+     * @return The fields
+     */
+    public static LogFields of(Object... keysAndValues) {
+        if (keysAndValues.length % 2 != 0) {
+            throw new IllegalArgumentException("Every key needs a value");
+        }
+        return new LogFields(keysAndValues);
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(keysAndValues[i]).append('=').append(keysAndValues[i + 1]);
+        }
+        return text.toString();
+    }
+}
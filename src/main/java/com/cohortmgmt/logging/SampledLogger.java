@@ -0,0 +1,190 @@
+package com.cohortmgmt.logging;
+
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Log budget of one call site on a hot path, e.g. a message logged for every customer or every request.
+ *
+ * Within every second the first messages up to the budget are logged; beyond it only every n-th message is, and
+ * the rest are counted and dropped. The next message that is logged reports how many were dropped before it, so
+ * the log still shows the volume. Arguments are formatted only for messages that are logged, so pass the values
+ * themselves, or {@link LogFields} for structured fields, rather than strings built up front. Deciding whether to
+ * log takes no lock.
+ *
+ * Call sites are created once, as constants, and registered by name so their counts can be read in one place.
+ */
+public final class SampledLogger {
+    
+    private static final ConcurrentMap<String, SampledLogger> SITES = new ConcurrentHashMap<>();
+    
+    private final Logger logger;
+    private final String site;
+    private final int budgetPerSecond;
+    private final int sampleEvery;
+    private final LongSupplier clockSeconds;
+    
+    private final AtomicLong second = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicInteger inSecond = new AtomicInteger();
+    private final AtomicLong suppressedSinceLast = new AtomicLong();
+    private final LongAdder emitted = new LongAdder();
+    private final LongAdder suppressed = new LongAdder();
+    
+    SampledLogger(Logger logger, String site, int budgetPerSecond, int sampleEvery, LongSupplier clockSeconds) {
+        if (budgetPerSecond < 0 || sampleEvery < 0) {
+            throw new IllegalArgumentException("Budget and sampling must not be negative");
+        }
+        this.logger = logger;
+        this.site = site;
+        this.budgetPerSecond = budgetPerSecond;
+        this.sampleEvery = sampleEvery;
+        this.clockSeconds = clockSeconds;
+    }
+    
+    /**
+     * Gets the log budget of a call site, creating it on first use.
+     *
+     * @param logger The logger messages are written to
+     * @param site The name of the call site, unique within the logger
+     * @param budgetPerSecond How many messages are logged per second before sampling starts
+     * @param sampleEvery Beyond the budget, every how many messages one is logged; 0 logs none
+     * @return The log budget of the call site
+     */
+    public static SampledLogger forSite(Logger logger, String site, int budgetPerSecond, int sampleEvery) {
+        return SITES.computeIfAbsent(logger.getName() + "#" + site, key -> new SampledLogger(logger, key,
+                budgetPerSecond, sampleEvery, () -> TimeUnit.NANOSECONDS.toSeconds(System.nanoTime())));
+    }
+    
+    /**
+     * Gets all registered call sites.
+     *
+     * @return The call sites
+     */
+    public static List<SampledLogger> sites() {
+        return new ArrayList<>(SITES.values());
+    }
+    
+    /**
+     * Logs a message at DEBUG level if it is within the budget.
+     *
+     * @param format The SLF4J message format
+     * @param args The arguments, formatted only if the message is logged
+     */
+    public void debug(String format, Object... args) {
+        if (logger.isDebugEnabled() && admit()) {
+            long skipped = suppressedSinceLast.getAndSet(0);
+            logger.debug(withSuppressed(format, skipped), withSuppressed(args, skipped));
+        }
+    }
+    
+    /**
+     * Logs a message at INFO level if it is within the budget.
+     *
+     * @param format The SLF4J message format
+     * @param args The arguments, formatted only if the message is logged
+     */
+    public void info(String format, Object... args) {
+        if (logger.isInfoEnabled() && admit()) {
+            long skipped = suppressedSinceLast.getAndSet(0);
+            logger.info(withSuppressed(format, skipped), withSuppressed(args, skipped));
+        }
+    }
+    
+    /**
+     * Logs a message at WARN level if it is within the budget.
+     *
+     * @param format The SLF4J message format
+     * @param args The arguments, formatted only if the message is logged; a trailing exception is logged with
+     *             its stack trace
+     */
+    public void warn(String format, Object... args) {
+        if (logger.isWarnEnabled() && admit()) {
+            long skipped = suppressedSinceLast.getAndSet(0);
+            logger.warn(withSuppressed(format, skipped), withSuppressed(args, skipped));
+        }
+    }
+    
+    /**
+     * Logs a message at ERROR level if it is within the budget.
+     *
+     * @param format The SLF4J message format
+     * @param args The arguments, formatted only if the message is logged; a trailing exception is logged with
+     *             its stack trace
+     */
+    public void error(String format, Object... args) {
+        if (logger.isErrorEnabled() && admit()) {
+            long skipped = suppressedSinceLast.getAndSet(0);
+            logger.error(withSuppressed(format, skipped), withSuppressed(args, skipped));
+        }
+    }
+    
+    /**
+     * Gets the name of the call site.
+     *
+     * @return The logger name and the site name
+     */
+    public String getSite() {
+        return site;
+    }
+    
+    /**
+     * Gets the number of messages logged since startup.
+     *
+     * @return The number of messages
+     */
+    public long getEmitted() {
+        return emitted.sum();
+    }
+    
+    /**
+     * Gets the number of messages dropped since startup.
+     *
+     * @return The number of messages
+     */
+    public long getSuppressed() {
+        return suppressed.sum();
+    }
+    
+    private boolean admit() {
+        long now = clockSeconds.getAsLong();
+        long current = second.get();
+        if (now != current && second.compareAndSet(current, now)) {
+            inSecond.set(0);
+        }
+        int n = inSecond.incrementAndGet();
+        if (n <= budgetPerSecond || (sampleEvery > 0 && (n - budgetPerSecond) % sampleEvery == 0)) {
+            emitted.increment();
+            return true;
+        }
+        suppressed.increment();
+        suppressedSinceLast.incrementAndGet();
+        return false;
+    }
+    
+    private static String withSuppressed(String format, long skipped) {
+        return skipped == 0 ? format : format + " ({} similar messages suppressed)";
+    }
+    
+    private static Object[] withSuppressed(Object[] args, long skipped) {
+        if (skipped == 0) {
+            return args;
+        }
+        Object[] extended = new Object[args.length + 1];
+        // SLF4J takes a trailing exception as the one to log, so the count goes before it
+        boolean trailingThrowable = args.length > 0 && args[args.length - 1] instanceof Throwable;
+        int at = trailingThrowable ? args.length - 1 : args.length;
+        System.arraycopy(args, 0, extended, 0, at);
+        extended[at] = skipped;
+        System.arraycopy(args, at, extended, at + 1, args.length - at);
+        return extended;
+    }
+}
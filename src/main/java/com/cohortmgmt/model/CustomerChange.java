@@ -0,0 +1,78 @@
+package com.cohortmgmt.model;
+
+/**
+ * A change to a customer as seen on the Customers table stream: the customer before the change,
+ * and the customer after it, which is null if the customer was deleted.
+ */
+public class CustomerChange {
+    private final String customerId;
+    private final Customer previous;
+    private Customer current;
+
+    /**
+     * Creates a new CustomerChange.
+     *
+     * @param customerId The customer ID
+     * @param previous The customer before the change, or null for a new customer
+     * @param current The customer after the change, or null for a deleted customer
+     */
+    public CustomerChange(String customerId, Customer previous, Customer current) {
+        this.customerId = customerId;
+        this.previous = previous;
+        this.current = current;
+    }
+
+    /**
+     * Gets the customer ID.
+     *
+     * @return The customer ID
+     */
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    /**
+     * Gets the customer before the change.
+     *
+     * @return The previous customer, or null for a new customer
+     */
+    public Customer getPrevious() {
+        return previous;
+    }
+
+    /**
+     * Gets the customer after the change.
+     *
+     * @return The current customer, or null for a deleted customer
+     */
+    public Customer getCurrent() {
+        return current;
+    }
+
+    /**
+     * Sets the customer after the change, e.g. when a later change of the same customer is merged into this one.
+     *
+     * @param current The current customer, or null for a deleted customer
+     */
+    public void setCurrent(Customer current) {
+        this.current = current;
+    }
+
+    /**
+     * Checks whether the customer was deleted.
+     *
+     * @return true if the customer was deleted
+     */
+    public boolean isRemoval() {
+        return current == null;
+    }
+
+    @Override
+    public String toString() {
+        return "CustomerChange{" +
+                "customerId='" + customerId + '\'' +
+                ", previous=" + previous +
+                ", current=" + current +
+                '}';
+    }
+}
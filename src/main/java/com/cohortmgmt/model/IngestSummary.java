@@ -0,0 +1,114 @@
+package com.cohortmgmt.model;
+
+/**
+ * Summary of a bulk ingestion request.
+ */
+public class IngestSummary {
+    private long records;
+    private long messages;
+    private long batches;
+    private long failedRecords;
+
+    /**
+     * Default constructor for serialization/deserialization.
+     */
+    public IngestSummary() {
+    }
+
+    /**
+     * Creates a new ingestion summary.
+     *
+     * @param records The number of records accepted from the request
+     * @param messages The number of SQS messages the records were packed into
+     * @param batches The number of SendMessageBatch calls made
+     * @param failedRecords The number of records that could not be published
+     */
+    public IngestSummary(long records, long messages, long batches, long failedRecords) {
+        this.records = records;
+        this.messages = messages;
+        this.batches = batches;
+        this.failedRecords = failedRecords;
+    }
+
+    /**
+     * Gets the number of records accepted from the request.
+     *
+     * @return The number of records
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * Sets the number of records accepted from the request.
+     *
+     * @param records The number of records to set
+     */
+    public void setRecords(long records) {
+        this.records = records;
+    }
+
+    /**
+     * Gets the number of SQS messages the records were packed into.
+     *
+     * @return The number of messages
+     */
+    public long getMessages() {
+        return messages;
+    }
+
+    /**
+     * Sets the number of SQS messages the records were packed into.
+     *
+     * @param messages The number of messages to set
+     */
+    public void setMessages(long messages) {
+        this.messages = messages;
+    }
+
+    /**
+     * Gets the number of SendMessageBatch calls made.
+     *
+     * @return The number of batches
+     */
+    public long getBatches() {
+        return batches;
+    }
+
+    /**
+     * Sets the number of SendMessageBatch calls made.
+     *
+     * @param batches The number of batches to set
+     */
+    public void setBatches(long batches) {
+        this.batches = batches;
+    }
+
+    /**
+     * Gets the number of records that could not be published.
+     *
+     * @return The number of failed records
+     */
+    public long getFailedRecords() {
+        return failedRecords;
+    }
+
+    /**
+     * Sets the number of records that could not be published.
+     *
+     * @param failedRecords The number of failed records to set
+     */
+    public void setFailedRecords(long failedRecords) {
+        this.failedRecords = failedRecords;
+    }
+
+    @Override
+    public String toString() {
+        return "IngestSummary{" +
+                "records=" + records +
+                ", messages=" + messages +
+                ", batches=" + batches +
+                ", failedRecords=" + failedRecords +
+                '}';
+    }
+}
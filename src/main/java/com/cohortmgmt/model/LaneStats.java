@@ -0,0 +1,203 @@
+package com.cohortmgmt.model;
+
+/**
+ * Metrics of one lane of the key-partitioned ingestion executor.
+ */
+public class LaneStats {
+    private int lane;
+    private int queueDepth;
+    private int queueCapacity;
+    private long maxQueueDepth;
+    private long completed;
+    private long failed;
+    private long blockedSubmits;
+    private long busyMillis;
+
+    /**
+     * Default constructor for serialization/deserialization.
+     */
+    public LaneStats() {
+    }
+
+    /**
+     * Creates new lane metrics.
+     *
+     * @param lane The lane index
+     * @param queueDepth The number of tasks currently queued
+     * @param queueCapacity The maximum number of tasks that can be queued
+     * @param maxQueueDepth The highest queue depth seen
+     * @param completed The number of tasks run
+     * @param failed The number of tasks that failed
+     * @param blockedSubmits The number of submits that had to wait for room in the queue
+     * @param busyMillis The total time spent running tasks
+     */
+    public LaneStats(int lane, int queueDepth, int queueCapacity, long maxQueueDepth,
+                     long completed, long failed, long blockedSubmits, long busyMillis) {
+        this.lane = lane;
+        this.queueDepth = queueDepth;
+        this.queueCapacity = queueCapacity;
+        this.maxQueueDepth = maxQueueDepth;
+        this.completed = completed;
+        this.failed = failed;
+        this.blockedSubmits = blockedSubmits;
+        this.busyMillis = busyMillis;
+    }
+
+    /**
+     * Gets the lane index.
+     *
+     * @return The lane index
+     */
+    public int getLane() {
+        return lane;
+    }
+
+    /**
+     * Sets the lane index.
+     *
+     * @param lane The lane index to set
+     */
+    public void setLane(int lane) {
+        this.lane = lane;
+    }
+
+    /**
+     * Gets the number of tasks currently queued.
+     *
+     * @return The queue depth
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Sets the number of tasks currently queued.
+     *
+     * @param queueDepth The queue depth to set
+     */
+    public void setQueueDepth(int queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * Gets the maximum number of tasks that can be queued.
+     *
+     * @return The queue capacity
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Sets the maximum number of tasks that can be queued.
+     *
+     * @param queueCapacity The queue capacity to set
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Gets the highest queue depth seen.
+     *
+     * @return The highest queue depth
+     */
+    public long getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * Sets the highest queue depth seen.
+     *
+     * @param maxQueueDepth The highest queue depth to set
+     */
+    public void setMaxQueueDepth(long maxQueueDepth) {
+        this.maxQueueDepth = maxQueueDepth;
+    }
+
+    /**
+     * Gets the number of tasks run.
+     *
+     * @return The number of completed tasks
+     */
+    public long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * Sets the number of tasks run.
+     *
+     * @param completed The number of completed tasks to set
+     */
+    public void setCompleted(long completed) {
+        this.completed = completed;
+    }
+
+    /**
+     * Gets the number of tasks that failed.
+     *
+     * @return The number of failed tasks
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * Sets the number of tasks that failed.
+     *
+     * @param failed The number of failed tasks to set
+     */
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+
+    /**
+     * Gets the number of submits that had to wait for room in the queue.
+     *
+     * @return The number of blocked submits
+     */
+    public long getBlockedSubmits() {
+        return blockedSubmits;
+    }
+
+    /**
+     * Sets the number of submits that had to wait for room in the queue.
+     *
+     * @param blockedSubmits The number of blocked submits to set
+     */
+    public void setBlockedSubmits(long blockedSubmits) {
+        this.blockedSubmits = blockedSubmits;
+    }
+
+    /**
+     * Gets the total time spent running tasks in milliseconds.
+     *
+     * @return The busy time
+     */
+    public long getBusyMillis() {
+        return busyMillis;
+    }
+
+    /**
+     * Sets the total time spent running tasks in milliseconds.
+     *
+     * @param busyMillis The busy time to set
+     */
+    public void setBusyMillis(long busyMillis) {
+        this.busyMillis = busyMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "LaneStats{" +
+                "lane=" + lane +
+                ", queueDepth=" + queueDepth +
+                ", queueCapacity=" + queueCapacity +
+                ", maxQueueDepth=" + maxQueueDepth +
+                ", completed=" + completed +
+                ", failed=" + failed +
+                ", blockedSubmits=" + blockedSubmits +
+                ", busyMillis=" + busyMillis +
+                '}';
+    }
+}
@@ -0,0 +1,83 @@
+package com.cohortmgmt.model;
+
+/**
+ * Message counts of a sampled log call site.
+ */
+public class LogSiteStats {
+    private String site;
+    private long emitted;
+    private long suppressed;
+
+    /**
+     * Default constructor for serialization/deserialization.
+     */
+    public LogSiteStats() {
+    }
+
+    /**
+     * Creates new call site counts.
+     *
+     * @param site The logger name and the site name
+     * @param emitted The number of messages logged since startup
+     * @param suppressed The number of messages dropped since startup
+     */
+    public LogSiteStats(String site, long emitted, long suppressed) {
+        this.site = site;
+        this.emitted = emitted;
+        this.suppressed = suppressed;
+    }
+
+    /**
+     * Gets the name of the call site.
+     *
+     * @return The logger name and the site name
+     */
+    public String getSite() {
+        return site;
+    }
+
+    /**
+     * Sets the name of the call site.
+     *
+     * @param site The logger name and the site name
+     */
+    public void setSite(String site) {
+        this.site = site;
+    }
+
+    /**
+     * Gets the number of messages logged.
+     *
+     * @return The number of messages logged since startup
+     */
+    public long getEmitted() {
+        return emitted;
+    }
+
+    /**
+     * Sets the number of messages logged.
+     *
+     * @param emitted The number of messages logged since startup
+     */
+    public void setEmitted(long emitted) {
+        this.emitted = emitted;
+    }
+
+    /**
+     * Gets the number of messages dropped.
+     *
+     * @return The number of messages dropped since startup
+     */
+    public long getSuppressed() {
+        return suppressed;
+    }
+
+    /**
+     * Sets the number of messages dropped.
+     *
+     * @param suppressed The number of messages dropped since startup
+     */
+    public void setSuppressed(long suppressed) {
+        this.suppressed = suppressed;
+    }
+}
@@ -0,0 +1,26 @@
+package com.cohortmgmt.model;
+
+/**
+ * Enum representing the state of the full reclassification job.
+ */
+public enum ReclassificationState {
+    /**
+     * No run has been started since startup.
+     */
+    IDLE,
+    
+    /**
+     * A run is scanning the customers.
+     */
+    RUNNING,
+    
+    /**
+     * The last run reclassified every customer.
+     */
+    COMPLETED,
+    
+    /**
+     * The last run stopped with an error; starting it again resumes from the checkpoint.
+     */
+    FAILED
+}
@@ -0,0 +1,199 @@
+package com.cohortmgmt.model;
+
+/**
+ * Progress of the full reclassification job.
+ */
+public class ReclassificationStatus {
+    private ReclassificationState state;
+    private int totalSegments;
+    private int completedSegments;
+    private long scannedItems;
+    private long reclassifiedItems;
+    private long estimatedTotalItems;
+    private double itemsPerSecond;
+    private long etaSeconds;
+    private String error;
+
+    /**
+     * Default constructor for serialization/deserialization.
+     */
+    public ReclassificationStatus() {
+    }
+
+    /**
+     * Gets the state of the job.
+     *
+     * @return The state
+     */
+    public ReclassificationState getState() {
+        return state;
+    }
+
+    /**
+     * Sets the state of the job.
+     *
+     * @param state The state to set
+     */
+    public void setState(ReclassificationState state) {
+        this.state = state;
+    }
+
+    /**
+     * Gets the number of parallel scan segments.
+     *
+     * @return The number of segments
+     */
+    public int getTotalSegments() {
+        return totalSegments;
+    }
+
+    /**
+     * Sets the number of parallel scan segments.
+     *
+     * @param totalSegments The number of segments to set
+     */
+    public void setTotalSegments(int totalSegments) {
+        this.totalSegments = totalSegments;
+    }
+
+    /**
+     * Gets the number of segments scanned to the end.
+     *
+     * @return The number of completed segments
+     */
+    public int getCompletedSegments() {
+        return completedSegments;
+    }
+
+    /**
+     * Sets the number of segments scanned to the end.
+     *
+     * @param completedSegments The number of completed segments to set
+     */
+    public void setCompletedSegments(int completedSegments) {
+        this.completedSegments = completedSegments;
+    }
+
+    /**
+     * Gets the number of customers scanned, including by an interrupted earlier run.
+     *
+     * @return The number of scanned items
+     */
+    public long getScannedItems() {
+        return scannedItems;
+    }
+
+    /**
+     * Sets the number of customers scanned, including by an interrupted earlier run.
+     *
+     * @param scannedItems The number of scanned items to set
+     */
+    public void setScannedItems(long scannedItems) {
+        this.scannedItems = scannedItems;
+    }
+
+    /**
+     * Gets the number of customers whose memberships the current run changed.
+     *
+     * @return The number of reclassified items
+     */
+    public long getReclassifiedItems() {
+        return reclassifiedItems;
+    }
+
+    /**
+     * Sets the number of customers whose memberships the current run changed.
+     *
+     * @param reclassifiedItems The number of reclassified items to set
+     */
+    public void setReclassifiedItems(long reclassifiedItems) {
+        this.reclassifiedItems = reclassifiedItems;
+    }
+
+    /**
+     * Gets the approximate number of customers in the table, as reported by DynamoDB.
+     *
+     * @return The estimated number of items
+     */
+    public long getEstimatedTotalItems() {
+        return estimatedTotalItems;
+    }
+
+    /**
+     * Sets the approximate number of customers in the table, as reported by DynamoDB.
+     *
+     * @param estimatedTotalItems The estimated number of items to set
+     */
+    public void setEstimatedTotalItems(long estimatedTotalItems) {
+        this.estimatedTotalItems = estimatedTotalItems;
+    }
+
+    /**
+     * Gets the scan throughput of the current run.
+     *
+     * @return The throughput
+     */
+    public double getItemsPerSecond() {
+        return itemsPerSecond;
+    }
+
+    /**
+     * Sets the scan throughput of the current run.
+     *
+     * @param itemsPerSecond The throughput to set
+     */
+    public void setItemsPerSecond(double itemsPerSecond) {
+        this.itemsPerSecond = itemsPerSecond;
+    }
+
+    /**
+     * Gets the estimated time to completion, or -1 if unknown.
+     *
+     * @return The ETA in seconds
+     */
+    public long getEtaSeconds() {
+        return etaSeconds;
+    }
+
+    /**
+     * Sets the estimated time to completion, or -1 if unknown.
+     *
+     * @param etaSeconds The ETA in seconds to set
+     */
+    public void setEtaSeconds(long etaSeconds) {
+        this.etaSeconds = etaSeconds;
+    }
+
+    /**
+     * Gets the error that stopped the job, if it failed.
+     *
+     * @return The error message
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Sets the error that stopped the job, if it failed.
+     *
+     * @param error The error message to set
+     */
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public String toString() {
+        return "ReclassificationStatus{" +
+                "state='" + state + '\'' +
+                ", totalSegments=" + totalSegments +
+                ", completedSegments=" + completedSegments +
+                ", scannedItems=" + scannedItems +
+                ", reclassifiedItems=" + reclassifiedItems +
+                ", estimatedTotalItems=" + estimatedTotalItems +
+                ", itemsPerSecond=" + itemsPerSecond +
+                ", etaSeconds=" + etaSeconds +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,114 @@
+package com.cohortmgmt.model;
+
+/**
+ * Lease of a Customers table stream shard, which gives one service instance the right to read the shard.
+ */
+public class ShardLease {
+    private String shardId;
+    private String owner;
+    private long expiresAt;
+    private long leaseCounter;
+
+    /**
+     * Default constructor for serialization/deserialization.
+     */
+    public ShardLease() {
+    }
+
+    /**
+     * Creates a new shard lease.
+     *
+     * @param shardId The shard ID
+     * @param owner The ID of the node holding the lease
+     * @param expiresAt The expiry time in epoch milliseconds
+     * @param leaseCounter The lease counter
+     */
+    public ShardLease(String shardId, String owner, long expiresAt, long leaseCounter) {
+        this.shardId = shardId;
+        this.owner = owner;
+        this.expiresAt = expiresAt;
+        this.leaseCounter = leaseCounter;
+    }
+
+    /**
+     * Gets the ID of the leased shard.
+     *
+     * @return The shard ID
+     */
+    public String getShardId() {
+        return shardId;
+    }
+
+    /**
+     * Sets the ID of the leased shard.
+     *
+     * @param shardId The shard ID to set
+     */
+    public void setShardId(String shardId) {
+        this.shardId = shardId;
+    }
+
+    /**
+     * Gets the ID of the node holding the lease, or null if the lease is free.
+     *
+     * @return The owner
+     */
+    public String getOwner() {
+        return owner;
+    }
+
+    /**
+     * Sets the ID of the node holding the lease, or null if the lease is free.
+     *
+     * @param owner The owner to set
+     */
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * Gets the time the lease expires unless it is renewed, in epoch milliseconds.
+     *
+     * @return The expiry time
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * Sets the time the lease expires unless it is renewed, in epoch milliseconds.
+     *
+     * @param expiresAt The expiry time to set
+     */
+    public void setExpiresAt(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Gets the counter incremented whenever the lease is taken or renewed.
+     *
+     * @return The lease counter
+     */
+    public long getLeaseCounter() {
+        return leaseCounter;
+    }
+
+    /**
+     * Sets the counter incremented whenever the lease is taken or renewed.
+     *
+     * @param leaseCounter The lease counter to set
+     */
+    public void setLeaseCounter(long leaseCounter) {
+        this.leaseCounter = leaseCounter;
+    }
+
+    @Override
+    public String toString() {
+        return "ShardLease{" +
+                "shardId='" + shardId + '\'' +
+                ", owner='" + owner + '\'' +
+                ", expiresAt=" + expiresAt +
+                ", leaseCounter=" + leaseCounter +
+                '}';
+    }
+}
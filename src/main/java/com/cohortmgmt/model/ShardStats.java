@@ -0,0 +1,181 @@
+package com.cohortmgmt.model;
+
+/**
+ * Metrics of the worker reading one shard of the Customers table stream.
+ */
+public class ShardStats {
+    private String shardId;
+    private long lagMillis;
+    private long recordsProcessed;
+    private long getRecordsCalls;
+    private long pollIntervalMillis;
+    private String lastSequenceNumber;
+    private int prefetchedPages;
+
+    /**
+     * Default constructor for serialization/deserialization.
+     */
+    public ShardStats() {
+    }
+
+    /**
+     * Creates new shard metrics.
+     *
+     * @param shardId The shard ID
+     * @param lagMillis The approximate lag behind the stream
+     * @param recordsProcessed The number of processed records
+     * @param getRecordsCalls The number of GetRecords calls
+     * @param pollIntervalMillis The current wait between GetRecords calls
+     * @param lastSequenceNumber The sequence number of the last processed record
+     * @param prefetchedPages The number of fetched pages waiting to be processed
+     */
+    public ShardStats(String shardId, long lagMillis, long recordsProcessed, long getRecordsCalls,
+                      long pollIntervalMillis, String lastSequenceNumber, int prefetchedPages) {
+        this.shardId = shardId;
+        this.lagMillis = lagMillis;
+        this.recordsProcessed = recordsProcessed;
+        this.getRecordsCalls = getRecordsCalls;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.lastSequenceNumber = lastSequenceNumber;
+        this.prefetchedPages = prefetchedPages;
+    }
+
+    /**
+     * Gets the shard ID.
+     *
+     * @return The shard ID
+     */
+    public String getShardId() {
+        return shardId;
+    }
+
+    /**
+     * Sets the shard ID.
+     *
+     * @param shardId The shard ID to set
+     */
+    public void setShardId(String shardId) {
+        this.shardId = shardId;
+    }
+
+    /**
+     * Gets the approximate lag behind the stream in milliseconds, 0 once the shard is caught up.
+     *
+     * @return The lag
+     */
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    /**
+     * Sets the approximate lag behind the stream in milliseconds, 0 once the shard is caught up.
+     *
+     * @param lagMillis The lag to set
+     */
+    public void setLagMillis(long lagMillis) {
+        this.lagMillis = lagMillis;
+    }
+
+    /**
+     * Gets the number of records processed by the shard's worker.
+     *
+     * @return The number of processed records
+     */
+    public long getRecordsProcessed() {
+        return recordsProcessed;
+    }
+
+    /**
+     * Sets the number of records processed by the shard's worker.
+     *
+     * @param recordsProcessed The number of processed records to set
+     */
+    public void setRecordsProcessed(long recordsProcessed) {
+        this.recordsProcessed = recordsProcessed;
+    }
+
+    /**
+     * Gets the number of GetRecords calls made by the shard's worker.
+     *
+     * @return The number of GetRecords calls
+     */
+    public long getGetRecordsCalls() {
+        return getRecordsCalls;
+    }
+
+    /**
+     * Sets the number of GetRecords calls made by the shard's worker.
+     *
+     * @param getRecordsCalls The number of GetRecords calls to set
+     */
+    public void setGetRecordsCalls(long getRecordsCalls) {
+        this.getRecordsCalls = getRecordsCalls;
+    }
+
+    /**
+     * Gets the current wait before the next GetRecords call, in milliseconds.
+     *
+     * @return The poll interval
+     */
+    public long getPollIntervalMillis() {
+        return pollIntervalMillis;
+    }
+
+    /**
+     * Sets the current wait before the next GetRecords call, in milliseconds.
+     *
+     * @param pollIntervalMillis The poll interval to set
+     */
+    public void setPollIntervalMillis(long pollIntervalMillis) {
+        this.pollIntervalMillis = pollIntervalMillis;
+    }
+
+    /**
+     * Gets the sequence number of the last processed record.
+     *
+     * @return The sequence number
+     */
+    public String getLastSequenceNumber() {
+        return lastSequenceNumber;
+    }
+
+    /**
+     * Sets the sequence number of the last processed record.
+     *
+     * @param lastSequenceNumber The sequence number to set
+     */
+    public void setLastSequenceNumber(String lastSequenceNumber) {
+        this.lastSequenceNumber = lastSequenceNumber;
+    }
+
+    /**
+     * Gets the number of fetched pages waiting to be processed. A full buffer means processing is the bottleneck.
+     *
+     * @return The number of prefetched pages
+     */
+    public int getPrefetchedPages() {
+        return prefetchedPages;
+    }
+
+    /**
+     * Sets the number of fetched pages waiting to be processed.
+     *
+     * @param prefetchedPages The number of prefetched pages to set
+     */
+    public void setPrefetchedPages(int prefetchedPages) {
+        this.prefetchedPages = prefetchedPages;
+    }
+
+    @Override
+    public String toString() {
+        return "ShardStats{" +
+                "shardId='" + shardId + '\'' +
+                ", lagMillis=" + lagMillis +
+                ", recordsProcessed=" + recordsProcessed +
+                ", getRecordsCalls=" + getRecordsCalls +
+                ", pollIntervalMillis=" + pollIntervalMillis +
+                ", lastSequenceNumber='" + lastSequenceNumber + '\'' +
+                ", prefetchedPages=" + prefetchedPages +
+                '}';
+    }
+}
@@ -0,0 +1,203 @@
+package com.cohortmgmt.model;
+
+/**
+ * Metrics of one stage of the staged ingestion pipeline.
+ */
+public class StageStats {
+    private String stage;
+    private int threads;
+    private int queueDepth;
+    private int queueCapacity;
+    private long processed;
+    private long batches;
+    private long publisherWaits;
+    private long busyMillis;
+
+    /**
+     * Default constructor for serialization/deserialization.
+     */
+    public StageStats() {
+    }
+
+    /**
+     * Creates new stage metrics.
+     *
+     * @param stage The stage name
+     * @param threads The number of threads running the stage
+     * @param queueDepth The number of items waiting in the stage's input rings
+     * @param queueCapacity The total number of slots in the stage's input rings
+     * @param processed The number of items processed
+     * @param batches The number of batches processed
+     * @param publisherWaits The number of times a producer found an input ring full
+     * @param busyMillis The total time spent processing
+     */
+    public StageStats(String stage, int threads, int queueDepth, int queueCapacity,
+                      long processed, long batches, long publisherWaits, long busyMillis) {
+        this.stage = stage;
+        this.threads = threads;
+        this.queueDepth = queueDepth;
+        this.queueCapacity = queueCapacity;
+        this.processed = processed;
+        this.batches = batches;
+        this.publisherWaits = publisherWaits;
+        this.busyMillis = busyMillis;
+    }
+
+    /**
+     * Gets the stage name.
+     *
+     * @return The stage name
+     */
+    public String getStage() {
+        return stage;
+    }
+
+    /**
+     * Sets the stage name.
+     *
+     * @param stage The stage name to set
+     */
+    public void setStage(String stage) {
+        this.stage = stage;
+    }
+
+    /**
+     * Gets the number of threads running the stage.
+     *
+     * @return The thread count
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of threads running the stage.
+     *
+     * @param threads The thread count to set
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Gets the number of items waiting in the stage's input rings.
+     *
+     * @return The queue depth
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Sets the number of items waiting in the stage's input rings.
+     *
+     * @param queueDepth The queue depth to set
+     */
+    public void setQueueDepth(int queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * Gets the total number of slots in the stage's input rings.
+     *
+     * @return The queue capacity
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Sets the total number of slots in the stage's input rings.
+     *
+     * @param queueCapacity The queue capacity to set
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Gets the number of items the stage has processed.
+     *
+     * @return The number of processed items
+     */
+    public long getProcessed() {
+        return processed;
+    }
+
+    /**
+     * Sets the number of items the stage has processed.
+     *
+     * @param processed The number of processed items to set
+     */
+    public void setProcessed(long processed) {
+        this.processed = processed;
+    }
+
+    /**
+     * Gets the number of batches the stage has processed.
+     *
+     * @return The number of batches
+     */
+    public long getBatches() {
+        return batches;
+    }
+
+    /**
+     * Sets the number of batches the stage has processed.
+     *
+     * @param batches The number of batches to set
+     */
+    public void setBatches(long batches) {
+        this.batches = batches;
+    }
+
+    /**
+     * Gets the number of times a producer found an input ring of the stage full.
+     *
+     * @return The number of publisher waits
+     */
+    public long getPublisherWaits() {
+        return publisherWaits;
+    }
+
+    /**
+     * Sets the number of times a producer found an input ring of the stage full.
+     *
+     * @param publisherWaits The number of publisher waits to set
+     */
+    public void setPublisherWaits(long publisherWaits) {
+        this.publisherWaits = publisherWaits;
+    }
+
+    /**
+     * Gets the total time the stage's threads spent processing in milliseconds.
+     *
+     * @return The busy time
+     */
+    public long getBusyMillis() {
+        return busyMillis;
+    }
+
+    /**
+     * Sets the total time the stage's threads spent processing in milliseconds.
+     *
+     * @param busyMillis The busy time to set
+     */
+    public void setBusyMillis(long busyMillis) {
+        this.busyMillis = busyMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "StageStats{" +
+                "stage='" + stage + '\'' +
+                ", threads=" + threads +
+                ", queueDepth=" + queueDepth +
+                ", queueCapacity=" + queueCapacity +
+                ", processed=" + processed +
+                ", batches=" + batches +
+                ", publisherWaits=" + publisherWaits +
+                ", busyMillis=" + busyMillis +
+                '}';
+    }
+}
@@ -0,0 +1,105 @@
+package com.cohortmgmt.model;
+
+/**
+ * Thread usage of the service, for comparing the platform and virtual thread modes under load.
+ * Virtual threads are not counted by the JVM's thread metrics, so the counts cover platform threads only.
+ */
+public class ThreadStats {
+    private boolean virtualThreads;
+    private int platformThreads;
+    private int peakPlatformThreads;
+    private long startedPlatformThreads;
+
+    /**
+     * Default constructor for serialization/deserialization.
+     */
+    public ThreadStats() {
+    }
+
+    /**
+     * Creates new thread metrics.
+     *
+     * @param virtualThreads Whether request handling and worker pools run on virtual threads
+     * @param platformThreads The number of live platform threads
+     * @param peakPlatformThreads The highest number of live platform threads since startup
+     * @param startedPlatformThreads The number of platform threads started since startup
+     */
+    public ThreadStats(boolean virtualThreads, int platformThreads, int peakPlatformThreads, long startedPlatformThreads) {
+        this.virtualThreads = virtualThreads;
+        this.platformThreads = platformThreads;
+        this.peakPlatformThreads = peakPlatformThreads;
+        this.startedPlatformThreads = startedPlatformThreads;
+    }
+
+    /**
+     * Gets whether virtual threads are used.
+     *
+     * @return Whether request handling and worker pools run on virtual threads
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Sets whether virtual threads are used.
+     *
+     * @param virtualThreads Whether request handling and worker pools run on virtual threads
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Gets the number of live platform threads.
+     *
+     * @return The number of live platform threads
+     */
+    public int getPlatformThreads() {
+        return platformThreads;
+    }
+
+    /**
+     * Sets the number of live platform threads.
+     *
+     * @param platformThreads The number of live platform threads
+     */
+    public void setPlatformThreads(int platformThreads) {
+        this.platformThreads = platformThreads;
+    }
+
+    /**
+     * Gets the highest number of live platform threads since startup.
+     *
+     * @return The highest number of live platform threads since startup
+     */
+    public int getPeakPlatformThreads() {
+        return peakPlatformThreads;
+    }
+
+    /**
+     * Sets the highest number of live platform threads since startup.
+     *
+     * @param peakPlatformThreads The highest number of live platform threads since startup
+     */
+    public void setPeakPlatformThreads(int peakPlatformThreads) {
+        this.peakPlatformThreads = peakPlatformThreads;
+    }
+
+    /**
+     * Gets the number of platform threads started since startup.
+     *
+     * @return The number of platform threads started since startup
+     */
+    public long getStartedPlatformThreads() {
+        return startedPlatformThreads;
+    }
+
+    /**
+     * Sets the number of platform threads started since startup.
+     *
+     * @param startedPlatformThreads The number of platform threads started since startup
+     */
+    public void setStartedPlatformThreads(long startedPlatformThreads) {
+        this.startedPlatformThreads = startedPlatformThreads;
+    }
+}
@@ -3,6 +3,7 @@ package com.cohortmgmt.repository;
 import com.cohortmgmt.model.CohortType;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -23,11 +24,41 @@ public interface CohortRepository {
      */
     boolean addCustomerToCohortType(CohortType cohortType, String customerId);
     
+    /**
+     * Adds many customers to their cohort types in batches (needed for bulk classification).
+     * Unlike {@link #addCustomerToCohortType(CohortType, String)} this does not read before writing:
+     * memberships are keyed by cohort type, so writing an existing membership again is a no-op.
+     *
+     * @param memberships The cohort types to add, keyed by customer ID
+     */
+    void addCustomersToCohortTypes(Map<String, Set<CohortType>> memberships);
+    
+    /**
+     * Removes many customers from cohort types in batches (needed when customers leave a cohort).
+     * Every item of a removed membership is deleted, whatever its sort key. Removing a membership that
+     * doesn't exist is a no-op.
+     *
+     * @param memberships The cohort types to remove, keyed by customer ID
+     */
+    void removeCustomersFromCohortTypes(Map<String, Set<CohortType>> memberships);
+    
+    /**
+     * Makes the stored cohort types of many customers equal to the given ones (needed when customers are
+     * reclassified). The stored memberships of every customer are read first, and only the memberships to add
+     * or remove are written, in batches. A customer mapped to no cohort types is removed from all of them.
+     *
+     * @param memberships The cohort types every customer should be in, keyed by customer ID
+     * @return The cohort types that were added or removed, keyed by the customers whose memberships changed
+     * @throws RuntimeException If the memberships could not be read or written; part of them may have been written
+     */
+    Map<String, Set<CohortType>> replaceCustomersCohortTypes(Map<String, Set<CohortType>> memberships);
+    
     /**
      * Gets all customer IDs in a cohort type (for query #3).
      *
      * @param cohortType The type of the cohort
-     * @return The set of customer IDs in the cohort type
+     * @return The set of customer IDs in the cohort type; it may be shared with concurrent callers,
+     *         so it must not be changed
      */
     Set<String> getCustomerIdsByCohortType(CohortType cohortType);
     
@@ -35,7 +66,8 @@ public interface CohortRepository {
      * Gets all cohort types that contain a specific customer (for query #2).
      *
      * @param customerId The ID of the customer
-     * @return The list of cohort types containing the customer
+     * @return The list of cohort types containing the customer; it may be shared with concurrent callers,
+     *         so it must not be changed
      */
     List<CohortType> findCohortTypesByCustomerId(String customerId);
     
@@ -0,0 +1,209 @@
+package com.cohortmgmt.repository;
+
+import com.cohortmgmt.model.Customer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of customers read by ID.
+ *
+ * The cache is split into independently locked segments, each a least-recently-used map, so concurrent
+ * lookups of different customers rarely wait for each other. Entries expire after a time to live, which bounds
+ * how long a change written by another instance can go unseen. Customers are copied in and out, so callers
+ * cannot change the cached state.
+ *
+ * Loads and writes are kept apart: a write always replaces the entry, while a load only adds one if there is
+ * none. A load that read the customer before a concurrent write therefore never overwrites the written state.
+ * Every write, including a bulk write of a customer that is not cached, also bumps a write stamp for the
+ * customer, and a load is only cached if the stamp it took before reading the table is unchanged, so a load
+ * that completes after a write of an uncached customer is dropped as well. Stamps are kept in fixed slots
+ * per segment, so customers sharing a slot at most drop each other's loads.
+ */
+class CustomerCache {
+    
+    private static final int SEGMENTS = 16;
+    private static final int STAMP_SLOTS = 256;
+    
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long ttlNanos;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    
+    /**
+     * Creates a new CustomerCache.
+     *
+     * @param capacity The maximum number of customers cached
+     * @param ttlMillis How long a customer stays cached
+     */
+    CustomerCache(int capacity, long ttlMillis) {
+        if (capacity < SEGMENTS) {
+            throw new IllegalArgumentException("Capacity must be at least " + SEGMENTS);
+        }
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(capacity / SEGMENTS);
+        }
+    }
+    
+    /**
+     * Gets a cached customer.
+     *
+     * @param customerId The customer ID
+     * @return A copy of the customer, or null if it is not cached or has expired
+     */
+    Customer get(String customerId) {
+        Segment segment = segmentFor(customerId);
+        Entry entry;
+        synchronized (segment) {
+            entry = segment.get(customerId);
+            if (entry != null && isExpired(entry)) {
+                segment.remove(customerId);
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return copy(entry.customer);
+    }
+    
+    /**
+     * Gets the write stamp of a customer, to be taken before the customer is read from the table.
+     *
+     * @param customerId The customer ID
+     * @return The write stamp to pass to {@link #putLoaded(Customer, long)}
+     */
+    long loadStamp(String customerId) {
+        Segment segment = segmentFor(customerId);
+        synchronized (segment) {
+            return segment.writeStamps[stampSlotFor(customerId)];
+        }
+    }
+    
+    /**
+     * Caches a customer that was loaded from the table, unless a live entry exists or the customer
+     * was written since the load began.
+     *
+     * @param customer The customer
+     * @param stamp The write stamp taken with {@link #loadStamp(String)} before the customer was read
+     */
+    void putLoaded(Customer customer, long stamp) {
+        Segment segment = segmentFor(customer.getCustomerId());
+        synchronized (segment) {
+            if (segment.writeStamps[stampSlotFor(customer.getCustomerId())] != stamp) {
+                return;
+            }
+            Entry existing = segment.get(customer.getCustomerId());
+            if (existing == null || isExpired(existing)) {
+                segment.put(customer.getCustomerId(), new Entry(copy(customer)));
+            }
+        }
+    }
+    
+    /**
+     * Caches a customer that was written to the table, replacing any entry.
+     *
+     * @param customer The customer
+     */
+    void putWritten(Customer customer) {
+        Segment segment = segmentFor(customer.getCustomerId());
+        synchronized (segment) {
+            segment.writeStamps[stampSlotFor(customer.getCustomerId())]++;
+            segment.put(customer.getCustomerId(), new Entry(copy(customer)));
+        }
+    }
+    
+    /**
+     * Replaces the entry of a customer that was written to the table, but only if the customer is cached,
+     * so bulk writes do not push out the customers that are actually looked up. Loads of the customer that are
+     * still in flight are dropped either way.
+     *
+     * @param customer The customer
+     */
+    void refreshWritten(Customer customer) {
+        Segment segment = segmentFor(customer.getCustomerId());
+        synchronized (segment) {
+            segment.writeStamps[stampSlotFor(customer.getCustomerId())]++;
+            if (segment.containsKey(customer.getCustomerId())) {
+                segment.put(customer.getCustomerId(), new Entry(copy(customer)));
+            }
+        }
+    }
+    
+    /**
+     * Gets the number of lookups answered from the cache.
+     *
+     * @return The number of hits
+     */
+    long getHits() {
+        return hits.get();
+    }
+    
+    /**
+     * Gets the number of lookups that had to read the table.
+     *
+     * @return The number of misses
+     */
+    long getMisses() {
+        return misses.get();
+    }
+    
+    private Segment segmentFor(String customerId) {
+        return segments[Math.floorMod(spread(customerId), SEGMENTS)];
+    }
+    
+    private static int stampSlotFor(String customerId) {
+        // The low bits already pick the segment
+        return (spread(customerId) >>> 4) & (STAMP_SLOTS - 1);
+    }
+    
+    private static int spread(String customerId) {
+        int hash = customerId.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+    
+    private boolean isExpired(Entry entry) {
+        return System.nanoTime() - entry.cachedAt > ttlNanos;
+    }
+    
+    private static Customer copy(Customer customer) {
+        return new Customer(customer.getCustomerId(), customer.getDailySpend(), customer.getUserType());
+    }
+    
+    /**
+     * A cached customer and when it was cached.
+     */
+    private static class Entry {
+        
+        private final Customer customer;
+        private final long cachedAt = System.nanoTime();
+        
+        private Entry(Customer customer) {
+            this.customer = customer;
+        }
+    }
+    
+    /**
+     * A least-recently-used map holding one share of the entries. Guarded by itself.
+     */
+    private static class Segment extends LinkedHashMap<String, Entry> {
+        
+        private final int capacity;
+        private final long[] writeStamps = new long[STAMP_SLOTS];
+        
+        private Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > capacity;
+        }
+    }
+}
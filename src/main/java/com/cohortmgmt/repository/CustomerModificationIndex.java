@@ -0,0 +1,58 @@
+package com.cohortmgmt.repository;
+
+/**
+ * Layout of the Customers table index that finds customers by modification time.
+ *
+ * Every write stamps a customer with the time it was written and with a shard key made of the start of the
+ * time bucket that time falls into and a shard number chosen by the customer ID, e.g. {@code 1700000040000#3}.
+ * The index is keyed by shard key and sorted by modification time, so the customers changed after a point in
+ * time are read with one query per shard of every bucket since then, at a cost that follows the rate of change
+ * rather than the size of the table. Within a bucket, writes are spread over as many partition keys as there
+ * are shards, so a burst of writes does not pile onto one partition of the index. Writers and readers must use
+ * the same bucket width and shard count.
+ */
+public final class CustomerModificationIndex {
+    
+    public static final String INDEX_NAME = "ModifiedShardIndex";
+    public static final String SHARD_ATTR = "modifiedShard";
+    public static final String LAST_MODIFIED_ATTR = "lastModified";
+    
+    private CustomerModificationIndex() {
+    }
+    
+    /**
+     * Gets the bucket a modification time falls into.
+     *
+     * @param millis The modification time in epoch milliseconds
+     * @param bucketMillis The width of a bucket in milliseconds
+     * @return The start of the bucket in epoch milliseconds
+     */
+    public static long bucketOf(long millis, long bucketMillis) {
+        return Math.floorDiv(millis, bucketMillis) * bucketMillis;
+    }
+    
+    /**
+     * Gets the shard key a customer modified at a time is stamped with.
+     *
+     * @param customerId The customer ID
+     * @param millis The modification time in epoch milliseconds
+     * @param bucketMillis The width of a bucket in milliseconds
+     * @param shards The number of shards per bucket
+     * @return The shard key
+     */
+    public static String shardKeyOf(String customerId, long millis, long bucketMillis, int shards) {
+        int hash = customerId.hashCode();
+        return shardKey(bucketOf(millis, bucketMillis), Math.floorMod(hash ^ (hash >>> 16), shards));
+    }
+    
+    /**
+     * Gets the shard key of one shard of a bucket.
+     *
+     * @param bucket The start of the bucket in epoch milliseconds
+     * @param shard The shard number, from 0 to the number of shards minus one
+     * @return The shard key
+     */
+    public static String shardKey(long bucket, int shard) {
+        return bucket + "#" + shard;
+    }
+}
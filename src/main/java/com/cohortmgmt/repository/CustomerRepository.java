@@ -2,6 +2,9 @@ package com.cohortmgmt.repository;
 
 import com.cohortmgmt.model.Customer;
 
+import java.util.List;
+import java.util.Optional;
+
 /**
  * Repository interface for storing customer data.
  * Minimized to support only the required operations.
@@ -16,4 +19,20 @@ public interface CustomerRepository {
      * @return The saved customer
      */
     Customer save(Customer customer);
+    
+    /**
+     * Saves a batch of customers without classifying them.
+     * Used by bulk jobs that classify in batches themselves.
+     *
+     * @param customers The customers to save
+     */
+    void saveAll(List<Customer> customers);
+    
+    /**
+     * Finds a customer by ID.
+     *
+     * @param customerId The customer ID
+     * @return The customer, or empty if there is no customer with this ID
+     */
+    Optional<Customer> findById(String customerId);
 }
@@ -0,0 +1,71 @@
+package com.cohortmgmt.repository;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Helper for writing many items to one table with BatchWriteItem.
+ *
+ * Requests are sent in groups of 25 (the BatchWriteItem limit). Unprocessed items, which DynamoDB
+ * returns when a batch is throttled, are resent with exponential backoff until they are written
+ * or the attempts run out.
+ */
+final class DynamoDBBatchWriter {
+    
+    static final int MAX_BATCH_SIZE = 25;
+    
+    private static final int MAX_ATTEMPTS = 8;
+    private static final long BASE_BACKOFF_MILLIS = 25;
+    private static final long MAX_BACKOFF_MILLIS = 2000;
+    
+    private DynamoDBBatchWriter() {
+    }
+    
+    /**
+     * Writes all requests to a table.
+     *
+     * @param amazonDynamoDB The DynamoDB client
+     * @param tableName The table to write to
+     * @param requests The put or delete requests
+     * @throws IllegalStateException If some items are still unprocessed after all attempts
+     */
+    static void writeAll(AmazonDynamoDB amazonDynamoDB, String tableName, List<WriteRequest> requests) {
+        for (int from = 0; from < requests.size(); from += MAX_BATCH_SIZE) {
+            List<WriteRequest> batch = requests.subList(from, Math.min(requests.size(), from + MAX_BATCH_SIZE));
+            writeBatch(amazonDynamoDB, tableName, new ArrayList<>(batch));
+        }
+    }
+    
+    private static void writeBatch(AmazonDynamoDB amazonDynamoDB, String tableName, List<WriteRequest> batch) {
+        Map<String, List<WriteRequest>> pending = Collections.singletonMap(tableName, batch);
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            BatchWriteItemResult result = amazonDynamoDB.batchWriteItem(new BatchWriteItemRequest(pending));
+            Map<String, List<WriteRequest>> unprocessed = result.getUnprocessedItems();
+            if (unprocessed == null || unprocessed.isEmpty()) {
+                return;
+            }
+            pending = unprocessed;
+            backoff(attempt);
+        }
+        throw new IllegalStateException("Items still unprocessed after " + MAX_ATTEMPTS
+                + " BatchWriteItem attempts on table " + tableName);
+    }
+    
+    private static void backoff(int attempt) {
+        long delay = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << attempt);
+        try {
+            // Full jitter keeps parallel writers from retrying in lockstep
+            Thread.sleep((long) (Math.random() * delay) + 1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying unprocessed items", e);
+        }
+    }
+}
@@ -4,7 +4,15 @@ import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.document.*;
 import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
 import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.DeleteRequest;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.cohortmgmt.logging.SampledLogger;
 import com.cohortmgmt.model.CohortType;
+import com.cohortmgmt.service.concurrency.SingleFlight;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,11 +27,23 @@ import java.util.*;
  * 1. Determine if a given CustomerId is part of a specific cohort type
  * 2. List all cohort types associated with a given CustomerId
  * 3. Retrieve all CustomerIds for a specific cohort type
+ *
+ * Concurrent identical reads are coalesced: while a query for a customer or cohort type is in flight, further
+ * reads of it wait for that query and share its result, so a burst of callers asking for the same popular cohort
+ * costs one query rather than one each. Writes detach the queries in flight for the keys they change, so a read
+ * that starts after a write never receives a result read before it.
+ *
+ * Memberships are written with the cohort type as the sort key. Items written before that carry a random UUID
+ * as the sort key and are left in place: reads only look at the cohort type attribute, so they count the same,
+ * and removals read the customer's items to delete every item of a membership, whichever key it was written
+ * with. The old items therefore need no backfill and disappear as customers leave their cohorts.
  */
 @Repository
 public class DynamoDBCohortRepository implements CohortRepository {
     
     private static final Logger logger = LoggerFactory.getLogger(DynamoDBCohortRepository.class);
+    // Every read and write of a membership can fail the same way while DynamoDB is unavailable
+    private static final SampledLogger failureLog = SampledLogger.forSite(logger, "failure", 5, 100);
     
     private static final String CUSTOMER_ID_ATTR = "customerId";
     private static final String UUID_ATTR = "uuid";
@@ -33,6 +53,9 @@ public class DynamoDBCohortRepository implements CohortRepository {
     private final AmazonDynamoDB amazonDynamoDB;
     private final DynamoDB dynamoDB;
     private final String tableName;
+    private final SingleFlight<CohortType, Set<String>> cohortTypeReads = new SingleFlight<>();
+    private final SingleFlight<String, List<CohortType>> customerReads = new SingleFlight<>();
+    private final SingleFlight<String, Boolean> membershipReads = new SingleFlight<>();
     
     @Autowired
     public DynamoDBCohortRepository(
@@ -51,39 +74,112 @@ public class DynamoDBCohortRepository implements CohortRepository {
         }
         
         try {
-            // First check if this customer is already in this cohort type
-            if (isCustomerInCohortType(customerId, cohortType)) {
-                logger.info("Customer {} is already in cohort type {}, skipping addition", customerId, cohortType);
-                return true; // Already in the cohort type, consider it a success
-            }
-            
-            // Add a new entry for this customer with the cohort type
+            // The cohort type doubles as the sort key, so adding an existing membership again
+            // overwrites the same item and no read is needed first
             Table table = dynamoDB.getTable(tableName);
             
-            String uuid = java.util.UUID.randomUUID().toString();
             Item item = new Item()
-                    .withPrimaryKey(CUSTOMER_ID_ATTR, customerId, UUID_ATTR, uuid)
+                    .withPrimaryKey(CUSTOMER_ID_ATTR, customerId, UUID_ATTR, cohortType.name())
                     .withString(COHORT_TYPE_ATTR, cohortType.name());
             
-            // Explicitly log the item to see what's being saved
-            logger.info("Saving item to Cohorts table: {}", item.toJSON());
-            
             table.putItem(item);
+            forget(customerId, cohortType);
             
-            logger.info("Added customer {} to cohort type {}", customerId, cohortType);
+            logger.debug("Added customer {} to cohort type {}", customerId, cohortType);
             return true;
         } catch (Exception e) {
-            logger.error("Error adding customer {} to cohort type {}: {}", customerId, cohortType, e.getMessage(), e);
+            failureLog.error("Error adding customer {} to cohort type {}: {}", customerId, cohortType, e.getMessage(), e);
             return false;
         }
     }
     
+    @Override
+    public void addCustomersToCohortTypes(Map<String, Set<CohortType>> memberships) {
+        List<WriteRequest> requests = new ArrayList<>();
+        memberships.forEach((customerId, cohortTypes) -> {
+            for (CohortType cohortType : cohortTypes) {
+                // The cohort type doubles as the sort key, so the put is idempotent and needs no read first
+                requests.add(new WriteRequest(new PutRequest(membershipItem(customerId, cohortType))));
+            }
+        });
+        
+        try {
+            DynamoDBBatchWriter.writeAll(amazonDynamoDB, tableName, requests);
+        } finally {
+            // Part of the batches may have been written even if the rest failed
+            forget(memberships);
+        }
+        logger.debug("Added {} cohort memberships in batches", requests.size());
+    }
+    
+    @Override
+    public void removeCustomersFromCohortTypes(Map<String, Set<CohortType>> memberships) {
+        List<WriteRequest> requests = new ArrayList<>();
+        try {
+            memberships.forEach((customerId, cohortTypes) -> {
+                // Items written before the cohort type became the sort key carry a random UUID, so the keys to
+                // delete are read from the customer's items rather than derived from the cohort type
+                queryMembershipKeys(customerId).forEach((cohortType, sortKeys) -> {
+                    if (cohortTypes.contains(cohortType)) {
+                        for (String sortKey : sortKeys) {
+                            requests.add(new WriteRequest(new DeleteRequest(key(customerId, sortKey))));
+                        }
+                    }
+                });
+            });
+            
+            DynamoDBBatchWriter.writeAll(amazonDynamoDB, tableName, requests);
+        } finally {
+            forget(memberships);
+        }
+        logger.debug("Removed {} cohort memberships in batches", requests.size());
+    }
+    
+    @Override
+    public Map<String, Set<CohortType>> replaceCustomersCohortTypes(Map<String, Set<CohortType>> memberships) {
+        List<WriteRequest> requests = new ArrayList<>();
+        Map<String, Set<CohortType>> changed = new HashMap<>();
+        try {
+            memberships.forEach((customerId, cohortTypes) -> {
+                Map<CohortType, List<String>> stored = queryMembershipKeys(customerId);
+                Set<CohortType> customerChanged = EnumSet.noneOf(CohortType.class);
+                for (CohortType cohortType : cohortTypes) {
+                    if (!stored.containsKey(cohortType)) {
+                        requests.add(new WriteRequest(new PutRequest(membershipItem(customerId, cohortType))));
+                        customerChanged.add(cohortType);
+                    }
+                }
+                stored.forEach((cohortType, sortKeys) -> {
+                    if (!cohortTypes.contains(cohortType)) {
+                        for (String sortKey : sortKeys) {
+                            requests.add(new WriteRequest(new DeleteRequest(key(customerId, sortKey))));
+                        }
+                        customerChanged.add(cohortType);
+                    }
+                });
+                if (!customerChanged.isEmpty()) {
+                    changed.put(customerId, customerChanged);
+                }
+            });
+            
+            DynamoDBBatchWriter.writeAll(amazonDynamoDB, tableName, requests);
+        } finally {
+            forget(changed);
+        }
+        logger.debug("Replaced cohort types of {} customers with {} writes", memberships.size(), requests.size());
+        return changed;
+    }
+    
     @Override
     public Set<String> getCustomerIdsByCohortType(CohortType cohortType) {
         if (cohortType == null) {
             return Collections.emptySet();
         }
         
+        return cohortTypeReads.execute(cohortType, () -> queryCustomerIdsByCohortType(cohortType));
+    }
+    
+    private Set<String> queryCustomerIdsByCohortType(CohortType cohortType) {
         try {
             // Query the GSI for items with this cohort type
             Table table = dynamoDB.getTable(tableName);
@@ -102,10 +198,10 @@ public class DynamoDBCohortRepository implements CohortRepository {
                 customerIds.add(customerId);
             });
             
-            logger.info("Found {} customers for cohort type {}", customerIds.size(), cohortType);
-            return customerIds;
+            logger.debug("Found {} customers for cohort type {}", customerIds.size(), cohortType);
+            return Collections.unmodifiableSet(customerIds);
         } catch (Exception e) {
-            logger.error("Error getting customer IDs for cohort type {}: {}", cohortType, e.getMessage(), e);
+            failureLog.error("Error getting customer IDs for cohort type {}: {}", cohortType, e.getMessage(), e);
             return Collections.emptySet();
         }
     }
@@ -116,6 +212,10 @@ public class DynamoDBCohortRepository implements CohortRepository {
             return Collections.emptyList();
         }
         
+        return customerReads.execute(customerId, () -> queryCohortTypesByCustomerId(customerId));
+    }
+    
+    private List<CohortType> queryCohortTypesByCustomerId(String customerId) {
         try {
             List<CohortType> cohortTypes = new ArrayList<>();
             Table table = dynamoDB.getTable(tableName);
@@ -144,11 +244,11 @@ public class DynamoDBCohortRepository implements CohortRepository {
                 }
             }
             
-            logger.info("Found {} cohort types for customer {}", cohortTypes.size(), customerId);
-            return cohortTypes;
+            logger.debug("Found {} cohort types for customer {}", cohortTypes.size(), customerId);
+            return Collections.unmodifiableList(cohortTypes);
         } catch (Exception e) {
-            logger.error("Error finding cohort types for customer {}: {}", customerId, e.getMessage(), e);
-            return new ArrayList<>();
+            failureLog.error("Error finding cohort types for customer {}: {}", customerId, e.getMessage(), e);
+            return Collections.emptyList();
         }
     }
     
@@ -158,6 +258,11 @@ public class DynamoDBCohortRepository implements CohortRepository {
             return false;
         }
         
+        return membershipReads.execute(membershipKey(customerId, cohortType),
+                () -> queryCustomerInCohortType(customerId, cohortType));
+    }
+    
+    private boolean queryCustomerInCohortType(String customerId, CohortType cohortType) {
         try {
             Table table = dynamoDB.getTable(tableName);
             
@@ -176,8 +281,72 @@ public class DynamoDBCohortRepository implements CohortRepository {
             logger.debug("Customer {} is {} cohort type {}", customerId, result ? "in" : "not in", cohortType);
             return result;
         } catch (Exception e) {
-            logger.error("Error checking if customer {} is in cohort type {}: {}", customerId, cohortType, e.getMessage(), e);
+            failureLog.error("Error checking if customer {} is in cohort type {}: {}", customerId, cohortType, e.getMessage(), e);
             return false;
         }
     }
+    
+    /**
+     * Reads the sort keys of a customer's membership items with a strongly consistent query. A membership
+     * written both before and after the cohort type became the sort key has two items, so a cohort type may
+     * have several keys.
+     *
+     * @param customerId The ID of the customer
+     * @return The sort keys of the customer's items, by cohort type
+     */
+    private Map<CohortType, List<String>> queryMembershipKeys(String customerId) {
+        Map<CohortType, List<String>> keys = new EnumMap<>(CohortType.class);
+        Map<String, AttributeValue> startKey = null;
+        do {
+            QueryResult result = amazonDynamoDB.query(new QueryRequest()
+                    .withTableName(tableName)
+                    .withKeyConditionExpression(CUSTOMER_ID_ATTR + " = :customerId")
+                    .withExpressionAttributeValues(Collections.singletonMap(":customerId", new AttributeValue(customerId)))
+                    .withConsistentRead(true)
+                    .withExclusiveStartKey(startKey));
+            for (Map<String, AttributeValue> item : result.getItems()) {
+                AttributeValue cohortTypeName = item.get(COHORT_TYPE_ATTR);
+                try {
+                    CohortType cohortType = CohortType.valueOf(cohortTypeName.getS());
+                    keys.computeIfAbsent(cohortType, type -> new ArrayList<>()).add(item.get(UUID_ATTR).getS());
+                } catch (IllegalArgumentException | NullPointerException e) {
+                    logger.error("Invalid cohort type name: {}", cohortTypeName);
+                }
+            }
+            startKey = result.getLastEvaluatedKey();
+        } while (startKey != null && !startKey.isEmpty());
+        return keys;
+    }
+    
+    private static Map<String, AttributeValue> membershipItem(String customerId, CohortType cohortType) {
+        Map<String, AttributeValue> item = key(customerId, cohortType.name());
+        item.put(COHORT_TYPE_ATTR, new AttributeValue(cohortType.name()));
+        return item;
+    }
+    
+    private static Map<String, AttributeValue> key(String customerId, String sortKey) {
+        Map<String, AttributeValue> key = new HashMap<>();
+        key.put(CUSTOMER_ID_ATTR, new AttributeValue(customerId));
+        key.put(UUID_ATTR, new AttributeValue(sortKey));
+        return key;
+    }
+    
+    private void forget(Map<String, Set<CohortType>> memberships) {
+        memberships.forEach((customerId, cohortTypes) -> {
+            for (CohortType cohortType : cohortTypes) {
+                forget(customerId, cohortType);
+            }
+        });
+    }
+    
+    private void forget(String customerId, CohortType cohortType) {
+        customerReads.forget(customerId);
+        cohortTypeReads.forget(cohortType);
+        membershipReads.forget(membershipKey(customerId, cohortType));
+    }
+    
+    private static String membershipKey(String customerId, CohortType cohortType) {
+        // Cohort type names contain no colon, so the key is unambiguous
+        return cohortType.name() + ":" + customerId;
+    }
 }
@@ -4,9 +4,21 @@ import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.document.DynamoDB;
 import com.amazonaws.services.dynamodbv2.document.Item;
 import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
 import com.cohortmgmt.model.CohortType;
 import com.cohortmgmt.model.Customer;
+import com.cohortmgmt.model.UserType;
 import com.cohortmgmt.service.CohortService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,6 +29,9 @@ import org.springframework.stereotype.Repository;
 /**
  * DynamoDB implementation of the CustomerRepository interface.
  * Minimized to support only the required operations.
+ * Every write stamps the customer with its modification time and bucket, see {@link CustomerModificationIndex}.
+ * Lookups by ID read only the attributes a customer consists of, through a {@link CustomerCache}
+ * that writes keep up to date.
  */
 @Repository
 public class DynamoDBCustomerRepository implements CustomerRepository {
@@ -31,17 +46,27 @@ public class DynamoDBCustomerRepository implements CustomerRepository {
     private final DynamoDB dynamoDB;
     private final String tableName;
     private final CohortService cohortService;
+    private final long bucketMillis;
+    private final int bucketShards;
+    private final CustomerCache cache;
     
     @Autowired
     public DynamoDBCustomerRepository(
             AmazonDynamoDB amazonDynamoDB,
             DynamoDB dynamoDB,
             CohortService cohortService,
-            @Value("${aws.dynamodb.customer-table}") String tableName) {
+            @Value("${aws.dynamodb.customer-table}") String tableName,
+            @Value("${trigger.incremental.bucket-millis:60000}") long bucketMillis,
+            @Value("${trigger.incremental.bucket-shards:8}") int bucketShards,
+            @Value("${customer-cache.capacity:65536}") int cacheCapacity,
+            @Value("${customer-cache.ttl-millis:60000}") long cacheTtlMillis) {
         this.amazonDynamoDB = amazonDynamoDB;
         this.dynamoDB = dynamoDB;
         this.cohortService = cohortService;
         this.tableName = tableName;
+        this.bucketMillis = bucketMillis;
+        this.bucketShards = bucketShards;
+        this.cache = new CustomerCache(cacheCapacity, cacheTtlMillis);
     }
     
     @Override
@@ -53,20 +78,24 @@ public class DynamoDBCustomerRepository implements CustomerRepository {
         try {
             Table table = dynamoDB.getTable(tableName);
             
+            long now = System.currentTimeMillis();
             Item item = new Item()
                     .withPrimaryKey(CUSTOMER_ID_ATTR, customer.getCustomerId())
                     .withDouble(DAILY_SPEND_ATTR, customer.getDailySpend())
-                    .withString(USER_TYPE_ATTR, customer.getUserType().name());
+                    .withString(USER_TYPE_ATTR, customer.getUserType().name())
+                    .withLong(CustomerModificationIndex.LAST_MODIFIED_ATTR, now)
+                    .withString(CustomerModificationIndex.SHARD_ATTR,
+                            CustomerModificationIndex.shardKeyOf(customer.getCustomerId(), now, bucketMillis, bucketShards));
             
             table.putItem(item);
+            cache.putWritten(customer);
             
-            logger.info("Saved customer with ID: {}", customer.getCustomerId());
+            logger.debug("Saved customer with ID: {}", customer.getCustomerId());
             
             // Classify the customer into cohort types
             try {
-                logger.info("Classifying customer with ID: {}", customer.getCustomerId());
                 Set<CohortType> cohortTypes = cohortService.classifyCustomer(customer);
-                logger.info("Customer {} classified into cohort types: {}", customer.getCustomerId(), cohortTypes);
+                logger.debug("Customer {} classified into cohort types: {}", customer.getCustomerId(), cohortTypes);
             } catch (Exception e) {
                 logger.error("Error classifying customer with ID {}: {}", customer.getCustomerId(), e.getMessage(), e);
                 // Don't rethrow the exception, as we don't want to fail the save operation
@@ -78,4 +107,63 @@ public class DynamoDBCustomerRepository implements CustomerRepository {
             throw new RuntimeException("Error saving customer", e);
         }
     }
+    
+    @Override
+    public void saveAll(List<Customer> customers) {
+        List<WriteRequest> requests = new ArrayList<>(customers.size());
+        long now = System.currentTimeMillis();
+        AttributeValue lastModified = new AttributeValue().withN(Long.toString(now));
+        for (Customer customer : customers) {
+            if (customer == null || customer.getCustomerId() == null) {
+                throw new IllegalArgumentException("Customer and customer ID cannot be null");
+            }
+            Map<String, AttributeValue> item = new HashMap<>();
+            item.put(CUSTOMER_ID_ATTR, new AttributeValue(customer.getCustomerId()));
+            item.put(DAILY_SPEND_ATTR, new AttributeValue().withN(Double.toString(customer.getDailySpend())));
+            item.put(USER_TYPE_ATTR, new AttributeValue(customer.getUserType().name()));
+            item.put(CustomerModificationIndex.LAST_MODIFIED_ATTR, lastModified);
+            item.put(CustomerModificationIndex.SHARD_ATTR, new AttributeValue(
+                    CustomerModificationIndex.shardKeyOf(customer.getCustomerId(), now, bucketMillis, bucketShards)));
+            requests.add(new WriteRequest(new PutRequest(item)));
+        }
+        
+        DynamoDBBatchWriter.writeAll(amazonDynamoDB, tableName, requests);
+        for (Customer customer : customers) {
+            cache.refreshWritten(customer);
+        }
+        logger.debug("Saved {} customers in batches", customers.size());
+    }
+    
+    @Override
+    public Optional<Customer> findById(String customerId) {
+        if (customerId == null) {
+            throw new IllegalArgumentException("Customer ID cannot be null");
+        }
+        
+        Customer cached = cache.get(customerId);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        
+        long stamp = cache.loadStamp(customerId);
+        Map<String, String> names = new HashMap<>();
+        names.put("#id", CUSTOMER_ID_ATTR);
+        names.put("#spend", DAILY_SPEND_ATTR);
+        names.put("#type", USER_TYPE_ATTR);
+        GetItemResult result = amazonDynamoDB.getItem(new GetItemRequest()
+                .withTableName(tableName)
+                .withKey(Collections.singletonMap(CUSTOMER_ID_ATTR, new AttributeValue(customerId)))
+                .withProjectionExpression("#id, #spend, #type")
+                .withExpressionAttributeNames(names));
+        Map<String, AttributeValue> item = result.getItem();
+        if (item == null || item.isEmpty()) {
+            return Optional.empty();
+        }
+        
+        Customer customer = new Customer(customerId,
+                Double.parseDouble(item.get(DAILY_SPEND_ATTR).getN()),
+                UserType.valueOf(item.get(USER_TYPE_ATTR).getS()));
+        cache.putLoaded(customer, stamp);
+        return Optional.of(customer);
+    }
 }
@@ -0,0 +1,99 @@
+package com.cohortmgmt.repository;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DynamoDB implementation of the MembershipVersionRepository interface.
+ *
+ * Every version is a small item keyed by its version key, incremented with an atomic ADD update, so concurrent
+ * increments by several instances are never lost and no read is needed first. Versions are read with
+ * eventually consistent BatchGetItem calls of up to 100 keys.
+ */
+@Repository
+public class DynamoDBMembershipVersionRepository implements MembershipVersionRepository {
+    
+    /** The hash key attribute of the table. */
+    public static final String VERSION_KEY_ATTR = "versionKey";
+    private static final String VERSION_ATTR = "version";
+    private static final int MAX_BATCH_GET_SIZE = 100;
+    private static final int MAX_ATTEMPTS = 8;
+    
+    private final AmazonDynamoDB amazonDynamoDB;
+    private final String tableName;
+    
+    @Autowired
+    public DynamoDBMembershipVersionRepository(
+            AmazonDynamoDB amazonDynamoDB,
+            @Value("${aws.dynamodb.membership-version-table:MembershipVersions}") String tableName) {
+        this.amazonDynamoDB = amazonDynamoDB;
+        this.tableName = tableName;
+    }
+    
+    @Override
+    public void increment(Map<String, Long> increments) {
+        for (Map.Entry<String, Long> increment : increments.entrySet()) {
+            amazonDynamoDB.updateItem(new UpdateItemRequest()
+                    .withTableName(tableName)
+                    .withKey(key(increment.getKey()))
+                    .withUpdateExpression("ADD #version :increment")
+                    .withExpressionAttributeNames(Collections.singletonMap("#version", VERSION_ATTR))
+                    .withExpressionAttributeValues(Collections.singletonMap(":increment",
+                            new AttributeValue().withN(Long.toString(increment.getValue())))));
+        }
+    }
+    
+    @Override
+    public Map<String, Long> getAll(Collection<String> keys) {
+        Map<String, Long> versions = new HashMap<>();
+        List<String> all = new ArrayList<>(keys);
+        for (int from = 0; from < all.size(); from += MAX_BATCH_GET_SIZE) {
+            List<Map<String, AttributeValue>> batch = new ArrayList<>();
+            for (String key : all.subList(from, Math.min(all.size(), from + MAX_BATCH_GET_SIZE))) {
+                batch.add(key(key));
+            }
+            Map<String, KeysAndAttributes> pending = Collections.singletonMap(tableName, new KeysAndAttributes().withKeys(batch));
+            for (int attempt = 1; !pending.isEmpty(); attempt++) {
+                if (attempt > MAX_ATTEMPTS) {
+                    throw new IllegalStateException("Versions still unprocessed after " + MAX_ATTEMPTS + " BatchGetItem attempts");
+                }
+                BatchGetItemResult result = amazonDynamoDB.batchGetItem(new BatchGetItemRequest().withRequestItems(pending));
+                for (Map<String, AttributeValue> item : result.getResponses().getOrDefault(tableName, Collections.emptyList())) {
+                    versions.put(item.get(VERSION_KEY_ATTR).getS(), Long.parseLong(item.get(VERSION_ATTR).getN()));
+                }
+                pending = result.getUnprocessedKeys() == null ? Collections.emptyMap() : result.getUnprocessedKeys();
+                if (!pending.isEmpty()) {
+                    backoff(attempt);
+                }
+            }
+        }
+        return versions;
+    }
+    
+    private static void backoff(int attempt) {
+        try {
+            Thread.sleep(Math.min(1000L, 25L << attempt));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying unprocessed versions", e);
+        }
+    }
+    
+    private static Map<String, AttributeValue> key(String key) {
+        return Collections.singletonMap(VERSION_KEY_ATTR, new AttributeValue(key));
+    }
+}
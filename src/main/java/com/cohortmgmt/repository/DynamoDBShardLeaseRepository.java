@@ -0,0 +1,169 @@
+package com.cohortmgmt.repository;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.cohortmgmt.model.ShardLease;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DynamoDB implementation of the ShardLeaseRepository interface.
+ *
+ * Every lease is an item keyed by stream ARN and shard ID. Taking a lease is a conditional write on the lease
+ * counter, which every take and renewal increments, so of several instances that read the same lease only the
+ * first to write it wins. Only conditional writes are used, which LocalStack supports as well.
+ */
+@Repository
+public class DynamoDBShardLeaseRepository implements ShardLeaseRepository {
+    
+    private static final Logger logger = LoggerFactory.getLogger(DynamoDBShardLeaseRepository.class);
+    
+    private static final String STREAM_ARN_ATTR = "streamArn";
+    private static final String SHARD_ID_ATTR = "shardId";
+    private static final String OWNER_ATTR = "owner";
+    private static final String EXPIRES_AT_ATTR = "expiresAt";
+    private static final String LEASE_COUNTER_ATTR = "leaseCounter";
+    
+    private final AmazonDynamoDB amazonDynamoDB;
+    private final String tableName;
+    
+    @Autowired
+    public DynamoDBShardLeaseRepository(
+            AmazonDynamoDB amazonDynamoDB,
+            @Value("${aws.dynamodb.stream-lease-table:StreamLeases}") String tableName) {
+        this.amazonDynamoDB = amazonDynamoDB;
+        this.tableName = tableName;
+    }
+    
+    @Override
+    public List<ShardLease> findByStream(String streamArn) {
+        List<ShardLease> leases = new ArrayList<>();
+        Map<String, AttributeValue> startKey = null;
+        do {
+            QueryResult result = amazonDynamoDB.query(new QueryRequest()
+                    .withTableName(tableName)
+                    .withKeyConditionExpression("#stream = :stream")
+                    .withExpressionAttributeNames(Collections.singletonMap("#stream", STREAM_ARN_ATTR))
+                    .withExpressionAttributeValues(Collections.singletonMap(":stream", new AttributeValue(streamArn)))
+                    .withConsistentRead(true)
+                    .withExclusiveStartKey(startKey));
+            for (Map<String, AttributeValue> item : result.getItems()) {
+                AttributeValue owner = item.get(OWNER_ATTR);
+                leases.add(new ShardLease(item.get(SHARD_ID_ATTR).getS(),
+                        owner == null ? null : owner.getS(),
+                        Long.parseLong(item.get(EXPIRES_AT_ATTR).getN()),
+                        Long.parseLong(item.get(LEASE_COUNTER_ATTR).getN())));
+            }
+            startKey = result.getLastEvaluatedKey();
+        } while (startKey != null && !startKey.isEmpty());
+        return leases;
+    }
+    
+    @Override
+    public boolean tryAcquire(String streamArn, String shardId, String owner, ShardLease observed, long leaseMillis) {
+        String expiresAt = String.valueOf(System.currentTimeMillis() + leaseMillis);
+        try {
+            if (observed == null) {
+                Map<String, AttributeValue> item = key(streamArn, shardId);
+                item.put(OWNER_ATTR, new AttributeValue(owner));
+                item.put(EXPIRES_AT_ATTR, new AttributeValue().withN(expiresAt));
+                item.put(LEASE_COUNTER_ATTR, new AttributeValue().withN("1"));
+                amazonDynamoDB.putItem(new PutItemRequest()
+                        .withTableName(tableName)
+                        .withItem(item)
+                        .withConditionExpression("attribute_not_exists(#shard)")
+                        .withExpressionAttributeNames(Collections.singletonMap("#shard", SHARD_ID_ATTR)));
+            } else {
+                Map<String, String> names = new HashMap<>();
+                names.put("#owner", OWNER_ATTR);
+                names.put("#expiresAt", EXPIRES_AT_ATTR);
+                names.put("#counter", LEASE_COUNTER_ATTR);
+                Map<String, AttributeValue> values = new HashMap<>();
+                values.put(":owner", new AttributeValue(owner));
+                values.put(":expiresAt", new AttributeValue().withN(expiresAt));
+                values.put(":one", new AttributeValue().withN("1"));
+                values.put(":observed", new AttributeValue().withN(String.valueOf(observed.getLeaseCounter())));
+                amazonDynamoDB.updateItem(new UpdateItemRequest()
+                        .withTableName(tableName)
+                        .withKey(key(streamArn, shardId))
+                        .withUpdateExpression("SET #owner = :owner, #expiresAt = :expiresAt, #counter = #counter + :one")
+                        .withConditionExpression("#counter = :observed")
+                        .withExpressionAttributeNames(names)
+                        .withExpressionAttributeValues(values));
+            }
+            logger.info("Took lease of shard {} (previous owner: {})", shardId, observed == null ? null : observed.getOwner());
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            logger.debug("Lease of shard {} was changed by another instance", shardId);
+            return false;
+        }
+    }
+    
+    @Override
+    public boolean renew(String streamArn, String shardId, String owner, long leaseMillis) {
+        Map<String, String> names = new HashMap<>();
+        names.put("#owner", OWNER_ATTR);
+        names.put("#expiresAt", EXPIRES_AT_ATTR);
+        names.put("#counter", LEASE_COUNTER_ATTR);
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":owner", new AttributeValue(owner));
+        values.put(":expiresAt", new AttributeValue().withN(String.valueOf(System.currentTimeMillis() + leaseMillis)));
+        values.put(":one", new AttributeValue().withN("1"));
+        try {
+            amazonDynamoDB.updateItem(new UpdateItemRequest()
+                    .withTableName(tableName)
+                    .withKey(key(streamArn, shardId))
+                    .withUpdateExpression("SET #expiresAt = :expiresAt, #counter = #counter + :one")
+                    .withConditionExpression("#owner = :owner")
+                    .withExpressionAttributeNames(names)
+                    .withExpressionAttributeValues(values));
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+    
+    @Override
+    public void release(String streamArn, String shardId, String owner) {
+        Map<String, String> names = new HashMap<>();
+        names.put("#owner", OWNER_ATTR);
+        names.put("#expiresAt", EXPIRES_AT_ATTR);
+        names.put("#counter", LEASE_COUNTER_ATTR);
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":owner", new AttributeValue(owner));
+        values.put(":zero", new AttributeValue().withN("0"));
+        values.put(":one", new AttributeValue().withN("1"));
+        try {
+            amazonDynamoDB.updateItem(new UpdateItemRequest()
+                    .withTableName(tableName)
+                    .withKey(key(streamArn, shardId))
+                    .withUpdateExpression("SET #expiresAt = :zero, #counter = #counter + :one REMOVE #owner")
+                    .withConditionExpression("#owner = :owner")
+                    .withExpressionAttributeNames(names)
+                    .withExpressionAttributeValues(values));
+        } catch (ConditionalCheckFailedException e) {
+            logger.debug("Lease of shard {} was already taken by another instance", shardId);
+        }
+    }
+    
+    private static Map<String, AttributeValue> key(String streamArn, String shardId) {
+        Map<String, AttributeValue> key = new HashMap<>();
+        key.put(STREAM_ARN_ATTR, new AttributeValue(streamArn));
+        key.put(SHARD_ID_ATTR, new AttributeValue(shardId));
+        return key;
+    }
+}
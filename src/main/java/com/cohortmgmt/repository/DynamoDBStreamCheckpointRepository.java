@@ -0,0 +1,91 @@
+package com.cohortmgmt.repository;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DynamoDB implementation of the StreamCheckpointRepository interface.
+ * Every shard position is an item keyed by stream ARN and shard ID, so all positions of a stream
+ * are read with one query and written with batched writes.
+ */
+@Repository
+@ConditionalOnProperty(name = "stream.checkpoint.store", havingValue = "dynamodb", matchIfMissing = true)
+public class DynamoDBStreamCheckpointRepository implements StreamCheckpointRepository {
+    
+    private static final Logger logger = LoggerFactory.getLogger(DynamoDBStreamCheckpointRepository.class);
+    
+    static final String STREAM_ARN_ATTR = "streamArn";
+    static final String SHARD_ID_ATTR = "shardId";
+    static final String POSITION_ATTR = "position";
+    static final String UPDATED_AT_ATTR = "updatedAt";
+    
+    private final AmazonDynamoDB amazonDynamoDB;
+    private final String tableName;
+    
+    @Autowired
+    public DynamoDBStreamCheckpointRepository(
+            AmazonDynamoDB amazonDynamoDB,
+            @Value("${aws.dynamodb.stream-checkpoint-table:StreamCheckpoints}") String tableName) {
+        this.amazonDynamoDB = amazonDynamoDB;
+        this.tableName = tableName;
+    }
+    
+    @Override
+    public Map<String, String> findByStream(String streamArn) {
+        Map<String, String> positions = new HashMap<>();
+        Map<String, AttributeValue> startKey = null;
+        do {
+            QueryRequest request = new QueryRequest()
+                    .withTableName(tableName)
+                    .withKeyConditionExpression("#stream = :stream")
+                    .withExpressionAttributeNames(Collections.singletonMap("#stream", STREAM_ARN_ATTR))
+                    .withExpressionAttributeValues(Collections.singletonMap(":stream", new AttributeValue(streamArn)))
+                    .withConsistentRead(true)
+                    .withExclusiveStartKey(startKey);
+            QueryResult result = amazonDynamoDB.query(request);
+            for (Map<String, AttributeValue> item : result.getItems()) {
+                positions.put(item.get(SHARD_ID_ATTR).getS(), item.get(POSITION_ATTR).getS());
+            }
+            startKey = result.getLastEvaluatedKey();
+        } while (startKey != null && !startKey.isEmpty());
+        
+        logger.info("Loaded {} stream checkpoints for {}", positions.size(), streamArn);
+        return positions;
+    }
+    
+    @Override
+    public void saveAll(String streamArn, Map<String, String> positions) {
+        if (positions.isEmpty()) {
+            return;
+        }
+        
+        String updatedAt = String.valueOf(System.currentTimeMillis());
+        List<WriteRequest> requests = new ArrayList<>(positions.size());
+        for (Map.Entry<String, String> position : positions.entrySet()) {
+            Map<String, AttributeValue> item = new HashMap<>();
+            item.put(STREAM_ARN_ATTR, new AttributeValue(streamArn));
+            item.put(SHARD_ID_ATTR, new AttributeValue(position.getKey()));
+            item.put(POSITION_ATTR, new AttributeValue(position.getValue()));
+            item.put(UPDATED_AT_ATTR, new AttributeValue().withN(updatedAt));
+            requests.add(new WriteRequest(new PutRequest(item)));
+        }
+        DynamoDBBatchWriter.writeAll(amazonDynamoDB, tableName, requests);
+        logger.debug("Saved {} stream checkpoints for {}", positions.size(), streamArn);
+    }
+}
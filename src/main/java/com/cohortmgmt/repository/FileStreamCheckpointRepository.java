@@ -0,0 +1,88 @@
+package com.cohortmgmt.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Local file implementation of the StreamCheckpointRepository interface, for single-instance deployments
+ * and local development. The file is rewritten through a temporary file and an atomic move,
+ * so a crash leaves either the previous or the new positions, never a torn file.
+ */
+@Repository
+@ConditionalOnProperty(name = "stream.checkpoint.store", havingValue = "file")
+public class FileStreamCheckpointRepository implements StreamCheckpointRepository {
+    
+    private static final Logger logger = LoggerFactory.getLogger(FileStreamCheckpointRepository.class);
+    
+    private static final char SEPARATOR = '#';
+    
+    private final Path path;
+    
+    @Autowired
+    public FileStreamCheckpointRepository(@Value("${stream.checkpoint.file:stream.checkpoint}") String file) {
+        this.path = Paths.get(file);
+    }
+    
+    @Override
+    public synchronized Map<String, String> findByStream(String streamArn) {
+        Properties properties = read();
+        String prefix = streamArn + SEPARATOR;
+        Map<String, String> positions = new HashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                positions.put(key.substring(prefix.length()), properties.getProperty(key));
+            }
+        }
+        logger.info("Loaded {} stream checkpoints for {} from {}", positions.size(), streamArn, path);
+        return positions;
+    }
+    
+    @Override
+    public synchronized void saveAll(String streamArn, Map<String, String> positions) {
+        if (positions.isEmpty()) {
+            return;
+        }
+        
+        Properties properties = read();
+        for (Map.Entry<String, String> position : positions.entrySet()) {
+            properties.setProperty(streamArn + SEPARATOR + position.getKey(), position.getValue());
+        }
+        try {
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                properties.store(out, "DynamoDB stream positions");
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing stream checkpoints to " + path, e);
+        }
+    }
+    
+    private Properties read() {
+        Properties properties = new Properties();
+        if (Files.exists(path)) {
+            try (InputStream in = Files.newInputStream(path)) {
+                properties.load(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error reading stream checkpoints from " + path, e);
+            }
+        }
+        return properties;
+    }
+}
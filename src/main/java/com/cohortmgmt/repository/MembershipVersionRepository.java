@@ -0,0 +1,28 @@
+package com.cohortmgmt.repository;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Repository interface for the versions of cohort memberships, which every service instance shares so that
+ * the entity tags of the read endpoints change with writes made through any instance.
+ */
+public interface MembershipVersionRepository {
+    
+    /**
+     * Adds to the versions of keys, starting a key that has no version yet at 0.
+     *
+     * @param increments The amount to add to the version of each key
+     * @throws RuntimeException If a version could not be incremented
+     */
+    void increment(Map<String, Long> increments);
+    
+    /**
+     * Gets the current versions of keys in batches.
+     *
+     * @param keys The keys
+     * @return The versions; keys that were never incremented are missing
+     * @throws RuntimeException If the versions could not be read
+     */
+    Map<String, Long> getAll(Collection<String> keys);
+}
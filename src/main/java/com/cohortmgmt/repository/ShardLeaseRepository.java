@@ -0,0 +1,53 @@
+package com.cohortmgmt.repository;
+
+import com.cohortmgmt.model.ShardLease;
+
+import java.util.List;
+
+/**
+ * Repository interface for the leases that divide the shards of a DynamoDB stream between service instances.
+ * Every change is conditional, so two instances can never both succeed in taking the same lease.
+ */
+public interface ShardLeaseRepository {
+    
+    /**
+     * Gets the leases of every shard of a stream.
+     *
+     * @param streamArn The stream ARN
+     * @return The leases
+     */
+    List<ShardLease> findByStream(String streamArn);
+    
+    /**
+     * Takes a lease, provided it has not changed since it was read. Used to claim new and expired leases
+     * as well as to take a live lease from another instance when rebalancing.
+     *
+     * @param streamArn The stream ARN
+     * @param shardId The shard ID
+     * @param owner The ID of the instance taking the lease
+     * @param observed The lease as it was read, or null if the shard has no lease yet
+     * @param leaseMillis How long the lease is valid without renewal
+     * @return true if the lease was taken, false if another instance changed it first
+     */
+    boolean tryAcquire(String streamArn, String shardId, String owner, ShardLease observed, long leaseMillis);
+    
+    /**
+     * Extends a lease held by an instance.
+     *
+     * @param streamArn The stream ARN
+     * @param shardId The shard ID
+     * @param owner The ID of the instance holding the lease
+     * @param leaseMillis How long the lease is valid without renewal
+     * @return true if the lease was renewed, false if the instance no longer holds it
+     */
+    boolean renew(String streamArn, String shardId, String owner, long leaseMillis);
+    
+    /**
+     * Gives up a lease held by an instance, so another instance can take it right away.
+     *
+     * @param streamArn The stream ARN
+     * @param shardId The shard ID
+     * @param owner The ID of the instance holding the lease
+     */
+    void release(String streamArn, String shardId, String owner);
+}
@@ -0,0 +1,32 @@
+package com.cohortmgmt.repository;
+
+import java.util.Map;
+
+/**
+ * Repository interface for the positions reached in the shards of a DynamoDB stream.
+ * A position is the sequence number of the last processed record of a shard, or {@link #SHARD_END}
+ * once a closed shard has been read to the end.
+ */
+public interface StreamCheckpointRepository {
+    
+    /**
+     * Position of a shard that has been processed completely.
+     */
+    String SHARD_END = "SHARD_END";
+    
+    /**
+     * Gets the positions of every checkpointed shard of a stream.
+     *
+     * @param streamArn The stream ARN
+     * @return The positions, keyed by shard ID
+     */
+    Map<String, String> findByStream(String streamArn);
+    
+    /**
+     * Saves the positions of several shards of a stream in one batch.
+     *
+     * @param streamArn The stream ARN
+     * @param positions The positions, keyed by shard ID
+     */
+    void saveAll(String streamArn, Map<String, String> positions);
+}
@@ -2,8 +2,10 @@ package com.cohortmgmt.service;
 
 import com.cohortmgmt.model.CohortType;
 import com.cohortmgmt.model.Customer;
+import com.cohortmgmt.model.CustomerChange;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -18,14 +20,59 @@ import java.util.Set;
 public interface CohortService {
     
     /**
-     * Classifies a customer into cohort types based on the configured rules.
+     * Classifies a customer into cohort types based on the configured rules. The stored memberships of the
+     * customer are made equal to the result, so cohort types the customer no longer qualifies for are left.
      * This is an internal method used by the data processing services.
      *
      * @param customer The customer to classify
      * @return The set of cohort types the customer was classified into
+     * @throws RuntimeException If the memberships could not be written
      */
     Set<CohortType> classifyCustomer(Customer customer);
     
+    /**
+     * Evaluates the rules for a customer without writing anything.
+     * This is an internal method used by the ingestion pipeline.
+     *
+     * @param customer The customer to evaluate
+     * @return The cohort types the customer belongs to
+     */
+    Set<CohortType> evaluate(Customer customer);
+    
+    /**
+     * Makes the stored cohort memberships of many customers equal to the given ones, writing only the
+     * memberships to add or remove with batched writes. A customer mapped to no cohort types leaves all of them.
+     * This is an internal method used by the ingestion pipeline.
+     *
+     * @param memberships The cohort types of each customer, keyed by customer ID
+     * @throws RuntimeException If the memberships could not be read or written
+     */
+    void recordMemberships(Map<String, Set<CohortType>> memberships);
+    
+    /**
+     * Classifies a batch of customers and makes their stored memberships equal to the result, writing only the
+     * memberships to add or remove with batched writes. A customer that matches no rule leaves every cohort type.
+     * This is an internal method used by bulk jobs.
+     *
+     * @param customers The customers to classify
+     * @return The cohort types that were added or removed, keyed by the customers whose memberships changed
+     */
+    Map<String, Set<CohortType>> classifyCustomers(List<Customer> customers);
+    
+    /**
+     * Updates the cohort memberships of many customers after a change. A change that doesn't move the customer
+     * across a rule boundary writes nothing. Otherwise the rules are evaluated for the customer after the change
+     * and compared with the memberships actually stored, so memberships left stale by an earlier failure or a
+     * rule change are corrected too; only the memberships to add or remove are written, with batched writes.
+     * A change without an old image is always compared, and a deleted customer is removed from every cohort type.
+     * This is an internal method used by the stream processing service.
+     *
+     * @param changes The changes, at most one per customer
+     * @return The number of customers whose memberships changed
+     * @throws RuntimeException If the memberships could not be read or written, so the changes must be retried
+     */
+    int reclassifyCustomers(List<CustomerChange> changes);
+    
     /**
      * Checks if a customer is part of a specific cohort type.
      * This is one of the three required APIs mentioned in the README.md.
@@ -1,7 +1,10 @@
 package com.cohortmgmt.service;
 
+import com.cohortmgmt.logging.LogFields;
+import com.cohortmgmt.logging.SampledLogger;
 import com.cohortmgmt.model.CohortType;
 import com.cohortmgmt.model.Customer;
+import com.cohortmgmt.model.CustomerChange;
 import com.cohortmgmt.repository.CohortRepository;
 import com.cohortmgmt.service.rule.CohortRule;
 import org.slf4j.Logger;
@@ -20,8 +23,12 @@ import java.util.*;
 public class CohortServiceImpl implements CohortService, ApplicationListener<ContextRefreshedEvent> {
     
     private static final Logger logger = LoggerFactory.getLogger(CohortServiceImpl.class);
+    // Classification runs for every customer written, so its messages are sampled
+    private static final SampledLogger classificationLog = SampledLogger.forSite(logger, "classification", 10, 1000);
+    private static final SampledLogger failureLog = SampledLogger.forSite(logger, "classification-failure", 5, 100);
     
     private final CohortRepository cohortRepository;
+    private final MembershipVersions membershipVersions;
     private final List<CohortRule> rules = new ArrayList<>();
     
     /**
@@ -29,10 +36,13 @@ public class CohortServiceImpl implements CohortService, ApplicationListener<Con
      *
      * @param rules The rules to use for classification
      * @param cohortRepository The repository for storing cohort data
+     * @param membershipVersions The versions incremented on every membership change
      */
     @Autowired
-    public CohortServiceImpl(List<CohortRule> rules, CohortRepository cohortRepository) {
+    public CohortServiceImpl(List<CohortRule> rules, CohortRepository cohortRepository,
+            MembershipVersions membershipVersions) {
         this.cohortRepository = cohortRepository;
+        this.membershipVersions = membershipVersions;
         if (rules != null) {
             this.rules.addAll(rules);
         }
@@ -74,39 +84,73 @@ public class CohortServiceImpl implements CohortService, ApplicationListener<Con
             return Collections.emptySet();
         }
         
-        Set<CohortType> cohortTypes = new HashSet<>();
+        Set<CohortType> cohortTypes = evaluate(customer);
+        replaceMemberships(Collections.singletonMap(customer.getCustomerId(), cohortTypes));
         
+        classificationLog.info("Customer classified: {}",
+                LogFields.of("customerId", customer.getCustomerId(), "cohortTypes", cohortTypes));
+        return cohortTypes;
+    }
+    
+    @Override
+    public Set<CohortType> evaluate(Customer customer) {
+        Set<CohortType> cohortTypes = EnumSet.noneOf(CohortType.class);
         for (CohortRule rule : rules) {
             try {
-                logger.info("Evaluating rule {} for customer {}", rule.getName(), customer.getCustomerId());
-                boolean result = rule.evaluate(customer);
-                logger.info("Rule {} evaluation result for customer {}: {}", rule.getName(), customer.getCustomerId(), result);
-                
-                if (result) {
-                    CohortType cohortType = rule.getCohortType();
-                    logger.info("Adding customer {} to cohort type {} using rule {}", 
-                            customer.getCustomerId(), cohortType, rule.getName());
-                    
-                    boolean added = cohortRepository.addCustomerToCohortType(cohortType, customer.getCustomerId());
-                    
-                    if (added) {
-                        cohortTypes.add(cohortType);
-                        logger.info("Customer {} classified into cohort type {} using rule {}", 
-                                customer.getCustomerId(), cohortType, rule.getName());
-                    } else {
-                        logger.warn("Failed to add customer {} to cohort type {} using rule {}", 
-                                customer.getCustomerId(), cohortType, rule.getName());
-                    }
+                if (rule.evaluate(customer)) {
+                    cohortTypes.add(rule.getCohortType());
                 }
             } catch (Exception e) {
-                logger.error("Error evaluating rule {} for customer {}: {}", 
+                failureLog.error("Error evaluating rule {} for customer {}: {}", 
                         rule.getName(), customer.getCustomerId(), e.getMessage(), e);
             }
         }
-        
         return cohortTypes;
     }
     
+    @Override
+    public void recordMemberships(Map<String, Set<CohortType>> memberships) {
+        replaceMemberships(memberships);
+    }
+    
+    @Override
+    public Map<String, Set<CohortType>> classifyCustomers(List<Customer> customers) {
+        Map<String, Set<CohortType>> memberships = new HashMap<>();
+        for (Customer customer : customers) {
+            // Customers that match no rule are recorded too, so a re-import removes the memberships they lost
+            memberships.put(customer.getCustomerId(), evaluate(customer));
+        }
+        
+        return replaceMemberships(memberships);
+    }
+    
+    @Override
+    public int reclassifyCustomers(List<CustomerChange> changes) {
+        Map<String, Set<CohortType>> memberships = new HashMap<>();
+        for (CustomerChange change : changes) {
+            if (change.isRemoval()) {
+                // A deleted customer should be in no cohort type
+                memberships.put(change.getCustomerId(), EnumSet.noneOf(CohortType.class));
+                continue;
+            }
+            
+            Set<CohortType> after = evaluate(change.getCurrent());
+            if (change.getPrevious() != null && evaluate(change.getPrevious()).equals(after)) {
+                // The change didn't move the customer across a rule boundary, so there is nothing to write
+                continue;
+            }
+            memberships.put(change.getCustomerId(), after);
+        }
+        if (memberships.isEmpty()) {
+            return 0;
+        }
+        
+        Map<String, Set<CohortType>> changed = replaceMemberships(memberships);
+        changed.forEach((customerId, cohortTypes) ->
+                logger.debug("Reclassified customer {}: cohort types {} changed", customerId, cohortTypes));
+        return changed.size();
+    }
+    
     @Override
     public boolean isCustomerInCohortType(String customerId, CohortType cohortType) {
         if (customerId == null || cohortType == null) {
@@ -133,4 +177,40 @@ public class CohortServiceImpl implements CohortService, ApplicationListener<Con
         
         return cohortRepository.getCustomerIdsByCohortType(cohortType);
     }
+    
+    /**
+     * Makes the stored memberships of many customers equal to the given ones and increments the versions of
+     * what changed.
+     *
+     * @return The cohort types that were added or removed, keyed by the customers whose memberships changed
+     */
+    private Map<String, Set<CohortType>> replaceMemberships(Map<String, Set<CohortType>> memberships) {
+        if (memberships.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Set<CohortType>> changed;
+        try {
+            changed = cohortRepository.replaceCustomersCohortTypes(memberships);
+        } catch (RuntimeException e) {
+            // Part of the memberships may have been written, and which cohort types they touched is unknown
+            membershipVersions.changed(memberships.keySet(), EnumSet.allOf(CohortType.class));
+            throw e;
+        }
+        versionsChanged(changed);
+        return changed;
+    }
+    
+    /**
+     * Increments the versions of the customers and cohort types whose memberships changed.
+     */
+    private void versionsChanged(Map<String, Set<CohortType>> memberships) {
+        if (memberships.isEmpty()) {
+            return;
+        }
+        Set<CohortType> cohortTypes = EnumSet.noneOf(CohortType.class);
+        for (Set<CohortType> types : memberships.values()) {
+            cohortTypes.addAll(types);
+        }
+        membershipVersions.changed(memberships.keySet(), cohortTypes);
+    }
 }
@@ -1,92 +1,270 @@
 package com.cohortmgmt.service;
 
 import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
 import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.QueueDoesNotExistException;
 import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
-import com.cohortmgmt.model.CohortType;
-import com.cohortmgmt.model.Customer;
-import com.cohortmgmt.model.UserType;
-import com.cohortmgmt.repository.CustomerRepository;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.cohortmgmt.config.ResourcesReadyEvent;
+import com.cohortmgmt.logging.SampledLogger;
+import com.cohortmgmt.service.codec.CustomerMessageCodec;
+import com.cohortmgmt.service.concurrency.NamedThreadFactory;
+import com.cohortmgmt.service.pipeline.IngestionPipeline;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.context.ApplicationListener;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 /**
  * Service for processing customer data from SQS and classifying them into cohorts.
+ *
+ * A configurable number of poller threads run a continuous long-poll loop against the queue.
+ * Received messages are handed to the staged {@link IngestionPipeline}, which decodes, classifies and
+ * persists them on its own threads, and are acknowledged with a single DeleteMessageBatch call per
+ * received batch. The number of messages in flight is bounded, and the pipeline blocks submissions
+ * while it is full, so pollers stop receiving while ingestion is saturated.
  */
 @Service
-public class CustomerDataProcessingService {
+public class CustomerDataProcessingService implements ApplicationListener<ResourcesReadyEvent> {
     
     private static final Logger logger = LoggerFactory.getLogger(CustomerDataProcessingService.class);
+    private static final SampledLogger messageFailureLog = SampledLogger.forSite(logger, "message-failure", 5, 100);
+    
+    private static final long MAX_BACKOFF_MILLIS = 5000;
     
     private final AmazonSQS amazonSQS;
-    private final CustomerRepository customerRepository;
-    private final CohortService cohortService;
-    private final ObjectMapper objectMapper;
+    private final IngestionPipeline pipeline;
     private final String queueName;
     private final String endpoint;
+    private final boolean enabled;
+    private final int pollerCount;
+    private final int maxMessages;
+    private final int waitTimeSeconds;
+    private final Semaphore inFlight;
+    
+    private ExecutorService pollerPool;
+    private volatile boolean running;
+    private volatile String queueUrl;
     
     @Autowired
     public CustomerDataProcessingService(
             AmazonSQS amazonSQS,
-            CustomerRepository customerRepository,
-            CohortService cohortService,
+            IngestionPipeline pipeline,
             @Value("${aws.sqs.queue-name}") String queueName,
-            @Value("${aws.endpoint}") String endpoint) {
+            @Value("${aws.endpoint}") String endpoint,
+            @Value("${aws.sqs.consumer.enabled:true}") boolean enabled,
+            @Value("${aws.sqs.consumer.pollers:4}") int pollerCount,
+            @Value("${aws.sqs.consumer.max-in-flight:64}") int maxInFlight,
+            @Value("${aws.sqs.consumer.max-messages:10}") int maxMessages,
+            @Value("${aws.sqs.consumer.wait-time-seconds:20}") int waitTimeSeconds) {
         this.amazonSQS = amazonSQS;
-        this.customerRepository = customerRepository;
-        this.cohortService = cohortService;
-        this.objectMapper = new ObjectMapper();
+        this.pipeline = pipeline;
         this.queueName = queueName;
         this.endpoint = endpoint;
+        this.enabled = enabled;
+        this.pollerCount = pollerCount;
+        this.maxMessages = Math.max(1, Math.min(10, maxMessages)); // SQS allows at most 10 per receive
+        this.waitTimeSeconds = waitTimeSeconds;
+        this.inFlight = new Semaphore(Math.max(maxInFlight, this.maxMessages));
     }
     
     /**
-     * Processes customer data from SQS.
-     * This method is scheduled to run every 10 seconds.
+     * Starts the poller threads once the queue and tables exist.
      */
-    @Scheduled(fixedDelay = 10000)
-    public void processCustomerData() {
-        try {
-            // First, ensure the queue exists
-            String queueUrl = ensureQueueExists();
-            if (queueUrl == null) {
-                // Queue doesn't exist and couldn't be created, skip processing
-                return;
+    @Override
+    public void onApplicationEvent(ResourcesReadyEvent event) {
+        start();
+    }
+    
+    /**
+     * Starts the configured number of long-polling consumers.
+     */
+    public synchronized void start() {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        pollerPool = Executors.newFixedThreadPool(pollerCount, new NamedThreadFactory("sqs-poller"));
+        for (int i = 0; i < pollerCount; i++) {
+            pollerPool.submit(this::pollLoop);
+        }
+        logger.info("Started {} SQS consumers for queue {}", pollerCount, queueName);
+    }
+    
+    /**
+     * Stops the pollers.
+     * Messages that are not acknowledged become visible again after their visibility timeout.
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        running = false;
+        if (pollerPool != null) {
+            pollerPool.shutdownNow();
+        }
+    }
+    
+    /**
+     * Continuous long-poll loop run by each poller thread.
+     */
+    private void pollLoop() {
+        long backoffMillis = 100;
+        while (running && !Thread.currentThread().isInterrupted()) {
+            try {
+                String url = getQueueUrl();
+                if (url == null) {
+                    // Queue doesn't exist and couldn't be created, try again later
+                    Thread.sleep(backoffMillis);
+                    backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+                    continue;
+                }
+                receiveBatch(url);
+                backoffMillis = 100;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (QueueDoesNotExistException e) {
+                logger.warn("Queue {} no longer exists, resolving it again", queueName);
+                queueUrl = null;
+            } catch (Exception e) {
+                // Log at debug level to avoid filling logs with expected errors during startup
+                logger.debug("Error receiving messages from SQS: {}", e.getMessage());
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
             }
-            
+        }
+    }
+    
+    /**
+     * Receives one batch of messages, hands them to the ingestion pipeline and acknowledges
+     * the successfully processed ones with a single DeleteMessageBatch call.
+     *
+     * @param url The queue URL
+     * @return A future that completes once the batch has been processed and acknowledged
+     * @throws InterruptedException If interrupted while waiting for in-flight capacity or room in the pipeline
+     */
+    CompletableFuture<Void> receiveBatch(String url) throws InterruptedException {
+        inFlight.acquire(maxMessages);
+        List<Message> messages;
+        try {
             ReceiveMessageRequest receiveMessageRequest = new ReceiveMessageRequest()
-                    .withQueueUrl(queueUrl)
-                    .withMaxNumberOfMessages(10)
-                    .withWaitTimeSeconds(5);
-            
-            List<Message> messages = amazonSQS.receiveMessage(receiveMessageRequest).getMessages();
-            
-            for (Message message : messages) {
-                try {
-                    processMessage(message);
-                    amazonSQS.deleteMessage(queueUrl, message.getReceiptHandle());
-                } catch (Exception e) {
-                    logger.error("Error processing message: {}", e.getMessage(), e);
+                    .withQueueUrl(url)
+                    .withMaxNumberOfMessages(maxMessages)
+                    .withWaitTimeSeconds(waitTimeSeconds)
+                    .withMessageAttributeNames(CustomerMessageCodec.FORMAT_ATTRIBUTE);
+            messages = amazonSQS.receiveMessage(receiveMessageRequest).getMessages();
+        } catch (RuntimeException e) {
+            inFlight.release(maxMessages);
+            throw e;
+        }
+        
+        // Return the permits reserved for messages that were not delivered
+        inFlight.release(maxMessages - messages.size());
+        if (messages.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        List<CompletableFuture<Message>> results = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            CompletableFuture<Void> processed;
+            try {
+                processed = pipeline.submit(message);
+            } catch (InterruptedException | RuntimeException e) {
+                // Return the permits of this and the remaining messages, which SQS will redeliver
+                inFlight.release(messages.size() - i);
+                throw e;
+            }
+            results.add(processed.handle((ignored, failure) -> {
+                inFlight.release();
+                if (failure != null) {
+                    messageFailureLog.error("Error processing message {}: {}", message.getMessageId(), failure.getMessage(),
+                            failure);
+                    return null;
                 }
+                return message;
+            }));
+        }
+        
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture[0]))
+                .thenRun(() -> {
+                    List<Message> processed = new ArrayList<>(results.size());
+                    for (CompletableFuture<Message> result : results) {
+                        Message message = result.join();
+                        if (message != null) {
+                            processed.add(message);
+                        }
+                    }
+                    deleteMessages(url, processed);
+                });
+    }
+    
+    /**
+     * Acknowledges processed messages with a single DeleteMessageBatch call.
+     *
+     * @param url The queue URL
+     * @param messages The processed messages (at most 10)
+     */
+    private void deleteMessages(String url, List<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        
+        List<DeleteMessageBatchRequestEntry> entries = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            entries.add(new DeleteMessageBatchRequestEntry(String.valueOf(i), messages.get(i).getReceiptHandle()));
+        }
+        
+        try {
+            DeleteMessageBatchResult result = amazonSQS.deleteMessageBatch(
+                    new DeleteMessageBatchRequest(url, entries));
+            for (BatchResultErrorEntry failed : result.getFailed()) {
+                logger.warn("Failed to delete message {}: {} {}",
+                        messages.get(Integer.parseInt(failed.getId())).getMessageId(),
+                        failed.getCode(), failed.getMessage());
             }
         } catch (Exception e) {
-            // Log at debug level to avoid filling logs with expected errors during startup
-            logger.debug("Error receiving messages from SQS: {}", e.getMessage());
+            // The messages will be redelivered after the visibility timeout
+            logger.error("Error deleting {} messages from SQS: {}", messages.size(), e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Gets the queue URL, resolving and caching it on first use.
+     *
+     * @return The queue URL, or null if it could not be resolved
+     */
+    private String getQueueUrl() {
+        String url = queueUrl;
+        if (url == null) {
+            synchronized (this) {
+                if (queueUrl == null) {
+                    queueUrl = ensureQueueExists();
+                }
+                url = queueUrl;
+            }
         }
+        return url;
     }
     
     /**
      * Ensures that the SQS queue exists, creating it if necessary.
-     * 
+     *
      * @return The queue URL if the queue exists or was created, null otherwise
      */
     private String ensureQueueExists() {
@@ -96,7 +274,7 @@ public class CustomerDataProcessingService {
                 String queueUrl = amazonSQS.getQueueUrl(queueName).getQueueUrl();
                 logger.debug("Queue exists, URL: {}", queueUrl);
                 return queueUrl;
-            } catch (Exception e) {
+            } catch (QueueDoesNotExistException e) {
                 // Queue doesn't exist, try to create it
                 logger.debug("Queue doesn't exist, creating: {}", queueName);
                 String queueUrl = amazonSQS.createQueue(queueName).getQueueUrl();
@@ -110,29 +288,4 @@ public class CustomerDataProcessingService {
             return constructedUrl;
         }
     }
-    
-    /**
-     * Processes a single message from SQS.
-     *
-     * @param message The message to process
-     * @throws Exception If an error occurs while processing the message
-     */
-    private void processMessage(Message message) throws Exception {
-        String messageBody = message.getBody();
-        JsonNode jsonNode = objectMapper.readTree(messageBody);
-        
-        String customerId = jsonNode.get("customerId").asText();
-        Double dailySpend = jsonNode.get("dailySpend").asDouble();
-        UserType userType = UserType.valueOf(jsonNode.get("userType").asText());
-        
-        Customer customer = new Customer(customerId, dailySpend, userType);
-        
-        // Save the customer to the repository
-        customerRepository.save(customer);
-        
-        // Classify the customer into cohort types
-        Set<CohortType> cohortTypes = cohortService.classifyCustomer(customer);
-        
-        logger.info("Processed customer {} and classified into cohort types: {}", customerId, cohortTypes);
-    }
 }
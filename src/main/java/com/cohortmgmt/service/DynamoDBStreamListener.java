@@ -5,46 +5,112 @@ import com.amazonaws.services.dynamodbv2.AmazonDynamoDBStreams;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBStreamsClientBuilder;
 import com.amazonaws.services.dynamodbv2.model.DescribeStreamRequest;
 import com.amazonaws.services.dynamodbv2.model.DescribeStreamResult;
-import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.ExpiredIteratorException;
 import com.amazonaws.services.dynamodbv2.model.GetRecordsRequest;
 import com.amazonaws.services.dynamodbv2.model.GetRecordsResult;
 import com.amazonaws.services.dynamodbv2.model.GetShardIteratorRequest;
-import com.amazonaws.services.dynamodbv2.model.GetShardIteratorResult;
 import com.amazonaws.services.dynamodbv2.model.Record;
 import com.amazonaws.services.dynamodbv2.model.ResourceNotFoundException;
 import com.amazonaws.services.dynamodbv2.model.Shard;
 import com.amazonaws.services.dynamodbv2.model.ShardIteratorType;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+import com.amazonaws.services.dynamodbv2.model.TrimmedDataAccessException;
 import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.client.builder.AwsClientBuilder;
+import com.cohortmgmt.config.ResourcesReadyEvent;
+import com.cohortmgmt.model.ShardStats;
+import com.cohortmgmt.repository.StreamCheckpointRepository;
+import com.cohortmgmt.service.concurrency.NamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Service for listening to DynamoDB streams and forwarding events to the DynamoDBStreamProcessingService.
+ *
+ * The listener coordinates the shards of the stream: it describes the stream periodically, and every active
+ * shard gets its own worker that reads and processes its records in order. Each worker prefetches: a fetch
+ * thread keeps calling GetRecords and hands the pages to the worker's processing thread through a small
+ * bounded buffer, so the next page is on its way while the current one is classified. Every page is
+ * classified with one batch call, see {@link DynamoDBStreamProcessingService#processRecords(List)}. A child shard created by a
+ * split only starts once its parent has been read to the end, so the records of one customer are processed in
+ * order across splits. Workers of closed shards retire once they have drained their shard, which triggers
+ * another discovery so the children start without waiting for the next interval.
+ *
+ * Polling adapts to the backlog of each shard: a worker calls GetRecords again immediately while it keeps
+ * getting full batches, waits the minimum interval after a partial batch, and backs off exponentially while
+ * the shard is idle. The lag of every shard is tracked from the approximate creation time of its records.
+ *
+ * The sequence number of the last processed record of every shard is checkpointed through the
+ * {@link StreamCheckpointRepository}, and shards are resumed after it on startup. Checkpoints are written in
+ * batches, at most once per interval or once enough records have been processed, so a restart replays at most
+ * the records of one interval instead of the whole stream.
+ *
+ * When several instances run, the {@link ShardLeaseManager} decides which shards this instance reads.
+ * Leases are renewed in the background; a worker whose lease has been lost stops without writing its pending
+ * checkpoint, and every discovery reloads the checkpoints, so a shard taken over from another instance resumes
+ * where that instance last checkpointed it. Records processed but not yet checkpointed by the previous owner
+ * are processed again, which is safe because classification writes are idempotent.
  */
 @Service
-public class DynamoDBStreamListener {
+public class DynamoDBStreamListener implements ApplicationListener<ResourcesReadyEvent> {
     
     private static final Logger logger = LoggerFactory.getLogger(DynamoDBStreamListener.class);
     
+    private static final long MAX_BACKOFF_MILLIS = 30000;
+    
     private final AmazonDynamoDB amazonDynamoDB;
     private final DynamoDBStreamProcessingService streamProcessingService;
     private final String customerTableName;
     private final String region;
     private final String endpoint;
+    private final StreamCheckpointRepository checkpointRepository;
+    private final ShardLeaseManager leaseManager;
+    private final long checkpointIntervalMillis;
+    private final int checkpointMaxRecords;
+    private final int getRecordsLimit;
+    private final long minPollIntervalMillis;
+    private final long maxIdlePollIntervalMillis;
+    private final int prefetchPages;
+    private final ExecutorService shardWorkers = Executors.newCachedThreadPool(new NamedThreadFactory("stream-shard", true));
     
     private AmazonDynamoDBStreams streamsClient;
-    private String streamArn;
-    private final ConcurrentHashMap<String, String> shardIterators = new ConcurrentHashMap<>();
+    private volatile String streamArn;
+    private volatile boolean running = true;
+    private volatile boolean resourcesReady;
+    private final Map<String, ShardWorker> activeShards = new ConcurrentHashMap<>();
+    private final Set<String> finishedShards = ConcurrentHashMap.newKeySet();
+    // Last processed sequence number of every shard, used to resume a worker after an error
+    private final Map<String, String> positions = new ConcurrentHashMap<>();
+    private final Object discoveryLock = new Object();
+    
+    private final Object checkpointLock = new Object();
+    // All fields below are guarded by checkpointLock
+    private final Map<String, String> pendingCheckpoints = new HashMap<>();
+    private int recordsSinceCheckpoint;
+    private long lastCheckpointMillis = System.currentTimeMillis();
     
     @Autowired
     public DynamoDBStreamListener(
@@ -52,47 +118,78 @@ public class DynamoDBStreamListener {
             DynamoDBStreamProcessingService streamProcessingService,
             @Value("${aws.dynamodb.customer-table}") String customerTableName,
             @Value("${aws.region}") String region,
-            @Value("${aws.endpoint}") String endpoint) {
+            @Value("${aws.endpoint}") String endpoint,
+            StreamCheckpointRepository checkpointRepository,
+            ShardLeaseManager leaseManager,
+            @Value("${stream.checkpoint.interval-millis:10000}") long checkpointIntervalMillis,
+            @Value("${stream.checkpoint.max-records:1000}") int checkpointMaxRecords,
+            @Value("${stream.get-records-limit:1000}") int getRecordsLimit,
+            @Value("${stream.poll.min-interval-millis:200}") long minPollIntervalMillis,
+            @Value("${stream.poll.max-idle-interval-millis:10000}") long maxIdlePollIntervalMillis,
+            @Value("${stream.prefetch-pages:2}") int prefetchPages) {
+        this(amazonDynamoDB, streamProcessingService, customerTableName, region, endpoint, checkpointRepository,
+                leaseManager, checkpointIntervalMillis, checkpointMaxRecords, getRecordsLimit, minPollIntervalMillis,
+                maxIdlePollIntervalMillis, prefetchPages, null);
+    }
+    
+    /**
+     * Creates a listener that reads the stream with the given client instead of building one on startup.
+     */
+    DynamoDBStreamListener(
+            AmazonDynamoDB amazonDynamoDB,
+            DynamoDBStreamProcessingService streamProcessingService,
+            String customerTableName,
+            String region,
+            String endpoint,
+            StreamCheckpointRepository checkpointRepository,
+            ShardLeaseManager leaseManager,
+            long checkpointIntervalMillis,
+            int checkpointMaxRecords,
+            int getRecordsLimit,
+            long minPollIntervalMillis,
+            long maxIdlePollIntervalMillis,
+            int prefetchPages,
+            AmazonDynamoDBStreams streamsClient) {
         this.amazonDynamoDB = amazonDynamoDB;
         this.streamProcessingService = streamProcessingService;
         this.customerTableName = customerTableName;
         this.region = region;
         this.endpoint = endpoint;
+        this.checkpointRepository = checkpointRepository;
+        this.leaseManager = leaseManager;
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+        this.checkpointMaxRecords = checkpointMaxRecords;
+        this.getRecordsLimit = getRecordsLimit;
+        this.minPollIntervalMillis = minPollIntervalMillis;
+        this.maxIdlePollIntervalMillis = maxIdlePollIntervalMillis;
+        this.prefetchPages = prefetchPages;
+        this.streamsClient = streamsClient;
     }
     
     @PostConstruct
     public void initialize() {
+        if (streamsClient != null) {
+            return;
+        }
         // Create a DynamoDB Streams client
         streamsClient = AmazonDynamoDBStreamsClientBuilder.standard()
                 .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(endpoint, region))
                 .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("dummy", "dummy")))
                 .build();
-        
-        // Schedule a delayed initialization to ensure tables are created first
-        scheduleInitialization();
     }
     
     /**
-     * Schedule initialization with a delay to ensure tables are created first.
+     * Starts listening once the Customers table and the checkpoint and lease tables exist.
      */
-    private void scheduleInitialization() {
-        new Thread(() -> {
-            try {
-                // Wait for tables to be created
-                logger.info("Waiting for tables to be created before initializing DynamoDB Stream listener...");
-                Thread.sleep(5000); // 5 seconds delay
-                
-                // Try to initialize
-                initializeStreamListener();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                logger.error("Interrupted while waiting to initialize DynamoDB Stream listener", e);
-            }
-        }).start();
+    @Override
+    public void onApplicationEvent(ResourcesReadyEvent event) {
+        resourcesReady = true;
+        initializeStreamListener();
     }
     
     /**
-     * Initialize the stream listener after tables are created.
+     * Resolves the stream of the customer table and starts reading its shards.
+     * If the stream can't be resolved yet, the next shard discovery tries again.
      */
     private void initializeStreamListener() {
         try {
@@ -107,123 +204,448 @@ public class DynamoDBStreamListener {
                     .collect(java.util.stream.Collectors.toList());
             
             if (streamArns.isEmpty()) {
-                logger.warn("No streams found for table: {}", customerTableName);
-                // Schedule a retry
-                scheduleRetry();
+                logger.warn("No streams found for table: {}, will retry with the next shard discovery", customerTableName);
                 return;
             }
             
             // Use the first stream ARN (there should only be one for the table)
-            streamArn = streamArns.get(0);
+            String arn = streamArns.get(0);
+            
+            streamArn = arn;
             
             logger.info("Initialized DynamoDB Stream listener for table: {} with stream ARN: {}", 
                     customerTableName, streamArn);
             
-            // Initialize shard iterators
-            initializeShardIterators();
+            discoverShards();
         } catch (ResourceNotFoundException e) {
-            logger.warn("Table {} not found yet, will retry initialization later", customerTableName);
-            // Schedule a retry
-            scheduleRetry();
+            logger.warn("Table {} not found yet, will retry with the next shard discovery", customerTableName);
         } catch (Exception e) {
             logger.error("Error initializing DynamoDB Stream listener: {}", e.getMessage(), e);
-            // Schedule a retry
-            scheduleRetry();
         }
     }
     
     /**
-     * Schedule a retry for initialization.
+     * Describes the stream and starts a worker for every shard that is ready to be read.
+     * Runs periodically to follow shard splits, and whenever a shard has been drained.
      */
-    private void scheduleRetry() {
-        new Thread(() -> {
+    @Scheduled(fixedDelayString = "${stream.shard-discovery-interval-millis:30000}")
+    public void discoverShards() {
+        if (!running || !resourcesReady) {
+            return;
+        }
+        if (streamArn == null) {
+            initializeStreamListener();
+            return;
+        }
+        
+        synchronized (discoveryLock) {
             try {
-                // Wait before retrying
-                Thread.sleep(10000); // 10 seconds delay
-                
-                // Try to initialize again
-                logger.info("Retrying DynamoDB Stream listener initialization...");
-                initializeStreamListener();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                logger.error("Interrupted while waiting to retry DynamoDB Stream listener initialization", e);
+                List<Shard> shards = describeShards();
+                refreshCheckpoints();
+                List<String> readyShards = startableShards(shards, finishedShards, Collections.emptySet());
+                for (String shardId : leaseManager.assign(streamArn, readyShards)) {
+                    if (activeShards.containsKey(shardId)) {
+                        continue;
+                    }
+                    ShardWorker worker = new ShardWorker(shardId);
+                    activeShards.put(shardId, worker);
+                    shardWorkers.execute(worker);
+                    logger.info("Started worker for shard: {} ({})", shardId, positions.containsKey(shardId)
+                            ? "after sequence number " + positions.get(shardId)
+                            : "from the oldest record");
+                }
+            } catch (Exception e) {
+                logger.error("Error discovering DynamoDB stream shards: {}", e.getMessage(), e);
             }
-        }).start();
+        }
     }
     
-    private void initializeShardIterators() {
-        try {
-            // Describe the stream to get the shards
-            DescribeStreamResult describeStreamResult = streamsClient.describeStream(
-                    new DescribeStreamRequest().withStreamArn(streamArn));
-            
-            List<Shard> shards = describeStreamResult.getStreamDescription().getShards();
-            
-            for (Shard shard : shards) {
-                // Get a shard iterator for each shard
-                GetShardIteratorRequest getShardIteratorRequest = new GetShardIteratorRequest()
-                        .withStreamArn(streamArn)
-                        .withShardId(shard.getShardId())
-                        .withShardIteratorType(ShardIteratorType.TRIM_HORIZON);
-                
-                GetShardIteratorResult getShardIteratorResult = streamsClient.getShardIterator(getShardIteratorRequest);
-                String shardIterator = getShardIteratorResult.getShardIterator();
-                
-                // Store the shard iterator
-                shardIterators.put(shard.getShardId(), shardIterator);
-                
-                logger.info("Initialized shard iterator for shard: {}", shard.getShardId());
+    /**
+     * Renews the leases of the shards this instance reads, and stops the workers of shards whose lease
+     * has been taken by another instance.
+     */
+    @Scheduled(fixedDelayString = "${stream.leases.renew-interval-millis:10000}")
+    public void renewLeases() {
+        if (streamArn == null || !running || !leaseManager.isEnabled()) {
+            return;
+        }
+        for (ShardWorker worker : activeShards.values()) {
+            try {
+                if (!leaseManager.renew(streamArn, worker.shardId)) {
+                    logger.info("Lease of shard {} was taken by another instance, stopping its worker", worker.shardId);
+                    worker.leaseLost();
+                }
+            } catch (Exception e) {
+                // The lease stays valid until it expires, so try again with the next renewal
+                logger.warn("Error renewing lease of shard {}: {}", worker.shardId, e.getMessage());
             }
-        } catch (Exception e) {
-            logger.error("Error initializing shard iterators: {}", e.getMessage(), e);
         }
     }
     
     /**
-     * Polls the DynamoDB stream for new records.
-     * This method is scheduled to run every 5 seconds.
+     * Writes the positions processed since the last checkpoint. Besides being triggered by processed records,
+     * this runs every interval, so the last positions of a stream that went quiet and checkpoints that failed
+     * to be written are not left pending until more records arrive.
      */
-    @Scheduled(fixedDelay = 5000)
-    public void pollStream() {
-        if (streamArn == null || shardIterators.isEmpty()) {
-            logger.debug("Stream ARN or shard iterators not initialized yet, skipping poll");
-            return;
+    @Scheduled(fixedDelayString = "${stream.checkpoint.interval-millis:10000}")
+    public void checkpoint() {
+        synchronized (checkpointLock) {
+            lastCheckpointMillis = System.currentTimeMillis();
+            if (pendingCheckpoints.isEmpty() || streamArn == null) {
+                return;
+            }
+            try {
+                checkpointRepository.saveAll(streamArn, pendingCheckpoints);
+                logger.debug("Checkpointed {} shards after {} records", pendingCheckpoints.size(), recordsSinceCheckpoint);
+                pendingCheckpoints.clear();
+                recordsSinceCheckpoint = 0;
+            } catch (Exception e) {
+                // Keep the positions and try again with the next checkpoint
+                logger.warn("Error checkpointing DynamoDB stream positions: {}", e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Stops the shard workers and writes the pending checkpoints, so a restart does not replay processed records.
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        List<String> leased = new ArrayList<>(activeShards.keySet());
+        shardWorkers.shutdownNow();
+        checkpoint();
+        // Hand the shards over to the other instances right away instead of letting the leases expire
+        if (streamArn != null) {
+            for (String shardId : leased) {
+                try {
+                    leaseManager.release(streamArn, shardId);
+                } catch (Exception e) {
+                    logger.warn("Error releasing lease of shard {}: {}", shardId, e.getMessage());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Gets a snapshot of the metrics of every shard that has a worker.
+     *
+     * @return The shard metrics
+     */
+    public List<ShardStats> getShardStats() {
+        List<ShardStats> stats = new ArrayList<>(activeShards.size());
+        for (ShardWorker worker : activeShards.values()) {
+            stats.add(new ShardStats(worker.shardId, worker.lagMillis, worker.recordsProcessed.get(),
+                    worker.getRecordsCalls.get(), worker.pollDelayMillis, positions.get(worker.shardId),
+                    worker.pages.size()));
+        }
+        stats.sort((a, b) -> a.getShardId().compareTo(b.getShardId()));
+        return stats;
+    }
+    
+    /**
+     * Calculates how long a worker waits before its next GetRecords call.
+     *
+     * @param records The number of records returned by the last call
+     * @param limit The maximum number of records per call
+     * @param previousDelayMillis The previous wait
+     * @param minIntervalMillis The wait after a partial batch, and the first wait on an idle shard
+     * @param maxIdleIntervalMillis The longest wait on an idle shard
+     * @return The wait in milliseconds
+     */
+    static long nextPollDelay(int records, int limit, long previousDelayMillis,
+                              long minIntervalMillis, long maxIdleIntervalMillis) {
+        if (records >= limit) {
+            // The shard has a backlog, keep reading
+            return 0;
+        }
+        if (records > 0) {
+            return minIntervalMillis;
+        }
+        return Math.min(maxIdleIntervalMillis, Math.max(minIntervalMillis, previousDelayMillis * 2));
+    }
+    
+    /**
+     * Selects the shards that can be started: shards that are neither active nor finished and whose parent,
+     * if it is still part of the stream, has been read to the end.
+     *
+     * @param shards The shards of the stream
+     * @param finished The IDs of the shards that have been read to the end
+     * @param active The IDs of the shards that have a worker
+     * @return The IDs of the shards to start
+     */
+    static List<String> startableShards(List<Shard> shards, Set<String> finished, Set<String> active) {
+        Set<String> known = new HashSet<>();
+        for (Shard shard : shards) {
+            known.add(shard.getShardId());
         }
         
-        try {
-            logger.debug("Polling DynamoDB stream with ARN: {}", streamArn);
-            
-            // Process each shard
-            for (String shardId : shardIterators.keySet()) {
-                String shardIterator = shardIterators.get(shardId);
-                
-                if (shardIterator == null) {
-                    logger.debug("Shard iterator is null for shard: {}", shardId);
-                    continue;
+        List<String> startable = new ArrayList<>();
+        for (Shard shard : shards) {
+            String shardId = shard.getShardId();
+            if (finished.contains(shardId) || active.contains(shardId)) {
+                continue;
+            }
+            // A parent that is no longer listed has been trimmed from the stream, so nothing is left to wait for
+            String parent = shard.getParentShardId();
+            if (parent == null || finished.contains(parent) || !known.contains(parent)) {
+                startable.add(shardId);
+            }
+        }
+        return startable;
+    }
+    
+    /**
+     * Reloads the checkpoints of the shards this instance does not read, which other instances may have
+     * advanced or finished since they were last loaded.
+     */
+    private void refreshCheckpoints() {
+        for (Map.Entry<String, String> checkpoint : checkpointRepository.findByStream(streamArn).entrySet()) {
+            if (StreamCheckpointRepository.SHARD_END.equals(checkpoint.getValue())) {
+                finishedShards.add(checkpoint.getKey());
+            } else if (!activeShards.containsKey(checkpoint.getKey())) {
+                positions.put(checkpoint.getKey(), checkpoint.getValue());
+            }
+        }
+    }
+    
+    private List<Shard> describeShards() {
+        List<Shard> shards = new ArrayList<>();
+        String lastShardId = null;
+        do {
+            DescribeStreamResult result = streamsClient.describeStream(new DescribeStreamRequest()
+                    .withStreamArn(streamArn)
+                    .withExclusiveStartShardId(lastShardId));
+            shards.addAll(result.getStreamDescription().getShards());
+            lastShardId = result.getStreamDescription().getLastEvaluatedShardId();
+        } while (lastShardId != null);
+        return shards;
+    }
+    
+    /**
+     * Gets an iterator that resumes a shard after a record, or starts at the oldest record if there is
+     * no such record or it has already been trimmed from the stream.
+     *
+     * @param shardId The shard ID
+     * @param sequenceNumber The sequence number of the record to resume after, or null
+     * @return The shard iterator
+     */
+    private String getShardIterator(String shardId, String sequenceNumber) {
+        GetShardIteratorRequest request = new GetShardIteratorRequest()
+                .withStreamArn(streamArn)
+                .withShardId(shardId);
+        if (sequenceNumber != null) {
+            try {
+                return streamsClient.getShardIterator(request
+                        .withShardIteratorType(ShardIteratorType.AFTER_SEQUENCE_NUMBER)
+                        .withSequenceNumber(sequenceNumber)).getShardIterator();
+            } catch (TrimmedDataAccessException e) {
+                logger.warn("Checkpoint {} of shard {} is older than the stream retention, starting at the oldest record",
+                        sequenceNumber, shardId);
+                request.setSequenceNumber(null);
+            }
+        }
+        return streamsClient.getShardIterator(request
+                .withShardIteratorType(ShardIteratorType.TRIM_HORIZON)).getShardIterator();
+    }
+    
+    /**
+     * Records the progress of a shard and writes a checkpoint once the interval has passed
+     * or enough records have been processed.
+     */
+    private void recordProgress(String shardId, String position, int records) {
+        boolean due;
+        synchronized (checkpointLock) {
+            pendingCheckpoints.put(shardId, position);
+            recordsSinceCheckpoint += records;
+            due = recordsSinceCheckpoint >= checkpointMaxRecords
+                    || System.currentTimeMillis() - lastCheckpointMillis >= checkpointIntervalMillis;
+        }
+        if (due) {
+            checkpoint();
+        }
+    }
+    
+    private void shardFinished(String shardId) {
+        logger.info("Shard {} is closed and has been processed completely", shardId);
+        finishedShards.add(shardId);
+        positions.remove(shardId);
+        activeShards.remove(shardId);
+        recordProgress(shardId, StreamCheckpointRepository.SHARD_END, 0);
+        // Make the end of the shard visible to the other instances before giving up its lease
+        checkpoint();
+        leaseManager.release(streamArn, shardId);
+        // Start the children of the shard right away
+        discoverShards();
+    }
+    
+    /**
+     * Reads and processes the records of one shard in order until the shard is closed and drained.
+     * The worker runs on two threads: the fetch thread reads pages ahead into the bounded buffer, and the
+     * processing thread takes them out in order.
+     */
+    private class ShardWorker implements Runnable {
+        
+        private final String shardId;
+        private final BlockingQueue<Page> pages;
+        private final AtomicLong recordsProcessed = new AtomicLong();
+        private final AtomicLong getRecordsCalls = new AtomicLong();
+        private volatile long lagMillis;
+        private volatile long pollDelayMillis;
+        private volatile boolean leased = true;
+        private volatile Thread thread;
+        
+        private ShardWorker(String shardId) {
+            this.shardId = shardId;
+            this.pages = new ArrayBlockingQueue<>(Math.max(1, prefetchPages));
+        }
+        
+        /**
+         * Stops the worker after its lease has been taken. Progress that has not been checkpointed yet is
+         * dropped, so it cannot overwrite the checkpoints of the new owner.
+         */
+        private void leaseLost() {
+            leased = false;
+            synchronized (checkpointLock) {
+                pendingCheckpoints.remove(shardId);
+            }
+            Thread current = thread;
+            if (current != null) {
+                current.interrupt();
+            }
+        }
+        
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            Future<?> fetcher = null;
+            long backoffMillis = minPollIntervalMillis;
+            Page page = null;
+            try {
+                fetcher = shardWorkers.submit(() -> fetch(positions.get(shardId)));
+                while (running && leased && !Thread.currentThread().isInterrupted()) {
+                    try {
+                        if (page == null) {
+                            page = pages.take();
+                        }
+                        List<Record> records = page.records;
+                        if (!records.isEmpty()) {
+                            streamProcessingService.processRecords(records).join();
+                            if (!leased) {
+                                break;
+                            }
+                            
+                            StreamRecord last = records.get(records.size() - 1).getDynamodb();
+                            positions.put(shardId, last.getSequenceNumber());
+                            recordsProcessed.addAndGet(records.size());
+                            if (last.getApproximateCreationDateTime() != null) {
+                                lagMillis = Math.max(0, System.currentTimeMillis() - last.getApproximateCreationDateTime().getTime());
+                            }
+                            recordProgress(shardId, last.getSequenceNumber(), records.size());
+                        }
+                        if (page.last) {
+                            shardFinished(shardId);
+                            return;
+                        }
+                        page = null;
+                        backoffMillis = minPollIntervalMillis;
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (Exception e) {
+                        // Keep the page and process it again
+                        logger.error("Error processing records of shard {}: {}", shardId, e.getMessage(), e);
+                        try {
+                            Thread.sleep(backoffMillis);
+                        } catch (InterruptedException ie) {
+                            Thread.currentThread().interrupt();
+                        }
+                        backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+                    }
                 }
-                
-                // Get records from the shard
-                GetRecordsRequest getRecordsRequest = new GetRecordsRequest()
-                        .withShardIterator(shardIterator)
-                        .withLimit(100);
-                
-                logger.debug("Getting records from shard: {}", shardId);
-                GetRecordsResult getRecordsResult = streamsClient.getRecords(getRecordsRequest);
-                List<Record> records = getRecordsResult.getRecords();
-                
-                logger.debug("Got {} records from shard: {}", records.size(), shardId);
-                
-                // Process each record
-                for (Record record : records) {
-                    logger.debug("Processing record: {}", record);
-                    streamProcessingService.processRecord(record);
+            } finally {
+                if (fetcher != null) {
+                    fetcher.cancel(true);
                 }
-                
-                // Update the shard iterator for the next poll
-                shardIterators.put(shardId, getRecordsResult.getNextShardIterator());
+                thread = null;
+                activeShards.remove(shardId, this);
             }
-        } catch (Exception e) {
-            logger.error("Error polling DynamoDB stream: {}", e.getMessage(), e);
+        }
+        
+        /**
+         * Reads the shard ahead of processing until it is closed, blocking while the buffer is full.
+         *
+         * @param position The sequence number of the last processed record, or null to start at the oldest record
+         */
+        private void fetch(String position) {
+            // The fetch thread runs ahead of processing, so it resumes after the last record it has fetched
+            String fetched = position;
+            String shardIterator = null;
+            long backoffMillis = minPollIntervalMillis;
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    if (shardIterator == null) {
+                        shardIterator = getShardIterator(shardId, fetched);
+                    }
+                    
+                    GetRecordsResult getRecordsResult = streamsClient.getRecords(new GetRecordsRequest()
+                            .withShardIterator(shardIterator)
+                            .withLimit(getRecordsLimit));
+                    List<Record> records = getRecordsResult.getRecords();
+                    getRecordsCalls.incrementAndGet();
+                    logger.debug("Got {} records from shard: {}", records.size(), shardId);
+                    
+                    // A closed shard has no next iterator once it has been read to the end
+                    shardIterator = getRecordsResult.getNextShardIterator();
+                    if (!records.isEmpty()) {
+                        fetched = records.get(records.size() - 1).getDynamodb().getSequenceNumber();
+                        pages.put(new Page(records, shardIterator == null));
+                    } else if (shardIterator == null) {
+                        pages.put(new Page(records, true));
+                    } else if (pages.isEmpty()) {
+                        lagMillis = 0;
+                    }
+                    if (shardIterator == null) {
+                        return;
+                    }
+                    
+                    backoffMillis = minPollIntervalMillis;
+                    pollDelayMillis = nextPollDelay(records.size(), getRecordsLimit, pollDelayMillis,
+                            minPollIntervalMillis, maxIdlePollIntervalMillis);
+                    if (pollDelayMillis > 0) {
+                        Thread.sleep(pollDelayMillis);
+                    }
+                } catch (ExpiredIteratorException e) {
+                    logger.debug("Shard iterator of shard {} expired, resuming from the last fetched record", shardId);
+                    shardIterator = null;
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Exception e) {
+                    // Read the failed page again from the last fetched record
+                    logger.error("Error reading shard {}: {}", shardId, e.getMessage(), e);
+                    shardIterator = null;
+                    try {
+                        Thread.sleep(backoffMillis);
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                    backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+                }
+            }
+        }
+    }
+    
+    /**
+     * A page of records fetched ahead of processing.
+     */
+    private static class Page {
+        
+        private final List<Record> records;
+        // Whether this is the last page of a closed shard
+        private final boolean last;
+        
+        private Page(List<Record> records, boolean last) {
+            this.records = records;
+            this.last = last;
         }
     }
 }
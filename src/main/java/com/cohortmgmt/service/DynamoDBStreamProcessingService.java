@@ -7,31 +7,46 @@ import com.amazonaws.services.dynamodbv2.document.Table;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.Record;
 import com.amazonaws.services.dynamodbv2.model.StreamRecord;
-import com.cohortmgmt.model.CohortType;
+import com.cohortmgmt.logging.SampledLogger;
 import com.cohortmgmt.model.Customer;
+import com.cohortmgmt.model.CustomerChange;
 import com.cohortmgmt.model.UserType;
+import com.cohortmgmt.service.concurrency.AdaptiveConcurrencyLimiter;
+import com.cohortmgmt.service.concurrency.KeyPartitionedExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Service for processing DynamoDB streams to classify customers into cohorts.
  * This service consumes events from the DynamoDB stream, processes them,
  * and stores the classification results in the second DynamoDB table.
+ * Classification runs on the customer's lane of the shared {@link KeyPartitionedExecutor},
+ * so it is ordered with the other ingestion paths.
  */
 @Service
 public class DynamoDBStreamProcessingService {
     
     private static final Logger logger = LoggerFactory.getLogger(DynamoDBStreamProcessingService.class);
+    // Malformed or failing records tend to come in bursts, so their messages are sampled
+    private static final SampledLogger recordLog = SampledLogger.forSite(logger, "record", 5, 100);
     
     private final AmazonDynamoDB amazonDynamoDB;
     private final DynamoDB dynamoDB;
     private final CohortService cohortService;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final KeyPartitionedExecutor laneExecutor;
     private final String customerTableName;
     
     @Autowired
@@ -39,97 +54,217 @@ public class DynamoDBStreamProcessingService {
             AmazonDynamoDB amazonDynamoDB,
             DynamoDB dynamoDB,
             CohortService cohortService,
+            AdaptiveConcurrencyLimiter concurrencyLimiter,
+            KeyPartitionedExecutor laneExecutor,
             @Value("${aws.dynamodb.customer-table}") String customerTableName) {
         this.amazonDynamoDB = amazonDynamoDB;
         this.dynamoDB = dynamoDB;
         this.cohortService = cohortService;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.laneExecutor = laneExecutor;
         this.customerTableName = customerTableName;
     }
     
     /**
      * Processes a DynamoDB stream record.
-     * This method is called by the DynamoDB stream consumer.
+     * Records for the same customer must be passed in stream order.
      *
      * @param record The record to process
+     * @return A future that completes once the record has been processed
      */
-    public void processRecord(Record record) {
-        try {
-            logger.debug("Processing DynamoDB stream record: {}", record);
-            
-            StreamRecord streamRecord = record.getDynamodb();
-            
-            if (streamRecord == null) {
-                logger.warn("Stream record is null");
-                return;
+    public CompletableFuture<Void> processRecord(Record record) {
+        return processRecords(Collections.singletonList(record));
+    }
+    
+    /**
+     * Processes a page of DynamoDB stream records as one batch.
+     * This method is called by the DynamoDB stream consumer. Pages of the same shard must be passed in
+     * stream order, and the next page only once the future of the previous one has completed.
+     *
+     * The stream carries both the old and the new image, so a change that leaves the classification inputs
+     * alone is skipped without touching the cohort table, and a change to them only writes the memberships
+     * that were added or removed. A REMOVE event removes the customer from every cohort type. The changes of
+     * a customer that appears several times in the page are merged into one, from its first old image to its
+     * last new image. The remaining changes are grouped by lane and classified with one call per lane,
+     * which skips changes that don't cross a rule boundary, compares the rules' result with the stored
+     * memberships for the rest and batches the writes.
+     *
+     * @param records The records to process, in stream order
+     * @return A future that completes once every record has been processed, or completes exceptionally if
+     *         a membership could not be updated, in which case the page must be processed again
+     */
+    public CompletableFuture<Void> processRecords(List<Record> records) {
+        Map<String, CustomerChange> changes = new LinkedHashMap<>();
+        for (Record record : records) {
+            try {
+                CustomerChange change = toChange(record);
+                if (change == null) {
+                    continue;
+                }
+                CustomerChange earlier = changes.get(change.getCustomerId());
+                if (earlier == null) {
+                    changes.put(change.getCustomerId(), change);
+                } else {
+                    earlier.setCurrent(change.getCurrent());
+                }
+            } catch (Exception e) {
+                recordLog.error("Error processing DynamoDB stream record: {}", e.getMessage(), e);
             }
-            
-            logger.debug("Stream record: {}", streamRecord);
-            logger.debug("Event type: {}", record.getEventName());
-            logger.debug("New image: {}", streamRecord.getNewImage());
-            
-            // Process the record based on the event type
-            switch (record.getEventName()) {
-                case "INSERT":
-                case "MODIFY":
-                    logger.debug("Processing INSERT or MODIFY event");
-                    processInsertOrModify(streamRecord.getNewImage());
-                    break;
-                default:
-                    logger.info("Ignoring event type: {}", record.getEventName());
+        }
+        
+        Map<Integer, List<CustomerChange>> lanes = new HashMap<>();
+        for (CustomerChange change : changes.values()) {
+            if (change.getPrevious() != null && change.getCurrent() != null
+                    && !classificationInputsChanged(change.getPrevious(), change.getCurrent())) {
+                logger.debug("Skipping change of customer {} that leaves its classification inputs alone",
+                        change.getCustomerId());
+                continue;
+            }
+            lanes.computeIfAbsent(laneExecutor.laneIndex(change.getCustomerId()), lane -> new ArrayList<>()).add(change);
+        }
+        
+        List<CompletableFuture<Void>> results = new ArrayList<>(lanes.size());
+        try {
+            for (List<CustomerChange> batch : lanes.values()) {
+                results.add(reclassifyOnLane(batch));
             }
-        } catch (Exception e) {
-            logger.error("Error processing DynamoDB stream record: {}", e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // Part of the page was not submitted, so it must not count as processed
+            CompletableFuture<Void> interrupted = new CompletableFuture<>();
+            interrupted.completeExceptionally(e);
+            return interrupted;
         }
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture[0]));
+    }
+    
+    /**
+     * Converts an INSERT, MODIFY or REMOVE record to a customer change.
+     *
+     * @param record The record
+     * @return The change, or null if the record is not a customer change or incomplete
+     */
+    private CustomerChange toChange(Record record) {
+        StreamRecord streamRecord = record.getDynamodb();
+        if (streamRecord == null) {
+            recordLog.warn("Stream record is null");
+            return null;
+        }
+        
+        switch (record.getEventName()) {
+            case "INSERT":
+            case "MODIFY":
+                Customer customer = toCustomer(streamRecord.getNewImage());
+                if (customer == null) {
+                    return null;
+                }
+                return new CustomerChange(customer.getCustomerId(), toCustomer(streamRecord.getOldImage()), customer);
+            case "REMOVE":
+                String customerId = customerId(streamRecord);
+                if (customerId == null) {
+                    recordLog.warn("REMOVE event does not contain customerId");
+                    return null;
+                }
+                return new CustomerChange(customerId, toCustomer(streamRecord.getOldImage()), null);
+            default:
+                recordLog.info("Ignoring event type: {}", record.getEventName());
+                return null;
+        }
+    }
+    
+    /**
+     * Checks whether a change touched any attribute the cohort rules read.
+     *
+     * @param previous The customer before the change
+     * @param current The customer after the change
+     * @return true if the daily spend or the user type changed
+     */
+    static boolean classificationInputsChanged(Customer previous, Customer current) {
+        return !Objects.equals(previous.getDailySpend(), current.getDailySpend())
+                || previous.getUserType() != current.getUserType();
     }
     
     /**
-     * Processes an INSERT or MODIFY event.
+     * Extracts the customer from an image of a stream record.
      *
-     * @param newImage The new image of the record
+     * @param image The old or new image of the record
+     * @return The customer, or null if there is no image or it is incomplete
      */
-    private void processInsertOrModify(Map<String, AttributeValue> newImage) {
-        if (newImage == null) {
-            logger.warn("New image is null");
-            return;
+    private Customer toCustomer(Map<String, AttributeValue> image) {
+        if (image == null) {
+            // INSERT events have no old image
+            return null;
+        }
+        
+        // Extract customer data from the record
+        if (!image.containsKey("customerId")) {
+            recordLog.warn("Image does not contain customerId");
+            return null;
+        }
+        String customerId = image.get("customerId").getS();
+        
+        if (!image.containsKey("dailySpend")) {
+            recordLog.warn("Image of customer {} does not contain dailySpend", customerId);
+            return null;
+        }
+        Double dailySpend = Double.parseDouble(image.get("dailySpend").getN());
+        
+        if (!image.containsKey("userType")) {
+            recordLog.warn("Image of customer {} does not contain userType", customerId);
+            return null;
         }
+        UserType userType = UserType.valueOf(image.get("userType").getS());
         
+        return new Customer(customerId, dailySpend, userType);
+    }
+    
+    /**
+     * Extracts the customer ID from the keys of a REMOVE event, falling back to the old image.
+     *
+     * @param streamRecord The stream record
+     * @return The customer ID, or null if the record doesn't carry it
+     */
+    private String customerId(StreamRecord streamRecord) {
+        Map<String, AttributeValue> keys = streamRecord.getKeys() != null ? streamRecord.getKeys() : streamRecord.getOldImage();
+        if (keys == null || !keys.containsKey("customerId")) {
+            return null;
+        }
+        return keys.get("customerId").getS();
+    }
+    
+    /**
+     * Takes a concurrency permit and queues the update of a batch of customers that share a lane on that lane,
+     * which returns the permit once the batch is done.
+     *
+     * @param changes The changes of the customers
+     * @return A future that completes once the batch is reclassified
+     * @throws InterruptedException If interrupted while waiting for a permit or for room in the lane
+     */
+    private CompletableFuture<Void> reclassifyOnLane(List<CustomerChange> changes) throws InterruptedException {
+        concurrencyLimiter.acquire();
         try {
-            logger.debug("Processing new image: {}", newImage);
-            
-            // Extract customer data from the record
-            if (!newImage.containsKey("customerId")) {
-                logger.warn("New image does not contain customerId");
-                return;
-            }
-            String customerId = newImage.get("customerId").getS();
-            logger.debug("Extracted customerId: {}", customerId);
-            
-            if (!newImage.containsKey("dailySpend")) {
-                logger.warn("New image does not contain dailySpend");
-                return;
-            }
-            Double dailySpend = Double.parseDouble(newImage.get("dailySpend").getN());
-            logger.debug("Extracted dailySpend: {}", dailySpend);
-            
-            if (!newImage.containsKey("userType")) {
-                logger.warn("New image does not contain userType");
-                return;
-            }
-            UserType userType = UserType.valueOf(newImage.get("userType").getS());
-            logger.debug("Extracted userType: {}", userType);
-            
-            // Create a customer object
-            Customer customer = new Customer(customerId, dailySpend, userType);
-            logger.debug("Created customer object: {}", customer);
-            
-            // Classify the customer into cohort types
-            logger.debug("Classifying customer: {}", customer);
-            Set<CohortType> cohortTypes = cohortService.classifyCustomer(customer);
-            
-            logger.info("Classified customer {} into cohort types: {}", customerId, cohortTypes);
-        } catch (Exception e) {
-            logger.error("Error processing INSERT or MODIFY event: {}", e.getMessage(), e);
+            // Every customer of the batch maps to the same lane, so any of them can be used as the key
+            return laneExecutor.execute(changes.get(0).getCustomerId(), () -> {
+                try {
+                    AdaptiveConcurrencyLimiter.runUnderPermit(() -> reclassify(changes));
+                } finally {
+                    concurrencyLimiter.release();
+                }
+            });
+        } catch (InterruptedException | RuntimeException e) {
+            concurrencyLimiter.release();
+            throw e;
         }
     }
     
+    /**
+     * Updates the memberships of a batch of customers that share a lane. Runs on that lane.
+     * A failure is rethrown, so the page is not checkpointed and its worker processes it again.
+     *
+     * @param changes The changes of the customers
+     */
+    private void reclassify(List<CustomerChange> changes) {
+        int reclassified = cohortService.reclassifyCustomers(changes);
+        logger.debug("Reclassified {} of {} changed customers", reclassified, changes.size());
+    }
 }
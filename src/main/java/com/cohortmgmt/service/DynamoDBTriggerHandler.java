@@ -7,107 +7,331 @@ import com.amazonaws.services.dynamodbv2.document.Table;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
 import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.cohortmgmt.config.ResourcesReadyEvent;
+import com.cohortmgmt.logging.SampledLogger;
 import com.cohortmgmt.model.CohortType;
 import com.cohortmgmt.model.Customer;
 import com.cohortmgmt.model.UserType;
+import com.cohortmgmt.repository.CustomerModificationIndex;
+import com.cohortmgmt.repository.StreamCheckpointRepository;
+import com.cohortmgmt.service.concurrency.AdaptiveConcurrencyLimiter;
+import com.cohortmgmt.service.concurrency.CapacityGovernor;
+import com.cohortmgmt.service.concurrency.ExpiringDedupeWindow;
+import com.cohortmgmt.service.concurrency.KeyPartitionedExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Service that simulates a Lambda function triggered by DynamoDB events.
  * This service polls the Customers table periodically and processes any new or modified items.
+ * Items are classified on the customer's lane of the shared {@link KeyPartitionedExecutor},
+ * so they are ordered with the other ingestion paths.
+ *
+ * In incremental mode, the default, a poll only reads the customers modified since the previous one: it queries
+ * every shard of the buckets of the modification time index (see {@link CustomerModificationIndex}) from its
+ * high-water mark up to now, so its cost follows the rate of change rather than the size of the table. The mark is the
+ * modification time up to which every customer has been processed, and is kept in the
+ * {@link StreamCheckpointRepository}, so a restart resumes where the previous run stopped. Polls stop a settle
+ * time short of now, which leaves writes that are still in flight, or not yet visible in the index, to the next
+ * poll. Without a mark, e.g. on the first start, the whole table is scanned once, which also covers customers
+ * written before they were stamped with a modification time. A customer that fails to be classified fails the
+ * poll, so the mark stays where it was and the next poll reads the same customers again.
+ *
+ * Otherwise every poll scans the whole table and processes the customers not processed within the last minute.
  */
 @Service
-public class DynamoDBTriggerHandler {
+public class DynamoDBTriggerHandler implements ApplicationListener<ResourcesReadyEvent> {
     
     private static final Logger logger = LoggerFactory.getLogger(DynamoDBTriggerHandler.class);
+    private static final SampledLogger itemFailureLog = SampledLogger.forSite(logger, "item-failure", 5, 100);
+    
+    // Named after the sharded index, so a mark kept for the unsharded one, which the sharded index does not
+    // cover, is not picked up and the table is scanned once instead
+    static final String HIGH_WATER_MARK = "shardedLastModified";
     
     private final AmazonDynamoDB amazonDynamoDB;
     private final CohortService cohortService;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final KeyPartitionedExecutor laneExecutor;
+    private final StreamCheckpointRepository checkpointRepository;
     private final String customerTableName;
+    private final boolean incremental;
+    private final long bucketMillis;
+    private final int bucketShards;
+    private final long settleMillis;
     
-    // Keep track of the last processed items to avoid processing the same item multiple times
-    private final Map<String, Long> processedItems = new HashMap<>();
+    // Customers processed within the last minute, which full scans skip
+    private final ExpiringDedupeWindow processedItems;
+    private volatile boolean resourcesReady;
+    // Only accessed by the polling thread; null until loaded from the checkpoint repository
+    private Long highWaterMark;
+    private long persistedHighWaterMark;
     
+    /**
+     * Creates a new DynamoDBTriggerHandler.
+     *
+     * @param amazonDynamoDB The DynamoDB client
+     * @param cohortService The cohort service
+     * @param concurrencyLimiter The limiter governing concurrent classifications
+     * @param laneExecutor The executor keeping the updates of a customer in order
+     * @param checkpointRepository The repository keeping the high-water mark
+     * @param customerTableName The Customers table name
+     * @param incremental Whether to poll the modification time index instead of scanning the table
+     * @param bucketMillis The width of a bucket of the modification time index
+     * @param bucketShards The number of shards per bucket of the modification time index
+     * @param settleMillis How far behind now incremental polls stop
+     * @param dedupeCapacity The maximum number of recently processed customers full scans remember
+     */
     @Autowired
     public DynamoDBTriggerHandler(
             AmazonDynamoDB amazonDynamoDB,
             CohortService cohortService,
-            @Value("${aws.dynamodb.customer-table}") String customerTableName) {
+            AdaptiveConcurrencyLimiter concurrencyLimiter,
+            KeyPartitionedExecutor laneExecutor,
+            StreamCheckpointRepository checkpointRepository,
+            @Value("${aws.dynamodb.customer-table}") String customerTableName,
+            @Value("${trigger.incremental.enabled:true}") boolean incremental,
+            @Value("${trigger.incremental.bucket-millis:60000}") long bucketMillis,
+            @Value("${trigger.incremental.bucket-shards:8}") int bucketShards,
+            @Value("${trigger.incremental.settle-millis:2000}") long settleMillis,
+            @Value("${trigger.dedupe-capacity:262144}") int dedupeCapacity) {
         this.amazonDynamoDB = amazonDynamoDB;
         this.cohortService = cohortService;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.laneExecutor = laneExecutor;
+        this.checkpointRepository = checkpointRepository;
         this.customerTableName = customerTableName;
+        this.incremental = incremental;
+        this.bucketMillis = bucketMillis;
+        this.bucketShards = bucketShards;
+        this.settleMillis = settleMillis;
+        this.processedItems = new ExpiringDedupeWindow(60000, 1000, dedupeCapacity);
+    }
+    
+    /**
+     * Starts polling once the Customers table exists.
+     */
+    @Override
+    public void onApplicationEvent(ResourcesReadyEvent event) {
+        resourcesReady = true;
     }
     
     /**
      * Polls the Customers table periodically and processes any new or modified items.
-     * This method is scheduled to run every 5 seconds.
+     * This method is scheduled to run every 5 seconds, with background capacity priority.
      */
     @Scheduled(fixedDelay = 5000)
     public void pollCustomersTable() {
+        if (!resourcesReady) {
+            logger.debug("AWS resources not ready yet, skipping poll of the Customers table");
+            return;
+        }
+        CapacityGovernor.runAsBackground(incremental ? this::pollModifiedCustomers : this::scanCustomersTable);
+    }
+    
+    /**
+     * Gets the modification time up to which every customer has been processed.
+     *
+     * @return The high-water mark in epoch milliseconds, or null before the first incremental poll
+     */
+    public Long getHighWaterMark() {
+        return highWaterMark;
+    }
+    
+    private void scanCustomersTable() {
         try {
             logger.debug("Polling Customers table for new or modified items");
             
-            // Scan the Customers table
-            com.amazonaws.services.dynamodbv2.model.ScanRequest scanRequest = new com.amazonaws.services.dynamodbv2.model.ScanRequest()
-                    .withTableName(customerTableName);
-            
-            com.amazonaws.services.dynamodbv2.model.ScanResult scanResult = amazonDynamoDB.scan(scanRequest);
-            
-            // Process each item
-            for (Map<String, AttributeValue> item : scanResult.getItems()) {
+            List<CompletableFuture<Void>> results = new ArrayList<>();
+            scan(item -> {
                 String customerId = item.get("customerId").getS();
                 
-                // Skip if we've already processed this item recently
-                if (processedItems.containsKey(customerId)) {
-                    long lastProcessedTime = processedItems.get(customerId);
-                    if (System.currentTimeMillis() - lastProcessedTime < 60000) { // 1 minute
-                        continue;
-                    }
+                // Skip if we've already processed this item recently, otherwise mark it as processed
+                if (!processedItems.markIfAbsent(customerId)) {
+                    return;
                 }
                 
-                // Process the item
-                processItem(item);
-                
-                // Mark as processed
-                processedItems.put(customerId, System.currentTimeMillis());
-            }
+                // Process the item on the customer's lane
+                results.add(processOnLane(item));
+            });
+            CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while polling Customers table");
         } catch (Exception e) {
             logger.error("Error polling Customers table: {}", e.getMessage(), e);
         }
     }
     
+    private void pollModifiedCustomers() {
+        try {
+            long upTo = System.currentTimeMillis() - settleMillis;
+            if (highWaterMark == null) {
+                String saved = checkpointRepository.findByStream(customerTableName).get(HIGH_WATER_MARK);
+                if (saved == null) {
+                    logger.info("No high-water mark for {}, scanning the whole table once", customerTableName);
+                    List<CompletableFuture<Void>> results = new ArrayList<>();
+                    int scanned = scan(item -> results.add(processOnLane(item)));
+                    CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).join();
+                    saveHighWaterMark(upTo);
+                    logger.info("Initial scan of {} processed {} customers", customerTableName, scanned);
+                    return;
+                }
+                highWaterMark = Long.parseLong(saved);
+                persistedHighWaterMark = highWaterMark;
+            }
+            if (upTo <= highWaterMark) {
+                return;
+            }
+            
+            // Customers modified after the mark and at most up to the end of this poll, shard by shard
+            List<CompletableFuture<Void>> results = new ArrayList<>();
+            long buckets = 0;
+            for (long bucket = CustomerModificationIndex.bucketOf(highWaterMark + 1, bucketMillis);
+                    bucket <= upTo; bucket += bucketMillis) {
+                for (int shard = 0; shard < bucketShards; shard++) {
+                    queryShard(CustomerModificationIndex.shardKey(bucket, shard), highWaterMark + 1, upTo,
+                            item -> results.add(processOnLane(item)));
+                }
+                buckets++;
+            }
+            CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).join();
+            logger.debug("Processed {} customers modified in {} buckets up to {}", results.size(), buckets, upTo);
+            
+            highWaterMark = upTo;
+            // Persist when there was work, and otherwise about once a bucket, so an idle table costs no writes
+            if (!results.isEmpty() || upTo - persistedHighWaterMark >= bucketMillis) {
+                saveHighWaterMark(upTo);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while polling Customers table");
+        } catch (Exception e) {
+            // The mark is not advanced, so the next poll reads the same customers again
+            logger.error("Error polling modified customers: {}", e.getMessage(), e);
+        }
+    }
+    
     /**
-     * Processes a single item from the Customers table.
+     * Queues an item on its customer's lane. The concurrency permit is taken before queuing, so lane threads
+     * never wait for permits and the limiter alone bounds the classifications in flight.
+     *
+     * @param item The item to process
+     * @return A future that completes once the item is processed
+     * @throws InterruptedException If interrupted while waiting for a permit or for room in the lane
+     */
+    private CompletableFuture<Void> processOnLane(Map<String, AttributeValue> item) throws InterruptedException {
+        concurrencyLimiter.acquire();
+        try {
+            return laneExecutor.execute(item.get("customerId").getS(), () -> {
+                try {
+                    AdaptiveConcurrencyLimiter.runUnderPermit(() -> processItem(item));
+                } finally {
+                    concurrencyLimiter.release();
+                }
+            });
+        } catch (InterruptedException | RuntimeException e) {
+            concurrencyLimiter.release();
+            throw e;
+        }
+    }
+    
+    private void saveHighWaterMark(long mark) {
+        checkpointRepository.saveAll(customerTableName, Collections.singletonMap(HIGH_WATER_MARK, String.valueOf(mark)));
+        highWaterMark = mark;
+        persistedHighWaterMark = mark;
+    }
+    
+    private int scan(ItemHandler handler) throws InterruptedException {
+        int count = 0;
+        Map<String, AttributeValue> startKey = null;
+        do {
+            ScanResult result = amazonDynamoDB.scan(new ScanRequest()
+                    .withTableName(customerTableName)
+                    .withExclusiveStartKey(startKey));
+            for (Map<String, AttributeValue> item : result.getItems()) {
+                handler.handle(item);
+                count++;
+            }
+            startKey = result.getLastEvaluatedKey();
+        } while (startKey != null && !startKey.isEmpty());
+        return count;
+    }
+    
+    private void queryShard(String shardKey, long from, long to, ItemHandler handler) throws InterruptedException {
+        Map<String, String> names = new HashMap<>();
+        names.put("#shard", CustomerModificationIndex.SHARD_ATTR);
+        names.put("#lastModified", CustomerModificationIndex.LAST_MODIFIED_ATTR);
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":shard", new AttributeValue(shardKey));
+        values.put(":from", new AttributeValue().withN(String.valueOf(from)));
+        values.put(":to", new AttributeValue().withN(String.valueOf(to)));
+        
+        Map<String, AttributeValue> startKey = null;
+        do {
+            QueryResult result = amazonDynamoDB.query(new QueryRequest()
+                    .withTableName(customerTableName)
+                    .withIndexName(CustomerModificationIndex.INDEX_NAME)
+                    .withKeyConditionExpression("#shard = :shard AND #lastModified BETWEEN :from AND :to")
+                    .withExpressionAttributeNames(names)
+                    .withExpressionAttributeValues(values)
+                    .withExclusiveStartKey(startKey));
+            for (Map<String, AttributeValue> item : result.getItems()) {
+                handler.handle(item);
+            }
+            startKey = result.getLastEvaluatedKey();
+        } while (startKey != null && !startKey.isEmpty());
+    }
+    
+    /**
+     * Handles an item read from the Customers table or its index.
+     */
+    @FunctionalInterface
+    private interface ItemHandler {
+        void handle(Map<String, AttributeValue> item) throws InterruptedException;
+    }
+    
+    /**
+     * Processes a single item from the Customers table. A malformed item is logged and skipped, since reading it
+     * again would not help; a failure to classify the customer is thrown.
      *
      * @param item The item to process
      */
     private void processItem(Map<String, AttributeValue> item) {
+        Customer customer;
         try {
             // Extract customer data
             String customerId = item.get("customerId").getS();
             Double dailySpend = Double.parseDouble(item.get("dailySpend").getN());
             UserType userType = UserType.valueOf(item.get("userType").getS());
             
-            logger.info("Processing customer: {}", customerId);
-            
             // Create a customer object
-            Customer customer = new Customer(customerId, dailySpend, userType);
-            
-            // Classify the customer
-            Set<CohortType> cohortTypes = cohortService.classifyCustomer(customer);
-            
-            logger.info("Customer {} classified into cohort types: {}", customerId, cohortTypes);
-        } catch (Exception e) {
-            logger.error("Error processing item: {}", e.getMessage(), e);
+            customer = new Customer(customerId, dailySpend, userType);
+        } catch (RuntimeException e) {
+            itemFailureLog.error("Skipping malformed item: {}", e.getMessage(), e);
+            return;
         }
+        
+        // Classify the customer
+        Set<CohortType> cohortTypes = cohortService.classifyCustomer(customer);
+        
+        logger.debug("Customer {} classified into cohort types: {}", customer.getCustomerId(), cohortTypes);
     }
 }
@@ -0,0 +1,234 @@
+package com.cohortmgmt.service;
+
+import com.cohortmgmt.logging.SampledLogger;
+import com.cohortmgmt.model.CohortType;
+import com.cohortmgmt.repository.MembershipVersionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Versions of cohort memberships, which the read endpoints turn into entity tags so polling clients can be
+ * answered with 304 Not Modified without reading the memberships.
+ *
+ * Every membership change through {@link CohortServiceImpl} increments the version of each customer whose
+ * memberships changed and of each cohort type that gained or lost members. Customer versions are kept per slot,
+ * chosen by the hash of the customer ID, so the number of versions stays flat however many customers there are;
+ * customers sharing a slot only see each other's changes as extra changes, never as missed ones.
+ *
+ * Tags are served from a local map of versions, so answering a poll does not touch DynamoDB:
+ * - a change bumps the local versions at once, and the increments are added up and written to the shared
+ *   {@link MembershipVersionRepository} in the background, one update per key per flush however many changes
+ *   it saw, so the write paths neither wait for nor contend on the version items
+ * - a version is read from the repository the first time it is needed; once older than the refresh interval
+ *   it is still served, and reread in the background together with the other stale versions in batches,
+ *   which picks up changes made through other instances within about two refresh intervals
+ * Local versions never go down, so a tag that stopped matching does not match again.
+ *
+ * A tag also carries an epoch that advances every validity period, which bounds how long a change can go unseen
+ * when its increment failed. Epochs are offset per key, so the tags of all keys do not expire at the same moment.
+ */
+@Component
+public class MembershipVersions {
+    
+    private static final Logger logger = LoggerFactory.getLogger(MembershipVersions.class);
+    private static final SampledLogger failureLog = SampledLogger.forSite(logger, "membership-version-failure", 5, 100);
+    
+    private static final String CUSTOMER_KEY_PREFIX = "customer#";
+    private static final String COHORT_TYPE_KEY_PREFIX = "cohortType#";
+    
+    private final MembershipVersionRepository versionRepository;
+    private final int slotMask;
+    private final long validityMillis;
+    private final long refreshMillis;
+    private final LongSupplier clockMillis;
+    
+    private final Map<String, Version> versions = new ConcurrentHashMap<>();
+    // Increments not yet written to the repository, by key
+    private final Map<String, Long> pendingIncrements = new ConcurrentHashMap<>();
+    private final Set<String> staleKeys = ConcurrentHashMap.newKeySet();
+    
+    /**
+     * Creates a new MembershipVersions.
+     *
+     * @param versionRepository The repository holding the shared versions
+     * @param slots The number of customer versions, rounded up to a power of two
+     * @param validityMillis How long a tag stays valid at most
+     * @param refreshMillis How long a version is served before it is reread
+     */
+    @Autowired
+    public MembershipVersions(
+            MembershipVersionRepository versionRepository,
+            @Value("${membership-versions.slots:65536}") int slots,
+            @Value("${membership-versions.validity-millis:30000}") long validityMillis,
+            @Value("${membership-versions.refresh-millis:1000}") long refreshMillis) {
+        this(versionRepository, slots, validityMillis, refreshMillis, System::currentTimeMillis);
+    }
+    
+    MembershipVersions(MembershipVersionRepository versionRepository, int slots, long validityMillis,
+            long refreshMillis, LongSupplier clockMillis) {
+        if (slots <= 0 || validityMillis <= 0 || refreshMillis <= 0) {
+            throw new IllegalArgumentException("Slots, validity and refresh interval must be positive");
+        }
+        this.versionRepository = versionRepository;
+        this.slotMask = (slots == 1 ? 1 : Integer.highestOneBit(slots - 1) << 1) - 1;
+        this.validityMillis = validityMillis;
+        this.refreshMillis = refreshMillis;
+        this.clockMillis = clockMillis;
+    }
+    
+    /**
+     * Records that the memberships of customers changed. The local versions change at once; the shared ones
+     * with the next {@link #flush()}.
+     *
+     * @param customerIds The IDs of the customers whose memberships changed
+     * @param cohortTypes The cohort types whose members changed
+     */
+    public void changed(Collection<String> customerIds, Collection<CohortType> cohortTypes) {
+        Set<String> keys = new LinkedHashSet<>();
+        for (String customerId : customerIds) {
+            keys.add(customerKey(customerId));
+        }
+        for (CohortType cohortType : cohortTypes) {
+            keys.add(COHORT_TYPE_KEY_PREFIX + cohortType.name());
+        }
+        for (String key : keys) {
+            pendingIncrements.merge(key, 1L, Long::sum);
+            versions.computeIfPresent(key, (k, version) -> new Version(version.version + 1, version.readAt));
+        }
+    }
+    
+    /**
+     * Writes the increments recorded since the last flush to the shared versions. Increments that could not be
+     * written are kept for the next flush.
+     */
+    @Scheduled(fixedDelayString = "${membership-versions.flush-interval-millis:200}")
+    public void flush() {
+        if (pendingIncrements.isEmpty()) {
+            return;
+        }
+        Map<String, Long> increments = new HashMap<>(pendingIncrements);
+        try {
+            versionRepository.increment(increments);
+        } catch (RuntimeException e) {
+            failureLog.error("Error incrementing {} membership versions: {}", increments.size(), e.getMessage(), e);
+            return;
+        }
+        // Changes recorded while writing stay pending
+        increments.forEach((key, increment) ->
+                pendingIncrements.computeIfPresent(key, (k, pending) -> pending > increment ? pending - increment : null));
+    }
+    
+    /**
+     * Rereads the versions that were served after their refresh interval.
+     */
+    @Scheduled(fixedDelayString = "${membership-versions.refresh-millis:1000}")
+    public void refresh() {
+        if (staleKeys.isEmpty()) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(staleKeys);
+        staleKeys.removeAll(keys);
+        try {
+            load(keys);
+        } catch (RuntimeException e) {
+            // The versions stay stale and are queued again when next served
+            failureLog.warn("Error refreshing {} membership versions: {}", keys.size(), e.getMessage());
+        }
+    }
+    
+    /**
+     * Writes the pending increments before shutdown, so other instances see the last changes.
+     */
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+    
+    /**
+     * Gets the entity tag of the cohort types of a customer. Read it before the memberships, so a write in
+     * between makes the tag older than the data rather than newer.
+     *
+     * @param customerId The ID of the customer
+     * @return The strong entity tag, quoted, or null if the version could not be read
+     */
+    public String customerETag(String customerId) {
+        return eTag(customerKey(customerId), customerId.hashCode());
+    }
+    
+    /**
+     * Gets the entity tag of the members of a cohort type. Read it before the members, so a write in between
+     * makes the tag older than the data rather than newer.
+     *
+     * @param cohortType The cohort type
+     * @return The strong entity tag, quoted, or null if the version could not be read
+     */
+    public String cohortTypeETag(CohortType cohortType) {
+        return eTag(COHORT_TYPE_KEY_PREFIX + cohortType.name(), cohortType.name().hashCode());
+    }
+    
+    private String eTag(String key, int keyHash) {
+        long now = clockMillis.getAsLong();
+        Version version = versions.get(key);
+        if (version == null) {
+            try {
+                load(Collections.singletonList(key));
+            } catch (RuntimeException e) {
+                failureLog.warn("Error reading membership version {}: {}", key, e.getMessage());
+                return null;
+            }
+            version = versions.get(key);
+        } else if (now - version.readAt >= refreshMillis) {
+            staleKeys.add(key);
+        }
+        long epoch = (now + Math.floorMod(keyHash, validityMillis)) / validityMillis;
+        return "\"" + version.version + "-" + epoch + "\"";
+    }
+    
+    /**
+     * Reads versions from the repository into the local map, adding the increments not yet written.
+     */
+    private void load(List<String> keys) {
+        Map<String, Long> stored = versionRepository.getAll(keys);
+        long now = clockMillis.getAsLong();
+        for (String key : keys) {
+            long current = stored.getOrDefault(key, 0L) + pendingIncrements.getOrDefault(key, 0L);
+            versions.merge(key, new Version(current, now),
+                    (local, read) -> new Version(Math.max(local.version, read.version), read.readAt));
+        }
+    }
+    
+    private String customerKey(String customerId) {
+        int hash = customerId.hashCode();
+        return CUSTOMER_KEY_PREFIX + ((hash ^ (hash >>> 16)) & slotMask);
+    }
+    
+    /**
+     * A version and when it was last read from the repository.
+     */
+    private static class Version {
+        
+        private final long version;
+        private final long readAt;
+        
+        private Version(long version, long readAt) {
+            this.version = version;
+            this.readAt = readAt;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.cohortmgmt.service;
+
+import com.cohortmgmt.model.ShardLease;
+import com.cohortmgmt.repository.ShardLeaseRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Divides the shards of the Customers table stream between the running service instances.
+ *
+ * Every instance claims free and expired shard leases until it holds its fair share, which is the number of
+ * shards ready to be read divided by the number of instances holding live leases. An instance that holds fewer
+ * than its share takes one lease per round from the instance that holds the most, so the shards rebalance
+ * gradually when instances join. Leases of an instance that died expire and are claimed by the others.
+ * With leases disabled, a single instance reads every shard.
+ */
+@Component
+public class ShardLeaseManager {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ShardLeaseManager.class);
+    
+    private final ShardLeaseRepository leaseRepository;
+    private final boolean enabled;
+    private final long leaseMillis;
+    private final String workerId;
+    
+    @Autowired
+    public ShardLeaseManager(
+            ShardLeaseRepository leaseRepository,
+            @Value("${stream.leases.enabled:true}") boolean enabled,
+            @Value("${stream.leases.duration-millis:30000}") long leaseMillis,
+            @Value("${stream.leases.worker-id:}") String workerId) {
+        this.leaseRepository = leaseRepository;
+        this.enabled = enabled;
+        this.leaseMillis = leaseMillis;
+        this.workerId = workerId.isEmpty() ? defaultWorkerId() : workerId;
+    }
+    
+    /**
+     * Claims leases for this instance and returns the shards it should read.
+     *
+     * @param streamArn The stream ARN
+     * @param readyShards The IDs of the shards that are ready to be read by any instance
+     * @return The IDs of the shards this instance holds a lease for
+     */
+    public Set<String> assign(String streamArn, List<String> readyShards) {
+        if (!enabled) {
+            return new HashSet<>(readyShards);
+        }
+        
+        long now = System.currentTimeMillis();
+        Map<String, ShardLease> leases = new HashMap<>();
+        for (ShardLease lease : leaseRepository.findByStream(streamArn)) {
+            leases.put(lease.getShardId(), lease);
+        }
+        
+        Set<String> owned = new HashSet<>();
+        List<String> available = new ArrayList<>();
+        Map<String, List<ShardLease>> otherOwners = new HashMap<>();
+        for (String shardId : readyShards) {
+            ShardLease lease = leases.get(shardId);
+            if (lease == null || lease.getOwner() == null || lease.getExpiresAt() < now) {
+                available.add(shardId);
+            } else if (workerId.equals(lease.getOwner())) {
+                owned.add(shardId);
+            } else {
+                otherOwners.computeIfAbsent(lease.getOwner(), owner -> new ArrayList<>()).add(lease);
+            }
+        }
+        
+        int target = (readyShards.size() + otherOwners.size()) / (otherOwners.size() + 1);
+        
+        // Try the free leases in random order, so instances starting together don't all race for the same one
+        Collections.shuffle(available);
+        for (String shardId : available) {
+            if (owned.size() >= target) {
+                break;
+            }
+            if (leaseRepository.tryAcquire(streamArn, shardId, workerId, leases.get(shardId), leaseMillis)) {
+                owned.add(shardId);
+            }
+        }
+        
+        if (owned.size() < target) {
+            takeFromBusiestOwner(streamArn, otherOwners, owned, target);
+        }
+        return owned;
+    }
+    
+    /**
+     * Extends the lease of a shard this instance reads.
+     *
+     * @param streamArn The stream ARN
+     * @param shardId The shard ID
+     * @return true if the lease is still held, false if it has been lost to another instance
+     */
+    public boolean renew(String streamArn, String shardId) {
+        return !enabled || leaseRepository.renew(streamArn, shardId, workerId, leaseMillis);
+    }
+    
+    /**
+     * Gives up the lease of a shard, e.g. when the shard is finished or the instance shuts down.
+     *
+     * @param streamArn The stream ARN
+     * @param shardId The shard ID
+     */
+    public void release(String streamArn, String shardId) {
+        if (enabled) {
+            leaseRepository.release(streamArn, shardId, workerId);
+        }
+    }
+    
+    /**
+     * Checks whether leases are used, i.e. whether other instances may read the same stream.
+     *
+     * @return true if leases are enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Gets the ID this instance uses as lease owner.
+     *
+     * @return The worker ID
+     */
+    public String getWorkerId() {
+        return workerId;
+    }
+    
+    private void takeFromBusiestOwner(String streamArn, Map<String, List<ShardLease>> otherOwners,
+                                      Set<String> owned, int target) {
+        List<ShardLease> busiest = null;
+        for (List<ShardLease> leases : otherOwners.values()) {
+            if (busiest == null || leases.size() > busiest.size()) {
+                busiest = leases;
+            }
+        }
+        // Only take a lease if it evens out the load, otherwise two instances would keep taking it back and forth
+        if (busiest != null && busiest.size() > target && busiest.size() > owned.size() + 1) {
+            ShardLease lease = busiest.get(0);
+            if (leaseRepository.tryAcquire(streamArn, lease.getShardId(), workerId, lease, leaseMillis)) {
+                logger.info("Took lease of shard {} from {} to rebalance", lease.getShardId(), lease.getOwner());
+                owned.add(lease.getShardId());
+            }
+        }
+    }
+    
+    private static String defaultWorkerId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "unknown-host";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
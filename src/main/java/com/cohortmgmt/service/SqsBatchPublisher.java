@@ -0,0 +1,316 @@
+package com.cohortmgmt.service;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.cohortmgmt.exception.BackpressureException;
+import com.cohortmgmt.model.Customer;
+import com.cohortmgmt.model.IngestSummary;
+import com.cohortmgmt.service.codec.CustomerBinaryCodec;
+import com.cohortmgmt.service.codec.CustomerMessageCodec;
+import com.cohortmgmt.service.concurrency.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Service for publishing customer records to SQS in large, well-packed batches.
+ *
+ * Records are packed into {@link CustomerMessageCodec#BINARY_BATCH_FORMAT} messages up to the configured
+ * message size, and messages are grouped into SendMessageBatch calls of up to 10 entries within the
+ * SendMessageBatch payload limit. Batches are sent on a small publisher pool. The number of batches in
+ * flight is bounded: when publishing falls behind, {@link Session#add(Customer)} blocks the caller,
+ * and fails with a {@link BackpressureException} if no capacity frees up within the configured timeout.
+ */
+@Service
+public class SqsBatchPublisher {
+    
+    private static final Logger logger = LoggerFactory.getLogger(SqsBatchPublisher.class);
+    
+    private static final int MAX_BATCH_ENTRIES = 10;
+    private static final int MAX_SEND_ATTEMPTS = 3;
+    
+    // Upper bound for the payloadFormat attribute: name, data type and value
+    private static final int ATTRIBUTE_OVERHEAD = 64;
+    
+    private final AmazonSQS amazonSQS;
+    private final CustomerMessageCodec messageCodec = new CustomerMessageCodec();
+    private final CustomerBinaryCodec binaryCodec = new CustomerBinaryCodec();
+    private final String queueName;
+    private final int maxRecordBytes;
+    private final int maxBatchBytes;
+    private final long backpressureTimeoutMillis;
+    private final Semaphore batchPermits;
+    private final ExecutorService publisherPool;
+    
+    private volatile String queueUrl;
+    
+    @Autowired
+    public SqsBatchPublisher(
+            AmazonSQS amazonSQS,
+            @Value("${aws.sqs.queue-name}") String queueName,
+            @Value("${aws.sqs.publisher.threads:8}") int threads,
+            @Value("${aws.sqs.publisher.max-in-flight-batches:32}") int maxInFlightBatches,
+            @Value("${aws.sqs.publisher.max-message-bytes:26000}") int maxMessageBytes,
+            @Value("${aws.sqs.publisher.max-batch-bytes:262144}") int maxBatchBytes,
+            @Value("${aws.sqs.publisher.backpressure-timeout-millis:30000}") long backpressureTimeoutMillis) {
+        this.amazonSQS = amazonSQS;
+        this.queueName = queueName;
+        this.maxBatchBytes = maxBatchBytes;
+        // Base64 turns every 3 bytes into 4 characters
+        this.maxRecordBytes = (maxMessageBytes - ATTRIBUTE_OVERHEAD) / 4 * 3
+                - CustomerBinaryCodec.HEADER_SIZE - CustomerBinaryCodec.MAX_COUNT_SIZE;
+        this.backpressureTimeoutMillis = backpressureTimeoutMillis;
+        this.batchPermits = new Semaphore(maxInFlightBatches);
+        this.publisherPool = Executors.newFixedThreadPool(threads, new NamedThreadFactory("sqs-publisher"));
+    }
+    
+    /**
+     * Opens a publishing session. A session is used by a single thread, e.g. one ingest request.
+     *
+     * @return The session
+     */
+    public Session openSession() {
+        return new Session();
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        publisherPool.shutdown();
+    }
+    
+    /**
+     * A single-threaded publishing session that packs records into messages and messages into batches.
+     */
+    public class Session {
+        
+        private final List<Customer> currentMessage = new ArrayList<>();
+        private int currentMessageBytes;
+        private final List<SendMessageBatchRequestEntry> currentBatch = new ArrayList<>(MAX_BATCH_ENTRIES);
+        private final List<Integer> currentBatchRecordCounts = new ArrayList<>(MAX_BATCH_ENTRIES);
+        private int currentBatchBytes;
+        private final List<CompletableFuture<Void>> pending = new ArrayList<>();
+        
+        private long records;
+        private long messages;
+        private long batches;
+        private final AtomicLong failedRecords = new AtomicLong();
+        
+        private Session() {
+        }
+        
+        /**
+         * Adds a record to the session, publishing full batches as they fill up.
+         *
+         * @param customer The record to add
+         * @throws InterruptedException If interrupted while waiting for publishing capacity
+         * @throws BackpressureException If publishing does not catch up within the configured timeout
+         */
+        public void add(Customer customer) throws InterruptedException {
+            int size = binaryCodec.encodedSize(customer);
+            if (size > maxRecordBytes) {
+                throw new IllegalArgumentException("Customer record is too large: " + customer.getCustomerId());
+            }
+            if (currentMessageBytes + size > maxRecordBytes) {
+                sealMessage();
+            }
+            currentMessage.add(customer);
+            currentMessageBytes += size;
+            records++;
+        }
+        
+        /**
+         * Gets the number of records added to the session so far.
+         *
+         * @return The number of records
+         */
+        public long getRecords() {
+            return records;
+        }
+        
+        /**
+         * Publishes everything still buffered and waits for all batches of this session to complete.
+         *
+         * @return The summary of the session
+         * @throws InterruptedException If interrupted while waiting
+         */
+        public IngestSummary finish() throws InterruptedException {
+            sealMessage();
+            sendBatch();
+            for (CompletableFuture<Void> future : pending) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    // Failures are already accounted for in failedRecords
+                    logger.debug("Batch failed: {}", e.getMessage());
+                }
+            }
+            return new IngestSummary(records, messages, batches, failedRecords.get());
+        }
+        
+        /**
+         * Drops everything still buffered without publishing it, e.g. when publishing fell behind and the client
+         * will send the records again. Batches already handed to the publisher threads are still sent, but not
+         * waited for, so the session must not be used afterwards.
+         *
+         * @return The number of records dropped
+         */
+        public long abort() {
+            long dropped = currentMessage.size();
+            for (int recordCount : currentBatchRecordCounts) {
+                dropped += recordCount;
+            }
+            currentMessage.clear();
+            currentMessageBytes = 0;
+            currentBatch.clear();
+            currentBatchRecordCounts.clear();
+            currentBatchBytes = 0;
+            return dropped;
+        }
+        
+        private void sealMessage() throws InterruptedException {
+            if (currentMessage.isEmpty()) {
+                return;
+            }
+            String body = messageCodec.encodeBatchBody(currentMessage);
+            int messageBytes = body.length() + ATTRIBUTE_OVERHEAD;
+            if (currentBatch.size() == MAX_BATCH_ENTRIES || currentBatchBytes + messageBytes > maxBatchBytes) {
+                sendBatch();
+            }
+            currentBatch.add(new SendMessageBatchRequestEntry(String.valueOf(currentBatch.size()), body)
+                    .addMessageAttributesEntry(CustomerMessageCodec.FORMAT_ATTRIBUTE,
+                            CustomerMessageCodec.binaryBatchAttribute()));
+            currentBatchRecordCounts.add(currentMessage.size());
+            currentBatchBytes += messageBytes;
+            messages++;
+            currentMessage.clear();
+            currentMessageBytes = 0;
+        }
+        
+        private void sendBatch() throws InterruptedException {
+            if (currentBatch.isEmpty()) {
+                return;
+            }
+            if (!batchPermits.tryAcquire(backpressureTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new BackpressureException("Publishing to SQS is falling behind, retry later",
+                        Math.max(1, TimeUnit.MILLISECONDS.toSeconds(backpressureTimeoutMillis)));
+            }
+            
+            List<SendMessageBatchRequestEntry> entries = new ArrayList<>(currentBatch);
+            List<Integer> recordCounts = new ArrayList<>(currentBatchRecordCounts);
+            currentBatch.clear();
+            currentBatchRecordCounts.clear();
+            currentBatchBytes = 0;
+            batches++;
+            
+            pending.removeIf(CompletableFuture::isDone);
+            pending.add(CompletableFuture.runAsync(() -> {
+                try {
+                    long failed = send(entries, recordCounts);
+                    failedRecords.addAndGet(failed);
+                } finally {
+                    batchPermits.release();
+                }
+            }, publisherPool));
+        }
+    }
+    
+    /**
+     * Sends a batch, retrying entries that failed with a server-side error.
+     *
+     * @param entries The batch entries
+     * @param recordCounts The number of records carried by each entry, indexed by entry ID
+     * @return The number of records that could not be published
+     */
+    private long send(List<SendMessageBatchRequestEntry> entries, List<Integer> recordCounts) {
+        long failedRecords = 0;
+        List<SendMessageBatchRequestEntry> remaining = entries;
+        for (int attempt = 1; attempt <= MAX_SEND_ATTEMPTS && !remaining.isEmpty(); attempt++) {
+            try {
+                SendMessageBatchResult result = amazonSQS.sendMessageBatch(
+                        new SendMessageBatchRequest(getQueueUrl(), remaining));
+                List<SendMessageBatchRequestEntry> retry = new ArrayList<>();
+                for (BatchResultErrorEntry failed : result.getFailed()) {
+                    SendMessageBatchRequestEntry entry = entryById(remaining, failed.getId());
+                    if (entry == null) {
+                        continue;
+                    }
+                    if (Boolean.TRUE.equals(failed.getSenderFault())) {
+                        // Retrying a malformed message won't help
+                        logger.error("SQS rejected message {}: {} {}", failed.getId(), failed.getCode(), failed.getMessage());
+                        failedRecords += recordCounts.get(Integer.parseInt(entry.getId()));
+                    } else {
+                        retry.add(entry);
+                    }
+                }
+                remaining = retry;
+            } catch (Exception e) {
+                logger.warn("Error sending batch to SQS (attempt {}): {}", attempt, e.getMessage());
+                queueUrl = null;
+            }
+            if (!remaining.isEmpty() && attempt < MAX_SEND_ATTEMPTS) {
+                sleepBeforeRetry(attempt);
+            }
+        }
+        
+        failedRecords += countRecords(remaining, recordCounts);
+        if (failedRecords > 0) {
+            logger.error("Failed to publish {} records to SQS", failedRecords);
+        }
+        return failedRecords;
+    }
+    
+    private static SendMessageBatchRequestEntry entryById(List<SendMessageBatchRequestEntry> entries, String id) {
+        for (SendMessageBatchRequestEntry entry : entries) {
+            if (entry.getId().equals(id)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+    
+    private static long countRecords(List<SendMessageBatchRequestEntry> entries, List<Integer> recordCounts) {
+        long count = 0;
+        for (SendMessageBatchRequestEntry entry : entries) {
+            count += recordCounts.get(Integer.parseInt(entry.getId()));
+        }
+        return count;
+    }
+    
+    private static void sleepBeforeRetry(int attempt) {
+        try {
+            Thread.sleep(50L << attempt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Gets the queue URL, resolving and caching it on first use.
+     *
+     * @return The queue URL
+     */
+    private String getQueueUrl() {
+        String url = queueUrl;
+        if (url == null) {
+            url = amazonSQS.getQueueUrl(queueName).getQueueUrl();
+            queueUrl = url;
+        }
+        return url;
+    }
+}
@@ -0,0 +1,262 @@
+package com.cohortmgmt.service.codec;
+
+import com.cohortmgmt.model.Customer;
+import com.cohortmgmt.model.UserType;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Compact binary encoding for batches of customer records.
+ *
+ * A payload is one or more frames. Each frame is:
+ * - the magic bytes 'C' 'B' and a version byte
+ * - the number of records as an unsigned varint
+ * - for each record: the UTF-8 customer ID length as a varint, the ID bytes,
+ *   the daily spend as an 8-byte big-endian IEEE 754 double and a one-byte user type code
+ *
+ * A typical record takes 20-30 bytes instead of ~70 bytes of JSON, and a single SQS message
+ * can carry thousands of records. Instances are thread-safe.
+ */
+public class CustomerBinaryCodec {
+    
+    private static final byte MAGIC_0 = 'C';
+    private static final byte MAGIC_1 = 'B';
+    private static final byte VERSION = 1;
+    
+    /**
+     * User type wire codes. New user types must be appended so that existing codes keep their meaning.
+     */
+    private static final UserType[] USER_TYPE_CODES = {UserType.PAID, UserType.FREE};
+    
+    /**
+     * Size of the frame header excluding the record count.
+     */
+    public static final int HEADER_SIZE = 3;
+    
+    /**
+     * Maximum size of the record count varint.
+     */
+    public static final int MAX_COUNT_SIZE = 5;
+    
+    /**
+     * Encodes customers into a single frame.
+     *
+     * @param customers The customers to encode
+     * @return The encoded frame
+     */
+    public byte[] encode(Collection<Customer> customers) {
+        int size = HEADER_SIZE + MAX_COUNT_SIZE;
+        for (Customer customer : customers) {
+            size += encodedSize(customer);
+        }
+        
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(MAGIC_0).put(MAGIC_1).put(VERSION);
+        putVarint(buffer, customers.size());
+        for (Customer customer : customers) {
+            byte[] id = customer.getCustomerId().getBytes(StandardCharsets.UTF_8);
+            putVarint(buffer, id.length);
+            buffer.put(id);
+            buffer.putDouble(customer.getDailySpend());
+            buffer.put(userTypeCode(customer.getUserType()));
+        }
+        
+        byte[] frame = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(frame);
+        return frame;
+    }
+    
+    /**
+     * Gets the number of bytes a customer record takes inside a frame.
+     *
+     * @param customer The customer
+     * @return The encoded size in bytes
+     */
+    public int encodedSize(Customer customer) {
+        int idLength = utf8Length(customer.getCustomerId());
+        return varintSize(idLength) + idLength + Double.BYTES + 1;
+    }
+    
+    /**
+     * Decodes all frames of a payload.
+     *
+     * @param payload The payload
+     * @return The decoded customers
+     * @throws IOException If the payload is malformed
+     */
+    public List<Customer> decode(byte[] payload) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        List<Customer> customers = new ArrayList<>();
+        while (buffer.hasRemaining()) {
+            if (buffer.remaining() < HEADER_SIZE
+                    || buffer.get() != MAGIC_0 || buffer.get() != MAGIC_1 || buffer.get() != VERSION) {
+                throw new IOException("Invalid customer batch frame header");
+            }
+            int count = getVarint(buffer);
+            for (int i = 0; i < count; i++) {
+                int idLength = getVarint(buffer);
+                if (buffer.remaining() < idLength + Double.BYTES + 1) {
+                    throw new IOException("Truncated customer record");
+                }
+                String customerId = new String(payload, buffer.position(), idLength, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + idLength);
+                double dailySpend = dailySpend(customerId, buffer.getDouble());
+                UserType userType = userType(buffer.get());
+                customers.add(new Customer(customerId, dailySpend, userType));
+            }
+        }
+        return customers;
+    }
+    
+    /**
+     * Creates a reader that decodes frames from a stream one record at a time,
+     * so arbitrarily large payloads can be processed in constant memory.
+     *
+     * @param inputStream The input stream
+     * @return The reader
+     */
+    public Reader reader(InputStream inputStream) {
+        return new Reader(inputStream);
+    }
+    
+    /**
+     * Streaming reader over a sequence of frames.
+     */
+    public static class Reader {
+        
+        private final DataInputStream input;
+        private int remainingInFrame;
+        private byte[] idBuffer = new byte[64];
+        
+        private Reader(InputStream inputStream) {
+            this.input = new DataInputStream(inputStream);
+        }
+        
+        /**
+         * Reads the next customer record.
+         *
+         * @return The next customer, or null at the end of the stream
+         * @throws IOException If the stream is malformed
+         */
+        public Customer next() throws IOException {
+            while (remainingInFrame == 0) {
+                int first = input.read();
+                if (first < 0) {
+                    return null;
+                }
+                if (first != MAGIC_0 || input.readByte() != MAGIC_1 || input.readByte() != VERSION) {
+                    throw new IOException("Invalid customer batch frame header");
+                }
+                remainingInFrame = readVarint(input);
+            }
+            
+            int idLength = readVarint(input);
+            if (idBuffer.length < idLength) {
+                idBuffer = new byte[Math.max(idLength, idBuffer.length * 2)];
+            }
+            input.readFully(idBuffer, 0, idLength);
+            String customerId = new String(idBuffer, 0, idLength, StandardCharsets.UTF_8);
+            double dailySpend = dailySpend(customerId, input.readDouble());
+            UserType userType = userType(input.readByte());
+            remainingInFrame--;
+            return new Customer(customerId, dailySpend, userType);
+        }
+    }
+    
+    private static byte userTypeCode(UserType userType) {
+        for (int i = 0; i < USER_TYPE_CODES.length; i++) {
+            if (USER_TYPE_CODES[i] == userType) {
+                return (byte) i;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported user type: " + userType);
+    }
+    
+    private static double dailySpend(String customerId, double dailySpend) throws IOException {
+        if (!Double.isFinite(dailySpend)) {
+            throw new IOException("Daily spend of customer " + customerId + " must be a finite number");
+        }
+        return dailySpend;
+    }
+    
+    private static UserType userType(byte code) throws IOException {
+        if (code < 0 || code >= USER_TYPE_CODES.length) {
+            throw new IOException("Unknown user type code: " + code);
+        }
+        return USER_TYPE_CODES[code];
+    }
+    
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+    
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+    
+    private static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+    
+    private static int getVarint(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!buffer.hasRemaining()) {
+                throw new IOException("Truncated varint");
+            }
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+    
+    private static int readVarint(DataInputStream input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = input.read();
+            if (b < 0) {
+                throw new EOFException("Truncated varint");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
@@ -0,0 +1,128 @@
+package com.cohortmgmt.service.codec;
+
+import com.cohortmgmt.model.Customer;
+import com.cohortmgmt.model.UserType;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streaming decoder for JSON customer records such as
+ * {"customerId":"customer123","dailySpend":6000.0,"userType":"PAID"}.
+ *
+ * Fields are read one token at a time straight into a {@link Customer}, without building
+ * an intermediate JsonNode tree. Unknown fields are skipped so that the schema can grow.
+ * Instances are thread-safe.
+ */
+public class CustomerJsonDecoder {
+    
+    private static final String CUSTOMER_ID_FIELD = "customerId";
+    private static final String DAILY_SPEND_FIELD = "dailySpend";
+    private static final String USER_TYPE_FIELD = "userType";
+    
+    private final JsonFactory jsonFactory = new JsonFactory();
+    
+    /**
+     * Decodes a single customer record.
+     *
+     * @param json The JSON text of the record
+     * @return The decoded customer
+     * @throws IOException If the text is not a valid customer record
+     */
+    public Customer decode(String json) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a JSON object");
+            }
+            return readCustomer(parser);
+        }
+    }
+    
+    /**
+     * Decodes a single customer record from UTF-8 bytes, e.g. one line of an NDJSON file.
+     *
+     * @param data The buffer holding the record
+     * @param offset The offset of the record in the buffer
+     * @param length The length of the record in bytes
+     * @return The decoded customer
+     * @throws IOException If the bytes are not a valid customer record
+     */
+    public Customer decode(byte[] data, int offset, int length) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(data, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a JSON object");
+            }
+            return readCustomer(parser);
+        }
+    }
+    
+    /**
+     * Creates a parser over a stream of concatenated or newline-delimited customer records.
+     * Call {@link #next(JsonParser)} repeatedly to read the records.
+     *
+     * @param inputStream The input stream
+     * @return The parser
+     * @throws IOException If the parser cannot be created
+     */
+    public JsonParser createParser(InputStream inputStream) throws IOException {
+        return jsonFactory.createParser(inputStream);
+    }
+    
+    /**
+     * Reads the next customer record from a parser created with {@link #createParser(InputStream)}.
+     *
+     * @param parser The parser
+     * @return The next customer, or null at the end of the input
+     * @throws IOException If the input is not a valid customer record
+     */
+    public Customer next(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            return null;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new IOException("Expected a JSON object at line " + parser.getCurrentLocation().getLineNr());
+        }
+        return readCustomer(parser);
+    }
+    
+    /**
+     * Reads the fields of a customer object. The parser must be positioned on START_OBJECT.
+     */
+    private Customer readCustomer(JsonParser parser) throws IOException {
+        String customerId = null;
+        Double dailySpend = null;
+        UserType userType = null;
+        
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case CUSTOMER_ID_FIELD:
+                    customerId = parser.getValueAsString();
+                    break;
+                case DAILY_SPEND_FIELD:
+                    dailySpend = value.isNumeric() ? parser.getDoubleValue() : Double.valueOf(parser.getValueAsString());
+                    break;
+                case USER_TYPE_FIELD:
+                    userType = UserType.valueOf(parser.getValueAsString());
+                    break;
+                default:
+                    // Unknown field, skip its value including nested structures
+                    parser.skipChildren();
+            }
+        }
+        
+        if (customerId == null || dailySpend == null || userType == null) {
+            throw new IOException("Customer record must contain customerId, dailySpend and userType");
+        }
+        if (!Double.isFinite(dailySpend)) {
+            // Double.valueOf accepts "NaN" and "Infinity", which no cohort rule can compare against
+            throw new IOException("Daily spend of customer " + customerId + " must be a finite number");
+        }
+        return new Customer(customerId, dailySpend, userType);
+    }
+}
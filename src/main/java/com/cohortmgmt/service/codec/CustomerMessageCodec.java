@@ -0,0 +1,92 @@
+package com.cohortmgmt.service.codec;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.cohortmgmt.model.Customer;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Encodes and decodes customer records carried in SQS messages.
+ *
+ * The payload format is selected with the {@value #FORMAT_ATTRIBUTE} message attribute:
+ * - absent or {@value #JSON_FORMAT}: the body is a single JSON customer record
+ * - {@value #BINARY_BATCH_FORMAT}: the body is a Base64-encoded {@link CustomerBinaryCodec} payload
+ *   carrying any number of records
+ * Instances are thread-safe.
+ */
+public class CustomerMessageCodec {
+    
+    /**
+     * Name of the message attribute that selects the payload format.
+     */
+    public static final String FORMAT_ATTRIBUTE = "payloadFormat";
+    
+    /**
+     * Single JSON record per message. This is the default when the attribute is absent.
+     */
+    public static final String JSON_FORMAT = "json";
+    
+    /**
+     * Base64-encoded binary batch of records.
+     */
+    public static final String BINARY_BATCH_FORMAT = "customer-batch-v1";
+    
+    private final CustomerJsonDecoder jsonDecoder = new CustomerJsonDecoder();
+    private final CustomerBinaryCodec binaryCodec = new CustomerBinaryCodec();
+    
+    /**
+     * Decodes the customer records of a message.
+     *
+     * @param message The SQS message
+     * @return The customers carried by the message
+     * @throws IOException If the body does not match its declared format
+     */
+    public List<Customer> decode(Message message) throws IOException {
+        String format = formatOf(message);
+        if (JSON_FORMAT.equals(format)) {
+            return Collections.singletonList(jsonDecoder.decode(message.getBody()));
+        }
+        if (BINARY_BATCH_FORMAT.equals(format)) {
+            try {
+                return binaryCodec.decode(Base64.getDecoder().decode(message.getBody()));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Message body is not valid Base64", e);
+            }
+        }
+        throw new IOException("Unsupported payload format: " + format);
+    }
+    
+    /**
+     * Encodes customers as the body of a {@value #BINARY_BATCH_FORMAT} message.
+     *
+     * @param customers The customers to encode
+     * @return The Base64 message body
+     */
+    public String encodeBatchBody(Collection<Customer> customers) {
+        return Base64.getEncoder().encodeToString(binaryCodec.encode(customers));
+    }
+    
+    /**
+     * Creates the message attribute that marks a message as a binary batch.
+     *
+     * @return The message attribute value
+     */
+    public static MessageAttributeValue binaryBatchAttribute() {
+        return new MessageAttributeValue().withDataType("String").withStringValue(BINARY_BATCH_FORMAT);
+    }
+    
+    private static String formatOf(Message message) {
+        MessageAttributeValue attribute = message.getMessageAttributes() == null
+                ? null
+                : message.getMessageAttributes().get(FORMAT_ATTRIBUTE);
+        if (attribute == null || attribute.getStringValue() == null) {
+            return JSON_FORMAT;
+        }
+        return attribute.getStringValue();
+    }
+}
@@ -0,0 +1,267 @@
+package com.cohortmgmt.service.concurrency;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AIMD (additive increase, multiplicative decrease) concurrency limiter for ingestion work.
+ *
+ * Ingestion paths (the SQS consumer, the stream processor and the trigger handler) acquire a permit
+ * for every unit of work and run it with {@link #runUnderPermit(Runnable)}. DynamoDB feeds back the write
+ * latency and throttling of that work through {@link #onLatencySample(long)} and {@link #onThrottle()}; writes
+ * made outside a permit, such as checkpoints, leases or API requests, are not sampled, since the limit does
+ * not govern them. At the end of every sample window the limit is:
+ * - multiplied by the backoff ratio if a throttle was seen or the average latency exceeded the baseline
+ *   by more than the tolerance
+ * - increased by one if the window was healthy and the limit was actually used
+ */
+@Component
+public class AdaptiveConcurrencyLimiter {
+    
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+    
+    private static final ThreadLocal<Boolean> UNDER_PERMIT = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    
+    // How quickly the latency baseline follows a sustained increase in latency
+    private static final double BASELINE_DRIFT = 0.05;
+    
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double latencyTolerance;
+    private final long windowNanos;
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitAvailable = lock.newCondition();
+    
+    // All fields below are guarded by lock
+    private int limit;
+    private int inFlight;
+    private int peakInFlight;
+    private long windowStart = System.nanoTime();
+    private long windowLatencySum;
+    private int windowSamples;
+    private int windowThrottles;
+    private double baselineLatencyNanos;
+    private long lastDecrease;
+    private long totalThrottles;
+    
+    /**
+     * Creates a new AdaptiveConcurrencyLimiter.
+     *
+     * @param initialLimit The limit to start with
+     * @param minLimit The lowest limit the limiter backs off to
+     * @param maxLimit The highest limit the limiter grows to
+     * @param backoffRatio The factor applied to the limit on throttling or latency spikes
+     * @param latencyTolerance How many times the baseline latency counts as a spike
+     * @param windowMillis The length of a sample window in milliseconds
+     */
+    @Autowired
+    public AdaptiveConcurrencyLimiter(
+            @Value("${ingestion.concurrency.initial-limit:8}") int initialLimit,
+            @Value("${ingestion.concurrency.min-limit:1}") int minLimit,
+            @Value("${ingestion.concurrency.max-limit:256}") int maxLimit,
+            @Value("${ingestion.concurrency.backoff-ratio:0.5}") double backoffRatio,
+            @Value("${ingestion.concurrency.latency-tolerance:2.0}") double latencyTolerance,
+            @Value("${ingestion.concurrency.window-millis:1000}") long windowMillis) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= min-limit <= max-limit");
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Backoff ratio must be between 0 and 1");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyTolerance = latencyTolerance;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.lastDecrease = windowStart - windowNanos;
+    }
+    
+    /**
+     * Acquires a permit, blocking while the in-flight work is at the limit.
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (inFlight >= limit) {
+                permitAvailable.await();
+            }
+            inFlight++;
+            peakInFlight = Math.max(peakInFlight, inFlight);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Releases a permit acquired with {@link #acquire()}.
+     */
+    public void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            permitAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Runs work that holds a permit on the current thread, marking it so that its DynamoDB calls feed the
+     * limiter. The permit is acquired and released by the caller, usually on different threads.
+     *
+     * @param task The task
+     */
+    public static void runUnderPermit(Runnable task) {
+        Boolean previous = UNDER_PERMIT.get();
+        UNDER_PERMIT.set(Boolean.TRUE);
+        try {
+            task.run();
+        } finally {
+            UNDER_PERMIT.set(previous);
+        }
+    }
+    
+    /**
+     * Checks whether the current thread runs work that holds a permit.
+     *
+     * @return true inside {@link #runUnderPermit(Runnable)}
+     */
+    public static boolean isUnderPermit() {
+        return UNDER_PERMIT.get();
+    }
+    
+    /**
+     * Records the latency of a completed DynamoDB write.
+     *
+     * @param latencyNanos The latency in nanoseconds
+     */
+    public void onLatencySample(long latencyNanos) {
+        lock.lock();
+        try {
+            windowLatencySum += latencyNanos;
+            windowSamples++;
+            maybeAdjust(System.nanoTime());
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Records a throttled DynamoDB call, e.g. a ProvisionedThroughputExceededException.
+     * The limit backs off immediately rather than waiting for the end of the window,
+     * but at most once per window so that a burst of throttles does not collapse it to the minimum.
+     */
+    public void onThrottle() {
+        lock.lock();
+        try {
+            windowThrottles++;
+            totalThrottles++;
+            long now = System.nanoTime();
+            if (now - lastDecrease >= windowNanos) {
+                adjust(now);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Gets the current concurrency limit.
+     *
+     * @return The limit
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Gets the number of permits currently held.
+     *
+     * @return The in-flight count
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Gets the number of throttles recorded since startup.
+     *
+     * @return The throttle count
+     */
+    public long getTotalThrottles() {
+        lock.lock();
+        try {
+            return totalThrottles;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void maybeAdjust(long now) {
+        if (now - windowStart >= windowNanos) {
+            adjust(now);
+        }
+    }
+    
+    /**
+     * Applies the AIMD rule to the current window and starts a new one. Must be called with the lock held.
+     */
+    private void adjust(long now) {
+        int previous = limit;
+        double averageLatency = windowSamples == 0 ? 0 : (double) windowLatencySum / windowSamples;
+        boolean latencySpike = windowSamples > 0 && baselineLatencyNanos > 0
+                && averageLatency > baselineLatencyNanos * latencyTolerance;
+        
+        if (windowThrottles > 0 || latencySpike) {
+            limit = Math.max(minLimit, (int) (limit * backoffRatio));
+            lastDecrease = now;
+        } else if (windowSamples > 0 && peakInFlight >= limit) {
+            // Only grow when the current limit is actually the bottleneck
+            limit = Math.min(maxLimit, limit + 1);
+        }
+        
+        if (windowSamples > 0) {
+            // Track the lowest latency, drifting upwards slowly even through spikes so that a backend
+            // that gets slower for good stops counting as a spike instead of pinning the limit at the minimum
+            baselineLatencyNanos = baselineLatencyNanos == 0 || averageLatency < baselineLatencyNanos
+                    ? averageLatency
+                    : baselineLatencyNanos + (averageLatency - baselineLatencyNanos) * BASELINE_DRIFT;
+        }
+        
+        if (limit != previous) {
+            logger.debug("Ingestion concurrency limit changed from {} to {} (throttles={}, avgLatencyMs={})",
+                    previous, limit, windowThrottles, averageLatency / 1_000_000.0);
+            if (limit > previous) {
+                permitAvailable.signalAll();
+            }
+        }
+        
+        windowStart = now;
+        windowLatencySum = 0;
+        windowSamples = 0;
+        windowThrottles = 0;
+        peakInFlight = inFlight;
+    }
+}
@@ -0,0 +1,243 @@
+package com.cohortmgmt.service.concurrency;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Client-side capacity budget for DynamoDB calls.
+ *
+ * Every table and every global secondary index has a read and a write token bucket. A bucket is refilled at the
+ * throughput provisioned for its table or index (see {@link #setProvisioned}), divided by the number of instances
+ * sharing the tables, and at the configured default rate while none is known, e.g. for on-demand tables. Calls
+ * take an estimate from the bucket before they are sent and are charged the difference once DynamoDB reports
+ * the capacity actually consumed.
+ *
+ * Work marked as background (see {@link #runAsBackground(Runnable)}) only takes tokens while a reserve is left
+ * in the bucket, so scans and backfills soak up spare capacity but never delay foreground calls such as the
+ * request-serving read path. When a background call consumes more than its estimate, e.g. a scan page of large
+ * items, the excess is only taken down to the reserve; the rest is kept as background debt, which the next
+ * background calls on the bucket pay off before they are sent.
+ */
+@Component
+public class CapacityGovernor {
+    
+    /**
+     * The kind of capacity a call consumes.
+     */
+    public enum Kind {
+        READ,
+        WRITE
+    }
+    
+    private static final ThreadLocal<Boolean> BACKGROUND = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    
+    private final double readUnitsPerSecond;
+    private final double writeUnitsPerSecond;
+    private final double backgroundReserve;
+    private final int instances;
+    private final Map<String, Budget> budgets = new ConcurrentHashMap<>();
+    
+    /**
+     * Creates a new CapacityGovernor.
+     *
+     * @param readUnitsPerSecond The read capacity units per second of a table or index without known throughput
+     * @param writeUnitsPerSecond The write capacity units per second of a table or index without known throughput
+     * @param backgroundReserve The fraction of each bucket that background work must leave for foreground work
+     * @param instances The number of service instances sharing the provisioned throughput
+     */
+    @Autowired
+    public CapacityGovernor(
+            @Value("${dynamodb.capacity.read-units-per-second:1000}") double readUnitsPerSecond,
+            @Value("${dynamodb.capacity.write-units-per-second:1000}") double writeUnitsPerSecond,
+            @Value("${dynamodb.capacity.background-reserve:0.5}") double backgroundReserve,
+            @Value("${dynamodb.capacity.instances:1}") int instances) {
+        if (backgroundReserve < 0 || backgroundReserve >= 1) {
+            throw new IllegalArgumentException("Background reserve must be at least 0 and less than 1");
+        }
+        if (instances <= 0) {
+            throw new IllegalArgumentException("Instances must be positive");
+        }
+        this.readUnitsPerSecond = readUnitsPerSecond;
+        this.writeUnitsPerSecond = writeUnitsPerSecond;
+        this.backgroundReserve = backgroundReserve;
+        this.instances = instances;
+    }
+    
+    /**
+     * Runs a task with background priority on the current thread.
+     *
+     * @param task The task
+     */
+    public static void runAsBackground(Runnable task) {
+        callAsBackground(() -> {
+            task.run();
+            return null;
+        });
+    }
+    
+    /**
+     * Runs a task with background priority on the current thread and returns its result.
+     *
+     * @param task The task
+     * @param <T> The result type
+     * @return The result of the task
+     */
+    public static <T> T callAsBackground(Supplier<T> task) {
+        Boolean previous = BACKGROUND.get();
+        BACKGROUND.set(Boolean.TRUE);
+        try {
+            return task.get();
+        } finally {
+            BACKGROUND.set(previous);
+        }
+    }
+    
+    /**
+     * Checks whether the current thread runs background work.
+     *
+     * @return true for background work
+     */
+    public static boolean isBackground() {
+        return BACKGROUND.get();
+    }
+    
+    /**
+     * Takes the estimated capacity of a call before it is sent, waiting while the budget is exhausted.
+     *
+     * @param table The table name
+     * @param index The index name, or null for the table itself
+     * @param kind The kind of capacity
+     * @param units The estimated capacity units
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void acquire(String table, String index, Kind kind, double units) throws InterruptedException {
+        Budget budget = budget(table, index, kind);
+        if (isBackground()) {
+            budget.bucket.acquire(budget.takeDebt() + units, floor(budget));
+        } else {
+            budget.bucket.acquire(units);
+        }
+    }
+    
+    /**
+     * Charges capacity to a bucket after the fact. Negative units return capacity,
+     * e.g. when the estimate taken by {@link #acquire} was too high. Background work is only charged down to
+     * the reserve, and owes the rest as background debt; capacity it returns pays off that debt first.
+     *
+     * @param table The table name
+     * @param index The index name, or null for the table itself
+     * @param kind The kind of capacity
+     * @param units The capacity units to charge
+     */
+    public void charge(String table, String index, Kind kind, double units) {
+        if (units == 0) {
+            return;
+        }
+        Budget budget = budget(table, index, kind);
+        if (!isBackground()) {
+            budget.bucket.charge(units);
+        } else if (units > 0) {
+            budget.addDebt(units - budget.bucket.tryAcquireAbove(units, floor(budget)));
+        } else {
+            double returned = -units - budget.payDebt(-units);
+            if (returned > 0) {
+                budget.bucket.charge(-returned);
+            }
+        }
+    }
+    
+    /**
+     * Sizes the budget of a table or index from its provisioned throughput, of which this instance gets an even
+     * share. The budget starts full at its new size.
+     *
+     * @param table The table name
+     * @param index The index name, or null for the table itself
+     * @param kind The kind of capacity
+     * @param unitsPerSecond The capacity units per second provisioned for the table or index
+     */
+    public void setProvisioned(String table, String index, Kind kind, double unitsPerSecond) {
+        double rate = unitsPerSecond / instances;
+        budgets.compute(key(table, index, kind), (key, budget) ->
+                budget != null && budget.bucket.getRatePerSecond() == rate ? budget : new Budget(rate));
+    }
+    
+    /**
+     * Gets the capacity currently available to a table or index. Negative while the bucket is in debt.
+     *
+     * @param table The table name
+     * @param index The index name, or null for the table itself
+     * @param kind The kind of capacity
+     * @return The available capacity units
+     */
+    public double getAvailable(String table, String index, Kind kind) {
+        return budget(table, index, kind).bucket.getAvailable();
+    }
+    
+    /**
+     * Gets the capacity that background work consumed beyond the reserve and has yet to pay off.
+     *
+     * @param table The table name
+     * @param index The index name, or null for the table itself
+     * @param kind The kind of capacity
+     * @return The background debt in capacity units
+     */
+    public double getBackgroundDebt(String table, String index, Kind kind) {
+        Budget budget = budget(table, index, kind);
+        synchronized (budget) {
+            return budget.backgroundDebt;
+        }
+    }
+    
+    private Budget budget(String table, String index, Kind kind) {
+        return budgets.computeIfAbsent(key(table, index, kind),
+                k -> new Budget(kind == Kind.READ ? readUnitsPerSecond : writeUnitsPerSecond));
+    }
+    
+    private double floor(Budget budget) {
+        return budget.bucket.getRatePerSecond() * backgroundReserve;
+    }
+    
+    private static String key(String table, String index, Kind kind) {
+        return kind + ":" + table + (index == null ? "" : "/" + index);
+    }
+    
+    /**
+     * The token bucket of a table or index, and the debt background work has run up on it.
+     */
+    private static class Budget {
+        
+        private final TokenBucket bucket;
+        // Guarded by this
+        private double backgroundDebt;
+        
+        private Budget(double ratePerSecond) {
+            this.bucket = new TokenBucket(ratePerSecond, ratePerSecond);
+        }
+        
+        private synchronized double takeDebt() {
+            double debt = backgroundDebt;
+            backgroundDebt = 0;
+            return debt;
+        }
+        
+        private synchronized void addDebt(double units) {
+            backgroundDebt += units;
+        }
+        
+        /**
+         * Pays off debt with returned capacity.
+         *
+         * @return The part of the units that went to the debt
+         */
+        private synchronized double payDebt(double units) {
+            double paid = Math.min(units, backgroundDebt);
+            backgroundDebt -= paid;
+            return paid;
+        }
+    }
+}
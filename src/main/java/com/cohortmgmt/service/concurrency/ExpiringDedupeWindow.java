@@ -0,0 +1,252 @@
+package com.cohortmgmt.service.concurrency;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded, thread-safe set of keys seen within a time window, e.g. to skip customers processed recently.
+ *
+ * Keys are reduced to 64-bit hashes and kept in open-addressing hash sets of primitive longs, split into
+ * independently locked stripes. All memory is allocated up front, so a full window costs no allocation and
+ * holds no objects the garbage collector has to trace. Every stripe keeps its hashes in insertion order in a
+ * ring, and a timing wheel of one segment per tick marks where the hashes of each tick end. Since every key
+ * lives for the same window, the segments expire oldest first: moving to a new tick drops the segments that
+ * have left the window, at a cost proportional to the keys dropped and without sweeping the set. When a stripe
+ * is full, its oldest keys are dropped early, so under sustained load a key may be reported as new before its
+ * window has passed, but never the other way round, except for a negligible chance of a hash collision.
+ */
+public class ExpiringDedupeWindow {
+    
+    private static final int STRIPES = 16;
+    
+    private final long tickMillis;
+    private final long ticksPerWindow;
+    private final LongSupplier clockMillis;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    
+    /**
+     * Creates a new ExpiringDedupeWindow.
+     *
+     * @param windowMillis How long a key is remembered
+     * @param tickMillis The expiry granularity; keys are remembered between the window and one tick longer
+     * @param capacity The maximum number of keys remembered
+     */
+    public ExpiringDedupeWindow(long windowMillis, long tickMillis, int capacity) {
+        this(windowMillis, tickMillis, capacity, () -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime()));
+    }
+    
+    ExpiringDedupeWindow(long windowMillis, long tickMillis, int capacity, LongSupplier clockMillis) {
+        if (tickMillis <= 0 || windowMillis < tickMillis) {
+            throw new IllegalArgumentException("Tick must be positive and no longer than the window");
+        }
+        if (capacity < STRIPES) {
+            throw new IllegalArgumentException("Capacity must be at least " + STRIPES);
+        }
+        this.tickMillis = tickMillis;
+        this.ticksPerWindow = (windowMillis + tickMillis - 1) / tickMillis;
+        this.clockMillis = clockMillis;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(capacity / STRIPES, (int) ticksPerWindow + 1);
+        }
+    }
+    
+    /**
+     * Remembers a key unless it was already seen within the window.
+     *
+     * @param key The key
+     * @return true if the key was not seen within the window, false if it was
+     */
+    public boolean markIfAbsent(String key) {
+        long hash = hash(key);
+        return stripes[(int) (hash >>> 60)].markIfAbsent(hash, clockMillis.getAsLong() / tickMillis);
+    }
+    
+    /**
+     * Checks whether a key was seen within the window, without remembering it.
+     *
+     * @param key The key
+     * @return true if the key was seen within the window
+     */
+    public boolean contains(String key) {
+        long hash = hash(key);
+        return stripes[(int) (hash >>> 60)].contains(hash, clockMillis.getAsLong() / tickMillis);
+    }
+    
+    /**
+     * Gets the number of keys remembered within the window.
+     *
+     * @return The number of keys
+     */
+    public int size() {
+        long tick = clockMillis.getAsLong() / tickMillis;
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size(tick);
+        }
+        return size;
+    }
+    
+    /**
+     * Gets the number of keys dropped before their window had passed because the window was full.
+     *
+     * @return The number of keys
+     */
+    public long getEvictions() {
+        long evictions = 0;
+        for (Stripe stripe : stripes) {
+            evictions += stripe.evictions();
+        }
+        return evictions;
+    }
+    
+    /**
+     * 64-bit FNV-1a over the characters, finished with the MurmurHash3 mixer. Never returns 0, which marks
+     * empty slots of the hash sets.
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+    
+    /**
+     * One lock's share of the keys: a hash set, the ring of its hashes in insertion order,
+     * and the wheel of tick segments over the ring.
+     */
+    private final class Stripe {
+        
+        private final long[] table;
+        private final int tableMask;
+        private final long[] ring;
+        private final long[] segmentTicks;
+        private final long[] segmentEnds;
+        
+        // All fields below are guarded by this
+        private long head;
+        private long tail;
+        private int firstSegment;
+        private int segments;
+        private long evictions;
+        
+        private Stripe(int capacity, int wheelSize) {
+            // At most half full, which keeps linear probe sequences short
+            this.table = new long[Integer.highestOneBit(capacity * 2 - 1) << 1];
+            this.tableMask = table.length - 1;
+            this.ring = new long[capacity];
+            this.segmentTicks = new long[wheelSize];
+            this.segmentEnds = new long[wheelSize];
+        }
+        
+        private synchronized boolean markIfAbsent(long hash, long tick) {
+            expire(tick);
+            if (find(hash) >= 0) {
+                return false;
+            }
+            if (tail - head == ring.length) {
+                removeOldest();
+                evictions++;
+            }
+            
+            if (segments == 0 || segmentTicks[segmentIndex(segments - 1)] < tick) {
+                int segment = segmentIndex(segments);
+                segmentTicks[segment] = tick;
+                segments++;
+            }
+            ring[(int) (tail % ring.length)] = hash;
+            tail++;
+            segmentEnds[segmentIndex(segments - 1)] = tail;
+            insert(hash);
+            return true;
+        }
+        
+        private synchronized boolean contains(long hash, long tick) {
+            expire(tick);
+            return find(hash) >= 0;
+        }
+        
+        private synchronized int size(long tick) {
+            expire(tick);
+            return (int) (tail - head);
+        }
+        
+        private synchronized long evictions() {
+            return evictions;
+        }
+        
+        private int segmentIndex(int offset) {
+            return (firstSegment + offset) % segmentTicks.length;
+        }
+        
+        private void expire(long tick) {
+            while (segments > 0 && segmentTicks[firstSegment] <= tick - ticksPerWindow) {
+                long end = segmentEnds[firstSegment];
+                while (head < end) {
+                    removeOldest();
+                }
+            }
+        }
+        
+        /**
+         * Drops the oldest hash, and its segment once that is empty.
+         */
+        private void removeOldest() {
+            remove(ring[(int) (head % ring.length)]);
+            head++;
+            if (head == segmentEnds[firstSegment]) {
+                firstSegment = (firstSegment + 1) % segmentTicks.length;
+                segments--;
+            }
+        }
+        
+        private int find(long hash) {
+            for (int slot = (int) hash & tableMask; table[slot] != 0; slot = (slot + 1) & tableMask) {
+                if (table[slot] == hash) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+        
+        private void insert(long hash) {
+            int slot = (int) hash & tableMask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & tableMask;
+            }
+            table[slot] = hash;
+        }
+        
+        /**
+         * Removes a hash and shifts the entries after it back, so no probe sequence is broken
+         * and no tombstones accumulate.
+         */
+        private void remove(long hash) {
+            int gap = find(hash);
+            if (gap < 0) {
+                return;
+            }
+            int slot = gap;
+            while (true) {
+                slot = (slot + 1) & tableMask;
+                long entry = table[slot];
+                if (entry == 0) {
+                    break;
+                }
+                int home = (int) entry & tableMask;
+                // Move the entry into the gap unless its home lies cyclically in (gap, slot]
+                if (((slot - home) & tableMask) >= ((slot - gap) & tableMask)) {
+                    table[gap] = entry;
+                    gap = slot;
+                }
+            }
+            table[gap] = 0;
+        }
+    }
+}
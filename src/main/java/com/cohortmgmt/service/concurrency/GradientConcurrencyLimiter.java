@@ -0,0 +1,211 @@
+package com.cohortmgmt.service.concurrency;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Gradient concurrency limiter for request handling, which sheds requests beyond the limit instead of queueing them.
+ *
+ * The limiter learns the no-load latency as the lowest average latency of a sample window, drifting upwards slowly
+ * if the service gets slower for good. At the end of every window it compares that latency with the window's:
+ * - the gradient is the no-load latency, times the tolerance, divided by the window's latency, capped to [0.5, 1]
+ * - the new limit is the limit times the gradient plus the square root of the limit as headroom for queueing
+ * - the limit moves towards the new limit by the smoothing factor, and only grows if it was actually reached
+ * While latency stays within the tolerance the limit grows by its square root, and once requests start to queue
+ * the limit shrinks in proportion to the added latency, so the in-flight requests settle where latency stays
+ * close to the no-load latency. Acquiring and releasing permits takes no lock, so the limiter adds no contention
+ * to the request path.
+ */
+public class GradientConcurrencyLimiter {
+    
+    private static final Logger logger = LoggerFactory.getLogger(GradientConcurrencyLimiter.class);
+    
+    // How quickly the no-load latency follows a sustained increase in latency
+    private static final double NO_LOAD_DRIFT = 0.05;
+    private static final double MIN_GRADIENT = 0.5;
+    
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final long windowNanos;
+    private final LongSupplier clockNanos;
+    
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final LongAdder windowLatencySum = new LongAdder();
+    private final LongAdder windowSamples = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final AtomicLong windowStart;
+    private final ReentrantLock adjustLock = new ReentrantLock();
+    private volatile int limit;
+    
+    // Guarded by adjustLock
+    private double noLoadLatencyNanos;
+    private double limitEstimate;
+    
+    /**
+     * Creates a new GradientConcurrencyLimiter.
+     *
+     * @param name The name of the limiter, for logging
+     * @param initialLimit The limit to start with
+     * @param minLimit The lowest limit the limiter shrinks to
+     * @param maxLimit The highest limit the limiter grows to
+     * @param tolerance How many times the no-load latency still counts as no load
+     * @param smoothing The share of the distance to the new limit the limit moves per window, in (0, 1]
+     * @param windowMillis The length of a sample window in milliseconds
+     */
+    public GradientConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit,
+            double tolerance, double smoothing, long windowMillis) {
+        this(name, initialLimit, minLimit, maxLimit, tolerance, smoothing, windowMillis, System::nanoTime);
+    }
+    
+    GradientConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit,
+            double tolerance, double smoothing, long windowMillis, LongSupplier clockNanos) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= min-limit <= max-limit");
+        }
+        if (tolerance < 1) {
+            throw new IllegalArgumentException("Tolerance must be at least 1");
+        }
+        if (smoothing <= 0 || smoothing > 1) {
+            throw new IllegalArgumentException("Smoothing must be in (0, 1]");
+        }
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.clockNanos = clockNanos;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.limitEstimate = limit;
+        this.windowStart = new AtomicLong(clockNanos.getAsLong());
+    }
+    
+    /**
+     * Acquires a permit if the in-flight requests are below the limit. Never blocks.
+     *
+     * @return true if a permit was acquired and must be released with {@link #release(long)}, false if the
+     *         request should be shed
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                rejected.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                peakInFlight.accumulateAndGet(current + 1, Math::max);
+                return true;
+            }
+        }
+    }
+    
+    /**
+     * Releases a permit acquired with {@link #tryAcquire()} and records the latency of the request.
+     *
+     * @param latencyNanos The latency in nanoseconds
+     */
+    public void release(long latencyNanos) {
+        inFlight.decrementAndGet();
+        windowLatencySum.add(latencyNanos);
+        windowSamples.increment();
+        
+        long now = clockNanos.getAsLong();
+        // One caller closes the window; the others carry on without waiting for it
+        if (now - windowStart.get() >= windowNanos && adjustLock.tryLock()) {
+            try {
+                if (now - windowStart.get() >= windowNanos) {
+                    adjust(now);
+                }
+            } finally {
+                adjustLock.unlock();
+            }
+        }
+    }
+    
+    /**
+     * Gets the current concurrency limit.
+     *
+     * @return The limit
+     */
+    public int getLimit() {
+        return limit;
+    }
+    
+    /**
+     * Gets the number of permits currently held.
+     *
+     * @return The in-flight count
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+    
+    /**
+     * Gets the number of requests shed since startup.
+     *
+     * @return The rejection count
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+    
+    /**
+     * Gets the learned no-load latency.
+     *
+     * @return The latency in nanoseconds, or 0 before the first window with samples
+     */
+    public long getNoLoadLatencyNanos() {
+        adjustLock.lock();
+        try {
+            return (long) noLoadLatencyNanos;
+        } finally {
+            adjustLock.unlock();
+        }
+    }
+    
+    /**
+     * Applies the gradient to the current window and starts a new one. Must be called with the lock held.
+     */
+    private void adjust(long now) {
+        long samples = windowSamples.sumThenReset();
+        long latencySum = windowLatencySum.sumThenReset();
+        int peak = peakInFlight.getAndSet(inFlight.get());
+        windowStart.set(now);
+        if (samples == 0) {
+            return;
+        }
+        
+        double averageLatency = Math.max(1, (double) latencySum / samples);
+        noLoadLatencyNanos = noLoadLatencyNanos == 0 || averageLatency < noLoadLatencyNanos
+                ? averageLatency
+                : noLoadLatencyNanos + (averageLatency - noLoadLatencyNanos) * NO_LOAD_DRIFT;
+        
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, tolerance * noLoadLatencyNanos / averageLatency));
+        double target = limitEstimate * gradient + Math.sqrt(limitEstimate);
+        if (target > limitEstimate && peak < limit) {
+            // The limit was not the bottleneck, so there is no evidence that a higher one is safe
+            target = limitEstimate;
+        }
+        limitEstimate = Math.max(minLimit, Math.min(maxLimit,
+                limitEstimate * (1 - smoothing) + target * smoothing));
+        
+        int previous = limit;
+        limit = (int) limitEstimate;
+        if (limit != previous) {
+            logger.debug("{} concurrency limit changed from {} to {} (avgLatencyMs={}, noLoadLatencyMs={})",
+                    name, previous, limit, averageLatency / 1_000_000.0, noLoadLatencyNanos / 1_000_000.0);
+        }
+    }
+}
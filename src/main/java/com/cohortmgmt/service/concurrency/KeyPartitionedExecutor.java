@@ -0,0 +1,224 @@
+package com.cohortmgmt.service.concurrency;
+
+import com.cohortmgmt.model.LaneStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executor that runs all work for one key, such as a customer ID, in submission order,
+ * while work for different keys runs in parallel.
+ *
+ * Keys are hashed onto a fixed set of lanes. Each lane is a single thread draining a bounded queue,
+ * so no locks are needed to keep the work for a key in order. When a lane's queue is full,
+ * {@link #submit(String, Callable)} blocks the caller, which pushes back on the ingestion path that
+ * produced the work. Tasks must not submit to the executor and wait for the result themselves.
+ *
+ * Lane threads mostly wait on DynamoDB, so by default there are as many lanes as the
+ * {@link AdaptiveConcurrencyLimiter} can ever let through, and the limiter rather than the lane count bounds
+ * the calls in flight. Work keeps the capacity priority of the thread that submitted it
+ * (see {@link CapacityGovernor#runAsBackground(Runnable)}).
+ */
+@Component
+public class KeyPartitionedExecutor {
+    
+    private static final Logger logger = LoggerFactory.getLogger(KeyPartitionedExecutor.class);
+    
+    private final Lane[] lanes;
+    private final int queueCapacity;
+    
+    /**
+     * Creates a new KeyPartitionedExecutor.
+     *
+     * @param laneCount The number of lanes, or 0 for the maximum concurrency
+     * @param queueCapacity The maximum number of tasks queued per lane
+     * @param maxConcurrency The most calls the concurrency limiter lets through at once
+     */
+    @Autowired
+    public KeyPartitionedExecutor(
+            @Value("${ingestion.lanes.count:0}") int laneCount,
+            @Value("${ingestion.lanes.queue-capacity:1024}") int queueCapacity,
+            @Value("${ingestion.concurrency.max-limit:256}") int maxConcurrency) {
+        int count = laneCount > 0 ? laneCount : Math.max(maxConcurrency, Runtime.getRuntime().availableProcessors());
+        this.queueCapacity = queueCapacity;
+        this.lanes = new Lane[count];
+        NamedThreadFactory threadFactory = new NamedThreadFactory("ingest-lane", true);
+        for (int i = 0; i < count; i++) {
+            lanes[i] = new Lane(i, queueCapacity);
+            threadFactory.newThread(lanes[i]::run).start();
+        }
+    }
+    
+    /**
+     * Creates a new KeyPartitionedExecutor with a fixed number of lanes.
+     *
+     * @param laneCount The number of lanes, or 0 for one per available processor
+     * @param queueCapacity The maximum number of tasks queued per lane
+     */
+    public KeyPartitionedExecutor(int laneCount, int queueCapacity) {
+        this(laneCount, queueCapacity, 0);
+    }
+    
+    /**
+     * Submits work for a key, blocking while the key's lane is full.
+     *
+     * @param key The key, e.g. a customer ID
+     * @param task The work
+     * @param <T> The result type
+     * @return A future that completes with the result of the work
+     * @throws InterruptedException If interrupted while waiting for room in the lane
+     */
+    public <T> CompletableFuture<T> submit(String key, Callable<T> task) throws InterruptedException {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Lane lane = laneFor(key);
+        Runnable work = () -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable e) {
+                lane.failed.incrementAndGet();
+                future.completeExceptionally(e);
+            }
+        };
+        // The capacity priority is per thread, so it is carried over to the lane explicitly
+        lane.enqueue(CapacityGovernor.isBackground() ? () -> CapacityGovernor.runAsBackground(work) : work);
+        return future;
+    }
+    
+    /**
+     * Submits work without a result for a key, blocking while the key's lane is full.
+     *
+     * @param key The key, e.g. a customer ID
+     * @param task The work
+     * @return A future that completes when the work is done
+     * @throws InterruptedException If interrupted while waiting for room in the lane
+     */
+    public CompletableFuture<Void> execute(String key, Runnable task) throws InterruptedException {
+        return submit(key, () -> {
+            task.run();
+            return null;
+        });
+    }
+    
+    /**
+     * Gets the lane index for a key.
+     *
+     * @param key The key
+     * @return The lane index
+     */
+    public int laneIndex(String key) {
+        int hash = key.hashCode();
+        // Spread the high bits, as HashMap does, so similar IDs don't pile onto one lane
+        return Math.floorMod(hash ^ (hash >>> 16), lanes.length);
+    }
+    
+    /**
+     * Gets the number of lanes.
+     *
+     * @return The lane count
+     */
+    public int getLaneCount() {
+        return lanes.length;
+    }
+    
+    /**
+     * Gets a snapshot of the metrics of every lane.
+     *
+     * @return The lane metrics, indexed by lane
+     */
+    public List<LaneStats> getLaneStats() {
+        List<LaneStats> stats = new ArrayList<>(lanes.length);
+        for (Lane lane : lanes) {
+            stats.add(new LaneStats(lane.index, lane.queue.size(), queueCapacity, lane.maxQueueDepth.get(),
+                    lane.completed.get(), lane.failed.get(), lane.blockedSubmits.get(), lane.busyNanos.get() / 1_000_000));
+        }
+        return stats;
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        for (Lane lane : lanes) {
+            lane.stop();
+        }
+    }
+    
+    private Lane laneFor(String key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return lanes[laneIndex(key)];
+    }
+    
+    /**
+     * A single-threaded lane with a bounded queue.
+     */
+    private static class Lane {
+        
+        private final int index;
+        private final BlockingQueue<Runnable> queue;
+        private final AtomicLong maxQueueDepth = new AtomicLong();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong blockedSubmits = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+        private volatile boolean running = true;
+        private volatile Thread thread;
+        
+        private Lane(int index, int capacity) {
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+        
+        private void enqueue(Runnable task) throws InterruptedException {
+            if (!running) {
+                throw new RejectedExecutionException("Lane " + index + " is shut down");
+            }
+            if (!queue.offer(task)) {
+                blockedSubmits.incrementAndGet();
+                queue.put(task);
+            }
+            maxQueueDepth.accumulateAndGet(queue.size(), Math::max);
+        }
+        
+        private void run() {
+            thread = Thread.currentThread();
+            while (running) {
+                Runnable task;
+                try {
+                    task = queue.take();
+                } catch (InterruptedException e) {
+                    break;
+                }
+                long start = System.nanoTime();
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    // Tasks complete their own futures, so this only guards the lane thread
+                    logger.error("Unexpected error in ingestion lane {}: {}", index, e.getMessage(), e);
+                } finally {
+                    completed.incrementAndGet();
+                    busyNanos.addAndGet(System.nanoTime() - start);
+                }
+            }
+        }
+        
+        private void stop() {
+            running = false;
+            Thread current = thread;
+            if (current != null) {
+                current.interrupt();
+            }
+        }
+    }
+}
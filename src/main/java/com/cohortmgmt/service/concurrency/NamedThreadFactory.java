@@ -0,0 +1,50 @@
+package com.cohortmgmt.service.concurrency;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factory that gives every thread a readable, numbered name.
+ * Named threads make thread dumps and log lines attributable to the component that owns them.
+ * While {@link VirtualThreads} are enabled, the threads are virtual threads, which are always daemon threads.
+ */
+public class NamedThreadFactory implements ThreadFactory {
+    
+    private final String prefix;
+    private final boolean daemon;
+    private final AtomicInteger counter = new AtomicInteger();
+    
+    /**
+     * Creates a new NamedThreadFactory that creates daemon threads.
+     *
+     * @param prefix The prefix of the thread names, e.g. "sqs-poller"
+     */
+    public NamedThreadFactory(String prefix) {
+        this(prefix, true);
+    }
+    
+    /**
+     * Creates a new NamedThreadFactory.
+     *
+     * @param prefix The prefix of the thread names
+     * @param daemon Whether the created threads are daemon threads
+     */
+    public NamedThreadFactory(String prefix, boolean daemon) {
+        this.prefix = prefix;
+        this.daemon = daemon;
+    }
+    
+    @Override
+    public Thread newThread(Runnable runnable) {
+        if (VirtualThreads.isEnabled()) {
+            return VirtualThreads.newThread(nextName(), runnable);
+        }
+        Thread thread = new Thread(runnable, nextName());
+        thread.setDaemon(daemon);
+        return thread;
+    }
+    
+    String nextName() {
+        return prefix + "-" + counter.incrementAndGet();
+    }
+}
@@ -0,0 +1,180 @@
+package com.cohortmgmt.service.concurrency;
+
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded ring buffer connecting two pipeline stages.
+ *
+ * Slots are preallocated once and addressed by ever-increasing sequence numbers, so publishing and consuming
+ * never allocate. Producers block while the ring is full, which is how a slow stage pushes back on the stage
+ * before it. Consumers take items in batches: {@link #drainTo(List, int, long)} waits for the first item and
+ * then lingers briefly for the batch to fill, while {@link #poll(List, int)} takes what is there.
+ *
+ * @param <E> The item type
+ */
+public class RingBuffer<E> {
+    
+    private final Object[] slots;
+    private final int mask;
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    
+    // All fields below are guarded by lock
+    private long head;
+    private long tail;
+    private long publisherWaits;
+    
+    /**
+     * Creates a new RingBuffer.
+     *
+     * @param capacity The minimum capacity; it is rounded up to a power of two
+     */
+    public RingBuffer(int capacity) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new Object[size];
+        this.mask = size - 1;
+    }
+    
+    /**
+     * Publishes an item, blocking while the ring is full.
+     *
+     * @param item The item
+     * @throws InterruptedException If interrupted while waiting for a free slot
+     */
+    public void put(E item) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            if (tail - head == slots.length) {
+                publisherWaits++;
+                do {
+                    notFull.await();
+                } while (tail - head == slots.length);
+            }
+            slots[(int) (tail & mask)] = item;
+            tail++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Takes a batch of items, waiting until at least one is available and then up to the linger time
+     * for the batch to fill up.
+     *
+     * @param batch The list to add the items to
+     * @param maxItems The maximum number of items to take
+     * @param lingerNanos How long to wait for more items once the first one is available
+     * @return The number of items taken
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public int drainTo(List<? super E> batch, int maxItems, long lingerNanos) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (tail == head) {
+                notEmpty.await();
+            }
+            long deadline = System.nanoTime() + lingerNanos;
+            long remaining = lingerNanos;
+            while (tail - head < maxItems && remaining > 0) {
+                notEmpty.awaitNanos(remaining);
+                remaining = deadline - System.nanoTime();
+            }
+            return take(batch, maxItems);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Takes the items that are available, up to a maximum, without waiting.
+     *
+     * @param batch The list to add the items to
+     * @param maxItems The maximum number of items to take
+     * @return The number of items taken, 0 if the ring is empty
+     */
+    public int poll(List<? super E> batch, int maxItems) {
+        lock.lock();
+        try {
+            return take(batch, maxItems);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private int take(List<? super E> batch, int maxItems) {
+        int count = (int) Math.min(maxItems, tail - head);
+        for (int i = 0; i < count; i++) {
+            int slot = (int) (head & mask);
+            batch.add((E) slots[slot]);
+            slots[slot] = null;
+            head++;
+        }
+        if (count > 0) {
+            notFull.signalAll();
+        }
+        return count;
+    }
+    
+    /**
+     * Gets the number of items waiting in the ring.
+     *
+     * @return The depth
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return (int) (tail - head);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Gets the number of slots.
+     *
+     * @return The capacity
+     */
+    public int capacity() {
+        return slots.length;
+    }
+    
+    /**
+     * Gets the number of times a producer found the ring full and had to wait.
+     *
+     * @return The number of waits
+     */
+    public long getPublisherWaits() {
+        lock.lock();
+        try {
+            return publisherWaits;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Gets the number of items published since creation.
+     *
+     * @return The number of items
+     */
+    public long getPublished() {
+        lock.lock();
+        try {
+            return tail;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.cohortmgmt.service.concurrency;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical loads: while a load of a key is in flight, further calls for the same key wait
+ * for it and share its result instead of starting their own.
+ *
+ * The first caller runs the load on its own thread, so no executor is involved and a lone call costs one map
+ * insertion and removal. Nothing is cached; once a load completes, the next call starts a new one. A writer that
+ * changed the data behind a key calls {@link #forget(Object)}, so calls made after the write never join a load
+ * that may have read the data before it. Waiting callers receive the same result object, so results must not be
+ * changed by their receivers.
+ *
+ * @param <K> The key type
+ * @param <V> The result type
+ */
+public class SingleFlight<K, V> {
+    
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+    
+    /**
+     * Loads the value of a key, or waits for the load already in flight for it.
+     *
+     * @param key The key
+     * @param loader Loads the value; runs on the calling thread if no load of the key is in flight
+     * @return The value
+     */
+    public V execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            shared.increment();
+            return await(existing);
+        }
+        
+        loads.increment();
+        try {
+            V value = loader.get();
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+    
+    /**
+     * Detaches the load in flight for a key, if any, so later calls start a new one.
+     * Callers already waiting for it still receive its result.
+     *
+     * @param key The key
+     */
+    public void forget(K key) {
+        inFlight.remove(key);
+    }
+    
+    /**
+     * Gets the number of loads run.
+     *
+     * @return The number of loads
+     */
+    public long getLoads() {
+        return loads.sum();
+    }
+    
+    /**
+     * Gets the number of calls that shared a load already in flight.
+     *
+     * @return The number of calls
+     */
+    public long getShared() {
+        return shared.sum();
+    }
+    
+    private static <V> V await(CompletableFuture<V> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            // Rethrow the failure of the load as the caller that ran it saw it
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.cohortmgmt.service.concurrency;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter, e.g. for keeping a job within a DynamoDB capacity budget.
+ *
+ * Tokens refill continuously at the configured rate up to the bucket capacity. {@link #acquire(double)}
+ * always takes the requested tokens and lets the balance go negative, then sleeps until the debt
+ * is paid back, so requests larger than the capacity still make progress at the configured rate.
+ */
+public class TokenBucket {
+    
+    private final double ratePerSecond;
+    private final double capacity;
+    
+    // Guarded by this
+    private double tokens;
+    private long lastRefill;
+    
+    /**
+     * Creates a new TokenBucket that starts full.
+     *
+     * @param ratePerSecond The number of tokens added per second
+     * @param capacity The maximum number of tokens that can accumulate
+     */
+    public TokenBucket(double ratePerSecond, double capacity) {
+        if (ratePerSecond <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Rate and capacity must be positive");
+        }
+        this.ratePerSecond = ratePerSecond;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+    
+    /**
+     * Takes tokens from the bucket, sleeping until the balance is no longer negative.
+     *
+     * @param amount The number of tokens to take
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void acquire(double amount) throws InterruptedException {
+        long waitNanos = reserve(amount);
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+    
+    /**
+     * Takes tokens from the bucket without ever taking it below a floor, sleeping until enough have refilled.
+     * Callers using this give way to callers of {@link #acquire(double)}: while those keep the balance
+     * at or below the floor, this method keeps waiting. An amount larger than the room above the floor is
+     * taken in installments.
+     *
+     * @param amount The number of tokens to take
+     * @param floor The balance that must remain after taking the tokens
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void acquire(double amount, double floor) throws InterruptedException {
+        double remaining = amount;
+        while ((remaining -= tryAcquireAbove(remaining, floor)) > 0) {
+            TimeUnit.NANOSECONDS.sleep(nanosUntilAbove(floor, remaining));
+        }
+    }
+    
+    /**
+     * Takes as many of the tokens as are available above a floor, without waiting.
+     *
+     * @param amount The number of tokens to take
+     * @param floor The balance that must remain after taking the tokens
+     * @return The number of tokens taken, between 0 and amount
+     */
+    public synchronized double tryAcquireAbove(double amount, double floor) {
+        refill(System.nanoTime());
+        double taken = Math.max(0, Math.min(amount, tokens - floor));
+        tokens -= taken;
+        return taken;
+    }
+    
+    /**
+     * Takes tokens from the bucket only if enough are available.
+     *
+     * @param amount The number of tokens to take
+     * @return true if the tokens were taken
+     */
+    public synchronized boolean tryAcquire(double amount) {
+        refill(System.nanoTime());
+        if (tokens < amount) {
+            return false;
+        }
+        tokens -= amount;
+        return true;
+    }
+    
+    /**
+     * Adjusts the balance after the fact, e.g. when the actual cost of a request differs from its estimate.
+     * A positive amount takes further tokens, a negative amount returns tokens.
+     *
+     * @param amount The number of tokens to take
+     */
+    public synchronized void charge(double amount) {
+        refill(System.nanoTime());
+        tokens = Math.min(capacity, tokens - amount);
+    }
+    
+    /**
+     * Gets the number of tokens currently available. Negative while the bucket is in debt.
+     *
+     * @return The available tokens
+     */
+    public synchronized double getAvailable() {
+        refill(System.nanoTime());
+        return tokens;
+    }
+    
+    /**
+     * Gets the refill rate.
+     *
+     * @return The tokens added per second
+     */
+    public double getRatePerSecond() {
+        return ratePerSecond;
+    }
+    
+    private synchronized long reserve(double amount) {
+        refill(System.nanoTime());
+        tokens -= amount;
+        return tokens >= 0 ? 0 : (long) (-tokens / ratePerSecond * TimeUnit.SECONDS.toNanos(1));
+    }
+    
+    private synchronized long nanosUntilAbove(double floor, double amount) {
+        refill(System.nanoTime());
+        // Never wait for more than the bucket can hold, or the caller would wait forever
+        double needed = Math.min(capacity, floor + amount);
+        return Math.max(1, (long) ((needed - tokens) / ratePerSecond * TimeUnit.SECONDS.toNanos(1)));
+    }
+    
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * ratePerSecond / TimeUnit.SECONDS.toNanos(1));
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,128 @@
+package com.cohortmgmt.service.concurrency;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads, which the JDK provides from version 21 on.
+ *
+ * The service is built for Java 11, so the virtual thread API is looked up reflectively once, and
+ * {@link #isAvailable()} reports whether the running JDK has it. Virtual threads are used only once they
+ * are enabled with {@link #setEnabled(boolean)} on a JDK that has them; every thread created through
+ * {@link NamedThreadFactory} then is a virtual thread, which covers the worker pools of the service. A blocked
+ * virtual thread releases its carrier thread, so thousands of calls can wait on DynamoDB and SQS at a time
+ * without a platform thread each.
+ */
+public final class VirtualThreads {
+    
+    private static final MethodHandle OF_VIRTUAL;
+    private static final MethodHandle UNSTARTED;
+    private static final MethodHandle NEW_THREAD_PER_TASK_EXECUTOR;
+    
+    private static volatile boolean enabled;
+    
+    static {
+        MethodHandle ofVirtual = null;
+        MethodHandle unstarted = null;
+        MethodHandle newThreadPerTaskExecutor = null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            Class<?> ofVirtualBuilder = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            ofVirtual = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(ofVirtualBuilder));
+            MethodHandle name = lookup.findVirtual(ofVirtualBuilder, "name",
+                    MethodType.methodType(ofVirtualBuilder, String.class));
+            unstarted = lookup.findVirtual(builder, "unstarted", MethodType.methodType(Thread.class, Runnable.class));
+            // (Builder.OfVirtual, String, Runnable) -> Thread
+            unstarted = MethodHandles.filterArguments(unstarted, 0,
+                    name.asType(MethodType.methodType(builder, ofVirtualBuilder, String.class)));
+            newThreadPerTaskExecutor = lookup.findStatic(Executors.class, "newThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class, ThreadFactory.class));
+            // JDK 19 and 20 have the API as a preview feature, which fails here unless previews are enabled
+            ofVirtual.invoke();
+        } catch (Throwable e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        UNSTARTED = unstarted;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+    }
+    
+    private VirtualThreads() {
+    }
+    
+    /**
+     * Checks whether the running JDK supports virtual threads.
+     *
+     * @return true from JDK 21 on
+     */
+    public static boolean isAvailable() {
+        return OF_VIRTUAL != null;
+    }
+    
+    /**
+     * Checks whether threads are created as virtual threads.
+     *
+     * @return true if virtual threads are enabled and available
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Enables or disables virtual threads. Enabling has no effect on a JDK without virtual threads.
+     *
+     * @param enable Whether to create virtual threads
+     * @return Whether virtual threads are enabled now
+     */
+    public static boolean setEnabled(boolean enable) {
+        enabled = enable && isAvailable();
+        return enabled;
+    }
+    
+    /**
+     * Creates an unstarted virtual thread.
+     *
+     * @param name The thread name
+     * @param task The task the thread runs
+     * @return The thread
+     * @throws UnsupportedOperationException If the JDK has no virtual threads
+     */
+    public static Thread newThread(String name, Runnable task) {
+        requireAvailable();
+        try {
+            return (Thread) UNSTARTED.invoke(OF_VIRTUAL.invoke(), name, task);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot create virtual thread " + name, e);
+        }
+    }
+    
+    /**
+     * Creates an executor that runs every task on a new virtual thread.
+     *
+     * @param prefix The prefix of the thread names
+     * @return The executor
+     * @throws UnsupportedOperationException If the JDK has no virtual threads
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String prefix) {
+        requireAvailable();
+        NamedThreadFactory threadFactory = new NamedThreadFactory(prefix);
+        ThreadFactory virtualFactory = task -> newThread(threadFactory.nextName(), task);
+        try {
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(virtualFactory);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot create virtual thread executor " + prefix, e);
+        }
+    }
+    
+    private static void requireAvailable() {
+        if (!isAvailable()) {
+            throw new UnsupportedOperationException("Virtual threads need JDK 21 or later, running on "
+                    + System.getProperty("java.version"));
+        }
+    }
+}
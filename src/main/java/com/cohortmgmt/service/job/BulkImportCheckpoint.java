@@ -0,0 +1,106 @@
+package com.cohortmgmt.service.job;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * File-backed record of the chunks of a bulk import that have been fully written.
+ *
+ * The first line identifies the import (input size and chunk size), so a checkpoint is only reused
+ * when the input splits into exactly the same chunks. Every completed chunk index is appended on its
+ * own line and flushed, so at most the chunks in progress are redone after a crash.
+ */
+public class BulkImportCheckpoint {
+    
+    private static final Logger logger = LoggerFactory.getLogger(BulkImportCheckpoint.class);
+    
+    private static final String VERSION = "v1";
+    
+    private final Path path;
+    private final BitSet completed = new BitSet();
+    private BufferedWriter writer;
+    
+    /**
+     * Opens the checkpoint for an import, loading the completed chunks of a previous run if it matches.
+     *
+     * @param path The checkpoint file
+     * @param fileSize The size of the input file
+     * @param chunkSize The target chunk size of the import
+     * @throws IOException If the checkpoint cannot be read or created
+     */
+    public BulkImportCheckpoint(Path path, long fileSize, long chunkSize) throws IOException {
+        this.path = path;
+        String header = VERSION + " " + fileSize + " " + chunkSize;
+        
+        if (Files.exists(path)) {
+            List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            if (!lines.isEmpty() && lines.get(0).equals(header)) {
+                for (String line : lines.subList(1, lines.size())) {
+                    // A torn last line from a crash is simply ignored
+                    if (!line.isEmpty() && line.chars().allMatch(Character::isDigit)) {
+                        completed.set(Integer.parseInt(line));
+                    }
+                }
+                writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+                logger.info("Resuming bulk import from checkpoint {} with {} completed chunks", path, completed.cardinality());
+                return;
+            }
+            logger.warn("Checkpoint {} belongs to a different input or chunk size, starting over", path);
+        }
+        
+        writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        writer.write(header);
+        writer.newLine();
+        writer.flush();
+    }
+    
+    /**
+     * Checks whether a chunk was completed by this or a previous run.
+     *
+     * @param chunkIndex The chunk index
+     * @return true if the chunk is complete
+     */
+    public synchronized boolean isCompleted(int chunkIndex) {
+        return completed.get(chunkIndex);
+    }
+    
+    /**
+     * Records a chunk as completed.
+     *
+     * @param chunkIndex The chunk index
+     * @throws IOException If the checkpoint cannot be written
+     */
+    public synchronized void markCompleted(int chunkIndex) throws IOException {
+        writer.write(Integer.toString(chunkIndex));
+        writer.newLine();
+        writer.flush();
+        completed.set(chunkIndex);
+    }
+    
+    /**
+     * Gets the checkpoint file.
+     *
+     * @return The path
+     */
+    public Path getPath() {
+        return path;
+    }
+    
+    /**
+     * Closes the checkpoint file.
+     *
+     * @throws IOException If the file cannot be closed
+     */
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,400 @@
+package com.cohortmgmt.service.job;
+
+import com.cohortmgmt.model.CohortType;
+import com.cohortmgmt.model.Customer;
+import com.cohortmgmt.model.UserType;
+import com.cohortmgmt.repository.CustomerRepository;
+import com.cohortmgmt.service.CohortService;
+import com.cohortmgmt.service.codec.CustomerJsonDecoder;
+import com.cohortmgmt.service.concurrency.CapacityGovernor;
+import com.cohortmgmt.service.concurrency.TokenBucket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Job for the initial import of a large customer file, either CSV (customerId,dailySpend,userType)
+ * or NDJSON (one JSON customer record per line).
+ *
+ * The file is split into chunks that end on line boundaries. Chunks are memory-mapped and parsed in parallel
+ * on a fork-join pool, and their records are written with BatchWriteItem and classified in batches.
+ * All writes share a token bucket sized in write capacity units (WCU), so the import stays within a fixed share
+ * of the table's throughput. Completed chunks are recorded in a checkpoint file next to the input, and a
+ * re-run of the same import skips them. Writes run with background priority, so the import never takes the
+ * capacity reserved for serving requests.
+ */
+@Service
+public class BulkImportJob {
+    
+    private static final Logger logger = LoggerFactory.getLogger(BulkImportJob.class);
+    
+    private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+    private static final String CSV_HEADER_ID = "customerId";
+    private static final int MAX_LOGGED_ERRORS = 10;
+    
+    private final CustomerRepository customerRepository;
+    private final CohortService cohortService;
+    private final CustomerJsonDecoder jsonDecoder = new CustomerJsonDecoder();
+    private final int parallelism;
+    private final long chunkSizeBytes;
+    private final int batchSize;
+    private final double writeCapacityUnits;
+    
+    @Autowired
+    public BulkImportJob(
+            CustomerRepository customerRepository,
+            CohortService cohortService,
+            @Value("${bulk-import.parallelism:0}") int parallelism,
+            @Value("${bulk-import.chunk-size-bytes:8388608}") long chunkSizeBytes,
+            @Value("${bulk-import.batch-size:25}") int batchSize,
+            @Value("${bulk-import.write-capacity-units:500}") double writeCapacityUnits) {
+        if (chunkSizeBytes <= 0 || chunkSizeBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Chunk size must be between 1 byte and 2 GiB");
+        }
+        this.customerRepository = customerRepository;
+        this.cohortService = cohortService;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.chunkSizeBytes = chunkSizeBytes;
+        this.batchSize = batchSize;
+        this.writeCapacityUnits = writeCapacityUnits;
+    }
+    
+    /**
+     * Imports a file, resuming from its checkpoint if a previous run was interrupted.
+     *
+     * @param file The CSV (.csv) or NDJSON file
+     * @return The result of the import
+     * @throws IOException If the file or checkpoint cannot be read
+     * @throws InterruptedException If interrupted while importing
+     */
+    public Result run(Path file) throws IOException, InterruptedException {
+        boolean csv = file.getFileName().toString().toLowerCase().endsWith(".csv");
+        long startNanos = System.nanoTime();
+        
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            List<Chunk> chunks = split(channel, chunkSizeBytes);
+            BulkImportCheckpoint checkpoint = new BulkImportCheckpoint(
+                    file.resolveSibling(file.getFileName() + CHECKPOINT_SUFFIX), fileSize, chunkSizeBytes);
+            List<Chunk> pending = chunks.stream()
+                    .filter(chunk -> !checkpoint.isCompleted(chunk.index))
+                    .collect(Collectors.toList());
+            
+            logger.info("Importing {} ({} bytes, {}) in {} chunks, {} already done, parallelism {}, {} WCU",
+                    file, fileSize, csv ? "CSV" : "NDJSON", chunks.size(), chunks.size() - pending.size(),
+                    parallelism, writeCapacityUnits);
+            
+            Progress progress = new Progress(chunks.size(), chunks.size() - pending.size(), startNanos);
+            TokenBucket writeCapacity = new TokenBucket(writeCapacityUnits, writeCapacityUnits);
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.submit(() -> pending.parallelStream().forEach(chunk -> CapacityGovernor.runAsBackground(
+                        () -> importChunk(channel, chunk, csv, writeCapacity, checkpoint, progress)))).get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) cause).getCause();
+                }
+                throw new IllegalStateException("Bulk import failed, re-run to resume from the checkpoint", cause);
+            } finally {
+                pool.shutdownNow();
+                checkpoint.close();
+            }
+            
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            Result result = new Result(progress.records.get(), progress.failedRecords.get(),
+                    chunks.size(), pending.size(), elapsedMillis);
+            logger.info("Bulk import of {} finished: {}", file, result);
+            return result;
+        }
+    }
+    
+    /**
+     * Splits a file into chunks of roughly the target size, each ending just after a newline (or at the end of the file).
+     *
+     * @param channel The file channel
+     * @param targetSize The target chunk size in bytes
+     * @return The chunks in file order
+     * @throws IOException If the file cannot be read
+     */
+    static List<Chunk> split(FileChannel channel, long targetSize) throws IOException {
+        long size = channel.size();
+        List<Chunk> chunks = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long start = 0;
+        while (start < size) {
+            long end = start + targetSize >= size ? size : nextLineStart(channel, start + targetSize - 1, probe);
+            if (end - start > Integer.MAX_VALUE) {
+                throw new IOException("Line at offset " + start + " is too long to import");
+            }
+            chunks.add(new Chunk(chunks.size(), start, end));
+            start = end;
+        }
+        return chunks;
+    }
+    
+    /**
+     * Finds the offset just after the first newline at or after a position, or the file size if there is none.
+     */
+    private static long nextLineStart(FileChannel channel, long from, ByteBuffer probe) throws IOException {
+        long position = from;
+        while (true) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+    }
+    
+    private void importChunk(FileChannel channel, Chunk chunk, boolean csv, TokenBucket writeCapacity,
+                             BulkImportCheckpoint checkpoint, Progress progress) {
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunk.start, chunk.end - chunk.start);
+            List<Customer> batch = new ArrayList<>(batchSize);
+            byte[] line = new byte[256];
+            long failed = 0;
+            
+            while (buffer.hasRemaining()) {
+                int lineStart = buffer.position();
+                int lineEnd = lineStart;
+                while (lineEnd < buffer.limit() && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                int length = lineEnd - lineStart;
+                if (length > 0 && buffer.get(lineEnd - 1) == '\r') {
+                    length--;
+                }
+                if (line.length < length) {
+                    line = new byte[Math.max(length, line.length * 2)];
+                }
+                buffer.get(line, 0, length);
+                buffer.position(Math.min(buffer.limit(), lineEnd + 1));
+                
+                if (isBlank(line, length)) {
+                    continue;
+                }
+                try {
+                    Customer customer = csv ? parseCsv(line, length) : jsonDecoder.decode(line, 0, length);
+                    if (customer != null) {
+                        batch.add(customer);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    failed++;
+                    if (progress.loggedErrors.incrementAndGet() <= MAX_LOGGED_ERRORS) {
+                        logger.warn("Skipping invalid record in chunk {}: {}", chunk.index, e.getMessage());
+                    }
+                }
+                
+                if (batch.size() == batchSize) {
+                    writeBatch(batch, writeCapacity);
+                    progress.records.addAndGet(batch.size());
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                writeBatch(batch, writeCapacity);
+                progress.records.addAndGet(batch.size());
+            }
+            
+            checkpoint.markCompleted(chunk.index);
+            progress.failedRecords.addAndGet(failed);
+            progress.chunkCompleted();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while importing chunk " + chunk.index, e);
+        }
+    }
+    
+    /**
+     * Writes a batch of customers and their cohort memberships, paying for both from the WCU budget.
+     * Every item is well below 1 KB, so each write costs one WCU.
+     */
+    private void writeBatch(List<Customer> batch, TokenBucket writeCapacity) throws InterruptedException {
+        writeCapacity.acquire(batch.size());
+        customerRepository.saveAll(batch);
+        
+        Map<String, Set<CohortType>> changed = cohortService.classifyCustomers(batch);
+        if (!changed.isEmpty()) {
+            // Membership writes are only known after classification, so they are paid for afterwards: one per
+            // membership added or removed, and at most one version increment per changed customer and cohort type
+            Set<CohortType> cohortTypes = EnumSet.noneOf(CohortType.class);
+            int writes = changed.size();
+            for (Set<CohortType> types : changed.values()) {
+                writes += types.size();
+                cohortTypes.addAll(types);
+            }
+            writeCapacity.acquire(writes + cohortTypes.size());
+        }
+    }
+    
+    /**
+     * Parses a CSV line of the form customerId,dailySpend,userType. A header line yields null.
+     */
+    private static Customer parseCsv(byte[] line, int length) {
+        String[] fields = new String(line, 0, length, StandardCharsets.UTF_8).split(",", -1);
+        if (fields.length != 3) {
+            throw new IllegalArgumentException("Expected 3 fields but got " + fields.length);
+        }
+        String customerId = fields[0].trim();
+        if (customerId.equalsIgnoreCase(CSV_HEADER_ID)) {
+            return null;
+        }
+        if (customerId.isEmpty()) {
+            throw new IllegalArgumentException("Customer ID cannot be empty");
+        }
+        return new Customer(customerId, Double.parseDouble(fields[1].trim()), UserType.valueOf(fields[2].trim()));
+    }
+    
+    private static boolean isBlank(byte[] line, int length) {
+        for (int i = 0; i < length; i++) {
+            if (line[i] != ' ' && line[i] != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * A byte range of the input file that starts and ends on a line boundary.
+     */
+    static class Chunk {
+        
+        final int index;
+        final long start;
+        final long end;
+        
+        Chunk(int index, long start, long end) {
+            this.index = index;
+            this.start = start;
+            this.end = end;
+        }
+    }
+    
+    /**
+     * Progress counters shared by the chunk tasks.
+     */
+    private static class Progress {
+        
+        private final int totalChunks;
+        private final AtomicInteger completedChunks;
+        private final long startNanos;
+        private final AtomicLong records = new AtomicLong();
+        private final AtomicLong failedRecords = new AtomicLong();
+        private final AtomicInteger loggedErrors = new AtomicInteger();
+        
+        private Progress(int totalChunks, int completedChunks, long startNanos) {
+            this.totalChunks = totalChunks;
+            this.completedChunks = new AtomicInteger(completedChunks);
+            this.startNanos = startNanos;
+        }
+        
+        private void chunkCompleted() {
+            int completed = completedChunks.incrementAndGet();
+            double seconds = Math.max(1e-3, (System.nanoTime() - startNanos) / 1e9);
+            logger.info("Bulk import: {}/{} chunks, {} records ({} records/s), {} invalid",
+                    completed, totalChunks, records.get(), (long) (records.get() / seconds), failedRecords.get());
+        }
+    }
+    
+    /**
+     * The outcome of a bulk import run.
+     */
+    public static class Result {
+        
+        private final long records;
+        private final long failedRecords;
+        private final int chunks;
+        private final int chunksProcessed;
+        private final long elapsedMillis;
+        
+        public Result(long records, long failedRecords, int chunks, int chunksProcessed, long elapsedMillis) {
+            this.records = records;
+            this.failedRecords = failedRecords;
+            this.chunks = chunks;
+            this.chunksProcessed = chunksProcessed;
+            this.elapsedMillis = elapsedMillis;
+        }
+        
+        /**
+         * Gets the number of records imported by this run.
+         *
+         * @return The record count
+         */
+        public long getRecords() {
+            return records;
+        }
+        
+        /**
+         * Gets the number of invalid records skipped by this run.
+         *
+         * @return The invalid record count
+         */
+        public long getFailedRecords() {
+            return failedRecords;
+        }
+        
+        /**
+         * Gets the total number of chunks of the input.
+         *
+         * @return The chunk count
+         */
+        public int getChunks() {
+            return chunks;
+        }
+        
+        /**
+         * Gets the number of chunks processed by this run; the rest were completed by an earlier run.
+         *
+         * @return The processed chunk count
+         */
+        public int getChunksProcessed() {
+            return chunksProcessed;
+        }
+        
+        /**
+         * Gets the duration of this run.
+         *
+         * @return The duration in milliseconds
+         */
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+        
+        @Override
+        public String toString() {
+            return "Result{records=" + records + ", failedRecords=" + failedRecords + ", chunks=" + chunks
+                    + ", chunksProcessed=" + chunksProcessed + ", elapsedMillis=" + elapsedMillis + "}";
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.cohortmgmt.service.job;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * File-backed progress of a segmented reclassification scan.
+ *
+ * For every segment the checkpoint holds the last evaluated key of the last fully processed page,
+ * whether the segment is done, and how many items it has scanned. The file is rewritten through a temporary
+ * file and an atomic move, so a crash leaves either the previous or the new state, never a torn file.
+ */
+public class ReclassificationCheckpoint {
+    
+    private static final String TOTAL_SEGMENTS = "totalSegments";
+    
+    private final Path path;
+    private final int totalSegments;
+    private final String[] lastKeys;
+    private final boolean[] done;
+    private final long[] scanned;
+    
+    private ReclassificationCheckpoint(Path path, int totalSegments) {
+        this.path = path;
+        this.totalSegments = totalSegments;
+        this.lastKeys = new String[totalSegments];
+        this.done = new boolean[totalSegments];
+        this.scanned = new long[totalSegments];
+    }
+    
+    /**
+     * Loads the checkpoint of an unfinished run, or creates an empty one if there is none,
+     * the previous run finished, or it used a different number of segments.
+     *
+     * @param path The checkpoint file
+     * @param totalSegments The number of scan segments
+     * @return The checkpoint
+     * @throws IOException If the checkpoint file cannot be read
+     */
+    public static ReclassificationCheckpoint load(Path path, int totalSegments) throws IOException {
+        ReclassificationCheckpoint checkpoint = new ReclassificationCheckpoint(path, totalSegments);
+        if (!Files.exists(path)) {
+            return checkpoint;
+        }
+        
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(path)) {
+            properties.load(in);
+        }
+        if (!String.valueOf(totalSegments).equals(properties.getProperty(TOTAL_SEGMENTS))) {
+            return checkpoint;
+        }
+        for (int segment = 0; segment < totalSegments; segment++) {
+            checkpoint.lastKeys[segment] = properties.getProperty(prefix(segment) + "lastKey");
+            checkpoint.done[segment] = Boolean.parseBoolean(properties.getProperty(prefix(segment) + "done"));
+            checkpoint.scanned[segment] = Long.parseLong(properties.getProperty(prefix(segment) + "scanned", "0"));
+        }
+        return checkpoint.isComplete() ? new ReclassificationCheckpoint(path, totalSegments) : checkpoint;
+    }
+    
+    /**
+     * Records a processed page of a segment and writes the checkpoint.
+     *
+     * @param segment The segment
+     * @param lastKey The last evaluated key of the page, or null if it was the last page
+     * @param items The number of items on the page
+     * @throws IOException If the checkpoint file cannot be written
+     */
+    public synchronized void pageCompleted(int segment, String lastKey, long items) throws IOException {
+        lastKeys[segment] = lastKey;
+        done[segment] = lastKey == null;
+        scanned[segment] += items;
+        write();
+    }
+    
+    /**
+     * Gets the key to resume a segment from.
+     *
+     * @param segment The segment
+     * @return The last evaluated key, or null to start from the beginning
+     */
+    public synchronized String getLastKey(int segment) {
+        return lastKeys[segment];
+    }
+    
+    /**
+     * Checks whether a segment has been scanned to the end.
+     *
+     * @param segment The segment
+     * @return true if the segment is done
+     */
+    public synchronized boolean isDone(int segment) {
+        return done[segment];
+    }
+    
+    /**
+     * Gets the number of items scanned so far, including by earlier runs.
+     *
+     * @return The number of items
+     */
+    public synchronized long getScanned() {
+        long total = 0;
+        for (long count : scanned) {
+            total += count;
+        }
+        return total;
+    }
+    
+    /**
+     * Gets the number of segments that have been scanned to the end.
+     *
+     * @return The number of completed segments
+     */
+    public synchronized int getCompletedSegments() {
+        int count = 0;
+        for (boolean segmentDone : done) {
+            if (segmentDone) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    private boolean isComplete() {
+        return getCompletedSegments() == totalSegments;
+    }
+    
+    private void write() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(TOTAL_SEGMENTS, String.valueOf(totalSegments));
+        for (int segment = 0; segment < totalSegments; segment++) {
+            if (lastKeys[segment] != null) {
+                properties.setProperty(prefix(segment) + "lastKey", lastKeys[segment]);
+            }
+            properties.setProperty(prefix(segment) + "done", String.valueOf(done[segment]));
+            properties.setProperty(prefix(segment) + "scanned", String.valueOf(scanned[segment]));
+        }
+        
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            properties.store(out, "Reclassification progress");
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private static String prefix(int segment) {
+        return "segment." + segment + ".";
+    }
+}
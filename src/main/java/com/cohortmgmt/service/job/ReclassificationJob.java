@@ -0,0 +1,263 @@
+package com.cohortmgmt.service.job;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.cohortmgmt.model.Customer;
+import com.cohortmgmt.model.CustomerChange;
+import com.cohortmgmt.model.ReclassificationState;
+import com.cohortmgmt.model.ReclassificationStatus;
+import com.cohortmgmt.model.UserType;
+import com.cohortmgmt.service.CohortService;
+import com.cohortmgmt.service.concurrency.CapacityGovernor;
+import com.cohortmgmt.service.concurrency.NamedThreadFactory;
+import com.cohortmgmt.service.concurrency.TokenBucket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Job that reclassifies every customer, e.g. after the cohort rules change.
+ *
+ * The Customers table is read with a parallel scan: each of the configured segments is paged through
+ * on its own worker thread. Every page is classified and compared with the memberships stored for its
+ * customers, and only the memberships to add or remove are written, in batches, so customers that no longer
+ * match a rule leave its cohort. After each page the segment's last evaluated key is checkpointed, so a run
+ * that is interrupted by a crash or restart resumes where it stopped. Reads are charged to a token bucket sized
+ * in read capacity units (RCU) using the capacity DynamoDB reports as consumed, which makes the duration of a
+ * full run predictable: the table size divided by the RCU budget. The scan runs with background priority, so
+ * it never takes the capacity reserved for serving requests.
+ */
+@Service
+public class ReclassificationJob {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ReclassificationJob.class);
+    
+    private static final String CUSTOMER_ID_ATTR = "customerId";
+    private static final String DAILY_SPEND_ATTR = "dailySpend";
+    private static final String USER_TYPE_ATTR = "userType";
+    
+    private final AmazonDynamoDB amazonDynamoDB;
+    private final CohortService cohortService;
+    private final String customerTableName;
+    private final int totalSegments;
+    private final int pageSize;
+    private final double readCapacityUnits;
+    private final Path checkpointPath;
+    private final ExecutorService workers;
+    
+    private final Object lock = new Object();
+    // All fields below are guarded by lock
+    private ReclassificationState state = ReclassificationState.IDLE;
+    private String error;
+    private ReclassificationCheckpoint checkpoint;
+    private long startNanos;
+    private long scannedAtStart;
+    private long estimatedTotalItems;
+    private CompletableFuture<Void> run;
+    
+    private final AtomicLong reclassified = new AtomicLong();
+    
+    @Autowired
+    public ReclassificationJob(
+            AmazonDynamoDB amazonDynamoDB,
+            CohortService cohortService,
+            @Value("${aws.dynamodb.customer-table}") String customerTableName,
+            @Value("${reclassification.total-segments:8}") int totalSegments,
+            @Value("${reclassification.page-size:500}") int pageSize,
+            @Value("${reclassification.read-capacity-units:1000}") double readCapacityUnits,
+            @Value("${reclassification.checkpoint-file:reclassification.checkpoint}") String checkpointFile) {
+        this.amazonDynamoDB = amazonDynamoDB;
+        this.cohortService = cohortService;
+        this.customerTableName = customerTableName;
+        this.totalSegments = totalSegments;
+        this.pageSize = pageSize;
+        this.readCapacityUnits = readCapacityUnits;
+        this.checkpointPath = Paths.get(checkpointFile);
+        this.workers = Executors.newFixedThreadPool(totalSegments, new NamedThreadFactory("reclassify", true));
+    }
+    
+    /**
+     * Starts a run in the background, resuming an interrupted run from its checkpoint.
+     * Does nothing if a run is already in progress.
+     *
+     * @return The status after starting
+     * @throws IOException If the checkpoint cannot be read
+     */
+    public ReclassificationStatus start() throws IOException {
+        synchronized (lock) {
+            if (run != null && !run.isDone()) {
+                return getStatus();
+            }
+            
+            checkpoint = ReclassificationCheckpoint.load(checkpointPath, totalSegments);
+            estimatedTotalItems = amazonDynamoDB.describeTable(customerTableName).getTable().getItemCount();
+            state = ReclassificationState.RUNNING;
+            error = null;
+            startNanos = System.nanoTime();
+            scannedAtStart = checkpoint.getScanned();
+            reclassified.set(0);
+            logger.info("Starting reclassification of ~{} customers with {} segments ({} already done, {} customers scanned)",
+                    estimatedTotalItems, totalSegments, checkpoint.getCompletedSegments(), scannedAtStart);
+            
+            TokenBucket readCapacity = new TokenBucket(readCapacityUnits, readCapacityUnits);
+            ReclassificationCheckpoint current = checkpoint;
+            List<CompletableFuture<Void>> segments = new ArrayList<>(totalSegments);
+            for (int segment = 0; segment < totalSegments; segment++) {
+                if (!current.isDone(segment)) {
+                    int s = segment;
+                    segments.add(CompletableFuture.runAsync(() -> CapacityGovernor.runAsBackground(
+                            () -> scanSegment(s, current, readCapacity)), workers));
+                }
+            }
+            run = CompletableFuture.allOf(segments.toArray(new CompletableFuture[0]))
+                    .whenComplete((ignored, failure) -> finish(failure));
+            return getStatus();
+        }
+    }
+    
+    /**
+     * Gets the progress of the current or last run, with throughput and ETA.
+     *
+     * @return The status
+     */
+    public ReclassificationStatus getStatus() {
+        synchronized (lock) {
+            ReclassificationStatus status = new ReclassificationStatus();
+            status.setState(state);
+            status.setError(error);
+            status.setTotalSegments(totalSegments);
+            status.setEstimatedTotalItems(estimatedTotalItems);
+            status.setReclassifiedItems(reclassified.get());
+            status.setEtaSeconds(-1);
+            if (checkpoint == null) {
+                return status;
+            }
+            
+            long scanned = checkpoint.getScanned();
+            double seconds = Math.max(1e-3, (System.nanoTime() - startNanos) / 1e9);
+            double rate = (scanned - scannedAtStart) / seconds;
+            status.setCompletedSegments(checkpoint.getCompletedSegments());
+            status.setScannedItems(scanned);
+            status.setItemsPerSecond(rate);
+            if (state == ReclassificationState.COMPLETED) {
+                status.setEtaSeconds(0);
+            } else if (rate > 0 && estimatedTotalItems > 0) {
+                // The item count is refreshed by DynamoDB about every six hours, so the ETA is an estimate
+                status.setEtaSeconds((long) (Math.max(0, estimatedTotalItems - scanned) / rate));
+            }
+            return status;
+        }
+    }
+    
+    /**
+     * Waits for the current run to finish.
+     *
+     * @return The status after the run
+     */
+    public ReclassificationStatus awaitCompletion() {
+        CompletableFuture<Void> current;
+        synchronized (lock) {
+            current = run;
+        }
+        if (current != null) {
+            current.exceptionally(failure -> null).join();
+        }
+        return getStatus();
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+    
+    /**
+     * Pages through one scan segment from its checkpoint to the end.
+     */
+    private void scanSegment(int segment, ReclassificationCheckpoint checkpoint, TokenBucket readCapacity) {
+        String lastKey = checkpoint.getLastKey(segment);
+        try {
+            do {
+                ScanRequest request = new ScanRequest()
+                        .withTableName(customerTableName)
+                        .withSegment(segment)
+                        .withTotalSegments(totalSegments)
+                        .withLimit(pageSize)
+                        .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+                if (lastKey != null) {
+                    request.setExclusiveStartKey(Collections.singletonMap(CUSTOMER_ID_ATTR, new AttributeValue(lastKey)));
+                }
+                ScanResult result = amazonDynamoDB.scan(request);
+                if (result.getConsumedCapacity() != null && result.getConsumedCapacity().getCapacityUnits() != null) {
+                    readCapacity.acquire(result.getConsumedCapacity().getCapacityUnits());
+                }
+                
+                // Each customer is compared with its stored memberships, so the ones it no longer matches are removed
+                List<CustomerChange> changes = new ArrayList<>(result.getItems().size());
+                for (Map<String, AttributeValue> item : result.getItems()) {
+                    Customer customer = toCustomer(item);
+                    if (customer != null) {
+                        changes.add(new CustomerChange(customer.getCustomerId(), null, customer));
+                    }
+                }
+                if (!changes.isEmpty()) {
+                    reclassified.addAndGet(cohortService.reclassifyCustomers(changes));
+                }
+                
+                Map<String, AttributeValue> lastEvaluatedKey = result.getLastEvaluatedKey();
+                lastKey = lastEvaluatedKey == null || lastEvaluatedKey.isEmpty()
+                        ? null
+                        : lastEvaluatedKey.get(CUSTOMER_ID_ATTR).getS();
+                checkpoint.pageCompleted(segment, lastKey, result.getItems().size());
+            } while (lastKey != null);
+            logger.info("Reclassification segment {}/{} done", segment + 1, totalSegments);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while scanning segment " + segment, e);
+        }
+    }
+    
+    private Customer toCustomer(Map<String, AttributeValue> item) {
+        try {
+            return new Customer(item.get(CUSTOMER_ID_ATTR).getS(),
+                    Double.parseDouble(item.get(DAILY_SPEND_ATTR).getN()),
+                    UserType.valueOf(item.get(USER_TYPE_ATTR).getS()));
+        } catch (RuntimeException e) {
+            logger.warn("Skipping malformed customer item {}: {}", item.get(CUSTOMER_ID_ATTR), e.getMessage());
+            return null;
+        }
+    }
+    
+    private void finish(Throwable failure) {
+        synchronized (lock) {
+            if (failure == null) {
+                state = ReclassificationState.COMPLETED;
+            } else {
+                state = ReclassificationState.FAILED;
+                error = failure.getCause() != null ? failure.getCause().getMessage() : failure.getMessage();
+                logger.error("Reclassification failed, start it again to resume from the checkpoint: {}", error, failure);
+            }
+        }
+        logger.info("Reclassification finished: {}", getStatus());
+    }
+}
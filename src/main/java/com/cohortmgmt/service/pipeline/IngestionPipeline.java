@@ -0,0 +1,483 @@
+package com.cohortmgmt.service.pipeline;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.cohortmgmt.model.CohortType;
+import com.cohortmgmt.model.Customer;
+import com.cohortmgmt.model.StageStats;
+import com.cohortmgmt.repository.CustomerRepository;
+import com.cohortmgmt.service.CohortService;
+import com.cohortmgmt.service.codec.CustomerMessageCodec;
+import com.cohortmgmt.service.concurrency.AdaptiveConcurrencyLimiter;
+import com.cohortmgmt.service.concurrency.KeyPartitionedExecutor;
+import com.cohortmgmt.service.concurrency.NamedThreadFactory;
+import com.cohortmgmt.service.concurrency.RingBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Staged pipeline that ingests customer messages from SQS.
+ *
+ * Each message passes through three stages connected by preallocated {@link RingBuffer}s:
+ * <ol>
+ *   <li>decode: parses the message into customers</li>
+ *   <li>classify: evaluates the cohort rules in memory</li>
+ *   <li>persist: writes customers and their memberships with batched writes</li>
+ * </ol>
+ * Every stage takes its input in batches, and a full ring blocks the stage feeding it, so a slow stage pushes
+ * back all the way to the SQS pollers. Messages are numbered as they are submitted; decode threads decode in
+ * parallel but hand their customers on strictly in that order, and from there customers are routed to the
+ * classify and persist rings by customer ID, so the updates to one customer stay in submission order.
+ *
+ * Decode and classify run on their own threads. The persist stage has no threads: it has one small ring per
+ * lane of the shared {@link KeyPartitionedExecutor}, and classify threads queue a persist task on the lane
+ * for every batch they put into its ring. The task runs on the lane and writes what has collected in the
+ * ring by then, so updates arriving while a lane is busy are written together, and SQS ingestion is ordered
+ * with the stream and scan paths writing the same customers. It only writes the latest update of a customer
+ * that appears more than once in a batch, and replaces the customer's stored memberships, so a customer
+ * leaves the cohorts it no longer matches. If a batch write fails, its customers are written one at a time,
+ * so only the messages of the customers that still fail are failed.
+ */
+@Component
+public class IngestionPipeline {
+    
+    private static final Logger logger = LoggerFactory.getLogger(IngestionPipeline.class);
+    
+    private static final int DECODE_BATCH_SIZE = 16;
+    private static final int CLASSIFY_BATCH_SIZE = 64;
+    
+    private final CustomerRepository customerRepository;
+    private final CohortService cohortService;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final KeyPartitionedExecutor laneExecutor;
+    private final CustomerMessageCodec messageCodec = new CustomerMessageCodec();
+    private final int persistBatchSize;
+    
+    private final Stage<Envelope> decodeStage;
+    private final Stage<Work> classifyStage;
+    private final Stage<Work> persistStage;
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running = true;
+    
+    private final Object submitLock = new Object();
+    // The sequence number of the next message submitted; guarded by submitLock
+    private long nextSequence;
+    private final Object turnLock = new Object();
+    // The sequence number of the next message whose customers may be handed on; guarded by turnLock
+    private long turn;
+    
+    /**
+     * Creates a new IngestionPipeline and starts its threads.
+     *
+     * @param customerRepository The customer repository
+     * @param cohortService The cohort service
+     * @param concurrencyLimiter The limiter governing concurrent persist batches
+     * @param laneExecutor The per-customer lanes the persist stage writes on
+     * @param decodeThreads The number of decode threads
+     * @param classifyThreads The number of classify threads
+     * @param ringSize The number of slots of the decode and classify rings
+     * @param persistBatchSize The maximum number of customers written per batch
+     */
+    @Autowired
+    public IngestionPipeline(
+            CustomerRepository customerRepository,
+            CohortService cohortService,
+            AdaptiveConcurrencyLimiter concurrencyLimiter,
+            KeyPartitionedExecutor laneExecutor,
+            @Value("${ingestion.pipeline.decode-threads:2}") int decodeThreads,
+            @Value("${ingestion.pipeline.classify-threads:2}") int classifyThreads,
+            @Value("${ingestion.pipeline.ring-size:1024}") int ringSize,
+            @Value("${ingestion.pipeline.persist-batch-size:25}") int persistBatchSize) {
+        if (persistBatchSize < 1) {
+            throw new IllegalArgumentException("Persist batch size must be at least 1");
+        }
+        this.customerRepository = customerRepository;
+        this.cohortService = cohortService;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.laneExecutor = laneExecutor;
+        this.persistBatchSize = persistBatchSize;
+        
+        // Decode threads share one ring; classify threads each own a ring so keys stay in order
+        int lanes = laneExecutor.getLaneCount();
+        this.decodeStage = new Stage<>("decode", decodeThreads, 1, ringSize);
+        this.classifyStage = new Stage<>("classify", classifyThreads, classifyThreads, ringSize);
+        // Every classify thread leaves fewer than a batch in a persist ring without a task queued to take it,
+        // so a ring of this size that is full always has a task coming, and a blocked classify thread wakes up
+        this.persistStage = new Stage<>("persist", lanes, lanes, classifyThreads * persistBatchSize);
+        
+        start(decodeStage, DECODE_BATCH_SIZE, this::decode);
+        start(classifyStage, CLASSIFY_BATCH_SIZE, this::classify);
+    }
+    
+    /**
+     * Submits a message, blocking while the decode ring is full.
+     *
+     * @param message The message
+     * @return A future that completes once every customer in the message has been persisted,
+     *         or completes exceptionally if the message could not be decoded or persisted
+     * @throws InterruptedException If interrupted while waiting for room in the pipeline
+     */
+    public CompletableFuture<Void> submit(Message message) throws InterruptedException {
+        if (!running) {
+            throw new IllegalStateException("Ingestion pipeline is shut down");
+        }
+        Envelope envelope = new Envelope(message);
+        // Numbers must follow ring order, or a decode thread could wait for a message queued behind its own
+        synchronized (submitLock) {
+            envelope.sequence = nextSequence++;
+            decodeStage.rings[0].put(envelope);
+        }
+        return envelope.ticket.future;
+    }
+    
+    /**
+     * Gets a snapshot of the metrics of every stage.
+     *
+     * @return The stage metrics, in pipeline order
+     */
+    public List<StageStats> getStageStats() {
+        List<StageStats> stats = new ArrayList<>(3);
+        stats.add(decodeStage.stats());
+        stats.add(classifyStage.stats());
+        stats.add(persistStage.stats());
+        return stats;
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        // Messages still in the pipeline are not acknowledged and will be redelivered by SQS
+        running = false;
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+    
+    private void decode(List<Envelope> envelopes) throws InterruptedException {
+        for (Envelope envelope : envelopes) {
+            List<Customer> customers = null;
+            Exception failure = null;
+            try {
+                customers = messageCodec.decode(envelope.message);
+                for (Customer customer : customers) {
+                    if (customer.getCustomerId() == null) {
+                        throw new IOException("Customer record without customerId");
+                    }
+                }
+            } catch (Exception e) {
+                failure = e;
+            }
+            
+            // Decoding runs in parallel, handing on waits for the messages submitted earlier
+            awaitTurn(envelope.sequence);
+            try {
+                if (failure != null) {
+                    envelope.ticket.fail(failure);
+                    continue;
+                }
+                envelope.ticket.expect(customers.size());
+                for (Customer customer : customers) {
+                    classifyStage.route(customer.getCustomerId()).put(new Work(customer, envelope.ticket));
+                }
+            } finally {
+                passTurn();
+            }
+        }
+    }
+    
+    private void awaitTurn(long sequence) throws InterruptedException {
+        synchronized (turnLock) {
+            while (turn != sequence) {
+                turnLock.wait();
+            }
+        }
+    }
+    
+    private void passTurn() {
+        synchronized (turnLock) {
+            turn++;
+            turnLock.notifyAll();
+        }
+    }
+    
+    private void classify(List<Work> batch) throws InterruptedException {
+        // Group by lane first, so each lane gets its customers in one go and in ring order
+        Map<Integer, List<Work>> lanes = new LinkedHashMap<>();
+        for (Work work : batch) {
+            try {
+                work.cohortTypes = cohortService.evaluate(work.customer);
+            } catch (RuntimeException e) {
+                work.ticket.fail(e);
+                continue;
+            }
+            lanes.computeIfAbsent(laneExecutor.laneIndex(work.customer.getCustomerId()), lane -> new ArrayList<>())
+                    .add(work);
+        }
+        
+        for (Map.Entry<Integer, List<Work>> lane : lanes.entrySet()) {
+            RingBuffer<Work> ring = persistStage.rings[lane.getKey()];
+            List<Work> works = lane.getValue();
+            for (int from = 0; from < works.size(); from += persistBatchSize) {
+                List<Work> chunk = works.subList(from, Math.min(from + persistBatchSize, works.size()));
+                for (Work work : chunk) {
+                    ring.put(work);
+                }
+                persistOnLane(lane.getKey(), chunk.get(0).customer.getCustomerId());
+            }
+        }
+    }
+    
+    /**
+     * Takes a concurrency permit and queues a task on a lane that writes what has collected in its persist ring,
+     * and returns the permit once the task is done.
+     *
+     * @param lane The lane index
+     * @param key A customer ID that maps to the lane
+     * @throws InterruptedException If interrupted while waiting for a permit or for room in the lane
+     */
+    private void persistOnLane(int lane, String key) throws InterruptedException {
+        concurrencyLimiter.acquire();
+        try {
+            laneExecutor.execute(key, () -> {
+                try {
+                    List<Work> batch = new ArrayList<>(persistBatchSize);
+                    // An earlier task may have taken these customers already while the lane was busy
+                    if (persistStage.rings[lane].poll(batch, persistBatchSize) > 0) {
+                        long start = System.nanoTime();
+                        try {
+                            AdaptiveConcurrencyLimiter.runUnderPermit(() -> persist(batch));
+                        } finally {
+                            persistStage.record(batch.size(), start);
+                        }
+                    }
+                } finally {
+                    concurrencyLimiter.release();
+                }
+            });
+        } catch (InterruptedException | RuntimeException e) {
+            concurrencyLimiter.release();
+            throw e;
+        }
+    }
+    
+    private void persist(List<Work> batch) {
+        // Collapse repeated updates of a customer to the latest one, which is the last in ring order
+        Map<String, List<Work>> updates = new LinkedHashMap<>();
+        for (Work work : batch) {
+            updates.computeIfAbsent(work.customer.getCustomerId(), customerId -> new ArrayList<>()).add(work);
+        }
+        List<Customer> customers = new ArrayList<>(updates.size());
+        Map<String, Set<CohortType>> memberships = new HashMap<>();
+        for (List<Work> works : updates.values()) {
+            Work latest = works.get(works.size() - 1);
+            customers.add(latest.customer);
+            // Customers that match no rule are recorded too, so they leave the cohorts they were in
+            memberships.put(latest.customer.getCustomerId(), latest.cohortTypes);
+        }
+        
+        try {
+            write(customers, memberships);
+            logger.debug("Persisted {} customers with their cohort memberships", customers.size());
+            for (Work work : batch) {
+                work.ticket.done();
+            }
+            return;
+        } catch (RuntimeException e) {
+            if (updates.size() == 1) {
+                logger.error("Error persisting customer {}: {}", customers.get(0).getCustomerId(), e.getMessage(), e);
+                for (Work work : batch) {
+                    work.ticket.fail(e);
+                }
+                return;
+            }
+            logger.warn("Error persisting batch of {} customers, writing them one at a time: {}",
+                    customers.size(), e.getMessage());
+        }
+        
+        // One bad record must not fail the messages of every other customer in the batch
+        for (List<Work> works : updates.values()) {
+            Work latest = works.get(works.size() - 1);
+            String customerId = latest.customer.getCustomerId();
+            try {
+                write(Collections.singletonList(latest.customer), Collections.singletonMap(customerId, latest.cohortTypes));
+            } catch (RuntimeException e) {
+                logger.error("Error persisting customer {}: {}", customerId, e.getMessage(), e);
+                for (Work work : works) {
+                    work.ticket.fail(e);
+                }
+                continue;
+            }
+            for (Work work : works) {
+                work.ticket.done();
+            }
+        }
+    }
+    
+    private void write(List<Customer> customers, Map<String, Set<CohortType>> memberships) {
+        customerRepository.saveAll(customers);
+        cohortService.recordMemberships(memberships);
+    }
+    
+    private <E> void start(Stage<E> stage, int batchSize, BatchHandler<E> handler) {
+        NamedThreadFactory threadFactory = new NamedThreadFactory("ingest-" + stage.name, true);
+        for (int i = 0; i < stage.threads; i++) {
+            RingBuffer<E> ring = stage.rings[i % stage.rings.length];
+            Thread thread = threadFactory.newThread(() -> runStage(stage, ring, batchSize, handler));
+            threads.add(thread);
+            thread.start();
+        }
+    }
+    
+    private <E> void runStage(Stage<E> stage, RingBuffer<E> ring, int batchSize, BatchHandler<E> handler) {
+        List<E> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                if (ring.drainTo(batch, batchSize, 0) == 0) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                try {
+                    handler.handle(batch);
+                } finally {
+                    stage.record(batch.size(), start);
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (RuntimeException e) {
+                // Handlers fail their own tickets, so this only guards the stage thread
+                logger.error("Unexpected error in ingestion stage {}: {}", stage.name, e.getMessage(), e);
+            }
+        }
+    }
+    
+    /**
+     * Processes a batch taken from a ring.
+     */
+    @FunctionalInterface
+    private interface BatchHandler<E> {
+        void handle(List<E> batch) throws InterruptedException;
+    }
+    
+    /**
+     * A stage's input rings and metrics. The persist stage runs on the lanes, so its thread count is the lane count.
+     */
+    private static class Stage<E> {
+        
+        private final String name;
+        private final int threads;
+        private final RingBuffer<E>[] rings;
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong batches = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+        
+        @SuppressWarnings("unchecked")
+        private Stage(String name, int threads, int ringCount, int ringSize) {
+            if (threads < 1) {
+                throw new IllegalArgumentException("Stage " + name + " needs at least one thread");
+            }
+            this.name = name;
+            this.threads = threads;
+            this.rings = new RingBuffer[ringCount];
+            for (int i = 0; i < ringCount; i++) {
+                rings[i] = new RingBuffer<>(ringSize);
+            }
+        }
+        
+        private void record(int batchSize, long startNanos) {
+            processed.addAndGet(batchSize);
+            batches.incrementAndGet();
+            busyNanos.addAndGet(System.nanoTime() - startNanos);
+        }
+        
+        private RingBuffer<E> route(String key) {
+            int hash = key.hashCode();
+            return rings[Math.floorMod(hash ^ (hash >>> 16), rings.length)];
+        }
+        
+        private StageStats stats() {
+            int depth = 0;
+            int capacity = 0;
+            long publisherWaits = 0;
+            for (RingBuffer<E> ring : rings) {
+                depth += ring.size();
+                capacity += ring.capacity();
+                publisherWaits += ring.getPublisherWaits();
+            }
+            return new StageStats(name, threads, depth, capacity, processed.get(), batches.get(),
+                    publisherWaits, busyNanos.get() / 1_000_000);
+        }
+    }
+    
+    /**
+     * Tracks the customers of one message that are still in the pipeline.
+     */
+    private static class Ticket {
+        
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private final AtomicInteger remaining = new AtomicInteger();
+        
+        private void expect(int customers) {
+            if (customers == 0) {
+                future.complete(null);
+            } else {
+                remaining.set(customers);
+            }
+        }
+        
+        private void done() {
+            if (remaining.decrementAndGet() == 0) {
+                future.complete(null);
+            }
+        }
+        
+        private void fail(Throwable e) {
+            future.completeExceptionally(e);
+        }
+    }
+    
+    /**
+     * A message waiting to be decoded.
+     */
+    private static class Envelope {
+        
+        private final Message message;
+        private final Ticket ticket = new Ticket();
+        // Submission order, assigned under submitLock
+        private long sequence;
+        
+        private Envelope(Message message) {
+            this.message = message;
+        }
+    }
+    
+    /**
+     * A customer travelling through the classify and persist stages.
+     */
+    private static class Work {
+        
+        private final Customer customer;
+        private final Ticket ticket;
+        // Written by the classify stage before the work is published to the persist stage
+        private Set<CohortType> cohortTypes;
+        
+        private Work(Customer customer, Ticket ticket) {
+            this.customer = customer;
+            this.ticket = ticket;
+        }
+    }
+}
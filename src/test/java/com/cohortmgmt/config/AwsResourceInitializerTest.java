@@ -0,0 +1,123 @@
+package com.cohortmgmt.config;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndexDescription;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodbv2.model.ResourceNotFoundException;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+import com.amazonaws.services.sqs.model.CreateQueueResult;
+import com.amazonaws.services.sqs.model.GetQueueUrlResult;
+import com.amazonaws.services.sqs.model.QueueDoesNotExistException;
+import com.cohortmgmt.service.concurrency.CapacityGovernor;
+import com.cohortmgmt.service.concurrency.CapacityGovernor.Kind;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class AwsResourceInitializerTest {
+
+    private AmazonDynamoDB amazonDynamoDB;
+    private AmazonSQS amazonSQS;
+    private ApplicationEventPublisher eventPublisher;
+    private CapacityGovernor capacityGovernor;
+    private AwsResourceInitializer initializer;
+
+    @BeforeEach
+    void setUp() {
+        amazonDynamoDB = mock(AmazonDynamoDB.class);
+        amazonSQS = mock(AmazonSQS.class);
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        capacityGovernor = new CapacityGovernor(1000, 1000, 0.5, 2);
+        initializer = new AwsResourceInitializer(amazonSQS, amazonDynamoDB, eventPublisher, capacityGovernor, "queue",
+                "Customers", "Cohorts", "StreamCheckpoints", "file", "StreamLeases", false, "MembershipVersions", 1000, 500);
+        when(amazonSQS.getQueueUrl(anyString())).thenReturn(new GetQueueUrlResult().withQueueUrl("url"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        initializer.stop();
+    }
+
+    @Test
+    void testExistingResourcesAreReadyWithoutWaiting() throws Exception {
+        when(amazonDynamoDB.describeTable(anyString())).thenReturn(table("ACTIVE"));
+
+        initializer.start();
+
+        assertTrue(initializer.awaitReady(1, TimeUnit.SECONDS));
+        verify(amazonDynamoDB, never()).createTable(any(CreateTableRequest.class));
+        verify(eventPublisher, timeout(1000)).publishEvent(any(ResourcesReadyEvent.class));
+        assertEquals("READY", initializer.getResourceStatus().get("table Customers"));
+    }
+
+    @Test
+    void testMissingResourcesAreCreatedAndAwaitedUntilActive() throws Exception {
+        when(amazonDynamoDB.describeTable("Customers"))
+                .thenThrow(new ResourceNotFoundException("missing"))
+                .thenReturn(table("CREATING"), table("CREATING"), table("ACTIVE"));
+        when(amazonDynamoDB.describeTable("Cohorts")).thenReturn(table("ACTIVE"));
+        when(amazonDynamoDB.describeTable("MembershipVersions")).thenReturn(table("ACTIVE"));
+        when(amazonSQS.getQueueUrl(anyString())).thenThrow(new QueueDoesNotExistException("missing"));
+        when(amazonSQS.createQueue(any(CreateQueueRequest.class))).thenReturn(new CreateQueueResult().withQueueUrl("url"));
+
+        initializer.start();
+
+        assertTrue(initializer.awaitReady(2, TimeUnit.SECONDS));
+        verify(amazonDynamoDB).createTable(any(CreateTableRequest.class));
+        verify(amazonDynamoDB, times(4)).describeTable("Customers");
+        verify(amazonSQS).createQueue(any(CreateQueueRequest.class));
+    }
+
+    @Test
+    void testNotReadyWhileAResourceKeepsFailing() throws Exception {
+        when(amazonDynamoDB.describeTable(anyString())).thenReturn(table("ACTIVE"));
+        when(amazonDynamoDB.describeTable("Cohorts")).thenThrow(new IllegalStateException("connection refused"));
+
+        initializer.start();
+
+        assertFalse(initializer.awaitReady(300, TimeUnit.MILLISECONDS));
+        assertFalse(initializer.isReady());
+        assertTrue(initializer.getResourceStatus().get("table Cohorts").startsWith("RETRYING"));
+        verify(eventPublisher, never()).publishEvent(any(ResourcesReadyEvent.class));
+    }
+
+    @Test
+    void testBudgetsAreSizedFromProvisionedThroughputPerInstance() throws Exception {
+        when(amazonDynamoDB.describeTable(anyString())).thenReturn(table("ACTIVE"));
+        when(amazonDynamoDB.describeTable("Cohorts")).thenReturn(new DescribeTableResult().withTable(new TableDescription()
+                .withTableStatus("ACTIVE")
+                .withProvisionedThroughput(new ProvisionedThroughputDescription()
+                        .withReadCapacityUnits(10L).withWriteCapacityUnits(6L))
+                .withGlobalSecondaryIndexes(new GlobalSecondaryIndexDescription()
+                        .withIndexName("CohortTypeIndex")
+                        .withIndexStatus("ACTIVE")
+                        .withProvisionedThroughput(new ProvisionedThroughputDescription()
+                                .withReadCapacityUnits(4L).withWriteCapacityUnits(2L)))));
+
+        initializer.start();
+
+        assertTrue(initializer.awaitReady(2, TimeUnit.SECONDS));
+        assertEquals(5, capacityGovernor.getAvailable("Cohorts", null, Kind.READ), 0.5);
+        assertEquals(3, capacityGovernor.getAvailable("Cohorts", null, Kind.WRITE), 0.5);
+        assertEquals(2, capacityGovernor.getAvailable("Cohorts", "CohortTypeIndex", Kind.READ), 0.5);
+        assertEquals(1, capacityGovernor.getAvailable("Cohorts", "CohortTypeIndex", Kind.WRITE), 0.5);
+        // Without provisioned throughput, e.g. on demand, the default budget applies
+        assertEquals(1000, capacityGovernor.getAvailable("Customers", null, Kind.READ), 0.5);
+    }
+
+    private static DescribeTableResult table(String status) {
+        return new DescribeTableResult().withTable(new TableDescription().withTableStatus(status));
+    }
+}
@@ -0,0 +1,81 @@
+package com.cohortmgmt.config;
+
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Response;
+import com.amazonaws.http.HttpResponse;
+import com.amazonaws.services.dynamodbv2.model.Capacity;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.cohortmgmt.service.concurrency.CapacityGovernor;
+import com.cohortmgmt.service.concurrency.CapacityGovernor.Kind;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DynamoDBCapacityHandlerTest {
+
+    @Test
+    void testWriteIsChargedWithConsumedCapacityIncludingIndexes() {
+        // A slow refill keeps the balances stable while the test runs
+        CapacityGovernor governor = new CapacityGovernor(1, 1, 0.5, 1);
+        DynamoDBCapacityHandler handler = new DynamoDBCapacityHandler(governor);
+        PutItemRequest put = new PutItemRequest().withTableName("Cohorts");
+
+        // Execute
+        handler.beforeExecution(put);
+        PutItemResult result = new PutItemResult().withConsumedCapacity(new ConsumedCapacity()
+                .withTableName("Cohorts")
+                .withTable(new Capacity().withCapacityUnits(3.0))
+                .withGlobalSecondaryIndexes(Collections.singletonMap("CohortTypeIndex",
+                        new Capacity().withCapacityUnits(2.0))));
+        handler.afterResponse(new DefaultRequest<>(put, "AmazonDynamoDBv2"),
+                new Response<>(result, (HttpResponse) null));
+
+        // Verify
+        assertEquals(ReturnConsumedCapacity.INDEXES.toString(), put.getReturnConsumedCapacity());
+        assertEquals(-2, governor.getAvailable("Cohorts", null, Kind.WRITE), 0.5);
+        assertEquals(-1, governor.getAvailable("Cohorts", "CohortTypeIndex", Kind.WRITE), 0.5);
+    }
+
+    @Test
+    void testIndexQueryUsesIndexReadBudget() {
+        QueryRequest query = new QueryRequest().withTableName("Cohorts").withIndexName("CohortTypeIndex");
+
+        DynamoDBCapacityHandler.Estimate estimate = DynamoDBCapacityHandler.estimate(query).get(0);
+
+        assertEquals("Cohorts", estimate.table);
+        assertEquals("CohortTypeIndex", estimate.index);
+        assertEquals(Kind.READ, estimate.kind);
+    }
+
+    @Test
+    void testScanPageIsEstimatedFromItsLimit() {
+        ScanRequest scan = new ScanRequest().withTableName("Customers").withLimit(500);
+        GetItemRequest get = new GetItemRequest().withTableName("Customers").withConsistentRead(true);
+
+        // 500 items of 1 KB are 125 read units, halved for an eventually consistent scan
+        assertEquals(62.5, DynamoDBCapacityHandler.estimate(scan).get(0).units, 0.01);
+        assertEquals(125, DynamoDBCapacityHandler.estimate(scan.withConsistentRead(true)).get(0).units, 0.01);
+        assertEquals(1, DynamoDBCapacityHandler.estimate(get).get(0).units, 0.01);
+    }
+
+    @Test
+    void testResponseWithoutConsumedCapacityKeepsTheEstimate() {
+        CapacityGovernor governor = new CapacityGovernor(1, 1, 0.5, 1);
+        DynamoDBCapacityHandler handler = new DynamoDBCapacityHandler(governor);
+        PutItemRequest put = new PutItemRequest().withTableName("Cohorts");
+
+        handler.beforeExecution(put);
+        handler.afterResponse(new DefaultRequest<>(put, "AmazonDynamoDBv2"),
+                new Response<>(new PutItemResult(), (HttpResponse) null));
+
+        assertEquals(0, governor.getAvailable("Cohorts", null, Kind.WRITE), 0.5);
+    }
+}
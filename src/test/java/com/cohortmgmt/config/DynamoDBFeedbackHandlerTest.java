@@ -0,0 +1,50 @@
+package com.cohortmgmt.config;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.cohortmgmt.service.concurrency.AdaptiveConcurrencyLimiter;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DynamoDBFeedbackHandlerTest {
+
+    private final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 1, 64, 0.5, 2.0, 1000);
+    private final DynamoDBFeedbackHandler handler = new DynamoDBFeedbackHandler(limiter);
+
+    @Test
+    void testThrottledWriteUnderPermitIsReported() {
+        AdaptiveConcurrencyLimiter.runUnderPermit(() -> handler.afterAttempt(throttled(new PutItemRequest())));
+
+        assertEquals(1, limiter.getTotalThrottles());
+    }
+
+    @Test
+    void testThrottledWriteWithoutPermitIsIgnored() {
+        // E.g. a checkpoint or lease write, which the limit does not govern
+        handler.afterAttempt(throttled(new PutItemRequest()));
+
+        assertEquals(0, limiter.getTotalThrottles());
+        assertFalse(AdaptiveConcurrencyLimiter.isUnderPermit());
+    }
+
+    @Test
+    void testThrottledReadUnderPermitIsIgnored() {
+        AdaptiveConcurrencyLimiter.runUnderPermit(() -> handler.afterAttempt(throttled(new GetItemRequest())));
+
+        assertEquals(0, limiter.getTotalThrottles());
+    }
+
+    private static HandlerAfterAttemptContext throttled(AmazonWebServiceRequest request) {
+        AmazonServiceException exception = new AmazonServiceException("Throughput exceeded");
+        exception.setErrorCode("ProvisionedThroughputExceededException");
+        return HandlerAfterAttemptContext.builder()
+                .withRequest(new DefaultRequest<>(request, "AmazonDynamoDBv2"))
+                .withException(exception)
+                .build();
+    }
+}
@@ -0,0 +1,44 @@
+package com.cohortmgmt.config;
+
+import com.cohortmgmt.exception.BackpressureException;
+import com.cohortmgmt.service.concurrency.GradientConcurrencyLimiter;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadSheddingInterceptorTest {
+
+    @Test
+    void testRequestsBeyondTheLimitAreRejectedUntilPermitsAreReleased() {
+        GradientConcurrencyLimiter limiter = new GradientConcurrencyLimiter("listings", 1, 1, 10, 1.5, 0.2, 1000);
+        LoadSheddingInterceptor interceptor = new LoadSheddingInterceptor("listings", limiter, 2);
+        MockHttpServletRequest first = new MockHttpServletRequest("GET", "/api/cohorts/type/PREMIUM/customers");
+        MockHttpServletRequest second = new MockHttpServletRequest("GET", "/api/cohorts/type/PREMIUM/customers");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertTrue(interceptor.preHandle(first, response, null));
+        BackpressureException e = assertThrows(BackpressureException.class,
+                () -> interceptor.preHandle(second, response, null));
+        assertEquals(2, e.getRetryAfterSeconds());
+
+        interceptor.afterCompletion(first, response, null, null);
+        assertEquals(0, limiter.getInFlight());
+        assertTrue(interceptor.preHandle(second, response, null));
+    }
+
+    @Test
+    void testGroupsDoNotShareLimits() {
+        LoadSheddingInterceptor listings = new LoadSheddingInterceptor("listings",
+                new GradientConcurrencyLimiter("listings", 1, 1, 10, 1.5, 0.2, 1000), 1);
+        LoadSheddingInterceptor lookups = new LoadSheddingInterceptor("lookups",
+                new GradientConcurrencyLimiter("lookups", 1, 1, 10, 1.5, 0.2, 1000), 1);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertTrue(listings.preHandle(new MockHttpServletRequest(), response, null));
+        assertThrows(BackpressureException.class,
+                () -> listings.preHandle(new MockHttpServletRequest(), response, null));
+        assertTrue(lookups.preHandle(new MockHttpServletRequest(), response, null));
+    }
+}
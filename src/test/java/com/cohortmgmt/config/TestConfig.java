@@ -56,11 +56,17 @@ public class TestConfig {
             return customer;
         }
         
-        // Additional methods for testing purposes
+        @Override
+        public void saveAll(List<Customer> batch) {
+            batch.forEach(this::save);
+        }
+        
+        @Override
         public Optional<Customer> findById(String customerId) {
             return Optional.ofNullable(customers.get(customerId));
         }
         
+        // Additional methods for testing purposes
         public List<Customer> findAll() {
             return new ArrayList<>(customers.values());
         }
@@ -93,6 +99,40 @@ public class TestConfig {
             return true;
         }
         
+        @Override
+        public void addCustomersToCohortTypes(Map<String, Set<CohortType>> memberships) {
+            memberships.forEach((customerId, cohortTypes) ->
+                    cohortTypes.forEach(cohortType -> addCustomerToCohortType(cohortType, customerId)));
+        }
+        
+        @Override
+        public void removeCustomersFromCohortTypes(Map<String, Set<CohortType>> memberships) {
+            memberships.forEach((customerId, cohortTypes) -> cohortTypes.forEach(cohortType -> {
+                cohortTypeToCustomerIds.getOrDefault(cohortType, Collections.emptySet()).remove(customerId);
+                customerIdToCohortTypes.getOrDefault(customerId, Collections.emptySet()).remove(cohortType);
+            }));
+        }
+        
+        @Override
+        public Map<String, Set<CohortType>> replaceCustomersCohortTypes(Map<String, Set<CohortType>> memberships) {
+            Map<String, Set<CohortType>> changed = new HashMap<>();
+            memberships.forEach((customerId, cohortTypes) -> {
+                Set<CohortType> stored = EnumSet.noneOf(CohortType.class);
+                stored.addAll(customerIdToCohortTypes.getOrDefault(customerId, Collections.emptySet()));
+                Set<CohortType> added = EnumSet.noneOf(CohortType.class);
+                added.addAll(cohortTypes);
+                added.removeAll(stored);
+                stored.removeAll(cohortTypes);
+                removeCustomersFromCohortTypes(Collections.singletonMap(customerId, stored));
+                addCustomersToCohortTypes(Collections.singletonMap(customerId, added));
+                added.addAll(stored);
+                if (!added.isEmpty()) {
+                    changed.put(customerId, added);
+                }
+            });
+            return changed;
+        }
+        
         @Override
         public Set<String> getCustomerIdsByCohortType(CohortType cohortType) {
             return cohortTypeToCustomerIds.getOrDefault(cohortType, Collections.emptySet());
@@ -1,22 +1,42 @@
 package com.cohortmgmt.controller;
 
+import com.cohortmgmt.exception.ResourceNotFoundException;
 import com.cohortmgmt.model.CohortType;
+import com.cohortmgmt.model.Customer;
+import com.cohortmgmt.model.UserType;
+import com.cohortmgmt.repository.CustomerRepository;
+import com.cohortmgmt.repository.InMemoryMembershipVersionRepository;
 import com.cohortmgmt.service.CohortService;
+import com.cohortmgmt.service.MembershipVersions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -27,6 +47,12 @@ public class CohortControllerTest {
     @Mock
     private CohortService cohortService;
     
+    @Mock
+    private CustomerRepository customerRepository;
+    
+    @Spy
+    private MembershipVersions membershipVersions = new MembershipVersions(new InMemoryMembershipVersionRepository(), 1024, 30000, 1000);
+    
     @InjectMocks
     private CohortController cohortController;
     
@@ -76,7 +102,7 @@ public class CohortControllerTest {
         when(cohortService.getCustomerCohortTypes(customerId)).thenReturn(cohortTypes);
         
         // Act
-        ResponseEntity<List<CohortType>> response = cohortController.getCustomerCohortTypes(customerId);
+        ResponseEntity<List<CohortType>> response = cohortController.getCustomerCohortTypes(customerId, request());
         
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
@@ -94,7 +120,7 @@ public class CohortControllerTest {
         when(cohortService.getCustomerCohortTypes(customerId)).thenReturn(cohortTypes);
         
         // Act
-        ResponseEntity<List<CohortType>> response = cohortController.getCustomerCohortTypes(customerId);
+        ResponseEntity<List<CohortType>> response = cohortController.getCustomerCohortTypes(customerId, request());
         
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
@@ -110,7 +136,7 @@ public class CohortControllerTest {
         when(cohortService.getCustomerIdsByCohortType(cohortType)).thenReturn(customerIds);
         
         // Act
-        ResponseEntity<Set<String>> response = cohortController.getCustomerIdsByCohortType(cohortType);
+        ResponseEntity<Set<String>> response = cohortController.getCustomerIdsByCohortType(cohortType, request());
         
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
@@ -127,11 +153,114 @@ public class CohortControllerTest {
         when(cohortService.getCustomerIdsByCohortType(cohortType)).thenReturn(customerIds);
         
         // Act
-        ResponseEntity<Set<String>> response = cohortController.getCustomerIdsByCohortType(cohortType);
+        ResponseEntity<Set<String>> response = cohortController.getCustomerIdsByCohortType(cohortType, request());
         
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertNotNull(response.getBody());
         assertEquals(0, response.getBody().size());
     }
+    
+    @Test
+    public void testGetCustomerCohortTypes_NotModified() {
+        // Arrange
+        String customerId = "123";
+        when(cohortService.getCustomerCohortTypes(customerId)).thenReturn(Collections.singletonList(CohortType.PREMIUM));
+        String eTag = cohortController.getCustomerCohortTypes(customerId, request()).getHeaders().getETag();
+        
+        // Act
+        ResponseEntity<List<CohortType>> response = cohortController.getCustomerCohortTypes(customerId, request(eTag));
+        
+        // Assert
+        assertNotNull(eTag);
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertEquals(eTag, response.getHeaders().getETag());
+        assertNull(response.getBody());
+        verify(cohortService, times(1)).getCustomerCohortTypes(customerId);
+    }
+    
+    @Test
+    public void testGetCustomerCohortTypes_ModifiedAfterWrite() {
+        // Arrange
+        String customerId = "123";
+        when(cohortService.getCustomerCohortTypes(customerId)).thenReturn(Collections.singletonList(CohortType.PREMIUM));
+        String eTag = cohortController.getCustomerCohortTypes(customerId, request()).getHeaders().getETag();
+        membershipVersions.changed(Collections.singleton(customerId), Collections.singleton(CohortType.PREMIUM));
+        
+        // Act
+        ResponseEntity<List<CohortType>> response = cohortController.getCustomerCohortTypes(customerId, request(eTag));
+        
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotEquals(eTag, response.getHeaders().getETag());
+        assertEquals(Collections.singletonList(CohortType.PREMIUM), response.getBody());
+    }
+    
+    @Test
+    public void testGetCustomerCohortTypes_WithoutVersionIsServedInFull() {
+        // Arrange
+        String customerId = "123";
+        when(cohortService.getCustomerCohortTypes(customerId)).thenReturn(Collections.singletonList(CohortType.PREMIUM));
+        doReturn(null).when(membershipVersions).customerETag(customerId);
+        
+        // Act
+        ResponseEntity<List<CohortType>> response = cohortController.getCustomerCohortTypes(customerId, request("\"0-0\""));
+        
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNull(response.getHeaders().getETag());
+        assertEquals(Collections.singletonList(CohortType.PREMIUM), response.getBody());
+    }
+    
+    @Test
+    public void testGetCustomerIdsByCohortType_NotModified() {
+        // Arrange
+        CohortType cohortType = CohortType.VIP;
+        when(cohortService.getCustomerIdsByCohortType(cohortType)).thenReturn(Collections.singleton("123"));
+        String eTag = cohortController.getCustomerIdsByCohortType(cohortType, request()).getHeaders().getETag();
+        
+        // Act
+        ResponseEntity<Set<String>> response = cohortController.getCustomerIdsByCohortType(cohortType, request(eTag));
+        
+        // Assert
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+        verify(cohortService, times(1)).getCustomerIdsByCohortType(cohortType);
+    }
+    
+    @Test
+    public void testClassifyCustomerById() {
+        // Arrange
+        Customer customer = new Customer("123", 1500.0, UserType.PAID);
+        Set<CohortType> cohortTypes = new HashSet<>(Arrays.asList(CohortType.NORMAL, CohortType.VIP));
+        when(customerRepository.findById("123")).thenReturn(Optional.of(customer));
+        when(cohortService.classifyCustomer(customer)).thenReturn(cohortTypes);
+        
+        // Act
+        ResponseEntity<Set<CohortType>> response = cohortController.classifyCustomerById("123");
+        
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(cohortTypes, response.getBody());
+    }
+    
+    @Test
+    public void testClassifyCustomerById_NotFound() {
+        // Arrange
+        when(customerRepository.findById("123")).thenReturn(Optional.empty());
+        
+        // Act and assert
+        assertThrows(ResourceNotFoundException.class, () -> cohortController.classifyCustomerById("123"));
+        verify(cohortService, never()).classifyCustomer(any(Customer.class));
+    }
+    
+    private static ServletWebRequest request() {
+        return new ServletWebRequest(new MockHttpServletRequest("GET", "/api/cohorts"));
+    }
+    
+    private static ServletWebRequest request(String ifNoneMatch) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/cohorts");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        return new ServletWebRequest(request);
+    }
 }
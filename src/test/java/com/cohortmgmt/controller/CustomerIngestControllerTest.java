@@ -0,0 +1,96 @@
+package com.cohortmgmt.controller;
+
+import com.cohortmgmt.exception.BackpressureException;
+import com.cohortmgmt.model.Customer;
+import com.cohortmgmt.model.IngestSummary;
+import com.cohortmgmt.service.SqsBatchPublisher;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for the CustomerIngestController class.
+ */
+public class CustomerIngestControllerTest {
+
+    private SqsBatchPublisher.Session session;
+    private CustomerIngestController controller;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        SqsBatchPublisher publisher = mock(SqsBatchPublisher.class);
+        session = mock(SqsBatchPublisher.Session.class);
+        when(publisher.openSession()).thenReturn(session);
+        when(session.finish()).thenReturn(new IngestSummary(1, 1, 1, 0));
+        controller = new CustomerIngestController(publisher);
+    }
+
+    @Test
+    public void testIngest_AcceptsValidRecords() throws Exception {
+        // Act
+        ResponseEntity<IngestSummary> response = controller.ingest(
+                ndjson("{\"customerId\":\"c1\",\"dailySpend\":10.0,\"userType\":\"PAID\"}\n"),
+                CustomerIngestController.NDJSON_VALUE);
+
+        // Assert
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        verify(session, times(1)).add(any(Customer.class));
+        verify(session).finish();
+    }
+
+    @Test
+    public void testIngest_UnknownUserTypeStillFinishes() throws Exception {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> controller.ingest(
+                ndjson("{\"customerId\":\"c1\",\"dailySpend\":10.0,\"userType\":\"PAID\"}\n"
+                        + "{\"customerId\":\"c2\",\"dailySpend\":10.0,\"userType\":\"UNKNOWN\"}\n"),
+                CustomerIngestController.NDJSON_VALUE));
+        verify(session, times(1)).add(any(Customer.class));
+        verify(session).finish();
+    }
+
+    @Test
+    public void testIngest_OversizedRecordStillFinishes() throws Exception {
+        // Arrange
+        doThrow(new IllegalArgumentException("record too large")).when(session).add(any(Customer.class));
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> controller.ingest(
+                ndjson("{\"customerId\":\"c1\",\"dailySpend\":10.0,\"userType\":\"PAID\"}\n"),
+                CustomerIngestController.NDJSON_VALUE));
+        verify(session).finish();
+    }
+
+    @Test
+    public void testIngest_BackpressureAbortsWithoutFlushing() throws Exception {
+        // Arrange
+        doThrow(new BackpressureException("publishing fell behind", 1)).when(session).add(any(Customer.class));
+
+        // Act & Assert
+        assertThrows(BackpressureException.class, () -> controller.ingest(
+                ndjson("{\"customerId\":\"c1\",\"dailySpend\":10.0,\"userType\":\"PAID\"}\n"),
+                CustomerIngestController.NDJSON_VALUE));
+        verify(session).abort();
+        verify(session, never()).finish();
+    }
+
+    private static MockHttpServletRequest ndjson(String body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/customers/ingest");
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+}
@@ -0,0 +1,90 @@
+package com.cohortmgmt.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SampledLoggerTest {
+
+    private Logger logger;
+    private ListAppender<ILoggingEvent> appender;
+
+    @BeforeEach
+    void setUp() {
+        logger = (Logger) LoggerFactory.getLogger(SampledLoggerTest.class);
+        logger.setLevel(Level.INFO);
+        logger.setAdditive(false);
+        logger.detachAndStopAllAppenders();
+        appender = new ListAppender<>();
+        appender.start();
+        logger.addAppender(appender);
+    }
+
+    @Test
+    void testMessagesBeyondTheBudgetAreSampledAndCounted() {
+        AtomicLong clock = new AtomicLong();
+        SampledLogger log = new SampledLogger(logger, "test", 2, 10, clock::get);
+
+        for (int i = 0; i < 22; i++) {
+            log.info("Customer {}", i);
+        }
+
+        // Two within the budget, then every tenth beyond it
+        assertEquals(4, log.getEmitted());
+        assertEquals(18, log.getSuppressed());
+        assertEquals("Customer 0", message(0));
+        assertEquals("Customer 1", message(1));
+        assertEquals("Customer 11 (9 similar messages suppressed)", message(2));
+        assertEquals("Customer 21 (9 similar messages suppressed)", message(3));
+
+        clock.incrementAndGet();
+        log.info("Customer {}", 22);
+        log.info("Customer {}", 23);
+        assertEquals("Customer 22", message(4));
+        assertEquals("Customer 23", message(5));
+    }
+
+    @Test
+    void testDisabledLevelIsNeitherLoggedNorCounted() {
+        SampledLogger log = new SampledLogger(logger, "test", 1, 0, () -> 0L);
+
+        log.debug("Customer {}", 1);
+
+        assertTrue(appender.list.isEmpty());
+        assertEquals(0, log.getEmitted());
+        assertEquals(0, log.getSuppressed());
+    }
+
+    @Test
+    void testSuppressedCountGoesBeforeTrailingException() {
+        SampledLogger log = new SampledLogger(logger, "test", 1, 2, () -> 0L);
+        IllegalStateException failure = new IllegalStateException("boom");
+
+        log.error("Error {}: {}", "a", failure.getMessage(), failure);
+        log.error("Error {}: {}", "b", failure.getMessage(), failure);
+        log.error("Error {}: {}", "c", failure.getMessage(), failure);
+
+        assertEquals(2, appender.list.size());
+        assertEquals("Error c: boom (1 similar messages suppressed)", message(1));
+        assertEquals("boom", appender.list.get(1).getThrowableProxy().getMessage());
+    }
+
+    @Test
+    void testFieldsAreFormattedAsKeyValuePairs() {
+        assertEquals("customerId=c1 cohortTypes=[PREMIUM]",
+                LogFields.of("customerId", "c1", "cohortTypes", "[PREMIUM]").toString());
+        assertThrows(IllegalArgumentException.class, () -> LogFields.of("customerId"));
+    }
+
+    private String message(int index) {
+        return appender.list.get(index).getFormattedMessage();
+    }
+}
@@ -0,0 +1,87 @@
+package com.cohortmgmt.repository;
+
+import com.cohortmgmt.model.Customer;
+import com.cohortmgmt.model.UserType;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CustomerCacheTest {
+
+    @Test
+    void testLoadDoesNotOverwriteWrite() {
+        CustomerCache cache = new CustomerCache(1024, 60000);
+        assertNull(cache.get("customer1"));
+        long stamp = cache.loadStamp("customer1");
+
+        cache.putWritten(new Customer("customer1", 2000.0, UserType.PAID));
+        // A load that read the table before the write completes afterwards
+        cache.putLoaded(new Customer("customer1", 1000.0, UserType.FREE), stamp);
+
+        Customer cached = cache.get("customer1");
+        assertEquals(2000.0, cached.getDailySpend());
+        assertEquals(UserType.PAID, cached.getUserType());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void testCallersCannotChangeCachedCustomer() {
+        CustomerCache cache = new CustomerCache(1024, 60000);
+        Customer customer = new Customer("customer1", 1000.0, UserType.FREE);
+        cache.putLoaded(customer, cache.loadStamp("customer1"));
+        customer.setDailySpend(5.0);
+        cache.get("customer1").setDailySpend(7.0);
+
+        assertEquals(1000.0, cache.get("customer1").getDailySpend());
+    }
+
+    @Test
+    void testBulkWritesOnlyRefreshCachedCustomers() {
+        CustomerCache cache = new CustomerCache(1024, 60000);
+        cache.putLoaded(new Customer("customer1", 1000.0, UserType.FREE), cache.loadStamp("customer1"));
+
+        cache.refreshWritten(new Customer("customer1", 3000.0, UserType.FREE));
+        cache.refreshWritten(new Customer("customer2", 3000.0, UserType.FREE));
+
+        assertEquals(3000.0, cache.get("customer1").getDailySpend());
+        assertNull(cache.get("customer2"));
+    }
+
+    @Test
+    void testBulkWriteDropsInFlightLoadOfUncachedCustomer() {
+        CustomerCache cache = new CustomerCache(1024, 60000);
+        long stamp = cache.loadStamp("customer1");
+
+        // The bulk write does not cache the customer, and the load that read the old state must not either
+        cache.refreshWritten(new Customer("customer1", 3000.0, UserType.PAID));
+        cache.putLoaded(new Customer("customer1", 1000.0, UserType.FREE), stamp);
+
+        assertNull(cache.get("customer1"));
+
+        // A load that began after the write is cached
+        cache.putLoaded(new Customer("customer1", 3000.0, UserType.PAID), cache.loadStamp("customer1"));
+        assertEquals(3000.0, cache.get("customer1").getDailySpend());
+    }
+
+    @Test
+    void testEntriesExpireAndCapacityIsBounded() throws Exception {
+        CustomerCache expiring = new CustomerCache(1024, 1);
+        expiring.putLoaded(new Customer("customer1", 1000.0, UserType.FREE), expiring.loadStamp("customer1"));
+        Thread.sleep(5);
+        assertNull(expiring.get("customer1"));
+
+        CustomerCache bounded = new CustomerCache(16, 60000);
+        for (int i = 0; i < 1000; i++) {
+            bounded.putLoaded(new Customer("customer" + i, 1000.0, UserType.FREE), bounded.loadStamp("customer" + i));
+        }
+        int cached = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (bounded.get("customer" + i) != null) {
+                cached++;
+            }
+        }
+        assertTrue(cached <= 16);
+        assertNotNull(bounded.get("customer999"));
+    }
+}
@@ -0,0 +1,114 @@
+package com.cohortmgmt.repository;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.cohortmgmt.model.CohortType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class DynamoDBCohortRepositoryTest {
+
+    private AmazonDynamoDB amazonDynamoDB;
+    private DynamoDBCohortRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        amazonDynamoDB = mock(AmazonDynamoDB.class);
+        when(amazonDynamoDB.batchWriteItem(any(BatchWriteItemRequest.class))).thenReturn(new BatchWriteItemResult());
+        repository = new DynamoDBCohortRepository(amazonDynamoDB, mock(DynamoDB.class), "Cohorts");
+    }
+
+    @Test
+    void testRemoveDeletesItemsWithLegacySortKeys() {
+        // PREMIUM has an item from before the cohort type became the sort key, and one from after
+        when(amazonDynamoDB.query(any(QueryRequest.class))).thenReturn(new QueryResult().withItems(Arrays.asList(
+                item("customer1", "5f0c6a8e-legacy", CohortType.PREMIUM),
+                item("customer1", "PREMIUM", CohortType.PREMIUM),
+                item("customer1", "9b1d2c3e-legacy", CohortType.NORMAL))));
+
+        repository.removeCustomersFromCohortTypes(
+                Collections.singletonMap("customer1", EnumSet.of(CohortType.PREMIUM, CohortType.VIP)));
+
+        assertEquals(new HashSet<>(Arrays.asList("5f0c6a8e-legacy", "PREMIUM")), deletedSortKeys());
+    }
+
+    @Test
+    void testRemoveFailsWhenItemsCannotBeRead() {
+        when(amazonDynamoDB.query(any(QueryRequest.class))).thenThrow(new IllegalStateException("unavailable"));
+
+        assertThrows(IllegalStateException.class, () -> repository.removeCustomersFromCohortTypes(
+                Collections.singletonMap("customer1", EnumSet.of(CohortType.PREMIUM))));
+        verify(amazonDynamoDB, never()).batchWriteItem(any(BatchWriteItemRequest.class));
+    }
+
+    @Test
+    void testReplaceWritesOnlyTheDifferenceToStoredMemberships() {
+        when(amazonDynamoDB.query(any(QueryRequest.class))).thenReturn(new QueryResult().withItems(Arrays.asList(
+                item("customer1", "5f0c6a8e-legacy", CohortType.PREMIUM),
+                item("customer1", "NORMAL", CohortType.NORMAL))));
+
+        Map<String, Set<CohortType>> changed = repository.replaceCustomersCohortTypes(
+                Collections.singletonMap("customer1", EnumSet.of(CohortType.PREMIUM, CohortType.VIP)));
+
+        assertEquals(Collections.singletonMap("customer1", EnumSet.of(CohortType.NORMAL, CohortType.VIP)), changed);
+        ArgumentCaptor<BatchWriteItemRequest> captor = ArgumentCaptor.forClass(BatchWriteItemRequest.class);
+        verify(amazonDynamoDB).batchWriteItem(captor.capture());
+        List<WriteRequest> writes = captor.getValue().getRequestItems().get("Cohorts");
+        assertEquals(2, writes.size());
+        assertEquals("VIP", writes.get(0).getPutRequest().getItem().get("uuid").getS());
+        assertEquals("NORMAL", writes.get(1).getDeleteRequest().getKey().get("uuid").getS());
+    }
+
+    @Test
+    void testReplaceWithUnchangedMembershipsWritesNothing() {
+        when(amazonDynamoDB.query(any(QueryRequest.class))).thenReturn(new QueryResult().withItems(
+                Collections.singletonList(item("customer1", "PREMIUM", CohortType.PREMIUM))));
+
+        Map<String, Set<CohortType>> changed = repository.replaceCustomersCohortTypes(
+                Collections.singletonMap("customer1", EnumSet.of(CohortType.PREMIUM)));
+
+        assertTrue(changed.isEmpty());
+        verify(amazonDynamoDB, never()).batchWriteItem(any(BatchWriteItemRequest.class));
+    }
+
+    private Set<String> deletedSortKeys() {
+        ArgumentCaptor<BatchWriteItemRequest> captor = ArgumentCaptor.forClass(BatchWriteItemRequest.class);
+        verify(amazonDynamoDB, atLeastOnce()).batchWriteItem(captor.capture());
+        Set<String> sortKeys = new HashSet<>();
+        for (BatchWriteItemRequest request : captor.getAllValues()) {
+            for (WriteRequest write : request.getRequestItems().get("Cohorts")) {
+                assertNotNull(write.getDeleteRequest());
+                sortKeys.add(write.getDeleteRequest().getKey().get("uuid").getS());
+            }
+        }
+        return sortKeys;
+    }
+
+    private static Map<String, AttributeValue> item(String customerId, String sortKey, CohortType cohortType) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("customerId", new AttributeValue(customerId));
+        item.put("uuid", new AttributeValue(sortKey));
+        item.put("cohortType", new AttributeValue(cohortType.name()));
+        return item;
+    }
+}
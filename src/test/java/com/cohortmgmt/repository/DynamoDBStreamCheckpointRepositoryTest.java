@@ -0,0 +1,93 @@
+package com.cohortmgmt.repository;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class DynamoDBStreamCheckpointRepositoryTest {
+
+    private static final String STREAM_ARN = "arn:aws:dynamodb:us-east-1:000000000000:table/Customers/stream/1";
+
+    private AmazonDynamoDB amazonDynamoDB;
+    private DynamoDBStreamCheckpointRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        amazonDynamoDB = mock(AmazonDynamoDB.class);
+        when(amazonDynamoDB.batchWriteItem(any(BatchWriteItemRequest.class))).thenReturn(new BatchWriteItemResult());
+        repository = new DynamoDBStreamCheckpointRepository(amazonDynamoDB, "StreamCheckpoints");
+    }
+
+    @Test
+    void testFindByStreamReadsEveryPage() {
+        Map<String, AttributeValue> lastKey = item("shard-1", "100");
+        when(amazonDynamoDB.query(any(QueryRequest.class))).thenReturn(
+                new QueryResult().withItems(Collections.singletonList(item("shard-1", "100"))).withLastEvaluatedKey(lastKey),
+                new QueryResult().withItems(Collections.singletonList(item("shard-2", StreamCheckpointRepository.SHARD_END))));
+
+        Map<String, String> positions = repository.findByStream(STREAM_ARN);
+
+        Map<String, String> expected = new HashMap<>();
+        expected.put("shard-1", "100");
+        expected.put("shard-2", StreamCheckpointRepository.SHARD_END);
+        assertEquals(expected, positions);
+        ArgumentCaptor<QueryRequest> captor = ArgumentCaptor.forClass(QueryRequest.class);
+        verify(amazonDynamoDB, times(2)).query(captor.capture());
+        assertTrue(captor.getAllValues().get(0).isConsistentRead());
+        assertNull(captor.getAllValues().get(0).getExclusiveStartKey());
+        assertEquals(lastKey, captor.getAllValues().get(1).getExclusiveStartKey());
+    }
+
+    @Test
+    void testSaveAllWritesOneItemPerShard() {
+        Map<String, String> positions = new LinkedHashMap<>();
+        positions.put("shard-1", "100");
+        positions.put("shard-2", StreamCheckpointRepository.SHARD_END);
+
+        repository.saveAll(STREAM_ARN, positions);
+
+        ArgumentCaptor<BatchWriteItemRequest> captor = ArgumentCaptor.forClass(BatchWriteItemRequest.class);
+        verify(amazonDynamoDB).batchWriteItem(captor.capture());
+        List<WriteRequest> writes = captor.getValue().getRequestItems().get("StreamCheckpoints");
+        assertEquals(2, writes.size());
+        Map<String, AttributeValue> first = writes.get(0).getPutRequest().getItem();
+        assertEquals(STREAM_ARN, first.get(DynamoDBStreamCheckpointRepository.STREAM_ARN_ATTR).getS());
+        assertEquals("shard-1", first.get(DynamoDBStreamCheckpointRepository.SHARD_ID_ATTR).getS());
+        assertEquals("100", first.get(DynamoDBStreamCheckpointRepository.POSITION_ATTR).getS());
+        assertNotNull(first.get(DynamoDBStreamCheckpointRepository.UPDATED_AT_ATTR).getN());
+        assertEquals(StreamCheckpointRepository.SHARD_END,
+                writes.get(1).getPutRequest().getItem().get(DynamoDBStreamCheckpointRepository.POSITION_ATTR).getS());
+    }
+
+    @Test
+    void testSaveAllWithoutPositionsWritesNothing() {
+        repository.saveAll(STREAM_ARN, Collections.emptyMap());
+
+        verify(amazonDynamoDB, never()).batchWriteItem(any(BatchWriteItemRequest.class));
+    }
+
+    private static Map<String, AttributeValue> item(String shardId, String position) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put(DynamoDBStreamCheckpointRepository.STREAM_ARN_ATTR, new AttributeValue(STREAM_ARN));
+        item.put(DynamoDBStreamCheckpointRepository.SHARD_ID_ATTR, new AttributeValue(shardId));
+        item.put(DynamoDBStreamCheckpointRepository.POSITION_ATTR, new AttributeValue(position));
+        return item;
+    }
+}
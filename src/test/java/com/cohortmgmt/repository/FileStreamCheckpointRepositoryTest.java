@@ -0,0 +1,52 @@
+package com.cohortmgmt.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileStreamCheckpointRepositoryTest {
+
+    private static final String STREAM = "arn:aws:dynamodb:us-east-1:000000000000:table/Customers/stream/2024-01-01T00:00:00.000";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testPositionsSurviveReopening() {
+        String file = tempDir.resolve("stream.checkpoint").toString();
+        Map<String, String> positions = new HashMap<>();
+        positions.put("shardId-1", "100");
+        positions.put("shardId-2", StreamCheckpointRepository.SHARD_END);
+        new FileStreamCheckpointRepository(file).saveAll(STREAM, positions);
+
+        assertEquals(positions, new FileStreamCheckpointRepository(file).findByStream(STREAM));
+    }
+
+    @Test
+    void testSaveMergesWithEarlierPositions() {
+        FileStreamCheckpointRepository repository =
+                new FileStreamCheckpointRepository(tempDir.resolve("stream.checkpoint").toString());
+        repository.saveAll(STREAM, Collections.singletonMap("shardId-1", "100"));
+        repository.saveAll(STREAM, Collections.singletonMap("shardId-2", "200"));
+        repository.saveAll(STREAM, Collections.singletonMap("shardId-1", "150"));
+
+        Map<String, String> positions = repository.findByStream(STREAM);
+        assertEquals("150", positions.get("shardId-1"));
+        assertEquals("200", positions.get("shardId-2"));
+    }
+
+    @Test
+    void testPositionsOfOtherStreamsAreIgnored() {
+        FileStreamCheckpointRepository repository =
+                new FileStreamCheckpointRepository(tempDir.resolve("stream.checkpoint").toString());
+        repository.saveAll("arn:other", Collections.singletonMap("shardId-1", "100"));
+
+        assertTrue(repository.findByStream(STREAM).isEmpty());
+    }
+}
@@ -0,0 +1,31 @@
+package com.cohortmgmt.repository;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory MembershipVersionRepository for tests; instances sharing one behave like instances sharing the table.
+ */
+public class InMemoryMembershipVersionRepository implements MembershipVersionRepository {
+
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+
+    @Override
+    public void increment(Map<String, Long> increments) {
+        increments.forEach((key, increment) -> versions.merge(key, increment, Long::sum));
+    }
+
+    @Override
+    public Map<String, Long> getAll(Collection<String> keys) {
+        Map<String, Long> found = new HashMap<>();
+        for (String key : keys) {
+            Long version = versions.get(key);
+            if (version != null) {
+                found.put(key, version);
+            }
+        }
+        return found;
+    }
+}
@@ -2,8 +2,10 @@ package com.cohortmgmt.service;
 
 import com.cohortmgmt.model.CohortType;
 import com.cohortmgmt.model.Customer;
+import com.cohortmgmt.model.CustomerChange;
 import com.cohortmgmt.model.UserType;
 import com.cohortmgmt.repository.CohortRepository;
+import com.cohortmgmt.repository.InMemoryMembershipVersionRepository;
 import com.cohortmgmt.service.rule.CohortRule;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -14,6 +16,7 @@ import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
@@ -28,6 +31,8 @@ public class CohortServiceImplTest {
     @Mock
     private CohortRule mockRule;
     
+    private MembershipVersions membershipVersions;
+    
     private CohortServiceImpl cohortService;
     
     private Customer premiumCustomer;
@@ -43,7 +48,8 @@ public class CohortServiceImplTest {
         
         // Create the service with the mock rule
         List<CohortRule> rules = Collections.singletonList(mockRule);
-        cohortService = new CohortServiceImpl(rules, cohortRepository);
+        membershipVersions = new MembershipVersions(new InMemoryMembershipVersionRepository(), 1024, 30000, 1000);
+        cohortService = new CohortServiceImpl(rules, cohortRepository, membershipVersions);
         
         // Create test customers
         premiumCustomer = new Customer("premium-customer", 6000.0, UserType.PAID);
@@ -63,6 +69,9 @@ public class CohortServiceImplTest {
     public void testClassifyCustomer_Success() {
         // Arrange
         when(mockRule.evaluate(premiumCustomer)).thenReturn(true);
+        when(cohortRepository.replaceCustomersCohortTypes(anyMap()))
+                .thenReturn(Collections.singletonMap(premiumCustomer.getCustomerId(), EnumSet.of(CohortType.PREMIUM)));
+        String customerTag = membershipVersions.customerETag(premiumCustomer.getCustomerId());
         
         // Act
         Set<CohortType> cohortTypes = cohortService.classifyCustomer(premiumCustomer);
@@ -71,13 +80,32 @@ public class CohortServiceImplTest {
         assertNotNull(cohortTypes);
         assertEquals(1, cohortTypes.size());
         assertTrue(cohortTypes.contains(CohortType.PREMIUM));
-        verify(cohortRepository).addCustomerToCohortType(CohortType.PREMIUM, premiumCustomer.getCustomerId());
+        verify(cohortRepository).replaceCustomersCohortTypes(
+                Collections.singletonMap(premiumCustomer.getCustomerId(), EnumSet.of(CohortType.PREMIUM)));
+        assertNotEquals(customerTag, membershipVersions.customerETag(premiumCustomer.getCustomerId()));
+    }
+    
+    @Test
+    public void testClassifyCustomer_UnchangedMembershipKeepsItsVersion() {
+        // Arrange: the membership is already stored, so nothing changes
+        when(mockRule.evaluate(premiumCustomer)).thenReturn(true);
+        when(cohortRepository.replaceCustomersCohortTypes(anyMap())).thenReturn(Collections.emptyMap());
+        String customerTag = membershipVersions.customerETag(premiumCustomer.getCustomerId());
+        String premiumTag = membershipVersions.cohortTypeETag(CohortType.PREMIUM);
+        
+        // Act
+        cohortService.classifyCustomer(premiumCustomer);
+        
+        // Assert
+        assertEquals(customerTag, membershipVersions.customerETag(premiumCustomer.getCustomerId()));
+        assertEquals(premiumTag, membershipVersions.cohortTypeETag(CohortType.PREMIUM));
     }
     
     @Test
     public void testClassifyCustomer_NoMatch() {
         // Arrange
         when(mockRule.evaluate(normalCustomer)).thenReturn(false);
+        when(cohortRepository.replaceCustomersCohortTypes(anyMap())).thenReturn(Collections.emptyMap());
         
         // Act
         Set<CohortType> cohortTypes = cohortService.classifyCustomer(normalCustomer);
@@ -85,7 +113,8 @@ public class CohortServiceImplTest {
         // Assert
         assertNotNull(cohortTypes);
         assertTrue(cohortTypes.isEmpty());
-        verify(cohortRepository, never()).addCustomerToCohortType(any(CohortType.class), anyString());
+        verify(cohortRepository).replaceCustomersCohortTypes(
+                Collections.singletonMap(normalCustomer.getCustomerId(), EnumSet.noneOf(CohortType.class)));
     }
     
     @Test
@@ -96,13 +125,14 @@ public class CohortServiceImplTest {
         // Assert
         assertNotNull(cohortTypes);
         assertTrue(cohortTypes.isEmpty());
-        verify(cohortRepository, never()).addCustomerToCohortType(any(CohortType.class), anyString());
+        verify(cohortRepository, never()).replaceCustomersCohortTypes(anyMap());
     }
     
     @Test
     public void testClassifyCustomer_RuleException() {
         // Arrange
         when(mockRule.evaluate(premiumCustomer)).thenThrow(new RuntimeException("Test exception"));
+        when(cohortRepository.replaceCustomersCohortTypes(anyMap())).thenReturn(Collections.emptyMap());
         
         // Act
         Set<CohortType> cohortTypes = cohortService.classifyCustomer(premiumCustomer);
@@ -110,7 +140,121 @@ public class CohortServiceImplTest {
         // Assert
         assertNotNull(cohortTypes);
         assertTrue(cohortTypes.isEmpty());
-        verify(cohortRepository, never()).addCustomerToCohortType(any(CohortType.class), anyString());
+    }
+    
+    @Test
+    public void testClassifyCustomer_WriteFailureIsRethrown() {
+        // Arrange
+        when(mockRule.evaluate(premiumCustomer)).thenReturn(true);
+        when(cohortRepository.replaceCustomersCohortTypes(anyMap())).thenThrow(new IllegalStateException("throttled"));
+        
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> cohortService.classifyCustomer(premiumCustomer));
+    }
+    
+    @Test
+    public void testClassifyCustomers_RecordsCustomersThatMatchNoRule() {
+        // Arrange: the normal customer lost a membership stored by an earlier import
+        when(mockRule.evaluate(premiumCustomer)).thenReturn(true);
+        when(mockRule.evaluate(normalCustomer)).thenReturn(false);
+        Map<String, Set<CohortType>> changed = Collections.singletonMap(
+                normalCustomer.getCustomerId(), EnumSet.of(CohortType.PREMIUM));
+        when(cohortRepository.replaceCustomersCohortTypes(anyMap())).thenReturn(changed);
+        
+        // Act
+        Map<String, Set<CohortType>> result = cohortService.classifyCustomers(
+                Arrays.asList(premiumCustomer, normalCustomer));
+        
+        // Assert
+        assertEquals(changed, result);
+        Map<String, Set<CohortType>> expected = new HashMap<>();
+        expected.put(premiumCustomer.getCustomerId(), EnumSet.of(CohortType.PREMIUM));
+        expected.put(normalCustomer.getCustomerId(), EnumSet.noneOf(CohortType.class));
+        verify(cohortRepository).replaceCustomersCohortTypes(expected);
+    }
+    
+    @Test
+    public void testReclassifyCustomers_ReplacesStoredMemberships() {
+        // Arrange
+        when(mockRule.evaluate(any(Customer.class)))
+                .thenAnswer(invocation -> invocation.<Customer>getArgument(0).getDailySpend() > 5000.0);
+        when(cohortRepository.replaceCustomersCohortTypes(anyMap()))
+                .thenReturn(Collections.singletonMap("joining", EnumSet.of(CohortType.PREMIUM)));
+        String joiningTag = membershipVersions.customerETag("joining");
+        String stayingTag = membershipVersions.customerETag("staying");
+        String premiumTag = membershipVersions.cohortTypeETag(CohortType.PREMIUM);
+        
+        // Act
+        int reclassified = cohortService.reclassifyCustomers(Arrays.asList(
+                new CustomerChange("joining", new Customer("joining", 3000.0, UserType.FREE),
+                        new Customer("joining", 6000.0, UserType.FREE)),
+                new CustomerChange("staying", new Customer("staying", 6000.0, UserType.FREE),
+                        new Customer("staying", 7000.0, UserType.FREE))));
+        
+        // Assert
+        assertEquals(1, reclassified);
+        verify(cohortRepository).replaceCustomersCohortTypes(
+                Collections.singletonMap("joining", EnumSet.of(CohortType.PREMIUM)));
+        assertNotEquals(joiningTag, membershipVersions.customerETag("joining"));
+        assertEquals(stayingTag, membershipVersions.customerETag("staying"));
+        assertNotEquals(premiumTag, membershipVersions.cohortTypeETag(CohortType.PREMIUM));
+    }
+    
+    @Test
+    public void testReclassifyCustomers_ChangeWithinARuleBoundaryWritesNothing() {
+        // Arrange
+        when(mockRule.evaluate(any(Customer.class))).thenReturn(true);
+        
+        // Act
+        int reclassified = cohortService.reclassifyCustomers(Collections.singletonList(new CustomerChange("customer",
+                new Customer("customer", 6000.0, UserType.FREE), new Customer("customer", 7000.0, UserType.FREE))));
+        
+        // Assert
+        assertEquals(0, reclassified);
+        verify(cohortRepository, never()).replaceCustomersCohortTypes(anyMap());
+    }
+    
+    @Test
+    public void testReclassifyCustomers_DiffsAgainstStoredMembershipsWithoutAnOldImage() {
+        // Arrange: the stored membership is missing, e.g. after a rule change
+        when(mockRule.evaluate(any(Customer.class))).thenReturn(true);
+        when(cohortRepository.replaceCustomersCohortTypes(anyMap()))
+                .thenReturn(Collections.singletonMap("customer", EnumSet.of(CohortType.PREMIUM)));
+        
+        // Act
+        int reclassified = cohortService.reclassifyCustomers(Collections.singletonList(new CustomerChange("customer",
+                null, new Customer("customer", 7000.0, UserType.FREE))));
+        
+        // Assert
+        assertEquals(1, reclassified);
+        verify(cohortRepository).replaceCustomersCohortTypes(
+                Collections.singletonMap("customer", EnumSet.of(CohortType.PREMIUM)));
+    }
+    
+    @Test
+    public void testReclassifyCustomers_RemovalLeavesEveryCohortType() {
+        // Arrange
+        when(cohortRepository.replaceCustomersCohortTypes(anyMap())).thenReturn(Collections.emptyMap());
+        
+        // Act
+        cohortService.reclassifyCustomers(Collections.singletonList(new CustomerChange("deleted", null, null)));
+        
+        // Assert
+        verify(cohortRepository).replaceCustomersCohortTypes(
+                Collections.singletonMap("deleted", EnumSet.noneOf(CohortType.class)));
+        verify(mockRule, never()).evaluate(any());
+    }
+    
+    @Test
+    public void testReclassifyCustomers_WriteFailureIsRethrown() {
+        // Arrange
+        when(cohortRepository.replaceCustomersCohortTypes(anyMap())).thenThrow(new IllegalStateException("throttled"));
+        String customerTag = membershipVersions.customerETag("deleted");
+        
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> cohortService.reclassifyCustomers(
+                Collections.singletonList(new CustomerChange("deleted", null, null))));
+        assertNotEquals(customerTag, membershipVersions.customerETag("deleted"));
     }
     
     @Test
@@ -0,0 +1,142 @@
+package com.cohortmgmt.service;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.cohortmgmt.model.Customer;
+import com.cohortmgmt.repository.CustomerRepository;
+import com.cohortmgmt.service.concurrency.AdaptiveConcurrencyLimiter;
+import com.cohortmgmt.service.concurrency.KeyPartitionedExecutor;
+import com.cohortmgmt.service.pipeline.IngestionPipeline;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class CustomerDataProcessingServiceTest {
+
+    private static final String QUEUE_URL = "http://localhost:4566/000000000000/customer-data-queue";
+
+    @Mock
+    private AmazonSQS amazonSQS;
+
+    @Mock
+    private CustomerRepository customerRepository;
+
+    @Mock
+    private CohortService cohortService;
+
+    private CustomerDataProcessingService service;
+
+    private KeyPartitionedExecutor laneExecutor;
+
+    private IngestionPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        AdaptiveConcurrencyLimiter concurrencyLimiter = new AdaptiveConcurrencyLimiter(8, 1, 64, 0.5, 2.0, 1000);
+        laneExecutor = new KeyPartitionedExecutor(2, 16);
+        pipeline = new IngestionPipeline(customerRepository, cohortService, concurrencyLimiter, laneExecutor,
+                1, 2, 16, 25);
+        service = new CustomerDataProcessingService(amazonSQS, pipeline,
+                "customer-data-queue", "http://localhost:4566", false, 1, 8, 10, 0);
+        when(amazonSQS.deleteMessageBatch(any(DeleteMessageBatchRequest.class)))
+                .thenReturn(new DeleteMessageBatchResult());
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.stop();
+        pipeline.shutdown();
+        laneExecutor.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testReceiveBatch_ProcessesAndDeletesInOneBatch() throws Exception {
+        // Setup
+        List<Message> messages = Arrays.asList(
+                message("m1", "r1", "{\"customerId\":\"customer1\",\"dailySpend\":6000.0,\"userType\":\"PAID\"}"),
+                message("m2", "r2", "{\"customerId\":\"customer2\",\"dailySpend\":100.0,\"userType\":\"FREE\"}"));
+        when(amazonSQS.receiveMessage(any(ReceiveMessageRequest.class)))
+                .thenReturn(new ReceiveMessageResult().withMessages(messages));
+
+        // Execute
+        service.receiveBatch(QUEUE_URL).get(5, TimeUnit.SECONDS);
+
+        // Verify both customers were written with batched writes
+        ArgumentCaptor<List<Customer>> saved = ArgumentCaptor.forClass(List.class);
+        verify(customerRepository, atLeastOnce()).saveAll(saved.capture());
+        List<String> savedIds = saved.getAllValues().stream()
+                .flatMap(List::stream)
+                .map(Customer::getCustomerId)
+                .sorted()
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList("customer1", "customer2"), savedIds);
+        verify(customerRepository, never()).save(any(Customer.class));
+
+        ArgumentCaptor<DeleteMessageBatchRequest> captor = ArgumentCaptor.forClass(DeleteMessageBatchRequest.class);
+        verify(amazonSQS, times(1)).deleteMessageBatch(captor.capture());
+        verify(amazonSQS, never()).deleteMessage(any(), any());
+
+        List<String> receiptHandles = captor.getValue().getEntries().stream()
+                .map(DeleteMessageBatchRequestEntry::getReceiptHandle)
+                .sorted()
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList("r1", "r2"), receiptHandles);
+    }
+
+    @Test
+    void testReceiveBatch_DoesNotDeleteFailedMessages() throws Exception {
+        // Setup - second message is malformed
+        List<Message> messages = Arrays.asList(
+                message("m1", "r1", "{\"customerId\":\"customer1\",\"dailySpend\":6000.0,\"userType\":\"PAID\"}"),
+                message("m2", "r2", "not json"));
+        when(amazonSQS.receiveMessage(any(ReceiveMessageRequest.class)))
+                .thenReturn(new ReceiveMessageResult().withMessages(messages));
+
+        // Execute
+        service.receiveBatch(QUEUE_URL).get(5, TimeUnit.SECONDS);
+
+        // Verify only the good message is acknowledged
+        ArgumentCaptor<DeleteMessageBatchRequest> captor = ArgumentCaptor.forClass(DeleteMessageBatchRequest.class);
+        verify(amazonSQS).deleteMessageBatch(captor.capture());
+        assertEquals(1, captor.getValue().getEntries().size());
+        assertEquals("r1", captor.getValue().getEntries().get(0).getReceiptHandle());
+    }
+
+    @Test
+    void testReceiveBatch_EmptyReceiveDoesNotDelete() throws Exception {
+        // Setup
+        when(amazonSQS.receiveMessage(any(ReceiveMessageRequest.class)))
+                .thenReturn(new ReceiveMessageResult().withMessages(Collections.emptyList()));
+
+        // Execute
+        service.receiveBatch(QUEUE_URL).get(5, TimeUnit.SECONDS);
+
+        // Verify
+        verify(amazonSQS, never()).deleteMessageBatch(any(DeleteMessageBatchRequest.class));
+        verify(customerRepository, never()).saveAll(any());
+    }
+
+    private static Message message(String id, String receiptHandle, String body) {
+        return new Message().withMessageId(id).withReceiptHandle(receiptHandle).withBody(body);
+    }
+}
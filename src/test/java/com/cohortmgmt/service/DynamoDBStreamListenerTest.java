@@ -0,0 +1,240 @@
+package com.cohortmgmt.service;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBStreams;
+import com.amazonaws.services.dynamodbv2.model.DescribeStreamRequest;
+import com.amazonaws.services.dynamodbv2.model.DescribeStreamResult;
+import com.amazonaws.services.dynamodbv2.model.GetRecordsRequest;
+import com.amazonaws.services.dynamodbv2.model.GetRecordsResult;
+import com.amazonaws.services.dynamodbv2.model.GetShardIteratorRequest;
+import com.amazonaws.services.dynamodbv2.model.GetShardIteratorResult;
+import com.amazonaws.services.dynamodbv2.model.ListStreamsRequest;
+import com.amazonaws.services.dynamodbv2.model.ListStreamsResult;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.Shard;
+import com.amazonaws.services.dynamodbv2.model.ShardIteratorType;
+import com.amazonaws.services.dynamodbv2.model.Stream;
+import com.amazonaws.services.dynamodbv2.model.StreamDescription;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+import com.amazonaws.services.dynamodbv2.model.TrimmedDataAccessException;
+import com.cohortmgmt.config.ResourcesReadyEvent;
+import com.cohortmgmt.repository.StreamCheckpointRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class DynamoDBStreamListenerTest {
+
+    private static final String STREAM_ARN = "arn:aws:dynamodb:us-east-1:000000000000:table/Customers/stream/1";
+
+    private final List<Shard> shards = Arrays.asList(
+            new Shard().withShardId("parent"),
+            new Shard().withShardId("child-1").withParentShardId("parent"),
+            new Shard().withShardId("child-2").withParentShardId("parent"),
+            new Shard().withShardId("orphan").withParentShardId("trimmed"));
+
+    @Test
+    void testChildrenWaitForTheirParent() {
+        List<String> startable = DynamoDBStreamListener.startableShards(
+                shards, Collections.emptySet(), Collections.emptySet());
+
+        assertEquals(Arrays.asList("parent", "orphan"), startable);
+    }
+
+    @Test
+    void testChildrenStartOnceTheParentIsFinished() {
+        List<String> startable = DynamoDBStreamListener.startableShards(
+                shards, new HashSet<>(Collections.singletonList("parent")), Collections.singleton("orphan"));
+
+        assertEquals(Arrays.asList("child-1", "child-2"), startable);
+    }
+
+    @Test
+    void testActiveAndFinishedShardsAreNotStartedAgain() {
+        List<String> startable = DynamoDBStreamListener.startableShards(
+                shards, new HashSet<>(Arrays.asList("parent", "child-1")), new HashSet<>(Arrays.asList("child-2", "orphan")));
+
+        assertTrue(startable.isEmpty());
+    }
+
+    @Test
+    void testFullBatchesArePolledAgainImmediately() {
+        assertEquals(0, DynamoDBStreamListener.nextPollDelay(1000, 1000, 5000, 200, 10000));
+        assertEquals(200, DynamoDBStreamListener.nextPollDelay(10, 1000, 0, 200, 10000));
+    }
+
+    @Test
+    void testIdleShardBacksOffExponentiallyUpToTheMaximum() {
+        long delay = 0;
+        List<Long> delays = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            delay = DynamoDBStreamListener.nextPollDelay(0, 1000, delay, 200, 10000);
+            delays.add(delay);
+        }
+
+        assertEquals(Arrays.asList(200L, 400L, 800L, 1600L, 3200L, 6400L, 10000L, 10000L), delays);
+    }
+
+    @Test
+    void testShardResumesAfterItsCheckpoint() throws Exception {
+        StreamCheckpointRepository checkpoints = checkpoints(Collections.singletonMap("shard-1", "100"));
+        TestStream stream = new TestStream(new Shard().withShardId("shard-1"));
+        stream.records(record("101"), record("102"));
+
+        DynamoDBStreamListener listener = start(stream, checkpoints);
+
+        await(() -> !stream.savedCheckpoints.isEmpty());
+        assertEquals("AFTER_SEQUENCE_NUMBER:100", stream.iteratorRequests.get(0));
+        assertEquals(Collections.singletonMap("shard-1", "102"), stream.savedCheckpoints.get(0));
+        verify(stream.processingService).processRecords(Arrays.asList(record("101"), record("102")));
+        listener.shutdown();
+    }
+
+    @Test
+    void testExpiredCheckpointFallsBackToTheOldestRecord() throws Exception {
+        StreamCheckpointRepository checkpoints = checkpoints(Collections.singletonMap("shard-1", "100"));
+        TestStream stream = new TestStream(new Shard().withShardId("shard-1"));
+        stream.trimmedBefore = true;
+        stream.records(record("500"));
+
+        DynamoDBStreamListener listener = start(stream, checkpoints);
+
+        await(() -> !stream.savedCheckpoints.isEmpty());
+        assertEquals(Arrays.asList("AFTER_SEQUENCE_NUMBER:100", "TRIM_HORIZON:null"),
+                new ArrayList<>(stream.iteratorRequests.subList(0, 2)));
+        assertEquals(Collections.singletonMap("shard-1", "500"), stream.savedCheckpoints.get(0));
+        listener.shutdown();
+    }
+
+    @Test
+    void testFinishedShardIsNotReadAgainAndItsChildStarts() throws Exception {
+        StreamCheckpointRepository checkpoints = checkpoints(
+                Collections.singletonMap("parent", StreamCheckpointRepository.SHARD_END));
+        TestStream stream = new TestStream(
+                new Shard().withShardId("parent"),
+                new Shard().withShardId("child").withParentShardId("parent"));
+        stream.records(record("200"));
+
+        DynamoDBStreamListener listener = start(stream, checkpoints);
+
+        await(() -> !stream.savedCheckpoints.isEmpty());
+        verify(stream.leaseManager).assign(STREAM_ARN, Collections.singletonList("child"));
+        assertEquals("TRIM_HORIZON:null", stream.iteratorRequests.get(0));
+        assertEquals(Collections.singletonMap("child", "200"), stream.savedCheckpoints.get(0));
+        listener.shutdown();
+    }
+
+    @Test
+    void testScheduledCheckpointWritesPositionsOfAQuietStream() throws Exception {
+        StreamCheckpointRepository checkpoints = checkpoints(Collections.emptyMap());
+        TestStream stream = new TestStream(new Shard().withShardId("shard-1"));
+        stream.records(record("300"));
+
+        // Neither the record count nor the interval is reached by the only page
+        DynamoDBStreamListener listener = start(stream, checkpoints, 1000);
+        verify(stream.processingService, timeout(5000)).processRecords(anyList());
+        Thread.sleep(100);
+        assertTrue(stream.savedCheckpoints.isEmpty());
+
+        // What the scheduler runs every interval
+        await(() -> {
+            listener.checkpoint();
+            return !stream.savedCheckpoints.isEmpty();
+        });
+
+        assertEquals(Collections.singletonList(Collections.singletonMap("shard-1", "300")), stream.savedCheckpoints);
+        listener.shutdown();
+    }
+
+    private static StreamCheckpointRepository checkpoints(Map<String, String> positions) {
+        StreamCheckpointRepository checkpoints = mock(StreamCheckpointRepository.class);
+        when(checkpoints.findByStream(STREAM_ARN)).thenReturn(new HashMap<>(positions));
+        return checkpoints;
+    }
+
+    private static DynamoDBStreamListener start(TestStream stream, StreamCheckpointRepository checkpoints) {
+        // Every checkpoint is saved as soon as a record has been processed
+        return start(stream, checkpoints, 1);
+    }
+
+    private static DynamoDBStreamListener start(TestStream stream, StreamCheckpointRepository checkpoints,
+                                                int checkpointMaxRecords) {
+        doAnswer(invocation -> {
+            stream.savedCheckpoints.add(new HashMap<>(invocation.<Map<String, String>>getArgument(1)));
+            return null;
+        }).when(checkpoints).saveAll(anyString(), anyMap());
+        DynamoDBStreamListener listener = new DynamoDBStreamListener(mock(AmazonDynamoDB.class),
+                stream.processingService, "Customers", "us-east-1", "http://localhost:4566", checkpoints,
+                stream.leaseManager, 60000, checkpointMaxRecords, 100, 10, 50, 2, stream.client);
+        listener.onApplicationEvent(new ResourcesReadyEvent(listener, 0));
+        return listener;
+    }
+
+    private static Record record(String sequenceNumber) {
+        return new Record().withDynamodb(new StreamRecord().withSequenceNumber(sequenceNumber));
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for the listener");
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * A stream of open shards whose first page holds the given records, followed by empty pages.
+     */
+    private static class TestStream {
+
+        private final AmazonDynamoDBStreams client = mock(AmazonDynamoDBStreams.class);
+        private final DynamoDBStreamProcessingService processingService = mock(DynamoDBStreamProcessingService.class);
+        private final ShardLeaseManager leaseManager = mock(ShardLeaseManager.class);
+        private final List<String> iteratorRequests = new CopyOnWriteArrayList<>();
+        private final List<Map<String, String>> savedCheckpoints = new CopyOnWriteArrayList<>();
+        private volatile boolean trimmedBefore;
+
+        private TestStream(Shard... shards) {
+            when(client.listStreams(any(ListStreamsRequest.class)))
+                    .thenReturn(new ListStreamsResult().withStreams(new Stream().withStreamArn(STREAM_ARN)));
+            when(client.describeStream(any(DescribeStreamRequest.class))).thenReturn(new DescribeStreamResult()
+                    .withStreamDescription(new StreamDescription().withShards(shards)));
+            when(client.getShardIterator(any(GetShardIteratorRequest.class))).thenAnswer(invocation -> {
+                GetShardIteratorRequest request = invocation.getArgument(0);
+                iteratorRequests.add(request.getShardIteratorType() + ":" + request.getSequenceNumber());
+                if (trimmedBefore && ShardIteratorType.AFTER_SEQUENCE_NUMBER.toString().equals(request.getShardIteratorType())) {
+                    throw new TrimmedDataAccessException("Checkpoint has been trimmed");
+                }
+                return new GetShardIteratorResult().withShardIterator("iterator");
+            });
+            when(processingService.processRecords(anyList())).thenReturn(CompletableFuture.completedFuture(null));
+            when(leaseManager.assign(eq(STREAM_ARN), anyList()))
+                    .thenAnswer(invocation -> new LinkedHashSet<>(invocation.<List<String>>getArgument(1)));
+        }
+
+        private void records(Record... records) {
+            when(client.getRecords(any(GetRecordsRequest.class))).thenReturn(
+                    new GetRecordsResult().withRecords(records).withNextShardIterator("next"),
+                    new GetRecordsResult().withRecords(Collections.emptyList()).withNextShardIterator("next"));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.cohortmgmt.service;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+import com.cohortmgmt.model.CustomerChange;
+import com.cohortmgmt.model.UserType;
+import com.cohortmgmt.service.concurrency.AdaptiveConcurrencyLimiter;
+import com.cohortmgmt.service.concurrency.KeyPartitionedExecutor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class DynamoDBStreamProcessingServiceTest {
+
+    private CohortService cohortService;
+    private KeyPartitionedExecutor laneExecutor;
+    private DynamoDBStreamProcessingService service;
+
+    @BeforeEach
+    void setup() {
+        cohortService = mock(CohortService.class);
+        laneExecutor = new KeyPartitionedExecutor(2, 16);
+        AdaptiveConcurrencyLimiter concurrencyLimiter = new AdaptiveConcurrencyLimiter(8, 1, 64, 0.5, 2.0, 1000);
+        service = new DynamoDBStreamProcessingService(null, null, cohortService, concurrencyLimiter, laneExecutor, "Customers");
+    }
+
+    @AfterEach
+    void tearDown() {
+        laneExecutor.shutdown();
+    }
+
+    @Test
+    void testChangeOfOtherAttributesIsSkipped() throws Exception {
+        Map<String, AttributeValue> oldImage = image("customer-1", "4000.0", "PAID");
+        Map<String, AttributeValue> newImage = image("customer-1", "4000.0", "PAID");
+        newImage.put("lastModified", new AttributeValue().withN("1700000000000"));
+
+        service.processRecord(record("MODIFY", oldImage, newImage)).get(5, TimeUnit.SECONDS);
+
+        verifyNoInteractions(cohortService);
+    }
+
+    @Test
+    void testChangedSpendIsReclassified() throws Exception {
+        Map<String, AttributeValue> oldImage = image("customer-1", "4000.0", "PAID");
+        Map<String, AttributeValue> newImage = image("customer-1", "6000.0", "PAID");
+
+        service.processRecord(record("MODIFY", oldImage, newImage)).get(5, TimeUnit.SECONDS);
+
+        CustomerChange change = onlyChange();
+        assertEquals(4000.0, change.getPrevious().getDailySpend());
+        assertEquals(6000.0, change.getCurrent().getDailySpend());
+        assertEquals(UserType.PAID, change.getCurrent().getUserType());
+    }
+
+    @Test
+    void testInsertIsClassifiedWithoutPreviousCustomer() throws Exception {
+        service.processRecord(record("INSERT", null, image("customer-1", "6000.0", "FREE"))).get(5, TimeUnit.SECONDS);
+
+        CustomerChange change = onlyChange();
+        assertNull(change.getPrevious());
+        assertEquals(6000.0, change.getCurrent().getDailySpend());
+    }
+
+    @Test
+    void testRemoveDeletesMemberships() throws Exception {
+        Record record = record("REMOVE", image("customer-1", "6000.0", "FREE"), null);
+        record.getDynamodb().setKeys(Collections.singletonMap("customerId", new AttributeValue("customer-1")));
+
+        service.processRecord(record).get(5, TimeUnit.SECONDS);
+
+        CustomerChange change = onlyChange();
+        assertEquals("customer-1", change.getCustomerId());
+        assertTrue(change.isRemoval());
+        verify(cohortService, never()).getCustomerCohortTypes(anyString());
+    }
+
+    @Test
+    void testPageMergesChangesOfOneCustomerAndSkipsNetNoOps() throws Exception {
+        List<Record> page = Arrays.asList(
+                record("MODIFY", image("customer-1", "4000.0", "PAID"), image("customer-1", "6000.0", "PAID")),
+                record("MODIFY", image("customer-2", "100.0", "FREE"), image("customer-2", "200.0", "FREE")),
+                record("MODIFY", image("customer-1", "6000.0", "PAID"), image("customer-1", "7000.0", "FREE")),
+                record("MODIFY", image("customer-2", "200.0", "FREE"), image("customer-2", "100.0", "FREE")));
+
+        service.processRecords(page).get(5, TimeUnit.SECONDS);
+
+        CustomerChange change = onlyChange();
+        assertEquals("customer-1", change.getCustomerId());
+        assertEquals(4000.0, change.getPrevious().getDailySpend());
+        assertEquals(7000.0, change.getCurrent().getDailySpend());
+        assertEquals(UserType.FREE, change.getCurrent().getUserType());
+    }
+
+    @Test
+    void testFailedReclassificationFailsThePage() {
+        when(cohortService.reclassifyCustomers(anyList())).thenThrow(new IllegalStateException("throttled"));
+
+        CompletableFuture<Void> result = service.processRecord(
+                record("MODIFY", image("customer-1", "4000.0", "PAID"), image("customer-1", "6000.0", "PAID")));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+
+    @SuppressWarnings("unchecked")
+    private CustomerChange onlyChange() {
+        ArgumentCaptor<List<CustomerChange>> changes = ArgumentCaptor.forClass(List.class);
+        verify(cohortService).reclassifyCustomers(changes.capture());
+        assertEquals(1, changes.getValue().size());
+        return changes.getValue().get(0);
+    }
+
+    private static Map<String, AttributeValue> image(String customerId, String dailySpend, String userType) {
+        Map<String, AttributeValue> image = new HashMap<>();
+        image.put("customerId", new AttributeValue(customerId));
+        image.put("dailySpend", new AttributeValue().withN(dailySpend));
+        image.put("userType", new AttributeValue(userType));
+        return image;
+    }
+
+    private static Record record(String eventName, Map<String, AttributeValue> oldImage,
+                                 Map<String, AttributeValue> newImage) {
+        return new Record()
+                .withEventName(eventName)
+                .withDynamodb(new StreamRecord().withOldImage(oldImage).withNewImage(newImage));
+    }
+}
@@ -2,11 +2,18 @@ package com.cohortmgmt.service;
 
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
 import com.amazonaws.services.dynamodbv2.model.ScanRequest;
 import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.cohortmgmt.config.ResourcesReadyEvent;
 import com.cohortmgmt.model.CohortType;
 import com.cohortmgmt.model.Customer;
 import com.cohortmgmt.model.UserType;
+import com.cohortmgmt.repository.CustomerModificationIndex;
+import com.cohortmgmt.repository.StreamCheckpointRepository;
+import com.cohortmgmt.service.concurrency.AdaptiveConcurrencyLimiter;
+import com.cohortmgmt.service.concurrency.KeyPartitionedExecutor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -17,6 +24,9 @@ import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 class DynamoDBTriggerHandlerTest {
@@ -27,6 +37,9 @@ class DynamoDBTriggerHandlerTest {
     @Mock
     private CohortService cohortService;
 
+    @Mock
+    private StreamCheckpointRepository checkpointRepository;
+
     private DynamoDBTriggerHandler triggerHandler;
 
     private final String customerTableName = "Customers";
@@ -34,7 +47,16 @@ class DynamoDBTriggerHandlerTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-        triggerHandler = new DynamoDBTriggerHandler(amazonDynamoDB, cohortService, customerTableName);
+        triggerHandler = createHandler(false);
+    }
+
+    private DynamoDBTriggerHandler createHandler(boolean incremental) {
+        AdaptiveConcurrencyLimiter concurrencyLimiter = new AdaptiveConcurrencyLimiter(8, 1, 64, 0.5, 2.0, 1000);
+        DynamoDBTriggerHandler handler = new DynamoDBTriggerHandler(amazonDynamoDB, cohortService, concurrencyLimiter,
+                new KeyPartitionedExecutor(4, 16), checkpointRepository, customerTableName,
+                incremental, 60000, 2, 2000, 1024);
+        handler.onApplicationEvent(new ResourcesReadyEvent(this, 0));
+        return handler;
     }
 
     @Test
@@ -69,7 +91,9 @@ class DynamoDBTriggerHandlerTest {
         ArgumentCaptor<Customer> customerCaptor = ArgumentCaptor.forClass(Customer.class);
         verify(cohortService, times(2)).classifyCustomer(customerCaptor.capture());
         
-        List<Customer> capturedCustomers = customerCaptor.getAllValues();
+        // Customers are classified in parallel, so sort them before checking
+        List<Customer> capturedCustomers = new ArrayList<>(customerCaptor.getAllValues());
+        capturedCustomers.sort(Comparator.comparing(Customer::getCustomerId));
         assertEquals(2, capturedCustomers.size());
         
         // Verify first customer
@@ -126,4 +150,116 @@ class DynamoDBTriggerHandlerTest {
         // Verify classifyCustomer was not called
         verify(cohortService, never()).classifyCustomer(any(Customer.class));
     }
+
+    @Test
+    void testIncrementalPoll_ScansOnceWithoutHighWaterMark() {
+        when(checkpointRepository.findByStream(customerTableName)).thenReturn(Collections.emptyMap());
+        when(amazonDynamoDB.scan(any(ScanRequest.class)))
+                .thenReturn(new ScanResult().withItems(Collections.singletonList(item("customer1", "1000.0", "PAID"))));
+        DynamoDBTriggerHandler handler = createHandler(true);
+
+        long before = System.currentTimeMillis();
+        handler.pollCustomersTable();
+
+        verify(cohortService).classifyCustomer(any(Customer.class));
+        verify(amazonDynamoDB, never()).query(any(QueryRequest.class));
+        ArgumentCaptor<Map<String, String>> saved = mapCaptor();
+        verify(checkpointRepository).saveAll(eq(customerTableName), saved.capture());
+        long mark = Long.parseLong(saved.getValue().get(DynamoDBTriggerHandler.HIGH_WATER_MARK));
+        assertTrue(mark >= before - 2000 && mark <= System.currentTimeMillis() - 2000);
+        assertEquals(mark, handler.getHighWaterMark());
+    }
+
+    @Test
+    void testIncrementalPoll_QueriesEveryShardOfOnlyTheBucketsAfterHighWaterMark() {
+        long now = System.currentTimeMillis();
+        long mark = now - 150000;
+        when(checkpointRepository.findByStream(customerTableName))
+                .thenReturn(Collections.singletonMap(DynamoDBTriggerHandler.HIGH_WATER_MARK, String.valueOf(mark)));
+        when(amazonDynamoDB.query(any(QueryRequest.class)))
+                .thenReturn(new QueryResult().withItems(Collections.singletonList(item("customer1", "1000.0", "PAID"))))
+                .thenReturn(new QueryResult().withItems(Collections.emptyList()));
+        DynamoDBTriggerHandler handler = createHandler(true);
+
+        handler.pollCustomersTable();
+
+        verify(amazonDynamoDB, never()).scan(any(ScanRequest.class));
+        ArgumentCaptor<QueryRequest> queries = ArgumentCaptor.forClass(QueryRequest.class);
+        verify(amazonDynamoDB, atLeast(6)).query(queries.capture());
+        long firstBucket = CustomerModificationIndex.bucketOf(mark + 1, 60000);
+        for (int i = 0; i < queries.getAllValues().size(); i++) {
+            QueryRequest query = queries.getAllValues().get(i);
+            assertEquals(CustomerModificationIndex.INDEX_NAME, query.getIndexName());
+            assertEquals(CustomerModificationIndex.shardKey(firstBucket + (i / 2) * 60000L, i % 2),
+                    query.getExpressionAttributeValues().get(":shard").getS());
+            assertEquals(String.valueOf(mark + 1), query.getExpressionAttributeValues().get(":from").getN());
+        }
+        assertTrue(queries.getAllValues().size() <= 8);
+
+        verify(cohortService).classifyCustomer(any(Customer.class));
+        verify(checkpointRepository).saveAll(eq(customerTableName), anyMap());
+        assertTrue(handler.getHighWaterMark() > mark);
+    }
+
+    @Test
+    void testIncrementalPoll_KeepsHighWaterMarkWhenQueryFails() {
+        long mark = System.currentTimeMillis() - 30000;
+        when(checkpointRepository.findByStream(customerTableName))
+                .thenReturn(Collections.singletonMap(DynamoDBTriggerHandler.HIGH_WATER_MARK, String.valueOf(mark)));
+        when(amazonDynamoDB.query(any(QueryRequest.class))).thenThrow(new RuntimeException("Test exception"));
+        DynamoDBTriggerHandler handler = createHandler(true);
+
+        assertDoesNotThrow(handler::pollCustomersTable);
+
+        verify(checkpointRepository, never()).saveAll(anyString(), anyMap());
+        assertEquals(mark, handler.getHighWaterMark());
+    }
+
+    @Test
+    void testIncrementalPoll_KeepsHighWaterMarkWhenClassificationFails() {
+        long mark = System.currentTimeMillis() - 30000;
+        when(checkpointRepository.findByStream(customerTableName))
+                .thenReturn(Collections.singletonMap(DynamoDBTriggerHandler.HIGH_WATER_MARK, String.valueOf(mark)));
+        when(amazonDynamoDB.query(any(QueryRequest.class)))
+                .thenReturn(new QueryResult().withItems(Collections.singletonList(item("customer1", "1000.0", "PAID"))))
+                .thenReturn(new QueryResult().withItems(Collections.emptyList()));
+        when(cohortService.classifyCustomer(any(Customer.class))).thenThrow(new IllegalStateException("throttled"));
+        DynamoDBTriggerHandler handler = createHandler(true);
+
+        assertDoesNotThrow(handler::pollCustomersTable);
+
+        verify(cohortService).classifyCustomer(any(Customer.class));
+        verify(checkpointRepository, never()).saveAll(anyString(), anyMap());
+        assertEquals(mark, handler.getHighWaterMark());
+    }
+
+    @Test
+    void testIncrementalPoll_SkipsMalformedItems() {
+        long mark = System.currentTimeMillis() - 30000;
+        when(checkpointRepository.findByStream(customerTableName))
+                .thenReturn(Collections.singletonMap(DynamoDBTriggerHandler.HIGH_WATER_MARK, String.valueOf(mark)));
+        when(amazonDynamoDB.query(any(QueryRequest.class)))
+                .thenReturn(new QueryResult().withItems(Collections.singletonList(item("customer1", "1000.0", "GOLD"))))
+                .thenReturn(new QueryResult().withItems(Collections.emptyList()));
+        DynamoDBTriggerHandler handler = createHandler(true);
+
+        handler.pollCustomersTable();
+
+        verify(cohortService, never()).classifyCustomer(any(Customer.class));
+        verify(checkpointRepository).saveAll(eq(customerTableName), anyMap());
+        assertTrue(handler.getHighWaterMark() > mark);
+    }
+
+    private static Map<String, AttributeValue> item(String customerId, String dailySpend, String userType) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("customerId", new AttributeValue().withS(customerId));
+        item.put("dailySpend", new AttributeValue().withN(dailySpend));
+        item.put("userType", new AttributeValue().withS(userType));
+        return item;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<Map<String, String>> mapCaptor() {
+        return ArgumentCaptor.forClass(Map.class);
+    }
 }
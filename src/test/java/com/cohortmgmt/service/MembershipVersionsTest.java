@@ -0,0 +1,121 @@
+package com.cohortmgmt.service;
+
+import com.cohortmgmt.model.CohortType;
+import com.cohortmgmt.repository.InMemoryMembershipVersionRepository;
+import com.cohortmgmt.repository.MembershipVersionRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MembershipVersionsTest {
+
+    @Test
+    void testTagsChangeOnlyWithTheirOwnWrites() {
+        MembershipVersions versions = new MembershipVersions(new InMemoryMembershipVersionRepository(), 1 << 16, 30000, 1000, () -> 0L);
+        String customerTag = versions.customerETag("customer1");
+        String premiumTag = versions.cohortTypeETag(CohortType.PREMIUM);
+        String fraudTag = versions.cohortTypeETag(CohortType.FRAUD);
+
+        assertTrue(customerTag.startsWith("\"") && customerTag.endsWith("\""));
+        assertEquals(customerTag, versions.customerETag("customer1"));
+
+        versions.changed(Collections.singleton("customer1"), Collections.singleton(CohortType.PREMIUM));
+
+        assertNotEquals(customerTag, versions.customerETag("customer1"));
+        assertNotEquals(premiumTag, versions.cohortTypeETag(CohortType.PREMIUM));
+        assertEquals(fraudTag, versions.cohortTypeETag(CohortType.FRAUD));
+    }
+
+    @Test
+    void testTagsExpireAfterTheValidityPeriod() {
+        AtomicLong clock = new AtomicLong();
+        MembershipVersions versions = new MembershipVersions(new InMemoryMembershipVersionRepository(), 1024, 30000, 1000, clock::get);
+        String tag = versions.customerETag("customer1");
+
+        clock.addAndGet(30000);
+
+        assertNotEquals(tag, versions.customerETag("customer1"));
+    }
+
+    @Test
+    void testWritesThroughOneInstanceChangeTheTagsOfAnother() {
+        MembershipVersionRepository repository = new InMemoryMembershipVersionRepository();
+        AtomicLong clock = new AtomicLong();
+        MembershipVersions first = new MembershipVersions(repository, 1024, 30000, 1000, clock::get);
+        MembershipVersions second = new MembershipVersions(repository, 1024, 30000, 1000, clock::get);
+        String tag = second.customerETag("customer1");
+        assertEquals(first.customerETag("customer1"), tag);
+
+        first.changed(Collections.singleton("customer1"), Collections.singleton(CohortType.PREMIUM));
+        first.flush();
+
+        // The other instance serves its local version until the version is due for a refresh
+        assertEquals(tag, second.customerETag("customer1"));
+        clock.addAndGet(1000);
+        String staleTag = second.customerETag("customer1");
+        second.refresh();
+
+        assertNotEquals(staleTag, second.customerETag("customer1"));
+        assertEquals(first.customerETag("customer1"), second.customerETag("customer1"));
+    }
+
+    @Test
+    void testVersionFailuresAreNotThrown() {
+        MembershipVersionRepository repository = mock(MembershipVersionRepository.class);
+        doThrow(new IllegalStateException("throttled")).when(repository).increment(anyMap());
+        when(repository.getAll(anyCollection())).thenThrow(new IllegalStateException("throttled"));
+        MembershipVersions versions = new MembershipVersions(repository, 1024, 30000, 1000, () -> 0L);
+
+        versions.changed(Collections.singleton("customer1"), Collections.singleton(CohortType.PREMIUM));
+        versions.flush();
+
+        assertNull(versions.customerETag("customer1"));
+    }
+
+    @Test
+    void testIncrementsAreCoalescedAndKeptUntilWritten() {
+        MembershipVersionRepository repository = mock(MembershipVersionRepository.class);
+        doThrow(new IllegalStateException("throttled")).doNothing().when(repository).increment(anyMap());
+        MembershipVersions versions = new MembershipVersions(repository, 1024, 30000, 1000, () -> 0L);
+
+        for (int i = 0; i < 10; i++) {
+            versions.changed(Collections.singleton("customer1"), Collections.singleton(CohortType.PREMIUM));
+        }
+        versions.flush();
+        versions.flush();
+        versions.flush();
+
+        // One failed and one successful write of every key, each adding all ten changes
+        Map<String, Long> expected = new HashMap<>();
+        expected.put("cohortType#PREMIUM", 10L);
+        int hash = "customer1".hashCode();
+        expected.put("customer#" + ((hash ^ (hash >>> 16)) & 1023), 10L);
+        verify(repository, times(2)).increment(expected);
+    }
+
+    @Test
+    void testPollsAreServedWithoutReadingTheRepository() {
+        MembershipVersionRepository repository = spy(new InMemoryMembershipVersionRepository());
+        MembershipVersions versions = new MembershipVersions(repository, 1024, 30000, 1000, () -> 0L);
+
+        for (int i = 0; i < 100; i++) {
+            versions.cohortTypeETag(CohortType.PREMIUM);
+        }
+        versions.refresh();
+
+        verify(repository, times(1)).getAll(anyCollection());
+    }
+}
@@ -0,0 +1,123 @@
+package com.cohortmgmt.service;
+
+import com.cohortmgmt.model.ShardLease;
+import com.cohortmgmt.repository.ShardLeaseRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardLeaseManagerTest {
+
+    private static final String STREAM_ARN = "arn:aws:dynamodb:us-east-1:000000000000:table/Customers/stream/1";
+    private static final long LEASE_MILLIS = 30000;
+
+    private final List<String> shards = Arrays.asList("shard-1", "shard-2", "shard-3", "shard-4");
+    private final InMemoryLeaseRepository repository = new InMemoryLeaseRepository();
+
+    @Test
+    void testInstancesSplitFreeShards() {
+        ShardLeaseManager first = new ShardLeaseManager(repository, true, LEASE_MILLIS, "first");
+        ShardLeaseManager second = new ShardLeaseManager(repository, true, LEASE_MILLIS, "second");
+
+        Set<String> firstShards = first.assign(STREAM_ARN, shards);
+        assertEquals(4, firstShards.size());
+
+        // The second instance evens out the load one lease at a time
+        Set<String> secondShards = second.assign(STREAM_ARN, shards);
+        assertEquals(1, secondShards.size());
+        secondShards = second.assign(STREAM_ARN, shards);
+        assertEquals(2, secondShards.size());
+        assertEquals(secondShards, second.assign(STREAM_ARN, shards));
+
+        Set<String> remaining = first.assign(STREAM_ARN, shards);
+        assertEquals(2, remaining.size());
+        remaining.retainAll(secondShards);
+        assertTrue(remaining.isEmpty());
+        assertFalse(first.renew(STREAM_ARN, secondShards.iterator().next()));
+    }
+
+    @Test
+    void testExpiredAndReleasedLeasesAreClaimed() {
+        ShardLeaseManager first = new ShardLeaseManager(repository, true, LEASE_MILLIS, "first");
+        ShardLeaseManager second = new ShardLeaseManager(repository, true, LEASE_MILLIS, "second");
+        repository.put("shard-1", "dead", System.currentTimeMillis() - 1);
+        repository.put("shard-2", "dead", System.currentTimeMillis() - 1);
+        first.assign(STREAM_ARN, Arrays.asList("shard-3", "shard-4"));
+        first.release(STREAM_ARN, "shard-4");
+
+        Set<String> claimed = second.assign(STREAM_ARN, shards);
+
+        // Only the first instance holds a live lease, so the second one's share is half of the shards
+        assertEquals(2, claimed.size());
+        assertFalse(claimed.contains("shard-3"));
+    }
+
+    @Test
+    void testDisabledLeasesReadEveryShard() {
+        ShardLeaseManager manager = new ShardLeaseManager(repository, false, LEASE_MILLIS, "only");
+
+        assertEquals(new HashSet<>(shards), manager.assign(STREAM_ARN, shards));
+        assertTrue(manager.renew(STREAM_ARN, "shard-1"));
+        assertTrue(repository.leases.isEmpty());
+    }
+
+    /**
+     * Keeps leases in memory with the same conditions as the DynamoDB repository.
+     */
+    private static class InMemoryLeaseRepository implements ShardLeaseRepository {
+
+        private final Map<String, ShardLease> leases = new HashMap<>();
+
+        void put(String shardId, String owner, long expiresAt) {
+            leases.put(shardId, new ShardLease(shardId, owner, expiresAt, 1));
+        }
+
+        @Override
+        public List<ShardLease> findByStream(String streamArn) {
+            List<ShardLease> copies = new ArrayList<>();
+            for (ShardLease lease : leases.values()) {
+                copies.add(new ShardLease(lease.getShardId(), lease.getOwner(), lease.getExpiresAt(),
+                        lease.getLeaseCounter()));
+            }
+            return copies;
+        }
+
+        @Override
+        public boolean tryAcquire(String streamArn, String shardId, String owner, ShardLease observed, long leaseMillis) {
+            ShardLease current = leases.get(shardId);
+            if (observed == null ? current != null : current == null || current.getLeaseCounter() != observed.getLeaseCounter()) {
+                return false;
+            }
+            long counter = current == null ? 1 : current.getLeaseCounter() + 1;
+            leases.put(shardId, new ShardLease(shardId, owner, System.currentTimeMillis() + leaseMillis, counter));
+            return true;
+        }
+
+        @Override
+        public boolean renew(String streamArn, String shardId, String owner, long leaseMillis) {
+            ShardLease current = leases.get(shardId);
+            if (current == null || !owner.equals(current.getOwner())) {
+                return false;
+            }
+            leases.put(shardId, new ShardLease(shardId, owner, System.currentTimeMillis() + leaseMillis,
+                    current.getLeaseCounter() + 1));
+            return true;
+        }
+
+        @Override
+        public void release(String streamArn, String shardId, String owner) {
+            ShardLease current = leases.get(shardId);
+            if (current != null && owner.equals(current.getOwner())) {
+                leases.put(shardId, new ShardLease(shardId, null, 0, current.getLeaseCounter() + 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.cohortmgmt.service;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.GetQueueUrlResult;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+import com.cohortmgmt.model.Customer;
+import com.cohortmgmt.model.IngestSummary;
+import com.cohortmgmt.model.UserType;
+import com.cohortmgmt.service.codec.CustomerMessageCodec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class SqsBatchPublisherTest {
+
+    @Mock
+    private AmazonSQS amazonSQS;
+
+    private SqsBatchPublisher publisher;
+
+    private final List<SendMessageBatchRequest> sentBatches = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(amazonSQS.getQueueUrl(anyString())).thenReturn(new GetQueueUrlResult().withQueueUrl("queue-url"));
+        publisher = new SqsBatchPublisher(amazonSQS, "customer-data-queue", 2, 4, 1000, 262144, 5000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        publisher.shutdown();
+    }
+
+    @Test
+    void testPacksRecordsIntoMessagesAndBatches() throws Exception {
+        when(amazonSQS.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> {
+            SendMessageBatchRequest request = invocation.getArgument(0);
+            sentBatches.add(request);
+            return succeedAll(request.getEntries());
+        });
+
+        SqsBatchPublisher.Session session = publisher.openSession();
+        for (int i = 0; i < 3000; i++) {
+            session.add(new Customer("customer" + i, i * 1.5, i % 2 == 0 ? UserType.PAID : UserType.FREE));
+        }
+        IngestSummary summary = session.finish();
+
+        assertEquals(3000, summary.getRecords());
+        assertEquals(0, summary.getFailedRecords());
+        assertEquals(sentBatches.size(), summary.getBatches());
+
+        CustomerMessageCodec codec = new CustomerMessageCodec();
+        int decodedRecords = 0;
+        int messages = 0;
+        for (SendMessageBatchRequest batch : sentBatches) {
+            assertTrue(batch.getEntries().size() <= 10);
+            for (SendMessageBatchRequestEntry entry : batch.getEntries()) {
+                assertTrue(entry.getMessageBody().length() <= 1000);
+                Message message = new Message().withBody(entry.getMessageBody())
+                        .withMessageAttributes(entry.getMessageAttributes());
+                decodedRecords += codec.decode(message).size();
+                messages++;
+            }
+        }
+        assertEquals(3000, decodedRecords);
+        assertEquals(messages, summary.getMessages());
+        // Many records per message, and full batches of 10 messages
+        assertTrue(summary.getMessages() < 100);
+        assertTrue(summary.getBatches() <= summary.getMessages() / 10 + 1);
+    }
+
+    @Test
+    void testRetriesEntriesFailedByServer() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        when(amazonSQS.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> {
+            SendMessageBatchRequest request = invocation.getArgument(0);
+            if (calls.incrementAndGet() == 1) {
+                return new SendMessageBatchResult().withFailed(new BatchResultErrorEntry()
+                        .withId(request.getEntries().get(0).getId())
+                        .withSenderFault(false)
+                        .withCode("InternalError"));
+            }
+            return succeedAll(request.getEntries());
+        });
+
+        SqsBatchPublisher.Session session = publisher.openSession();
+        session.add(new Customer("customer1", 6000.0, UserType.PAID));
+        IngestSummary summary = session.finish();
+
+        assertEquals(0, summary.getFailedRecords());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void testCountsRecordsRejectedBySender() throws Exception {
+        when(amazonSQS.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> {
+            SendMessageBatchRequest request = invocation.getArgument(0);
+            return new SendMessageBatchResult().withFailed(new BatchResultErrorEntry()
+                    .withId(request.getEntries().get(0).getId())
+                    .withSenderFault(true)
+                    .withCode("InvalidMessageContents"));
+        });
+
+        SqsBatchPublisher.Session session = publisher.openSession();
+        session.add(new Customer("customer1", 6000.0, UserType.PAID));
+        session.add(new Customer("customer2", 10.0, UserType.FREE));
+        IngestSummary summary = session.finish();
+
+        assertEquals(2, summary.getFailedRecords());
+        verify(amazonSQS, times(1)).sendMessageBatch(any(SendMessageBatchRequest.class));
+    }
+
+    @Test
+    void testAbortDropsBufferedRecordsWithoutSending() throws Exception {
+        SqsBatchPublisher.Session session = publisher.openSession();
+        session.add(new Customer("customer1", 6000.0, UserType.PAID));
+        session.add(new Customer("customer2", 10.0, UserType.FREE));
+
+        assertEquals(2, session.abort());
+        verify(amazonSQS, never()).sendMessageBatch(any(SendMessageBatchRequest.class));
+    }
+
+    private static SendMessageBatchResult succeedAll(List<SendMessageBatchRequestEntry> entries) {
+        SendMessageBatchResult result = new SendMessageBatchResult();
+        for (SendMessageBatchRequestEntry entry : entries) {
+            result.withSuccessful(new SendMessageBatchResultEntry().withId(entry.getId()));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,141 @@
+package com.cohortmgmt.service.codec;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.cohortmgmt.model.Customer;
+import com.cohortmgmt.model.UserType;
+import com.fasterxml.jackson.core.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CustomerMessageCodecTest {
+
+    private final CustomerMessageCodec messageCodec = new CustomerMessageCodec();
+    private final CustomerBinaryCodec binaryCodec = new CustomerBinaryCodec();
+    private final CustomerJsonDecoder jsonDecoder = new CustomerJsonDecoder();
+
+    @Test
+    void testDecodeJsonMessage() throws Exception {
+        Message message = new Message()
+                .withBody("{\"customerId\":\"customer1\",\"dailySpend\":6000.5,\"userType\":\"PAID\"}");
+
+        List<Customer> customers = messageCodec.decode(message);
+
+        assertEquals(1, customers.size());
+        assertCustomer(customers.get(0), "customer1", 6000.5, UserType.PAID);
+    }
+
+    @Test
+    void testDecodeJsonSkipsUnknownFieldsAndAcceptsStringNumbers() throws Exception {
+        Customer customer = jsonDecoder.decode(
+                "{\"region\":{\"code\":\"EU\",\"tags\":[1,2]},\"userType\":\"FREE\",\"dailySpend\":\"12.5\",\"customerId\":\"c2\"}");
+
+        assertCustomer(customer, "c2", 12.5, UserType.FREE);
+    }
+
+    @Test
+    void testDecodeJsonMissingFieldFails() {
+        assertThrows(IOException.class, () -> jsonDecoder.decode("{\"customerId\":\"c1\",\"userType\":\"PAID\"}"));
+    }
+
+    @Test
+    void testDecodeJsonRejectsNonFiniteSpend() {
+        assertThrows(IOException.class, () -> jsonDecoder.decode(
+                "{\"customerId\":\"c1\",\"dailySpend\":\"NaN\",\"userType\":\"PAID\"}"));
+        assertThrows(IOException.class, () -> jsonDecoder.decode(
+                "{\"customerId\":\"c1\",\"dailySpend\":\"Infinity\",\"userType\":\"PAID\"}"));
+    }
+
+    @Test
+    void testDecodeNdjsonStream() throws Exception {
+        String ndjson = "{\"customerId\":\"a\",\"dailySpend\":1,\"userType\":\"PAID\"}\n"
+                + "{\"customerId\":\"b\",\"dailySpend\":2,\"userType\":\"FREE\"}\n";
+
+        List<Customer> customers = new ArrayList<>();
+        try (JsonParser parser = jsonDecoder.createParser(
+                new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)))) {
+            Customer customer;
+            while ((customer = jsonDecoder.next(parser)) != null) {
+                customers.add(customer);
+            }
+        }
+
+        assertEquals(2, customers.size());
+        assertCustomer(customers.get(1), "b", 2.0, UserType.FREE);
+    }
+
+    @Test
+    void testBinaryBatchMessageRoundTrip() throws Exception {
+        List<Customer> original = Arrays.asList(
+                new Customer("customer1", 6000.0, UserType.PAID),
+                new Customer("kunde-ü-中", 3500.25, UserType.FREE));
+
+        Message message = new Message()
+                .withBody(messageCodec.encodeBatchBody(original))
+                .addMessageAttributesEntry(CustomerMessageCodec.FORMAT_ATTRIBUTE,
+                        CustomerMessageCodec.binaryBatchAttribute());
+
+        List<Customer> decoded = messageCodec.decode(message);
+
+        assertEquals(2, decoded.size());
+        assertCustomer(decoded.get(0), "customer1", 6000.0, UserType.PAID);
+        assertCustomer(decoded.get(1), "kunde-ü-中", 3500.25, UserType.FREE);
+    }
+
+    @Test
+    void testEncodedSizeMatchesEncoding() {
+        Customer customer = new Customer("kunde-ü-中-😀", 1.0, UserType.PAID);
+
+        byte[] frame = binaryCodec.encode(Arrays.asList(customer, customer));
+
+        // Header + one-byte count + two records
+        assertEquals(CustomerBinaryCodec.HEADER_SIZE + 1 + 2 * binaryCodec.encodedSize(customer), frame.length);
+    }
+
+    @Test
+    void testStreamingReaderReadsConcatenatedFrames() throws Exception {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        payload.write(binaryCodec.encode(Arrays.asList(new Customer("a", 1.0, UserType.PAID))));
+        payload.write(binaryCodec.encode(Arrays.asList(
+                new Customer("b", 2.0, UserType.FREE), new Customer("c", 3.0, UserType.PAID))));
+
+        CustomerBinaryCodec.Reader reader = binaryCodec.reader(new ByteArrayInputStream(payload.toByteArray()));
+        List<String> ids = new ArrayList<>();
+        Customer customer;
+        while ((customer = reader.next()) != null) {
+            ids.add(customer.getCustomerId());
+        }
+
+        assertEquals(Arrays.asList("a", "b", "c"), ids);
+    }
+
+    @Test
+    void testDecodeRejectsCorruptBinary() {
+        byte[] frame = binaryCodec.encode(Arrays.asList(new Customer("a", 1.0, UserType.PAID)));
+
+        assertThrows(IOException.class, () -> binaryCodec.decode(Arrays.copyOf(frame, frame.length - 3)));
+        assertThrows(IOException.class, () -> binaryCodec.decode(new byte[]{'X', 'B', 1, 0}));
+    }
+
+    @Test
+    void testDecodeRejectsNonFiniteBinarySpend() {
+        byte[] frame = binaryCodec.encode(Arrays.asList(new Customer("a", Double.NaN, UserType.PAID)));
+
+        assertThrows(IOException.class, () -> binaryCodec.decode(frame));
+        assertThrows(IOException.class, () -> binaryCodec.reader(new ByteArrayInputStream(frame)).next());
+    }
+
+    private static void assertCustomer(Customer customer, String id, double dailySpend, UserType userType) {
+        assertEquals(id, customer.getCustomerId());
+        assertEquals(dailySpend, customer.getDailySpend());
+        assertEquals(userType, customer.getUserType());
+    }
+}
@@ -0,0 +1,118 @@
+package com.cohortmgmt.service.concurrency;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final long MILLIS = 1_000_000L;
+
+    @Test
+    void testThrottleBacksOffMultiplicatively() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(16, 1, 64, 0.5, 2.0, 1000);
+
+        limiter.onThrottle();
+
+        assertEquals(8, limiter.getLimit());
+        assertEquals(1, limiter.getTotalThrottles());
+    }
+
+    @Test
+    void testBurstOfThrottlesBacksOffOncePerWindow() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(16, 1, 64, 0.5, 2.0, 60000);
+
+        for (int i = 0; i < 10; i++) {
+            limiter.onThrottle();
+        }
+
+        assertEquals(8, limiter.getLimit());
+        assertEquals(10, limiter.getTotalThrottles());
+    }
+
+    @Test
+    void testLimitNeverDropsBelowMinimum() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 2, 64, 0.5, 2.0, 0);
+
+        for (int i = 0; i < 5; i++) {
+            limiter.onThrottle();
+        }
+
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    void testHealthySaturatedWindowIncreasesAdditively() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 64, 0.5, 2.0, 0);
+
+        // Use the whole limit, then report a healthy latency
+        limiter.acquire();
+        limiter.acquire();
+        limiter.onLatencySample(5 * MILLIS);
+
+        assertEquals(3, limiter.getLimit());
+    }
+
+    @Test
+    void testIdleWindowDoesNotIncrease() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 64, 0.5, 2.0, 0);
+
+        limiter.onLatencySample(5 * MILLIS);
+
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    void testLatencySpikeBacksOff() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 1, 64, 0.5, 2.0, 0);
+
+        // Establish a baseline, then spike well beyond the tolerance
+        limiter.onLatencySample(5 * MILLIS);
+        limiter.onLatencySample(50 * MILLIS);
+
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    void testSustainedLatencyShiftBecomesTheNewBaseline() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 1, 64, 0.5, 2.0, 0);
+
+        // The backend gets slower for good: the limit backs off at first
+        limiter.onLatencySample(5 * MILLIS);
+        for (int i = 0; i < 100; i++) {
+            limiter.onLatencySample(20 * MILLIS);
+        }
+        assertEquals(1, limiter.getLimit());
+
+        // Once the baseline has caught up, a saturated window at the new latency grows the limit again
+        limiter.acquire();
+        limiter.onLatencySample(20 * MILLIS);
+
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    void testAcquireBlocksAtLimitUntilRelease() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 0.5, 2.0, 1000);
+        limiter.acquire();
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                limiter.acquire();
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        limiter.release();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        assertEquals(1, limiter.getInFlight());
+    }
+}
@@ -0,0 +1,101 @@
+package com.cohortmgmt.service.concurrency;
+
+import com.cohortmgmt.service.concurrency.CapacityGovernor.Kind;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CapacityGovernorTest {
+
+    @Test
+    void testBackgroundWorkLeavesReserveForForeground() throws Exception {
+        CapacityGovernor governor = new CapacityGovernor(100, 100, 0.5, 1);
+
+        // Background work may take the bucket down to the reserve, but no further
+        CapacityGovernor.callAsBackground(() -> {
+            try {
+                governor.acquire("Customers", null, Kind.READ, 50);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return null;
+        });
+        CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> CapacityGovernor.runAsBackground(() -> {
+            try {
+                governor.acquire("Customers", null, Kind.READ, 50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertThrows(TimeoutException.class, () -> blocked.get(100, TimeUnit.MILLISECONDS));
+
+        // Foreground work still gets the reserve immediately
+        long start = System.nanoTime();
+        governor.acquire("Customers", null, Kind.READ, 40);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 50);
+
+        blocked.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testTablesIndexesAndKindsHaveSeparateBudgets() throws Exception {
+        CapacityGovernor governor = new CapacityGovernor(10, 20, 0.5, 1);
+
+        governor.acquire("Cohorts", null, Kind.WRITE, 20);
+
+        assertTrue(governor.getAvailable("Cohorts", null, Kind.WRITE) < 1);
+        assertEquals(10, governor.getAvailable("Cohorts", null, Kind.READ), 0.5);
+        assertEquals(20, governor.getAvailable("Cohorts", "CohortTypeIndex", Kind.WRITE), 0.5);
+        assertEquals(20, governor.getAvailable("Customers", null, Kind.WRITE), 0.5);
+    }
+
+    @Test
+    void testChargeAdjustsToActualConsumption() {
+        CapacityGovernor governor = new CapacityGovernor(100, 100, 0.5, 1);
+
+        governor.charge("Customers", null, Kind.READ, 130);
+
+        assertTrue(governor.getAvailable("Customers", null, Kind.READ) < 0);
+        assertFalse(CapacityGovernor.isBackground());
+    }
+
+    @Test
+    void testBackgroundOverrunBecomesDebtInsteadOfDrainingTheReserve() throws Exception {
+        CapacityGovernor governor = new CapacityGovernor(10, 10, 0.5, 1);
+
+        // A background scan page estimated at 1 unit actually consumes 128
+        CapacityGovernor.runAsBackground(() -> {
+            try {
+                governor.acquire("Customers", null, Kind.READ, 1);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            governor.charge("Customers", null, Kind.READ, -1);
+            governor.charge("Customers", null, Kind.READ, 128);
+        });
+
+        // The bucket keeps its reserve for foreground reads and the background work owes the rest
+        assertEquals(5, governor.getAvailable("Customers", null, Kind.READ), 0.5);
+        assertEquals(123, governor.getBackgroundDebt("Customers", null, Kind.READ), 0.5);
+        long start = System.nanoTime();
+        governor.acquire("Customers", null, Kind.READ, 4);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 50);
+    }
+
+    @Test
+    void testBackgroundRefundPaysOffDebtFirst() {
+        CapacityGovernor governor = new CapacityGovernor(10, 10, 0.5, 1);
+
+        CapacityGovernor.runAsBackground(() -> {
+            governor.charge("Customers", null, Kind.READ, 20);
+            governor.charge("Customers", null, Kind.READ, -10);
+        });
+
+        assertEquals(5, governor.getBackgroundDebt("Customers", null, Kind.READ), 0.5);
+        assertEquals(5, governor.getAvailable("Customers", null, Kind.READ), 0.5);
+    }
+}
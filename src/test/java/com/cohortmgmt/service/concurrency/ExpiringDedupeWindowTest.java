@@ -0,0 +1,108 @@
+package com.cohortmgmt.service.concurrency;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpiringDedupeWindowTest {
+
+    @Test
+    void testKeysAreRememberedUntilTheWindowPasses() {
+        AtomicLong clock = new AtomicLong(1_000_000);
+        ExpiringDedupeWindow window = new ExpiringDedupeWindow(60000, 1000, 1024, clock::get);
+
+        assertTrue(window.markIfAbsent("customer1"));
+        assertFalse(window.markIfAbsent("customer1"));
+        clock.addAndGet(30000);
+        assertTrue(window.markIfAbsent("customer2"));
+        assertTrue(window.contains("customer1"));
+
+        clock.addAndGet(30000);
+        assertFalse(window.contains("customer1"));
+        assertTrue(window.contains("customer2"));
+        assertEquals(1, window.size());
+
+        assertTrue(window.markIfAbsent("customer1"));
+        clock.addAndGet(120000);
+        assertEquals(0, window.size());
+    }
+
+    @Test
+    void testFullWindowDropsOldestKeysFirst() {
+        AtomicLong clock = new AtomicLong();
+        ExpiringDedupeWindow window = new ExpiringDedupeWindow(60000, 1000, 16 * 64, clock::get);
+
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(window.markIfAbsent("customer" + i));
+            clock.incrementAndGet();
+        }
+
+        assertTrue(window.size() <= 16 * 64);
+        assertTrue(window.getEvictions() >= 100_000 - 16 * 64);
+        assertTrue(window.contains("customer99999"));
+        assertFalse(window.contains("customer0"));
+    }
+
+    @Test
+    void testRemovalKeepsRemainingKeysReachable() {
+        AtomicLong clock = new AtomicLong();
+        ExpiringDedupeWindow window = new ExpiringDedupeWindow(10000, 1000, 16 * 256, clock::get);
+
+        // Every tick adds keys and expires the ones added ten ticks earlier, which exercises
+        // removal from the middle of probe sequences
+        for (int tick = 0; tick < 50; tick++) {
+            for (int i = 0; i < 50; i++) {
+                window.markIfAbsent("customer" + (tick * 50 + i));
+            }
+            clock.addAndGet(1000);
+            for (int i = 0; i < 50; i++) {
+                assertTrue(window.contains("customer" + (tick * 50 + i)));
+                if (tick >= 8) {
+                    assertTrue(window.contains("customer" + ((tick - 8) * 50 + i)));
+                }
+                if (tick >= 9) {
+                    assertFalse(window.contains("customer" + ((tick - 9) * 50 + i)));
+                }
+            }
+        }
+        assertEquals(9 * 50, window.size());
+    }
+
+    @Test
+    void testConcurrentMarksAdmitEveryKeyOnce() throws Exception {
+        ExpiringDedupeWindow window = new ExpiringDedupeWindow(60000, 1000, 1 << 16);
+        AtomicInteger admitted = new AtomicInteger();
+
+        CompletableFuture<?>[] workers = new CompletableFuture[4];
+        for (int w = 0; w < workers.length; w++) {
+            workers[w] = CompletableFuture.runAsync(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    if (window.markIfAbsent("customer" + i)) {
+                        admitted.incrementAndGet();
+                    }
+                }
+            });
+        }
+        CompletableFuture.allOf(workers).get();
+
+        assertEquals(10_000, admitted.get());
+        assertEquals(10_000, window.size());
+    }
+
+    @Test
+    void testMemoryStaysBoundedHoweverManyDistinctKeys() {
+        AtomicLong clock = new AtomicLong();
+        ExpiringDedupeWindow window = new ExpiringDedupeWindow(60000, 1000, 16 * 64, clock::get);
+
+        for (int i = 0; i < 1_000_000; i++) {
+            window.markIfAbsent("customer-" + i);
+        }
+
+        assertTrue(window.size() <= 16 * 64);
+        assertTrue(window.contains("customer-999999"));
+    }
+}
@@ -0,0 +1,82 @@
+package com.cohortmgmt.service.concurrency;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GradientConcurrencyLimiterTest {
+
+    private static final long MILLIS = 1_000_000L;
+
+    @Test
+    void testRequestsBeyondTheLimitAreShed() {
+        GradientConcurrencyLimiter limiter = new GradientConcurrencyLimiter("test", 2, 1, 10, 1.5, 0.2, 1000);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(1, limiter.getRejected());
+
+        limiter.release(MILLIS);
+        assertTrue(limiter.tryAcquire());
+        assertEquals(2, limiter.getInFlight());
+    }
+
+    @Test
+    void testLimitGrowsWhileLatencyStaysAtNoLoad() {
+        AtomicLong clock = new AtomicLong();
+        GradientConcurrencyLimiter limiter = new GradientConcurrencyLimiter("test", 10, 1, 100, 1.5, 1.0, 1000, clock::get);
+
+        runWindow(limiter, clock, 10, 10 * MILLIS);
+
+        assertEquals(10 * MILLIS, limiter.getNoLoadLatencyNanos());
+        assertEquals(13, limiter.getLimit());
+    }
+
+    @Test
+    void testLimitShrinksWhenLatencyRises() {
+        AtomicLong clock = new AtomicLong();
+        GradientConcurrencyLimiter limiter = new GradientConcurrencyLimiter("test", 40, 8, 100, 1.5, 1.0, 1000, clock::get);
+        runWindow(limiter, clock, 40, 10 * MILLIS);
+        int learned = limiter.getLimit();
+
+        runWindow(limiter, clock, learned, 40 * MILLIS);
+        assertTrue(limiter.getLimit() < learned);
+
+        for (int i = 0; i < 5; i++) {
+            runWindow(limiter, clock, limiter.getLimit(), 200 * MILLIS);
+        }
+        assertEquals(8, limiter.getLimit());
+    }
+
+    @Test
+    void testLimitDoesNotGrowWhenItIsNotReached() {
+        AtomicLong clock = new AtomicLong();
+        GradientConcurrencyLimiter limiter = new GradientConcurrencyLimiter("test", 10, 1, 100, 1.5, 1.0, 1000, clock::get);
+
+        for (int i = 0; i < 5; i++) {
+            runWindow(limiter, clock, 2, 10 * MILLIS);
+        }
+
+        assertEquals(10, limiter.getLimit());
+    }
+
+    /**
+     * Holds the given number of permits at once and releases them with the given latency, then closes the window
+     * with one more request.
+     */
+    private static void runWindow(GradientConcurrencyLimiter limiter, AtomicLong clock, int concurrency,
+            long latencyNanos) {
+        for (int i = 0; i < concurrency; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        for (int i = 0; i < concurrency; i++) {
+            limiter.release(latencyNanos);
+        }
+        clock.addAndGet(1000 * MILLIS);
+        assertTrue(limiter.tryAcquire());
+        limiter.release(latencyNanos);
+    }
+}
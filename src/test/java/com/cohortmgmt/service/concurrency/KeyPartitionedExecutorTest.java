@@ -0,0 +1,154 @@
+package com.cohortmgmt.service.concurrency;
+
+import com.cohortmgmt.model.LaneStats;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyPartitionedExecutorTest {
+
+    private KeyPartitionedExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void testWorkForOneKeyRunsInSubmissionOrder() throws Exception {
+        executor = new KeyPartitionedExecutor(4, 1024);
+        Map<String, List<Integer>> seen = new ConcurrentHashMap<>();
+
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            int sequence = i;
+            String key = "customer" + (i % 10);
+            results.add(executor.execute(key, () ->
+                    seen.computeIfAbsent(key, k -> Collections.synchronizedList(new ArrayList<>())).add(sequence)));
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+        for (List<Integer> sequences : seen.values()) {
+            List<Integer> sorted = new ArrayList<>(sequences);
+            Collections.sort(sorted);
+            assertEquals(sorted, sequences);
+        }
+        assertEquals(10, seen.size());
+    }
+
+    @Test
+    void testDifferentLanesRunInParallel() throws Exception {
+        executor = new KeyPartitionedExecutor(2, 16);
+        String first = "a";
+        String second = keyOnOtherLane(first);
+        CountDownLatch bothRunning = new CountDownLatch(2);
+
+        CompletableFuture<Void> a = executor.execute(first, () -> awaitQuietly(bothRunning));
+        CompletableFuture<Void> b = executor.execute(second, () -> awaitQuietly(bothRunning));
+
+        // Each task waits for the other, which only works if they run at the same time
+        CompletableFuture.allOf(a, b).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testFullLaneBlocksSubmitter() throws Exception {
+        executor = new KeyPartitionedExecutor(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute("k", () -> waitFor(release));
+        // Wait until the lane has taken the first task, so the next one fills the queue
+        while (executor.getLaneStats().get(0).getQueueDepth() > 0) {
+            Thread.sleep(1);
+        }
+        executor.execute("k", () -> { });
+
+        CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> {
+            try {
+                executor.execute("k", () -> { });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertThrows(TimeoutException.class, () -> blocked.get(100, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        blocked.get(5, TimeUnit.SECONDS);
+        LaneStats stats = executor.getLaneStats().get(0);
+        assertEquals(1, stats.getBlockedSubmits());
+        assertEquals(1, stats.getQueueCapacity());
+    }
+
+    @Test
+    void testFailedTaskCompletesFutureExceptionallyAndIsCounted() throws Exception {
+        executor = new KeyPartitionedExecutor(1, 16);
+
+        CompletableFuture<Void> failed = executor.execute("k", () -> {
+            throw new IllegalStateException("boom");
+        });
+        CompletableFuture<Integer> next = executor.submit("k", () -> 42);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        assertEquals(42, next.get(5, TimeUnit.SECONDS));
+        assertEquals(1, executor.getLaneStats().get(0).getFailed());
+    }
+
+    @Test
+    void testWorkKeepsTheCapacityPriorityOfItsSubmitter() throws Exception {
+        executor = new KeyPartitionedExecutor(1, 16);
+
+        CompletableFuture<Boolean> foreground = executor.submit("k", CapacityGovernor::isBackground);
+        CompletableFuture<Boolean> background = CapacityGovernor.callAsBackground(() -> {
+            try {
+                return executor.submit("k", CapacityGovernor::isBackground);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        CompletableFuture<Boolean> after = executor.submit("k", CapacityGovernor::isBackground);
+
+        assertFalse(foreground.get(5, TimeUnit.SECONDS));
+        assertTrue(background.get(5, TimeUnit.SECONDS));
+        assertFalse(after.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testLanesDefaultToTheMaximumConcurrency() {
+        executor = new KeyPartitionedExecutor(0, 16, 64);
+
+        assertEquals(Math.max(64, Runtime.getRuntime().availableProcessors()), executor.getLaneCount());
+    }
+
+    private String keyOnOtherLane(String key) {
+        int lane = executor.laneIndex(key);
+        for (int i = 0; ; i++) {
+            if (executor.laneIndex("key" + i) != lane) {
+                return "key" + i;
+            }
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        latch.countDown();
+        waitFor(latch);
+    }
+
+    private static void waitFor(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
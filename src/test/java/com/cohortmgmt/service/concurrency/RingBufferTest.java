@@ -0,0 +1,71 @@
+package com.cohortmgmt.service.concurrency;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RingBufferTest {
+
+    @Test
+    void testCapacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(8, new RingBuffer<Integer>(5).capacity());
+        assertEquals(8, new RingBuffer<Integer>(8).capacity());
+        assertThrows(IllegalArgumentException.class, () -> new RingBuffer<Integer>(0));
+    }
+
+    @Test
+    void testDrainTakesItemsInOrderUpToMax() throws Exception {
+        RingBuffer<Integer> ring = new RingBuffer<>(4);
+        for (int i = 0; i < 3; i++) {
+            ring.put(i);
+        }
+
+        List<Integer> batch = new ArrayList<>();
+        assertEquals(2, ring.drainTo(batch, 2, 0));
+        assertEquals(1, ring.drainTo(batch, 2, 0));
+        assertEquals(Arrays.asList(0, 1, 2), batch);
+        assertEquals(0, ring.size());
+        assertEquals(3, ring.getPublished());
+    }
+
+    @Test
+    void testPollTakesWhatIsAvailableWithoutWaiting() throws Exception {
+        RingBuffer<Integer> ring = new RingBuffer<>(4);
+        List<Integer> batch = new ArrayList<>();
+        assertEquals(0, ring.poll(batch, 2));
+
+        ring.put(0);
+        assertEquals(1, ring.poll(batch, 2));
+        assertEquals(Arrays.asList(0), batch);
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    void testFullRingBlocksPublisherUntilDrained() throws Exception {
+        RingBuffer<Integer> ring = new RingBuffer<>(2);
+        ring.put(1);
+        ring.put(2);
+
+        CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> {
+            try {
+                ring.put(3);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Thread.sleep(100);
+        assertFalse(blocked.isDone());
+
+        List<Integer> batch = new ArrayList<>();
+        ring.drainTo(batch, 1, 0);
+        blocked.get(5, TimeUnit.SECONDS);
+        assertEquals(1, ring.getPublisherWaits());
+        assertEquals(2, ring.size());
+    }
+}
@@ -0,0 +1,120 @@
+package com.cohortmgmt.service.concurrency;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    @Test
+    void testConcurrentCallsShareOneLoad() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> flight.execute("cohort", () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                await(release);
+                return "members";
+            }), executor);
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+            List<CompletableFuture<String>> followers = new ArrayList<>();
+            for (int i = 0; i < 7; i++) {
+                followers.add(CompletableFuture.supplyAsync(() -> flight.execute("cohort", () -> {
+                    loads.incrementAndGet();
+                    return "other";
+                }), executor));
+            }
+            while (flight.getShared() < 7) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            assertEquals("members", first.get(5, TimeUnit.SECONDS));
+            for (CompletableFuture<String> follower : followers) {
+                assertEquals("members", follower.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+            assertEquals(1, flight.getLoads());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testCompletedLoadsAreNotCached() {
+        SingleFlight<String, Integer> flight = new SingleFlight<>();
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals(1, flight.execute("cohort", loads::incrementAndGet));
+        assertEquals(2, flight.execute("cohort", loads::incrementAndGet));
+        assertEquals(0, flight.getShared());
+    }
+
+    @Test
+    void testFailureReachesEveryWaiter() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> flight.execute("cohort", () -> {
+            loading.countDown();
+            await(release);
+            throw new IllegalStateException("query failed");
+        }));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> follower = CompletableFuture.supplyAsync(() -> flight.execute("cohort", () -> "other"));
+        while (flight.getShared() < 1) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        Exception e = assertThrows(Exception.class, () -> follower.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        assertThrows(Exception.class, () -> first.get(5, TimeUnit.SECONDS));
+        // The failed load is not remembered
+        assertEquals("loaded", flight.execute("cohort", () -> "loaded"));
+    }
+
+    @Test
+    void testForgottenLoadIsNotJoined() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> stale = CompletableFuture.supplyAsync(() -> flight.execute("cohort", () -> {
+            loading.countDown();
+            await(release);
+            return "before write";
+        }));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        flight.forget("cohort");
+
+        assertEquals("after write", flight.execute("cohort", () -> "after write"));
+        release.countDown();
+        assertEquals("before write", stale.get(5, TimeUnit.SECONDS));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.cohortmgmt.service.concurrency;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+    
+    @Test
+    void testTryAcquireFailsWhenEmpty() {
+        TokenBucket bucket = new TokenBucket(0.001, 10);
+        
+        assertTrue(bucket.tryAcquire(10));
+        assertFalse(bucket.tryAcquire(1));
+    }
+    
+    @Test
+    void testAcquireWaitsForDebtToBeRepaid() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1000, 10);
+        
+        long start = System.nanoTime();
+        bucket.acquire(110);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        
+        // 10 tokens were available, the other 100 take 100ms at 1000 tokens per second
+        assertTrue(elapsedMillis >= 90, "waited only " + elapsedMillis + "ms");
+    }
+    
+    @Test
+    void testChargeReturnsTokensUpToCapacity() {
+        TokenBucket bucket = new TokenBucket(0.001, 10);
+        assertTrue(bucket.tryAcquire(4));
+        
+        bucket.charge(-100);
+        
+        assertEquals(10, bucket.getAvailable(), 0.01);
+    }
+    
+    @Test
+    void testAcquireAboveFloorNeverTakesTheBucketBelowTheFloor() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1000, 10);
+        
+        // More than the room above the floor is taken in installments as the bucket refills
+        bucket.acquire(30, 5);
+        
+        assertTrue(bucket.getAvailable() >= 4.9, "available " + bucket.getAvailable());
+    }
+}
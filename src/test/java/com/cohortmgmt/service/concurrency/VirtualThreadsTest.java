@@ -0,0 +1,53 @@
+package com.cohortmgmt.service.concurrency;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class VirtualThreadsTest {
+
+    @AfterEach
+    void tearDown() {
+        VirtualThreads.setEnabled(false);
+    }
+
+    @Test
+    void testAvailabilityFollowsJavaVersion() {
+        assertEquals(Runtime.version().feature() >= 21, VirtualThreads.isAvailable());
+    }
+
+    @Test
+    void testPlatformThreadsWithoutVirtualThreadSupport() {
+        assumeTrue(!VirtualThreads.isAvailable());
+
+        assertFalse(VirtualThreads.setEnabled(true));
+        Thread thread = new NamedThreadFactory("test", true).newThread(() -> { });
+        assertEquals("test-1", thread.getName());
+        assertTrue(thread.isDaemon());
+        assertThrows(UnsupportedOperationException.class, () -> VirtualThreads.newThreadPerTaskExecutor("test"));
+    }
+
+    @Test
+    void testNamedThreadsAreVirtualWhenEnabled() throws Exception {
+        assumeTrue(VirtualThreads.isAvailable());
+
+        assertTrue(VirtualThreads.setEnabled(true));
+        Thread thread = new NamedThreadFactory("test", false).newThread(() -> { });
+        assertEquals("test-1", thread.getName());
+        assertTrue(thread.isDaemon());
+
+        ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("worker");
+        try {
+            Future<String> name = executor.submit(() -> Thread.currentThread().getName());
+            assertTrue(name.get(1, TimeUnit.SECONDS).startsWith("worker-"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
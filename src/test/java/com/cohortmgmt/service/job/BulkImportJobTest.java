@@ -0,0 +1,142 @@
+package com.cohortmgmt.service.job;
+
+import com.cohortmgmt.model.Customer;
+import com.cohortmgmt.repository.CustomerRepository;
+import com.cohortmgmt.service.CohortService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class BulkImportJobTest {
+
+    @Mock
+    private CustomerRepository customerRepository;
+
+    @Mock
+    private CohortService cohortService;
+
+    @TempDir
+    Path tempDir;
+
+    private final Set<String> savedIds = ConcurrentHashMap.newKeySet();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        doAnswer(invocation -> {
+            List<Customer> customers = invocation.getArgument(0);
+            customers.forEach(customer -> savedIds.add(customer.getCustomerId()));
+            return null;
+        }).when(customerRepository).saveAll(anyList());
+        when(cohortService.classifyCustomers(anyList())).thenReturn(Collections.emptyMap());
+    }
+
+    @Test
+    void testSplit_ChunksEndOnLineBoundaries() throws Exception {
+        // Setup
+        Path file = write("data.csv", csv(50));
+
+        // Execute
+        List<BulkImportJob.Chunk> chunks;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            chunks = BulkImportJob.split(channel, 100);
+        }
+
+        // Verify chunks are contiguous, cover the file and end after a newline
+        byte[] bytes = Files.readAllBytes(file);
+        assertTrue(chunks.size() > 1);
+        assertEquals(0, chunks.get(0).start);
+        assertEquals(bytes.length, chunks.get(chunks.size() - 1).end);
+        for (int i = 0; i < chunks.size(); i++) {
+            BulkImportJob.Chunk chunk = chunks.get(i);
+            assertEquals(i, chunk.index);
+            assertEquals('\n', bytes[(int) chunk.end - 1]);
+            if (i > 0) {
+                assertEquals(chunks.get(i - 1).end, chunk.start);
+            }
+        }
+    }
+
+    @Test
+    void testRun_ImportsCsvInParallelChunks() throws Exception {
+        // Setup
+        Path file = write("customers.csv", "customerId,dailySpend,userType\n" + csv(200));
+        BulkImportJob job = new BulkImportJob(customerRepository, cohortService, 4, 256, 25, 100000);
+
+        // Execute
+        BulkImportJob.Result result = job.run(file);
+
+        // Verify
+        assertEquals(200, result.getRecords());
+        assertEquals(0, result.getFailedRecords());
+        assertEquals(200, savedIds.size());
+        assertTrue(result.getChunks() > 1);
+        verify(cohortService, atLeast(result.getChunks())).classifyCustomers(anyList());
+    }
+
+    @Test
+    void testRun_ImportsNdjsonAndSkipsInvalidLines() throws Exception {
+        // Setup
+        String ndjson = "{\"customerId\":\"c1\",\"dailySpend\":6000.0,\"userType\":\"PAID\"}\n"
+                + "not json\n"
+                + "\n"
+                + "{\"customerId\":\"c2\",\"dailySpend\":100.0,\"userType\":\"FREE\"}\r\n";
+        Path file = write("customers.ndjson", ndjson);
+        BulkImportJob job = new BulkImportJob(customerRepository, cohortService, 2, 1024, 25, 100000);
+
+        // Execute
+        BulkImportJob.Result result = job.run(file);
+
+        // Verify
+        assertEquals(2, result.getRecords());
+        assertEquals(1, result.getFailedRecords());
+        assertEquals(Set.of("c1", "c2"), savedIds);
+    }
+
+    @Test
+    void testRun_ResumesFromCheckpoint() throws Exception {
+        // Setup
+        Path file = write("customers.csv", csv(100));
+        BulkImportJob job = new BulkImportJob(customerRepository, cohortService, 2, 128, 25, 100000);
+        BulkImportJob.Result first = job.run(file);
+
+        // Execute - a second run of the same file finds every chunk completed
+        BulkImportJob.Result second = job.run(file);
+
+        // Verify
+        assertEquals(100, first.getRecords());
+        assertEquals(first.getChunks(), first.getChunksProcessed());
+        assertEquals(0, second.getChunksProcessed());
+        assertEquals(0, second.getRecords());
+        assertTrue(Files.exists(tempDir.resolve("customers.csv.checkpoint")));
+    }
+
+    private Path write(String name, String content) throws Exception {
+        return Files.write(tempDir.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String csv(int records) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < records; i++) {
+            builder.append("customer").append(i).append(',').append(i * 10.0).append(',')
+                    .append(i % 2 == 0 ? "PAID" : "FREE").append('\n');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,146 @@
+package com.cohortmgmt.service.job;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.cohortmgmt.model.CustomerChange;
+import com.cohortmgmt.model.ReclassificationState;
+import com.cohortmgmt.model.ReclassificationStatus;
+import com.cohortmgmt.service.CohortService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ReclassificationJobTest {
+
+    private static final int SEGMENTS = 2;
+    private static final int PAGES_PER_SEGMENT = 3;
+    private static final int ITEMS_PER_PAGE = 4;
+
+    @Mock
+    private AmazonDynamoDB amazonDynamoDB;
+
+    @Mock
+    private CohortService cohortService;
+
+    @TempDir
+    Path tempDir;
+
+    private ReclassificationJob job;
+    private final Set<String> classifiedIds = ConcurrentHashMap.newKeySet();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(amazonDynamoDB.describeTable(anyString())).thenReturn(new DescribeTableResult()
+                .withTable(new TableDescription().withItemCount((long) SEGMENTS * PAGES_PER_SEGMENT * ITEMS_PER_PAGE)));
+        when(amazonDynamoDB.scan(any(ScanRequest.class))).thenAnswer(invocation -> page(invocation.getArgument(0)));
+        when(cohortService.reclassifyCustomers(anyList())).thenAnswer(invocation -> {
+            List<CustomerChange> changes = invocation.getArgument(0);
+            changes.forEach(change -> classifiedIds.add(change.getCustomerId()));
+            // One customer of every page moved across a rule boundary
+            return 1;
+        });
+        job = new ReclassificationJob(amazonDynamoDB, cohortService, "Customers", SEGMENTS, ITEMS_PER_PAGE, 100000,
+                tempDir.resolve("reclassification.checkpoint").toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        job.shutdown();
+    }
+
+    @Test
+    void testRun_PagesThroughEverySegment() throws Exception {
+        // Execute
+        job.start();
+        ReclassificationStatus status = job.awaitCompletion();
+
+        // Verify every item of every page of every segment was compared with its stored memberships
+        assertEquals(ReclassificationState.COMPLETED, status.getState());
+        assertEquals(SEGMENTS, status.getCompletedSegments());
+        assertEquals(SEGMENTS * PAGES_PER_SEGMENT * ITEMS_PER_PAGE, status.getScannedItems());
+        assertEquals(SEGMENTS * PAGES_PER_SEGMENT * ITEMS_PER_PAGE, classifiedIds.size());
+        assertEquals(SEGMENTS * PAGES_PER_SEGMENT, status.getReclassifiedItems());
+        assertEquals(0, status.getEtaSeconds());
+        verify(amazonDynamoDB, times(SEGMENTS * PAGES_PER_SEGMENT)).scan(any(ScanRequest.class));
+    }
+
+    @Test
+    void testRun_ResumesFromCheckpointAfterFailure() throws Exception {
+        // Setup - classification fails on the second page of segment 1
+        when(cohortService.reclassifyCustomers(anyList())).thenAnswer(invocation -> {
+            List<CustomerChange> changes = invocation.getArgument(0);
+            if (changes.get(0).getCustomerId().equals("s1-p1-i0") && !classifiedIds.contains("failed-once")) {
+                classifiedIds.add("failed-once");
+                throw new IllegalStateException("DynamoDB unavailable");
+            }
+            changes.forEach(change -> classifiedIds.add(change.getCustomerId()));
+            return 0;
+        });
+        job.start();
+        ReclassificationStatus failed = job.awaitCompletion();
+        assertEquals(ReclassificationState.FAILED, failed.getState());
+        int scansBeforeResume = mockingDetails(amazonDynamoDB).getInvocations().stream()
+                .filter(invocation -> invocation.getMethod().getName().equals("scan"))
+                .mapToInt(invocation -> 1).sum();
+
+        // Execute - resume
+        job.start();
+        ReclassificationStatus status = job.awaitCompletion();
+
+        // Verify only the failed page onwards of segment 1 was scanned again
+        assertEquals(ReclassificationState.COMPLETED, status.getState());
+        assertEquals(SEGMENTS * PAGES_PER_SEGMENT * ITEMS_PER_PAGE, status.getScannedItems());
+        verify(amazonDynamoDB, times(scansBeforeResume + 2)).scan(any(ScanRequest.class));
+    }
+
+    /**
+     * Builds the scan page for a request; keys encode the segment and page as "s<segment>-p<page>-i<item>".
+     */
+    private static ScanResult page(ScanRequest request) {
+        int segment = request.getSegment();
+        int pageNumber = 0;
+        if (request.getExclusiveStartKey() != null) {
+            String lastKey = request.getExclusiveStartKey().get("customerId").getS();
+            pageNumber = Integer.parseInt(lastKey.split("-")[1].substring(1)) + 1;
+        }
+
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        for (int i = 0; i < ITEMS_PER_PAGE; i++) {
+            Map<String, AttributeValue> item = new HashMap<>();
+            item.put("customerId", new AttributeValue("s" + segment + "-p" + pageNumber + "-i" + i));
+            item.put("dailySpend", new AttributeValue().withN("100.0"));
+            item.put("userType", new AttributeValue("PAID"));
+            items.add(item);
+        }
+
+        ScanResult result = new ScanResult().withItems(items);
+        if (pageNumber < PAGES_PER_SEGMENT - 1) {
+            result.setLastEvaluatedKey(Collections.singletonMap("customerId",
+                    items.get(ITEMS_PER_PAGE - 1).get("customerId")));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,181 @@
+package com.cohortmgmt.service.pipeline;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.cohortmgmt.model.CohortType;
+import com.cohortmgmt.model.Customer;
+import com.cohortmgmt.model.StageStats;
+import com.cohortmgmt.model.UserType;
+import com.cohortmgmt.repository.CustomerRepository;
+import com.cohortmgmt.service.CohortService;
+import com.cohortmgmt.service.codec.CustomerMessageCodec;
+import com.cohortmgmt.service.concurrency.AdaptiveConcurrencyLimiter;
+import com.cohortmgmt.service.concurrency.KeyPartitionedExecutor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class IngestionPipelineTest {
+
+    @Mock
+    private CustomerRepository customerRepository;
+
+    @Mock
+    private CohortService cohortService;
+
+    private KeyPartitionedExecutor laneExecutor;
+    private IngestionPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        AdaptiveConcurrencyLimiter concurrencyLimiter = new AdaptiveConcurrencyLimiter(8, 1, 64, 0.5, 2.0, 1000);
+        laneExecutor = new KeyPartitionedExecutor(2, 16);
+        pipeline = new IngestionPipeline(customerRepository, cohortService, concurrencyLimiter, laneExecutor,
+                2, 2, 16, 25);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.shutdown();
+        laneExecutor.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testBatchMessageIsClassifiedAndPersistedWithBatchedWrites() throws Exception {
+        when(cohortService.evaluate(any(Customer.class))).thenAnswer(invocation -> {
+            Customer customer = invocation.getArgument(0);
+            return customer.getDailySpend() > 5000
+                    ? EnumSet.of(CohortType.PREMIUM)
+                    : EnumSet.noneOf(CohortType.class);
+        });
+        List<Customer> customers = Arrays.asList(
+                new Customer("c1", 6000.0, UserType.PAID),
+                new Customer("c2", 100.0, UserType.FREE),
+                new Customer("c3", 7000.0, UserType.PAID));
+
+        pipeline.submit(batchMessage(customers)).get(5, TimeUnit.SECONDS);
+
+        ArgumentCaptor<List<Customer>> saved = ArgumentCaptor.forClass(List.class);
+        verify(customerRepository, atLeastOnce()).saveAll(saved.capture());
+        assertEquals(3, saved.getAllValues().stream().mapToInt(List::size).sum());
+
+        // Customers that match no rule are recorded with no cohort types, so they leave their old cohorts
+        ArgumentCaptor<Map<String, Set<CohortType>>> memberships = ArgumentCaptor.forClass(Map.class);
+        verify(cohortService, atLeastOnce()).recordMemberships(memberships.capture());
+        Map<String, Set<CohortType>> recorded = new HashMap<>();
+        memberships.getAllValues().forEach(recorded::putAll);
+        assertEquals(3, recorded.size());
+        assertEquals(EnumSet.of(CohortType.PREMIUM), recorded.get("c1"));
+        assertEquals(EnumSet.noneOf(CohortType.class), recorded.get("c2"));
+        assertEquals(EnumSet.of(CohortType.PREMIUM), recorded.get("c3"));
+
+        // Stage counters are updated after a batch is handed on, which can be after the message completes
+        long deadline = System.currentTimeMillis() + 5000;
+        List<StageStats> stats = pipeline.getStageStats();
+        while ((stats.get(0).getProcessed() < 1 || stats.get(1).getProcessed() < 3 || stats.get(2).getProcessed() < 3)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            stats = pipeline.getStageStats();
+        }
+        assertEquals(Arrays.asList("decode", "classify", "persist"),
+                Arrays.asList(stats.get(0).getStage(), stats.get(1).getStage(), stats.get(2).getStage()));
+        assertEquals(1, stats.get(0).getProcessed());
+        assertEquals(3, stats.get(1).getProcessed());
+        assertEquals(3, stats.get(2).getProcessed());
+    }
+
+    @Test
+    void testMalformedMessageFailsWithoutWriting() throws Exception {
+        CompletableFuture<Void> result = pipeline.submit(new Message().withMessageId("m1").withBody("not json"));
+
+        assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        verify(customerRepository, never()).saveAll(any());
+    }
+
+    @Test
+    void testFailedWriteFailsMessage() throws Exception {
+        doThrow(new RuntimeException("Throttled")).when(customerRepository).saveAll(any());
+
+        CompletableFuture<Void> result = pipeline.submit(new Message().withMessageId("m1")
+                .withBody("{\"customerId\":\"c1\",\"dailySpend\":6000.0,\"userType\":\"PAID\"}"));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertEquals("Throttled", e.getCause().getMessage());
+    }
+
+    @Test
+    void testFailedBatchIsRetriedPerCustomerSoOnlyTheBadRecordFails() throws Exception {
+        when(cohortService.evaluate(any(Customer.class))).thenReturn(EnumSet.noneOf(CohortType.class));
+        doAnswer(invocation -> {
+            List<Customer> customers = invocation.getArgument(0);
+            if (customers.stream().anyMatch(customer -> customer.getCustomerId().equals("bad"))) {
+                throw new RuntimeException("Item too large");
+            }
+            return null;
+        }).when(customerRepository).saveAll(any());
+
+        List<CompletableFuture<Void>> good = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            good.add(pipeline.submit(new Message().withMessageId("m" + i)
+                    .withBody("{\"customerId\":\"c" + i + "\",\"dailySpend\":1.0,\"userType\":\"PAID\"}")));
+        }
+        CompletableFuture<Void> bad = pipeline.submit(new Message().withMessageId("bad")
+                .withBody("{\"customerId\":\"bad\",\"dailySpend\":1.0,\"userType\":\"PAID\"}"));
+
+        CompletableFuture.allOf(good.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> bad.get(5, TimeUnit.SECONDS));
+        assertEquals("Item too large", e.getCause().getMessage());
+    }
+
+    @Test
+    void testUpdatesOfOneCustomerAreWrittenInSubmissionOrder() throws Exception {
+        when(cohortService.evaluate(any(Customer.class))).thenReturn(EnumSet.noneOf(CohortType.class));
+        List<Double> written = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            List<Customer> customers = invocation.getArgument(0);
+            customers.forEach(customer -> written.add(customer.getDailySpend()));
+            return null;
+        }).when(customerRepository).saveAll(any());
+
+        // Both decode threads take messages, so a later message may finish decoding first
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            results.add(pipeline.submit(new Message().withMessageId("m" + i)
+                    .withBody("{\"customerId\":\"c1\",\"dailySpend\":" + i + ".0,\"userType\":\"PAID\"}")));
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+        // Repeated updates within a batch are collapsed, but the ones written never go backwards
+        for (int i = 1; i < written.size(); i++) {
+            assertTrue(written.get(i) > written.get(i - 1), "Update " + written.get(i) + " after " + written.get(i - 1));
+        }
+        assertEquals(199.0, written.get(written.size() - 1));
+    }
+
+    private static Message batchMessage(List<Customer> customers) {
+        return new Message()
+                .withMessageId("batch")
+                .withBody(new CustomerMessageCodec().encodeBatchBody(customers))
+                .addMessageAttributesEntry(CustomerMessageCodec.FORMAT_ATTRIBUTE, CustomerMessageCodec.binaryBatchAttribute());
+    }
+}